@@ -21,10 +21,14 @@
 package org.ndnx.ndn;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import org.ndnx.ndn.config.ConfigurationException;
+import org.ndnx.ndn.impl.ContentFuture;
 import org.ndnx.ndn.impl.NDNNetworkManager;
 import org.ndnx.ndn.impl.security.keys.BasicKeyManager;
 import org.ndnx.ndn.impl.support.Log;
@@ -330,6 +334,49 @@ public class NDNHandle implements NDNBase {
 		}
 	}
 	
+	/**
+	 * Get a single piece of content from NDN without blocking. The returned future
+	 * completes when matching content is found or the get times out, in which case
+	 * its content is null.
+	 * @param interest
+	 * @param timeout
+	 * @return the future for the content
+	 * @throws IOException
+	 */
+	public ContentFuture getAsync(Interest interest, long timeout) throws IOException {
+		synchronized(_openLock) {
+			if( !_isOpen )
+				throw new IOException(formatMessage("Handle is closed"));
+		}
+		if (_scope != disableScope) {
+			if (interest.scope() == null) {
+				interest.scope(_scope);
+			}
+		}
+		return getNetworkManager().getAsync(interest, timeout);
+	}
+
+	/**
+	 * Get content for several interests at once without blocking.
+	 * @param interests
+	 * @param timeout applies to each get
+	 * @return futures for the content in the same order as the interests
+	 * @throws IOException
+	 * @see #getAsync(Interest, long)
+	 */
+	public List<ContentFuture> getAll(Collection<Interest> interests, long timeout) throws IOException {
+		ArrayList<ContentFuture> futures = new ArrayList<ContentFuture>(interests.size());
+		try {
+			for (Interest interest : interests)
+				futures.add(getAsync(interest, timeout));
+		} catch (IOException e) {
+			for (ContentFuture future : futures)
+				future.cancel(false);
+			throw e;
+		}
+		return futures;
+	}
+	
 	/**
 	 * Put a single content object into the network. This is a low-level put,
 	 * and typically should only be called by a flow controller, in response to
@@ -207,6 +207,15 @@ public class SystemConfiguration {
 	protected static final String BLOCK_SIZE_ENV_VAR = "NDNX_BLOCKSIZE";
 	public static int BLOCK_SIZE = SegmentationProfile.DEFAULT_BLOCKSIZE;
 
+	/**
+	 * Whether segmenters sign each batch of segments while the previous batch is being
+	 * written to the flow controller, rather than waiting for it to be written first
+	 */
+	protected static final String SEGMENTER_PIPELINE_PROPERTY = "org.ndnx.segmenter.pipeline";
+	protected final static String SEGMENTER_PIPELINE_ENV_VAR = "NDNX_SEGMENTER_PIPELINE";
+	public final static boolean SEGMENTER_PIPELINE_DEFAULT = false;
+	public static boolean SEGMENTER_PIPELINE = SEGMENTER_PIPELINE_DEFAULT;
+
 	/**
 	 * Backwards-compatible handling of old header names. 
 	 * Current default is true; eventually will be false.
@@ -261,6 +270,250 @@ public class SystemConfiguration {
 	protected final static String DUMP_NETMANAGER_STATS_ENV_VAR = "NDNX_DUMP_NETMANAGER_STATS";
 	public static boolean DUMP_NETMANAGER_STATS = false;
 
+	/**
+	 * Number of connections each network manager opens to ndnd, each with its own reader thread.
+	 * Only used with TCP. With more than one, handlers are called from at least one dispatch
+	 * thread rather than from the reader threads.
+	 */
+	protected static final String AGENT_CHANNELS_PROPERTY = "org.ndnx.agent.channels";
+	protected final static String AGENT_CHANNELS_ENV_VAR = "NDNX_AGENT_CHANNELS";
+	public final static int AGENT_CHANNELS_DEFAULT = 1;
+	public static int AGENT_CHANNELS = AGENT_CHANNELS_DEFAULT;
+
+	/**
+	 * Number of threads used by the network manager to dispatch content and interests to
+	 * handlers. 0 means handlers are called directly from the network manager's reader thread,
+	 * unless there is more than one agent channel in which case a single dispatch thread is used.
+	 */
+	protected static final String DISPATCH_THREADS_PROPERTY = "org.ndnx.dispatch.threads";
+	protected final static String DISPATCH_THREADS_ENV_VAR = "NDNX_DISPATCH_THREADS";
+	public final static int DISPATCH_THREADS_DEFAULT = 0;
+	public static int DISPATCH_THREADS = DISPATCH_THREADS_DEFAULT;
+
+	/**
+	 * Maximum number of deliveries which may be queued for each dispatch thread
+	 */
+	protected static final String DISPATCH_QUEUE_SIZE_PROPERTY = "org.ndnx.dispatch.queuesize";
+	protected final static String DISPATCH_QUEUE_SIZE_ENV_VAR = "NDNX_DISPATCH_QUEUE_SIZE";
+	public final static int DISPATCH_QUEUE_SIZE_DEFAULT = 1000;
+	public static int DISPATCH_QUEUE_SIZE = DISPATCH_QUEUE_SIZE_DEFAULT;
+
+	/**
+	 * Maximum time in milliseconds to wait for space in a full dispatch queue before
+	 * dropping a delivery of content
+	 */
+	protected static final String DISPATCH_TIMEOUT_PROPERTY = "org.ndnx.dispatch.timeout";
+	protected final static String DISPATCH_TIMEOUT_ENV_VAR = "NDNX_DISPATCH_TIMEOUT";
+	public final static int DISPATCH_TIMEOUT_DEFAULT = 1000;
+	public static int DISPATCH_TIMEOUT = DISPATCH_TIMEOUT_DEFAULT;
+
+	/**
+	 * Maximum number of packets the network manager coalesces into one write to ndnd.
+	 * 0 means each packet is written directly by the thread sending it.
+	 */
+	protected static final String WRITE_BATCH_SIZE_PROPERTY = "org.ndnx.write.batchsize";
+	protected final static String WRITE_BATCH_SIZE_ENV_VAR = "NDNX_WRITE_BATCH_SIZE";
+	public final static int WRITE_BATCH_SIZE_DEFAULT = 0;
+	public static int WRITE_BATCH_SIZE = WRITE_BATCH_SIZE_DEFAULT;
+
+	/**
+	 * Maximum time in microseconds to wait for more packets before writing a partial batch
+	 */
+	protected static final String WRITE_BATCH_LATENCY_PROPERTY = "org.ndnx.write.latency";
+	protected final static String WRITE_BATCH_LATENCY_ENV_VAR = "NDNX_WRITE_LATENCY";
+	public final static int WRITE_BATCH_LATENCY_DEFAULT = 200;
+	public static int WRITE_BATCH_LATENCY = WRITE_BATCH_LATENCY_DEFAULT;
+
+	/**
+	 * Maximum number of encoded packets which may be waiting to be written
+	 */
+	protected static final String WRITE_QUEUE_SIZE_PROPERTY = "org.ndnx.write.queuesize";
+	protected final static String WRITE_QUEUE_SIZE_ENV_VAR = "NDNX_WRITE_QUEUE_SIZE";
+	public final static int WRITE_QUEUE_SIZE_DEFAULT = 256;
+	public static int WRITE_QUEUE_SIZE = WRITE_QUEUE_SIZE_DEFAULT;
+
+	/**
+	 * Maximum number of objects the network manager keeps in its content cache.
+	 * 0 means there is no cache and every interest is expressed to ndnd.
+	 */
+	protected static final String CONTENT_CACHE_OBJECTS_PROPERTY = "org.ndnx.cache.objects";
+	protected final static String CONTENT_CACHE_OBJECTS_ENV_VAR = "NDNX_CACHE_OBJECTS";
+	public final static int CONTENT_CACHE_OBJECTS_DEFAULT = 0;
+	public static int CONTENT_CACHE_OBJECTS = CONTENT_CACHE_OBJECTS_DEFAULT;
+
+	/**
+	 * Maximum total size in bytes of the names and content held in the content cache
+	 */
+	protected static final String CONTENT_CACHE_BYTES_PROPERTY = "org.ndnx.cache.bytes";
+	protected final static String CONTENT_CACHE_BYTES_ENV_VAR = "NDNX_CACHE_BYTES";
+	public final static long CONTENT_CACHE_BYTES_DEFAULT = 4 * 1024 * 1024;
+	public static long CONTENT_CACHE_BYTES = CONTENT_CACHE_BYTES_DEFAULT;
+
+	/**
+	 * Maximum number of signature verification results kept for the whole process, so that
+	 * a signature shared by many objects, such as the root of a Merkle tree, is only checked
+	 * with the public key once. 0 means every signature is checked.
+	 */
+	protected static final String VERIFY_CACHE_SIZE_PROPERTY = "org.ndnx.verify.cache";
+	protected final static String VERIFY_CACHE_SIZE_ENV_VAR = "NDNX_VERIFY_CACHE";
+	public final static int VERIFY_CACHE_SIZE_DEFAULT = 1000;
+	public static int VERIFY_CACHE_SIZE = VERIFY_CACHE_SIZE_DEFAULT;
+
+	/**
+	 * Number of threads the default ContentBatchVerifier uses to verify content in parallel
+	 */
+	protected static final String VERIFY_THREADS_PROPERTY = "org.ndnx.verify.threads";
+	protected final static String VERIFY_THREADS_ENV_VAR = "NDNX_VERIFY_THREADS";
+	public final static int VERIFY_THREADS_DEFAULT = Runtime.getRuntime().availableProcessors();
+	public static int VERIFY_THREADS = VERIFY_THREADS_DEFAULT;
+
+	/**
+	 * Number of threads used to compute the digests of large Merkle hash trees. 1 means
+	 * trees are always built by the thread which creates them.
+	 */
+	protected static final String MERKLE_THREADS_PROPERTY = "org.ndnx.merkle.threads";
+	protected final static String MERKLE_THREADS_ENV_VAR = "NDNX_MERKLE_THREADS";
+	public final static int MERKLE_THREADS_DEFAULT = Runtime.getRuntime().availableProcessors();
+	public static int MERKLE_THREADS = MERKLE_THREADS_DEFAULT;
+
+	/**
+	 * Whether NDNWriters sign content on the threads of the default NDNAsyncSigner rather
+	 * than on the thread which writes it
+	 */
+	protected static final String SIGNING_ASYNC_PROPERTY = "org.ndnx.signing.async";
+	protected final static String SIGNING_ASYNC_ENV_VAR = "NDNX_SIGNING_ASYNC";
+	public final static boolean SIGNING_ASYNC_DEFAULT = false;
+	public static boolean SIGNING_ASYNC = SIGNING_ASYNC_DEFAULT;
+
+	/**
+	 * Number of threads the default NDNAsyncSigner signs content with
+	 */
+	protected static final String SIGNING_THREADS_PROPERTY = "org.ndnx.signing.threads";
+	protected final static String SIGNING_THREADS_ENV_VAR = "NDNX_SIGNING_THREADS";
+	public final static int SIGNING_THREADS_DEFAULT = Runtime.getRuntime().availableProcessors();
+	public static int SIGNING_THREADS = SIGNING_THREADS_DEFAULT;
+
+	/**
+	 * Milliseconds the default NDNAsyncSigner waits for more content to sign together with
+	 * the first content it is given, under one aggregated signature. 0 means content is
+	 * signed as soon as a thread is free, each batch with its own signature.
+	 */
+	protected static final String SIGNING_WINDOW_PROPERTY = "org.ndnx.signing.window";
+	protected final static String SIGNING_WINDOW_ENV_VAR = "NDNX_SIGNING_WINDOW";
+	public final static int SIGNING_WINDOW_DEFAULT = 0;
+	public static int SIGNING_WINDOW = SIGNING_WINDOW_DEFAULT;
+
+	/**
+	 * Whether the repository memory maps data files which are no longer being written
+	 * to read content from them. If false, content is read with positional reads.
+	 */
+	protected static final String REPO_MMAP_PROPERTY = "org.ndnx.repo.mmap";
+	protected final static String REPO_MMAP_ENV_VAR = "NDNX_REPO_MMAP";
+	public final static boolean REPO_MMAP_DEFAULT = true;
+	public static boolean REPO_MMAP = REPO_MMAP_DEFAULT;
+
+	/**
+	 * Size in bytes at which the repository stops writing to a data file and starts a new one.
+	 * Files which are no longer written can be memory mapped and compacted. 0 means never start
+	 * a new file.
+	 */
+	protected static final String REPO_FILE_SIZE_PROPERTY = "org.ndnx.repo.file.size";
+	protected final static String REPO_FILE_SIZE_ENV_VAR = "NDNX_REPO_FILE_SIZE";
+	public final static long REPO_FILE_SIZE_DEFAULT = 1024L * 1024 * 1024;
+	public static long REPO_FILE_SIZE = REPO_FILE_SIZE_DEFAULT;
+
+	/**
+	 * Number of threads the repository uses to index its data files at startup
+	 */
+	protected static final String REPO_INDEX_THREADS_PROPERTY = "org.ndnx.repo.index.threads";
+	protected final static String REPO_INDEX_THREADS_ENV_VAR = "NDNX_REPO_INDEX_THREADS";
+	public final static int REPO_INDEX_THREADS_DEFAULT = Runtime.getRuntime().availableProcessors();
+	public static int REPO_INDEX_THREADS = REPO_INDEX_THREADS_DEFAULT;
+
+	/**
+	 * Whether the repository keeps a compact index, which packs the last component of each
+	 * name and its location in the data files into its parent node rather than creating
+	 * objects for them. This reduces the memory used by the index by about a quarter.
+	 */
+	protected static final String REPO_INDEX_COMPACT_PROPERTY = "org.ndnx.repo.index.compact";
+	protected final static String REPO_INDEX_COMPACT_ENV_VAR = "NDNX_REPO_INDEX_COMPACT";
+	public final static boolean REPO_INDEX_COMPACT_DEFAULT = false;
+	public static boolean REPO_INDEX_COMPACT = REPO_INDEX_COMPACT_DEFAULT;
+
+	/**
+	 * Maximum total size in bytes of the names and content of objects the repository keeps
+	 * in memory after reading them from its data files. 0 means no objects are kept.
+	 */
+	protected static final String REPO_CACHE_BYTES_PROPERTY = "org.ndnx.repo.cache.bytes";
+	protected final static String REPO_CACHE_BYTES_ENV_VAR = "NDNX_REPO_CACHE_BYTES";
+	public final static long REPO_CACHE_BYTES_DEFAULT = 16 * 1024 * 1024;
+	public static long REPO_CACHE_BYTES = REPO_CACHE_BYTES_DEFAULT;
+
+	/**
+	 * Maximum number of interests which matched no content the repository remembers, so that
+	 * it doesn't search again for them until content is added under their names. 0 means
+	 * interests are always searched for.
+	 */
+	protected static final String REPO_NEGATIVE_CACHE_PROPERTY = "org.ndnx.repo.negative.cache";
+	protected final static String REPO_NEGATIVE_CACHE_ENV_VAR = "NDNX_REPO_NEGATIVE_CACHE";
+	public final static int REPO_NEGATIVE_CACHE_DEFAULT = 1000;
+	public static int REPO_NEGATIVE_CACHE = REPO_NEGATIVE_CACHE_DEFAULT;
+
+	/**
+	 * Number of bits in the filter of name prefixes the repository uses to reject interests
+	 * for names it holds no content under without searching its index. The filter gives a
+	 * false match for roughly 1 in 100 absent names while it holds fewer than one prefix
+	 * for each 10 bits. 0 means every interest is searched for.
+	 */
+	protected static final String REPO_NAME_FILTER_BITS_PROPERTY = "org.ndnx.repo.name.filter.bits";
+	protected final static String REPO_NAME_FILTER_BITS_ENV_VAR = "NDNX_REPO_NAME_FILTER_BITS";
+	public final static int REPO_NAME_FILTER_BITS_DEFAULT = 1 << 24;
+	public static int REPO_NAME_FILTER_BITS = REPO_NAME_FILTER_BITS_DEFAULT;
+
+	/**
+	 * Maximum number of objects the repository writes to its data file in one batch
+	 */
+	protected static final String REPO_WRITE_BATCH_PROPERTY = "org.ndnx.repo.write.batch";
+	protected final static String REPO_WRITE_BATCH_ENV_VAR = "NDNX_REPO_WRITE_BATCH";
+	public final static int REPO_WRITE_BATCH_DEFAULT = 64;
+	public static int REPO_WRITE_BATCH = REPO_WRITE_BATCH_DEFAULT;
+
+	/**
+	 * How long in ms the repository waits for more objects to fill a write batch once it has
+	 * some to write. 0 means only objects which are already waiting are batched.
+	 */
+	protected static final String REPO_WRITE_DELAY_PROPERTY = "org.ndnx.repo.write.delay";
+	protected final static String REPO_WRITE_DELAY_ENV_VAR = "NDNX_REPO_WRITE_DELAY";
+	public final static int REPO_WRITE_DELAY_DEFAULT = 0;
+	public static int REPO_WRITE_DELAY = REPO_WRITE_DELAY_DEFAULT;
+
+	/**
+	 * Whether the repository forces each write batch to stable storage before indexing it
+	 */
+	protected static final String REPO_WRITE_SYNC_PROPERTY = "org.ndnx.repo.write.sync";
+	protected final static String REPO_WRITE_SYNC_ENV_VAR = "NDNX_REPO_WRITE_SYNC";
+	public final static boolean REPO_WRITE_SYNC_DEFAULT = false;
+	public static boolean REPO_WRITE_SYNC = REPO_WRITE_SYNC_DEFAULT;
+
+	/**
+	 * Version retention policy applied when the repository compacts its data files, as a comma
+	 * separated list of prefix=count. Under each prefix only the newest count versions of
+	 * each name are kept. For example "/example/logs=3,/example/status=1".
+	 */
+	protected static final String REPO_RETENTION_PROPERTY = "org.ndnx.repo.retention";
+	protected final static String REPO_RETENTION_ENV_VAR = "NDNX_REPO_RETENTION";
+	public final static String REPO_RETENTION_DEFAULT = "";
+	public static String REPO_RETENTION = REPO_RETENTION_DEFAULT;
+
+	/**
+	 * Whether compaction drops content outside the repository's policy namespace. Keys fetched
+	 * to go with saved content may be outside the namespace, so this is off by default.
+	 */
+	protected static final String REPO_COMPACT_NAMESPACE_PROPERTY = "org.ndnx.repo.compact.namespace";
+	protected final static String REPO_COMPACT_NAMESPACE_ENV_VAR = "NDNX_REPO_COMPACT_NAMESPACE";
+	public final static boolean REPO_COMPACT_NAMESPACE_DEFAULT = false;
+	public static boolean REPO_COMPACT_NAMESPACE = REPO_COMPACT_NAMESPACE_DEFAULT;
+
 
 	/**
 	 * Settable system default timeout.
@@ -486,6 +739,139 @@ public class SystemConfiguration {
 		
 		// Dump netmanager statistics if requested
 		DUMP_NETMANAGER_STATS = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(DUMP_NETMANAGER_STATS_PROPERTY, DUMP_NETMANAGER_STATS_ENV_VAR, Boolean.toString(DUMP_NETMANAGER_STATS)));
+
+		// Allow override of number of connections to ndnd
+		try {
+			AGENT_CHANNELS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(AGENT_CHANNELS_PROPERTY, AGENT_CHANNELS_ENV_VAR, Integer.toString(AGENT_CHANNELS_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The number of agent channels must be an integer.");
+			throw e;
+		}
+
+		// Allow override of handler dispatch threads and queue size
+		try {
+			DISPATCH_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(DISPATCH_THREADS_PROPERTY, DISPATCH_THREADS_ENV_VAR, Integer.toString(DISPATCH_THREADS_DEFAULT)));
+			DISPATCH_QUEUE_SIZE = Integer.parseInt(retrievePropertyOrEnvironmentVariable(DISPATCH_QUEUE_SIZE_PROPERTY, DISPATCH_QUEUE_SIZE_ENV_VAR, Integer.toString(DISPATCH_QUEUE_SIZE_DEFAULT)));
+			DISPATCH_TIMEOUT = Integer.parseInt(retrievePropertyOrEnvironmentVariable(DISPATCH_TIMEOUT_PROPERTY, DISPATCH_TIMEOUT_ENV_VAR, Integer.toString(DISPATCH_TIMEOUT_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The dispatch thread count, queue size and timeout must be integers.");
+			throw e;
+		}
+
+		// Allow override of output batching
+		try {
+			WRITE_BATCH_SIZE = Integer.parseInt(retrievePropertyOrEnvironmentVariable(WRITE_BATCH_SIZE_PROPERTY, WRITE_BATCH_SIZE_ENV_VAR, Integer.toString(WRITE_BATCH_SIZE_DEFAULT)));
+			WRITE_BATCH_LATENCY = Integer.parseInt(retrievePropertyOrEnvironmentVariable(WRITE_BATCH_LATENCY_PROPERTY, WRITE_BATCH_LATENCY_ENV_VAR, Integer.toString(WRITE_BATCH_LATENCY_DEFAULT)));
+			WRITE_QUEUE_SIZE = Integer.parseInt(retrievePropertyOrEnvironmentVariable(WRITE_QUEUE_SIZE_PROPERTY, WRITE_QUEUE_SIZE_ENV_VAR, Integer.toString(WRITE_QUEUE_SIZE_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The write batch size, latency and queue size must be integers.");
+			throw e;
+		}
+
+		// Allow override of content cache size
+		try {
+			CONTENT_CACHE_OBJECTS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(CONTENT_CACHE_OBJECTS_PROPERTY, CONTENT_CACHE_OBJECTS_ENV_VAR, Integer.toString(CONTENT_CACHE_OBJECTS_DEFAULT)));
+			CONTENT_CACHE_BYTES = Long.parseLong(retrievePropertyOrEnvironmentVariable(CONTENT_CACHE_BYTES_PROPERTY, CONTENT_CACHE_BYTES_ENV_VAR, Long.toString(CONTENT_CACHE_BYTES_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The content cache object count and size must be integers.");
+			throw e;
+		}
+
+		// Allow override of verified signature cache size
+		try {
+			VERIFY_CACHE_SIZE = Integer.parseInt(retrievePropertyOrEnvironmentVariable(VERIFY_CACHE_SIZE_PROPERTY, VERIFY_CACHE_SIZE_ENV_VAR, Integer.toString(VERIFY_CACHE_SIZE_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The verified signature cache size must be an integer.");
+			throw e;
+		}
+
+		// Allow override of verification threads
+		try {
+			VERIFY_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(VERIFY_THREADS_PROPERTY, VERIFY_THREADS_ENV_VAR, Integer.toString(VERIFY_THREADS_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The number of verification threads must be an integer.");
+			throw e;
+		}
+
+		// Allow override of Merkle tree threads
+		try {
+			MERKLE_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(MERKLE_THREADS_PROPERTY, MERKLE_THREADS_ENV_VAR, Integer.toString(MERKLE_THREADS_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The number of Merkle tree threads must be an integer.");
+			throw e;
+		}
+
+		// Allow override of asynchronous signing
+		SIGNING_ASYNC = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(SIGNING_ASYNC_PROPERTY, SIGNING_ASYNC_ENV_VAR, Boolean.toString(SIGNING_ASYNC_DEFAULT)));
+
+		// Allow override of signing threads
+		try {
+			SIGNING_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(SIGNING_THREADS_PROPERTY, SIGNING_THREADS_ENV_VAR, Integer.toString(SIGNING_THREADS_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The number of signing threads must be an integer.");
+			throw e;
+		}
+
+		// Allow override of signing aggregation window
+		try {
+			SIGNING_WINDOW = Integer.parseInt(retrievePropertyOrEnvironmentVariable(SIGNING_WINDOW_PROPERTY, SIGNING_WINDOW_ENV_VAR, Integer.toString(SIGNING_WINDOW_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The signing window must be an integer number of milliseconds.");
+			throw e;
+		}
+
+		// Allow override of repository memory mapping
+		REPO_MMAP = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(REPO_MMAP_PROPERTY, REPO_MMAP_ENV_VAR, Boolean.toString(REPO_MMAP_DEFAULT)));
+
+		// Allow override of repository data file size
+		try {
+			REPO_FILE_SIZE = Long.parseLong(retrievePropertyOrEnvironmentVariable(REPO_FILE_SIZE_PROPERTY, REPO_FILE_SIZE_ENV_VAR, Long.toString(REPO_FILE_SIZE_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository data file size must be an integer.");
+			throw e;
+		}
+
+		// Allow override of repository index threads
+		try {
+			REPO_INDEX_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_INDEX_THREADS_PROPERTY, REPO_INDEX_THREADS_ENV_VAR, Integer.toString(REPO_INDEX_THREADS_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The number of repository index threads must be an integer.");
+			throw e;
+		}
+
+		// Allow override of compact repository index
+		REPO_INDEX_COMPACT = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(REPO_INDEX_COMPACT_PROPERTY, REPO_INDEX_COMPACT_ENV_VAR, Boolean.toString(REPO_INDEX_COMPACT_DEFAULT)));
+
+		// Allow override of repository caches
+		try {
+			REPO_CACHE_BYTES = Long.parseLong(retrievePropertyOrEnvironmentVariable(REPO_CACHE_BYTES_PROPERTY, REPO_CACHE_BYTES_ENV_VAR, Long.toString(REPO_CACHE_BYTES_DEFAULT)));
+			REPO_NEGATIVE_CACHE = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_NEGATIVE_CACHE_PROPERTY, REPO_NEGATIVE_CACHE_ENV_VAR, Integer.toString(REPO_NEGATIVE_CACHE_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository cache sizes must be integers.");
+			throw e;
+		}
+
+		// Allow override of repository name filter size
+		try {
+			REPO_NAME_FILTER_BITS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_NAME_FILTER_BITS_PROPERTY, REPO_NAME_FILTER_BITS_ENV_VAR, Integer.toString(REPO_NAME_FILTER_BITS_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository name filter size must be an integer.");
+			throw e;
+		}
+
+		// Allow override of repository write batching
+		try {
+			REPO_WRITE_BATCH = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_WRITE_BATCH_PROPERTY, REPO_WRITE_BATCH_ENV_VAR, Integer.toString(REPO_WRITE_BATCH_DEFAULT)));
+			REPO_WRITE_DELAY = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_WRITE_DELAY_PROPERTY, REPO_WRITE_DELAY_ENV_VAR, Integer.toString(REPO_WRITE_DELAY_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository write batch size and delay must be integers.");
+			throw e;
+		}
+		REPO_WRITE_SYNC = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(REPO_WRITE_SYNC_PROPERTY, REPO_WRITE_SYNC_ENV_VAR, Boolean.toString(REPO_WRITE_SYNC_DEFAULT)));
+
+		// Allow override of repository compaction
+		REPO_RETENTION = retrievePropertyOrEnvironmentVariable(REPO_RETENTION_PROPERTY, REPO_RETENTION_ENV_VAR, REPO_RETENTION_DEFAULT);
+		REPO_COMPACT_NAMESPACE = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(REPO_COMPACT_NAMESPACE_PROPERTY, REPO_COMPACT_NAMESPACE_ENV_VAR, Boolean.toString(REPO_COMPACT_NAMESPACE_DEFAULT)));
 	
 		// Allow override of block size
 		// TODO should we make sure its a reasonable number?
@@ -495,6 +881,9 @@ public class SystemConfiguration {
 			System.err.println("The settable block size must be an integer.");
 			throw e;
 		}
+
+		// Allow override of segmenter pipelining
+		SEGMENTER_PIPELINE = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(SEGMENTER_PIPELINE_PROPERTY, SEGMENTER_PIPELINE_ENV_VAR, Boolean.toString(SEGMENTER_PIPELINE_DEFAULT)));
 		
 		// Handle old-style header names
 		OLD_HEADER_NAMES = Boolean.parseBoolean(
@@ -0,0 +1,214 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.ndnx.ndn.NDNContentHandler;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Interest;
+
+/**
+ * The result of a non-blocking get (see NDNNetworkManager#getAsync). The future is the content handler
+ * for its interest, so it is completed by the network manager when matching content arrives. If the get
+ * times out the future completes with null content, as the blocking get does.
+ *
+ * Listeners may be added to be called back when the future completes. They are called on the thread
+ * which completes the future - typically the network manager's reader or timer thread - so like
+ * other handlers they must not block.
+ */
+public class ContentFuture implements Future<ContentObject>, NDNContentHandler {
+
+	/**
+	 * Callback for completion of a ContentFuture
+	 */
+	public interface Listener {
+		/**
+		 * @param future the completed future
+		 */
+		public void done(ContentFuture future);
+	}
+
+	protected final NDNNetworkManager _manager;
+	protected final Interest _interest;
+	protected ContentObject _content = null;
+	protected boolean _done = false;
+	protected boolean _cancelled = false;
+	protected ArrayList<Listener> _listeners = null;
+	protected ScheduledFuture<?> _timeout = null;
+
+	public ContentFuture(NDNNetworkManager manager, Interest interest) {
+		_manager = manager;
+		_interest = interest;
+	}
+
+	/**
+	 * @return the interest this future is getting content for
+	 */
+	public Interest interest() {
+		return _interest;
+	}
+
+	/**
+	 * Called by the network manager with the content matching our interest.
+	 */
+	public Interest handleContent(ContentObject data, Interest interest) {
+		complete(data, false);
+		return null;
+	}
+
+	/**
+	 * Add a listener to be called when the future completes. If it has already
+	 * completed the listener is called immediately.
+	 * @param listener
+	 */
+	public void addListener(Listener listener) {
+		synchronized (this) {
+			if (!_done) {
+				if (null == _listeners)
+					_listeners = new ArrayList<Listener>(1);
+				_listeners.add(listener);
+				return;
+			}
+		}
+		callListener(listener);
+	}
+
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (!complete(null, true))
+			return false;
+		_manager.cancelInterest(this, _interest, this);
+		return true;
+	}
+
+	public synchronized boolean isCancelled() {
+		return _cancelled;
+	}
+
+	public synchronized boolean isDone() {
+		return _done;
+	}
+
+	/**
+	 * @return true if the get timed out without receiving content
+	 */
+	public synchronized boolean isTimedOut() {
+		return _done && !_cancelled && null == _content;
+	}
+
+	/**
+	 * Wait for the get to complete.
+	 * @return the content or null if the get timed out
+	 * @throws CancellationException if the get was cancelled
+	 */
+	public synchronized ContentObject get() throws InterruptedException {
+		while (!_done)
+			wait();
+		return result();
+	}
+
+	/**
+	 * Wait at most timeout for the get to complete.
+	 * @return the content or null if the get timed out
+	 * @throws TimeoutException if the get didn't complete in time
+	 * @throws CancellationException if the get was cancelled
+	 */
+	public synchronized ContentObject get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!_done) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0)
+				throw new TimeoutException("Get of " + _interest.name() + " not complete");
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return result();
+	}
+
+	/**
+	 * Set the task which will time out this get
+	 * @param timeout
+	 */
+	protected void setTimeout(ScheduledFuture<?> timeout) {
+		synchronized (this) {
+			if (!_done) {
+				_timeout = timeout;
+				return;
+			}
+		}
+		timeout.cancel(false);
+	}
+
+	/**
+	 * Called when the get times out
+	 */
+	protected void expire() {
+		if (complete(null, false))
+			_manager.cancelInterest(this, _interest, this);
+	}
+
+	/**
+	 * @return false if the future had already completed
+	 */
+	protected boolean complete(ContentObject content, boolean cancelled) {
+		ArrayList<Listener> listeners;
+		ScheduledFuture<?> timeout;
+		synchronized (this) {
+			if (_done)
+				return false;
+			_done = true;
+			_content = content;
+			_cancelled = cancelled;
+			listeners = _listeners;
+			_listeners = null;
+			timeout = _timeout;
+			_timeout = null;
+			notifyAll();
+		}
+		if (null != timeout)
+			timeout.cancel(false);
+		if (null != listeners) {
+			for (Listener listener : listeners)
+				callListener(listener);
+		}
+		return true;
+	}
+
+	private ContentObject result() {
+		if (_cancelled)
+			throw new CancellationException("Get of " + _interest.name() + " was cancelled");
+		return _content;
+	}
+
+	private void callListener(Listener listener) {
+		try {
+			listener.done(this);
+		} catch (RuntimeException ex) {
+			Log.warning(Log.FAC_NETMANAGER, "Error in get listener for {0}: {1}", _interest.name(), ex);
+			Log.warningStackTrace(ex);
+		}
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hashed timing wheel. Items are scheduled for a deadline and hashed into the slot for the tick
+ * containing that deadline. Expiring items only examines the slots for the ticks which have passed
+ * since the last expiry, so the cost of finding due items depends on how many items are in those
+ * slots rather than on the total number of items scheduled. Items due more than one revolution of
+ * the wheel ahead share slots with nearer items and are passed over until their deadline arrives.
+ *
+ * Scheduling and cancelling are O(1). All methods are synchronized on the wheel.
+ */
+public class HashedTimingWheel<T> {
+
+	/**
+	 * A scheduled item. Timeouts are linked into the list for their slot.
+	 */
+	public static final class Timeout<T> {
+		protected final T _item;
+		protected final long _deadline;
+		protected Timeout<T> _prev = null;
+		protected Timeout<T> _next = null;
+		protected int _slot = -1;
+
+		protected Timeout(T item, long deadline) {
+			_item = item;
+			_deadline = deadline;
+		}
+
+		public T item() { return _item; }
+
+		public long deadline() { return _deadline; }
+
+		/**
+		 * @return true if this timeout has not yet expired or been cancelled
+		 */
+		public boolean isScheduled() { return _slot >= 0; }
+	}
+
+	protected final long _tick;
+	protected final Timeout<T>[] _slots;
+	protected long _lastTick;
+	protected int _size = 0;
+
+	/**
+	 * @param tick length of a tick in milliseconds
+	 * @param slots number of slots in the wheel
+	 * @param now the current time in milliseconds
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public HashedTimingWheel(long tick, int slots, long now) {
+		if (tick <= 0 || slots <= 0)
+			throw new IllegalArgumentException("Tick and slot count must be positive");
+		_tick = tick;
+		_slots = new Timeout[slots];
+		_lastTick = now / tick;
+	}
+
+	/**
+	 * Schedule an item. Deadlines which have already passed are returned by the next expire().
+	 *
+	 * @param item the item
+	 * @param deadline the time in milliseconds at which the item is due
+	 * @return the timeout, which can be used to cancel the item
+	 */
+	public synchronized Timeout<T> schedule(T item, long deadline) {
+		Timeout<T> timeout = new Timeout<T>(item, deadline);
+		long tick = Math.max(deadline / _tick, _lastTick);
+		int slot = (int)(tick % _slots.length);
+		timeout._slot = slot;
+		timeout._next = _slots[slot];
+		if (null != timeout._next)
+			timeout._next._prev = timeout;
+		_slots[slot] = timeout;
+		_size++;
+		return timeout;
+	}
+
+	/**
+	 * @param timeout the timeout to cancel
+	 * @return false if the timeout had already expired or been cancelled
+	 */
+	public synchronized boolean cancel(Timeout<T> timeout) {
+		if (!timeout.isScheduled())
+			return false;
+		unlink(timeout);
+		return true;
+	}
+
+	/**
+	 * Remove and return all items whose deadlines are at or before now.
+	 *
+	 * @param now the current time in milliseconds
+	 * @return the due items, empty if none are due
+	 */
+	public synchronized List<T> expire(long now) {
+		List<T> result = new ArrayList<T>();
+		long currentTick = Math.max(now / _tick, _lastTick);
+		// The last tick seen is examined again as deadlines in it may have passed since
+		for (long t = Math.max(_lastTick, currentTick - _slots.length + 1); t <= currentTick; t++)
+			expireSlot((int)(t % _slots.length), now, result);
+		_lastTick = currentTick;
+		return result;
+	}
+
+	/**
+	 * Find the earliest deadline. Only the slots for the next revolution of the wheel are
+	 * examined unless all the items are due later than that.
+	 *
+	 * @return the earliest deadline of the items scheduled, or Long.MAX_VALUE if there are none
+	 */
+	public synchronized long nextDeadline() {
+		if (_size == 0)
+			return Long.MAX_VALUE;
+		long earliest = Long.MAX_VALUE;
+		for (long t = _lastTick; t < _lastTick + _slots.length; t++) {
+			for (Timeout<T> timeout = _slots[(int)(t % _slots.length)]; null != timeout; timeout = timeout._next) {
+				if (timeout._deadline / _tick <= t && timeout._deadline < earliest)
+					earliest = timeout._deadline;
+			}
+			if (earliest != Long.MAX_VALUE)
+				return earliest;
+		}
+		for (int i = 0; i < _slots.length; i++) {
+			for (Timeout<T> timeout = _slots[i]; null != timeout; timeout = timeout._next) {
+				if (timeout._deadline < earliest)
+					earliest = timeout._deadline;
+			}
+		}
+		return earliest;
+	}
+
+	/**
+	 * @return the number of items scheduled
+	 */
+	public synchronized int size() {
+		return _size;
+	}
+
+	/**
+	 * @return the length of a tick in milliseconds
+	 */
+	public long tick() {
+		return _tick;
+	}
+
+	/**
+	 * Remove all items
+	 */
+	public synchronized void clear() {
+		for (int i = 0; i < _slots.length; i++) {
+			for (Timeout<T> timeout = _slots[i]; null != timeout; timeout = timeout._next)
+				timeout._slot = -1;
+			_slots[i] = null;
+		}
+		_size = 0;
+	}
+
+	private void expireSlot(int slot, long now, List<T> result) {
+		Timeout<T> timeout = _slots[slot];
+		while (null != timeout) {
+			Timeout<T> next = timeout._next;
+			if (timeout._deadline <= now) {
+				unlink(timeout);
+				result.add(timeout._item);
+			}
+			timeout = next;
+		}
+	}
+
+	private void unlink(Timeout<T> timeout) {
+		if (null != timeout._prev)
+			timeout._prev._next = timeout._next;
+		else
+			_slots[timeout._slot] = timeout._next;
+		if (null != timeout._next)
+			timeout._next._prev = timeout._prev;
+		timeout._prev = null;
+		timeout._next = null;
+		timeout._slot = -1;
+		_size--;
+	}
+}
@@ -26,7 +26,6 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.logging.Level;
@@ -225,16 +224,66 @@ public class InterestTable<V> {
 						if (Log.isLoggable(Log.FAC_ENCODING, Level.INFO)) {
 							Log.info(Log.FAC_ENCODING, "removing entry associated with name {0}", _contentNamesLRU.get(0));
 						}
-						_contents.remove(_contentNamesLRU.get(0));
+						removeName(_contentNamesLRU.get(0));
 						_contentNamesLRU.remove(0);
 					}
 					_contentNamesLRU.add(name);
 				}
-				_contents.put(name, list);
+				putName(name, list);
 			}
 		}
 	}
 
+	/**
+	 * Internal: enter a new name and its list of holders into the table.
+	 * Must be called with _contents locked.
+	 *
+	 * @param name
+	 * @param list
+	 */
+	protected void putName(ContentName name, List<Holder<V>> list) {
+		_contents.put(name, list);
+	}
+
+	/**
+	 * Internal: remove a name and all of its holders from the table.
+	 * Must be called with _contents locked.
+	 *
+	 * @param name
+	 */
+	protected void removeName(ContentName name) {
+		_contents.remove(name);
+	}
+
+	/**
+	 * Internal: return the names in the table which could hold an Interest
+	 * matching the target, ordered from longest to shortest. Callers still
+	 * check each candidate with Interest.matches. This implementation simply
+	 * returns every name in the table. Must be called with _contents locked.
+	 *
+	 * @param target
+	 * @return names to be checked for matches
+	 */
+	protected Collection<ContentName> candidateNames(ContentObject target) {
+		return _contents.keySet();
+	}
+
+	/**
+	 * Internal: return the names in the table which are prefixes of the target,
+	 * ordered from longest to shortest. Must be called with _contents locked.
+	 *
+	 * @param target
+	 * @return names which are prefixes of target
+	 */
+	protected Collection<ContentName> prefixNames(ContentName target) {
+		List<ContentName> result = new ArrayList<ContentName>();
+		for (ContentName name : _contents.keySet()) {
+			if (name.isPrefixOf(target))
+				result.add(name);
+		}
+		return result;
+	}
+
 	protected Holder<V> getMatchByName(ContentName name, ContentObject target) {
 		List<Holder<V>> list;
 		synchronized (_contents) {
@@ -296,7 +345,7 @@ public class InterestTable<V> {
 						if (holder.interest().matches(target)) {
 							holdIt.remove();
 							if (list.size() == 0) {
-								_contents.remove(name);
+								removeName(name);
 							}
 							return holder;
 						}
@@ -335,9 +384,7 @@ public class InterestTable<V> {
 					}
 				}
 				if (list.size() == 0) {
-					synchronized (_contents) {
-						_contents.remove(name);
-					}
+					removeName(name);
 				}
 			}
 		}
@@ -375,7 +422,7 @@ public class InterestTable<V> {
 					}
 				}
 				if (list.size() == 0) {
-					_contents.remove(name);
+					removeName(name);
 				}
 			}
 		}
@@ -397,7 +444,7 @@ public class InterestTable<V> {
 					}
 				}
 				if (list.size() == 0) {
-					_contents.remove(name);
+					removeName(name);
 				}
 			}
 		}
@@ -434,10 +481,8 @@ public class InterestTable<V> {
 		if(Log.isLoggable(Log.FAC_ENCODING, Level.FINEST))
 			Log.finest(Log.FAC_ENCODING, "target: {0}", target.name());
 		Entry<V> match = null;
-		Set<ContentName> names;
 		synchronized (_contents) {
-			names = _contents.keySet();
-			for (ContentName name : names) {
+			for (ContentName name : candidateNames(target)) {
 				match = getMatchByName(name, target);
 				if (null != match)
 					break;
@@ -485,7 +530,7 @@ public class InterestTable<V> {
 		List<Entry<V>> matches = new ArrayList<Entry<V>>();
 		if (null != target) {
 			synchronized (_contents) {
-				for (ContentName name : _contents.keySet()) {
+				for (ContentName name : candidateNames(target)) {
 					// Name match - is there an interest match here?
 					matches.addAll(getAllMatchByName(name, target));
 				}
@@ -529,12 +574,9 @@ public class InterestTable<V> {
 
 		Entry<V> match = null;
 		synchronized (_contents) {
-			for (ContentName name : _contents.keySet()) {
-				if (name.isPrefixOf(target)) {
-					match = _contents.get(name).get(0);
-					break;
-				}
-			}
+			Iterator<ContentName> names = prefixNames(target).iterator();
+			if (names.hasNext())
+				match = _contents.get(names.next()).get(0);
 		}
 		return match;
 	}
@@ -573,10 +615,8 @@ public class InterestTable<V> {
 
 		List<Entry<V>> matches = new ArrayList<Entry<V>>();
 		synchronized (_contents) {
-			for (ContentName name : _contents.keySet()) {
-				if (name.isPrefixOf(target)) {
-					matches.addAll(_contents.get(name));
-				}
+			for (ContentName name : prefixNames(target)) {
+				matches.addAll(_contents.get(name));
 			}
 		}
 		return matches;
@@ -632,10 +672,8 @@ public class InterestTable<V> {
 			ContentName matchName = null;
 			if(Log.isLoggable(Log.FAC_ENCODING, Level.FINEST))
 				Log.finest(Log.FAC_ENCODING, "removeMatch: looking for match to target {0} among {1} possibilities.", target.name(), _contents.keySet().size());
-			Set<ContentName> names;
 			synchronized (_contents) {
-				names = _contents.keySet();
-				for (ContentName name : names) {
+				for (ContentName name : candidateNames(target)) {
 					match = getMatchByName(name, target);
 					if (null != match) {
 						matchName = name;
@@ -683,10 +721,8 @@ public class InterestTable<V> {
 	public List<Entry<V>> removeMatches(ContentObject target) {
 		List<Entry<V>> matches = new ArrayList<Entry<V>>();
 		List<ContentName> names = new ArrayList<ContentName>();
-		Set<ContentName> LFCnames;
 		synchronized (_contents) {
-			LFCnames = _contents.keySet();
-			for (ContentName name : LFCnames) {
+			for (ContentName name : candidateNames(target)) {
 				if (name.isPrefixOf(target.name())) {
 					// Name match - is there an interest match here?
 					matches.addAll(getAllMatchByName(name, target));
@@ -0,0 +1,218 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.ndnx.ndn.impl.NDNNetworkManager.StatsEnum;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Interest;
+
+/**
+ * A small content store kept by the network manager so that repeated gets of the same content
+ * can be answered without a round trip to ndnd. Content received from ndnd is added to the cache
+ * and interests are matched against it with the full Interest.matches semantics, so exclude filters,
+ * suffix component limits and publisher restrictions are honored. As in ndnd, a child selector
+ * of rightmost picks the matching object that sorts last in canonical order.
+ *
+ * Content whose SignedInfo has FreshnessSeconds becomes stale after that many seconds and is then
+ * only returned to interests which allow stale answers. Interests which do not allow answers from a
+ * content store are never answered from the cache.
+ *
+ * The cache is bounded both in number of objects and in bytes of content, and the least recently
+ * used objects are evicted to stay within those bounds. Only one object is kept for each name.
+ */
+public class NDNContentCache {
+
+	protected static class Entry {
+		protected final ContentObject _content;
+		protected final long _size;
+		protected final long _staleTime;
+
+		protected Entry(ContentObject content, long size, long staleTime) {
+			_content = content;
+			_size = size;
+			_staleTime = staleTime;
+		}
+	}
+
+	protected final int _maxObjects;
+	protected final long _maxBytes;
+	protected final NDNEnumStats<StatsEnum> _stats;
+
+	// Entries in canonical name order, for matching
+	protected final TreeMap<ContentName, Entry> _byName = new TreeMap<ContentName, Entry>();
+	// The same entries in least recently used order, for eviction
+	protected final LinkedHashMap<ContentName, Entry> _byUse = new LinkedHashMap<ContentName, Entry>(16, 0.75f, true);
+	protected long _bytes = 0;
+
+	/**
+	 * @param maxObjects maximum number of objects to hold
+	 * @param maxBytes maximum total size of the objects held
+	 * @param stats where to count hits, misses and evictions, may be null
+	 */
+	public NDNContentCache(int maxObjects, long maxBytes, NDNEnumStats<StatsEnum> stats) {
+		if (maxObjects <= 0 || maxBytes <= 0)
+			throw new IllegalArgumentException("Cache limits must be positive");
+		_maxObjects = maxObjects;
+		_maxBytes = maxBytes;
+		_stats = stats;
+	}
+
+	/**
+	 * Find cached content matching an interest
+	 *
+	 * @param interest the interest
+	 * @param now the current time in milliseconds
+	 * @return the matching content or null if there is none
+	 */
+	public ContentObject get(Interest interest, long now) {
+		int aok = interest.answerOriginKind();
+		if (0 == (aok & Interest.ANSWER_CONTENT_STORE))
+			return null;
+		boolean staleOK = 0 != (aok & Interest.ANSWER_STALE);
+		boolean rightmost = null != interest.childSelector()
+				&& 0 != (interest.childSelector() & Interest.CHILD_SELECTOR_RIGHT);
+
+		ContentName prefix = interest.name();
+		Entry found = null;
+		ArrayList<ContentName> expired = null;
+		synchronized (this) {
+			// Names with the interest's name as a prefix are contiguous in canonical order
+			for (Map.Entry<ContentName, Entry> e : _byName.tailMap(prefix, true).entrySet()) {
+				if (!prefix.isPrefixOf(e.getKey()))
+					break;
+				Entry entry = e.getValue();
+				if (now >= entry._staleTime && !staleOK) {
+					if (null == expired)
+						expired = new ArrayList<ContentName>();
+					expired.add(e.getKey());
+					continue;
+				}
+				if (interest.matches(entry._content)) {
+					found = entry;
+					if (!rightmost)
+						break;
+				}
+			}
+			// The interest's name may end in the implicit digest of the content
+			if (null == found && prefix.count() > 0) {
+				Entry entry = _byName.get(prefix.parent());
+				if (null != entry && (now < entry._staleTime || staleOK) && interest.matches(entry._content))
+					found = entry;
+			}
+			if (null != expired) {
+				for (ContentName name : expired)
+					remove(name);
+			}
+			if (null != found)
+				_byUse.get(found._content.name());
+		}
+		if (null != _stats)
+			_stats.increment(null != found ? StatsEnum.ContentCacheHits : StatsEnum.ContentCacheMisses);
+		return null == found ? null : found._content;
+	}
+
+	/**
+	 * Add content to the cache, replacing any content with the same name. Content which is
+	 * already stale, or larger than the whole cache, is not added.
+	 *
+	 * @param content the content
+	 * @param now the current time in milliseconds
+	 */
+	public void put(ContentObject content, long now) {
+		long staleTime = Long.MAX_VALUE;
+		if (null != content.signedInfo() && !content.signedInfo().emptyFreshnessSeconds()) {
+			int freshness = content.signedInfo().getFreshnessSeconds();
+			if (freshness <= 0)
+				return;
+			staleTime = now + freshness * 1000L;
+		}
+		long size = size(content);
+		if (size > _maxBytes)
+			return;
+		Entry entry = new Entry(content, size, staleTime);
+		int evicted = 0;
+		synchronized (this) {
+			remove(content.name());
+			_byName.put(content.name(), entry);
+			_byUse.put(content.name(), entry);
+			_bytes += size;
+			Iterator<Entry> lru = _byUse.values().iterator();
+			while (_byUse.size() > _maxObjects || _bytes > _maxBytes) {
+				Entry victim = lru.next();
+				lru.remove();
+				_byName.remove(victim._content.name());
+				_bytes -= victim._size;
+				evicted++;
+			}
+		}
+		if (null != _stats && evicted > 0)
+			_stats.increment(StatsEnum.ContentCacheEvictions, evicted);
+	}
+
+	/**
+	 * @return the number of objects cached
+	 */
+	public synchronized int size() {
+		return _byName.size();
+	}
+
+	/**
+	 * @return the total size of the objects cached
+	 */
+	public synchronized long bytes() {
+		return _bytes;
+	}
+
+	/**
+	 * Remove all content
+	 */
+	public synchronized void clear() {
+		_byName.clear();
+		_byUse.clear();
+		_bytes = 0;
+	}
+
+	private void remove(ContentName name) {
+		Entry old = _byName.remove(name);
+		if (null != old) {
+			_byUse.remove(name);
+			_bytes -= old._size;
+		}
+	}
+
+	/**
+	 * Approximate the memory used by an object by the size of its name and content
+	 */
+	private static long size(ContentObject content) {
+		long size = content.contentLength();
+		for (int i = 0; i < content.name().count(); i++)
+			size += content.name().component(i).length;
+		return size;
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.ndnx.ndn.impl.NDNNetworkManager.StatsEnum;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
+import org.ndnx.ndn.impl.support.Log;
+
+/**
+ * Dispatch stage for the network manager. Work handed to the dispatcher is run on one of a
+ * fixed number of "stripes", each of which is a single thread with a bounded queue. The stripe
+ * is chosen from a key supplied by the caller (the identity hash of the handler to be called) so
+ * that all work for the same key is run in order on the same thread, while work for different
+ * keys can run in parallel. This allows the network manager's reader thread to go on decoding packets
+ * while slow handlers are running.
+ *
+ * Callers are never blocked indefinitely - work which can't be queued in time is dropped
+ * and counted. Statistics about queue depth, time spent queued and dropped work are kept in the
+ * network manager's statistics.
+ */
+public class NDNDispatcher {
+
+	protected final Stripe[] _stripes;
+	protected final NDNEnumStats<StatsEnum> _stats;
+	protected volatile boolean _run = true;
+
+	/**
+	 * A unit of work plus the time it was queued
+	 */
+	protected static class Task {
+		protected final Runnable _runnable;
+		protected final long _queuedTime;
+
+		protected Task(Runnable runnable) {
+			_runnable = runnable;
+			_queuedTime = System.nanoTime();
+		}
+	}
+
+	/**
+	 * A single dispatch thread and its queue
+	 */
+	protected class Stripe implements Runnable {
+		protected final LinkedBlockingQueue<Task> _queue;
+		protected final Thread _thread;
+
+		protected Stripe(String name, int queueSize) {
+			_queue = new LinkedBlockingQueue<Task>(queueSize);
+			_thread = new Thread(this, name);
+			_thread.setDaemon(true);
+		}
+
+		public void run() {
+			while (_run) {
+				Task task;
+				try {
+					task = _queue.take();
+				} catch (InterruptedException e) {
+					continue;
+				}
+				_stats.addSample(StatsEnum.DispatchQueueTime, System.nanoTime() - task._queuedTime);
+				try {
+					task._runnable.run();
+				} catch (RuntimeException ex) {
+					_stats.increment(StatsEnum.DispatchErrors);
+					Log.warning(Log.FAC_NETMANAGER, "Dispatch thread {0}: handler failure: {1}", _thread.getName(), ex);
+					Log.warningStackTrace(ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param name prefix for the names of the dispatch threads
+	 * @param threads number of dispatch threads
+	 * @param queueSize maximum number of queued tasks per thread
+	 * @param stats where to record dispatch statistics
+	 */
+	public NDNDispatcher(String name, int threads, int queueSize, NDNEnumStats<StatsEnum> stats) {
+		if (threads <= 0)
+			throw new IllegalArgumentException("Dispatcher must have at least one thread");
+		_stats = stats;
+		_stripes = new Stripe[threads];
+		for (int i = 0; i < threads; i++) {
+			_stripes[i] = new Stripe(name + " dispatch " + i, queueSize);
+			_stripes[i]._thread.start();
+		}
+	}
+
+	/**
+	 * Queue work to be run in order with other work having the same key. If the queue
+	 * for the key is full, wait up to timeout for space and then drop the work. Work queued
+	 * from the dispatch thread for the key itself is dropped without waiting since that thread
+	 * can't make space while it is waiting.
+	 *
+	 * @param key determines the thread used - work with equal keys is run in order
+	 * @param runnable the work
+	 * @param timeout maximum time in milliseconds to wait for space
+	 * @return false if the work was dropped
+	 * @throws InterruptedException
+	 */
+	public boolean dispatch(int key, Runnable runnable, long timeout) throws InterruptedException {
+		if (!_run)
+			return false;
+		Stripe stripe = stripe(key);
+		Task task = new Task(runnable);
+		if (!stripe._queue.offer(task)) {
+			_stats.increment(StatsEnum.DispatchBlocked);
+			if (Thread.currentThread() == stripe._thread
+					|| !stripe._queue.offer(task, timeout, TimeUnit.MILLISECONDS)) {
+				dropped(stripe);
+				return false;
+			}
+		}
+		queued(stripe);
+		return true;
+	}
+
+	/**
+	 * Queue work to be run in order with other work having the same key. If the queue
+	 * for the key is full the work is dropped.
+	 *
+	 * @param key determines the thread used - work with equal keys is run in order
+	 * @param runnable the work
+	 * @return false if the work was dropped
+	 */
+	public boolean tryDispatch(int key, Runnable runnable) {
+		if (!_run)
+			return false;
+		Stripe stripe = stripe(key);
+		if (!stripe._queue.offer(new Task(runnable))) {
+			dropped(stripe);
+			return false;
+		}
+		queued(stripe);
+		return true;
+	}
+
+	/**
+	 * @return the total number of tasks waiting to be run
+	 */
+	public int queueDepth() {
+		int depth = 0;
+		for (Stripe stripe : _stripes)
+			depth += stripe._queue.size();
+		return depth;
+	}
+
+	/**
+	 * Stop all dispatch threads. Queued work is discarded and no more is accepted. Work
+	 * already running is allowed to finish.
+	 */
+	public void shutdown() {
+		_run = false;
+		for (Stripe stripe : _stripes) {
+			stripe._queue.clear();
+			stripe._thread.interrupt();
+		}
+	}
+
+	protected Stripe stripe(int key) {
+		return _stripes[(key & Integer.MAX_VALUE) % _stripes.length];
+	}
+
+	private void dropped(Stripe stripe) {
+		_stats.increment(StatsEnum.DispatchDropped);
+		if (Log.isLoggable(Log.FAC_NETMANAGER, Level.FINE))
+			Log.fine(Log.FAC_NETMANAGER, "Dispatch queue for {0} full, dropping work", stripe._thread.getName());
+	}
+
+	private void queued(Stripe stripe) {
+		_stats.increment(StatsEnum.DispatchQueued);
+		_stats.addSample(StatsEnum.DispatchQueueDepth, stripe._queue.size());
+	}
+}
@@ -37,8 +37,10 @@ import java.util.logging.Level;
 import org.ndnx.ndn.config.SystemConfiguration;
 import org.ndnx.ndn.impl.NDNNetworkManager.NetworkProtocol;
 import org.ndnx.ndn.impl.encoding.BinaryXMLDecoder;
+import org.ndnx.ndn.impl.encoding.BinaryXMLFramer;
 import org.ndnx.ndn.impl.encoding.XMLEncodable;
 import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.io.content.ContentDecodingException;
 
 /**
  *  This guy manages all of the access to the network connection.
@@ -55,6 +57,9 @@ public class NDNNetworkChannel extends InputStream {
 	public static final int SOCKET_TIMEOUT = SystemConfiguration.MEDIUM_TIMEOUT; // period to wait in ms.
 //	public static final int DOWN_DELAY = SystemConfiguration.MEDIUM_TIMEOUT;	// Wait period for retry when ndnd is down
 	public static final int LINGER_TIME = 10;	// In seconds
+	// Largest packet we will buffer. ndnd never sends one this big, so anything larger
+	// is garbage to be discarded rather than a reason to keep growing the buffer.
+	public static final int MAX_FRAME = 8 * NDNNetworkManager.MAX_PAYLOAD;
 
 	// This is to make log messages intelligible
 	protected final static AtomicInteger _channelIdCounter = new AtomicInteger(0);
@@ -97,6 +102,12 @@ public class NDNNetworkChannel extends InputStream {
 	private int _readLimit = 0;
 	private int _lastMark = 0;
 
+	// A complete packet is copied here from _datagram for decoding
+	private byte[] _frame = new byte[NDNNetworkManager.MAX_PAYLOAD];
+
+	// View of _datagram used to write incoming data to the tap without copying it
+	private ByteBuffer _tapView = _datagram.duplicate();
+
 	public NDNNetworkChannel(String host, int port, NetworkProtocol proto, FileOutputStream tapStreamIn) throws IOException {
 		_ncHost = host;
 		_ncPort = port;
@@ -206,9 +217,13 @@ public class NDNNetworkChannel extends InputStream {
 	 * the initial read if there's nothing already in the buffer though because in TCP we could have
 	 * read in some or all of a preceding packet during the last reading.
 	 *
+	 * Packets are first framed in the buffer by looking only at the ndnb headers (see BinaryXMLFramer).
+	 * Once a complete packet has been read in, it is copied out in one piece and decoded from
+	 * the copy so the decoder never has to read from the network byte by byte.
+	 *
 	 * Also it should be noted that we are relying on ndnd to guarantee that all packets sent
-	 * to us are complete ndn packets. This code does not have the ability to recover from
-	 * receiving a partial ndn packet followed by correctly formed ones.
+	 * to us are complete ndn packets. If we see something that can't be framed, we skip a byte
+	 * at a time until we can frame a packet again.
 	 *
 	 * @return a ContentObject, an Interest, or null if there's no data waiting
 	 * @throws IOException
@@ -217,12 +232,13 @@ public class NDNNetworkChannel extends InputStream {
 		if (isConnected()) {
 			_mark = -1;
 			_readLimit = 0;
-			if (! _datagram.hasRemaining()) {
-				int ret = doReadIn(0);
-				if (ret <= 0 || !isConnected())
-					return null;
-			}
-			_decoder.beginDecoding(this);
+			int length = nextFrame();
+			if (length <= 0 || !isConnected())
+				return null;
+			if (length > _frame.length)
+				_frame = new byte[length];
+			_datagram.get(_frame, 0, length);
+			_decoder.beginDecoding(_frame, 0, length);
 			return _decoder.getPacket();
 		}
 		try {
@@ -245,6 +261,56 @@ public class NDNNetworkChannel extends InputStream {
 		return null;
 	}
 
+	/**
+	 * Find the next complete packet in the buffer, reading more data in if needed. On
+	 * return the buffer is positioned at the start of the packet.
+	 *
+	 * @return the length of the packet or -1 if no complete packet could be read
+	 * @throws IOException
+	 */
+	private int nextFrame() throws IOException {
+		while (true) {
+			int start = _datagram.position();
+			if (_datagram.hasRemaining()) {
+				try {
+					int length = BinaryXMLFramer.frameLength(_datagram, start, _datagram.limit());
+					if (length > 0)
+						return length;
+				} catch (ContentDecodingException cde) {
+					Log.severe(Log.FAC_NETMANAGER, "NetworkChannel {0}: saw error: {1} - attempting resync", _channelId, cde.getMessage());
+					_datagram.position(start + 1);
+					continue;
+				}
+			}
+
+			// Need more data. Move what we have to the start of the buffer, or
+			// grow the buffer if the packet won't fit in it.
+			if (start > 0 || !_datagram.hasRemaining()) {
+				_datagram.compact();
+			} else if (_datagram.limit() == _datagram.capacity()) {
+				if (_datagram.capacity() >= MAX_FRAME) {
+					Log.severe(Log.FAC_NETMANAGER, "NetworkChannel {0}: no packet in {1} bytes - discarding them and attempting resync",
+							_channelId, _datagram.limit());
+					_datagram.position(_datagram.limit());
+					continue;
+				}
+				ByteBuffer bigger = ByteBuffer.allocateDirect(Math.min(_datagram.capacity() * 2, MAX_FRAME));
+				bigger.put(_datagram);
+				_datagram = bigger;
+				_tapView = _datagram.duplicate();
+			} else {
+				_datagram.position(_datagram.limit());
+			}
+			int have = _datagram.position();
+			int ret = doReadIn(have);
+			if (ret <= 0)
+				_datagram.limit(have);
+			_datagram.position(0);
+			if (ret <= 0 || !isConnected())
+				return -1;
+		}
+	}
+
 	/**
 	 * Close the channel depending on the protocol
 	 * @throws IOException
@@ -328,6 +394,51 @@ public class NDNNetworkChannel extends InputStream {
 		return -1;
 	}
 
+	/**
+	 * Write several packets to ndnd. For TCP this is a single gathering write of all
+	 * the buffers. For UDP each buffer is written as its own datagram.
+	 * @param srcs - buffers to write
+	 * @param offset - index of the first buffer to write
+	 * @param length - number of buffers to write
+	 * @return - number of bytes written
+	 * @throws IOException
+	 */
+	public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+		if (! isConnected())
+			return -1;
+		if (Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST))
+			Log.finest(Log.FAC_NETMANAGER,
+					"NetworkChannel {0}: write() of {1} buffers on port {2}", _channelId, length, _ncLocalPort);
+
+		try {
+			long written = 0;
+			if (_ncDGrmChannel != null) {
+				for (int i = offset; i < offset + length; i++)
+					written += _ncDGrmChannel.write(srcs[i]);
+				return written;
+			} else {
+				// Need to handle partial writes
+				int last = offset + length - 1;
+				while (srcs[last].hasRemaining()) {
+					if (! isConnected())
+						return -1;
+					long b = _ncSockChannel.write(srcs, offset, length);
+					if (b > 0) {
+						written += b;
+					} else {
+						_ncWriteSelector.selectedKeys().clear();
+						_ncWriteSelector.select();
+					}
+				}
+				return written;
+			}
+		} catch (PortUnreachableException pue) {}
+		  catch (ClosedChannelException cce) {}
+		Log.info(Log.FAC_NETMANAGER, "NetworkChannel {0}: closing due to error on write", _channelId);
+		close(true);
+		return -1;
+	}
+
 	/**
 	 * Force wakeup from a select
 	 * @return the selector
@@ -472,13 +583,9 @@ public class NDNNetworkChannel extends InputStream {
 				_datagram.limit(position + ret);
 				_datagram.position(position);
 				if (null != _ncTapStreamIn) {
-					byte [] b = new byte[ret];
-					_datagram.get(b);
-					_ncTapStreamIn.write(b);
-					// Got the data so we have to redo the "hand flip" to read from the
-					// correct position.
-					_datagram.limit(position + ret);
-					_datagram.position(position);
+					_tapView.limit(position + ret);
+					_tapView.position(position);
+					_ncTapStreamIn.getChannel().write(_tapView);
 				}
 			} else
 				close(true);
@@ -22,15 +22,22 @@ package org.ndnx.ndn.impl;
 
 import static org.ndnx.ndn.profiles.context.ServiceDiscoveryProfile.NDND_SERVICE_NAME;
 import static org.ndnx.ndn.profiles.context.ServiceDiscoveryProfile.localServiceName;
+import static org.ndnx.ndn.profiles.ndnd.FaceManager.NDNX;
 import static org.ndnx.ndn.profiles.security.KeyProfile.KEY_NAME;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.NotYetConnectedException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -72,6 +79,21 @@ import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
  * within the callback. This is similar to the restrictions on the event dispatching thread in Swing. The
  * setup of callback handlers should also normally be done via the NDNHandle API.
  *
+ * Optionally (see SystemConfiguration.DISPATCH_THREADS) handlers can instead be called from a pool of
+ * dispatch threads so that a slow handler does not hold up all traffic. Each handler still sees its
+ * callbacks one at a time and in order.
+ *
+ * Also optionally (see SystemConfiguration.WRITE_BATCH_SIZE) outgoing packets are queued to a writer
+ * thread which writes as many as are waiting to ndnd at once.
+ *
+ * With TCP the manager can also (see SystemConfiguration.AGENT_CHANNELS) open several connections to
+ * ndnd, each with its own reader thread. Outgoing packets are spread across the connections by name.
+ * Interest and filter tables are shared so content and interests are handled in the same way whichever
+ * connection they arrive on. Prefixes are registered on the first connection only.
+ *
+ * And optionally (see SystemConfiguration.CONTENT_CACHE_OBJECTS) content received from ndnd is kept in
+ * a small cache, which is checked before interests are expressed.
+ *
  * The class also has a separate timer process which is used to refresh unsatisfied interests and to
  * keep UDP connections alive by sending a heartbeat packet at regular intervals.
  *
@@ -90,6 +112,8 @@ public class NDNNetworkManager implements Runnable {
 	public static final String PROP_TAP = "ndn.tap";
 	public static final String ENV_TAP = "NDN_TAP"; // match C library
 	public static final int PERIOD = 2000; // period for occasional ops in ms.
+	public static final int REFRESH_TICK = 100; // resolution of interest refresh times in ms.
+	public static final int REFRESH_SLOTS = 512; // number of ticks in the refresh timing wheel
 	public static final int MAX_PERIOD = PERIOD * 8;
 	public static final String KEEPALIVE_NAME = "/HereIAm";
 	public static final int THREAD_LIFE = 8;	// in seconds
@@ -125,6 +149,9 @@ public class NDNNetworkManager implements Runnable {
 	protected Thread _thread = null; // the main processing thread
 
 	protected NDNNetworkChannel _channel = null;
+	// All channels to ndnd - _channels[0] is _channel which is used for prefix registration
+	protected NDNNetworkChannel[] _channels = null;
+	protected Thread[] _readers = null;	// reader threads for _channels[1..]
 	protected boolean _run = true;
 
 	protected FileOutputStream _tapStreamOut = null;
@@ -138,8 +165,14 @@ public class NDNNetworkManager implements Runnable {
 	protected KeyManager _keyManager;
 
 	// Tables of interests/filters
-	protected InterestTable<InterestRegistration> _myInterests = new InterestTable<InterestRegistration>();
-	protected InterestTable<Filter> _myFilters = new InterestTable<Filter>();
+	protected InterestTable<InterestRegistration> _myInterests = new NameTrieInterestTable<InterestRegistration>();
+	// Interests expressed to ndnd on behalf of the registrations in _myInterests. Identical interests
+	// share one entry so they are written and refreshed once. Also locks the refresh fields of the entries.
+	protected HashMap<Interest, PendingInterest> _pendingInterests = new HashMap<Interest, PendingInterest>();
+	// Pending interests by next refresh time
+	protected HashedTimingWheel<PendingInterest> _refreshWheel =
+			new HashedTimingWheel<PendingInterest>(REFRESH_TICK, REFRESH_SLOTS, System.currentTimeMillis());
+	protected InterestTable<Filter> _myFilters = new NameTrieInterestTable<Filter>();
 
 	// Prefix registration handling. Only one registration change (add or remove a registration) with ndnd is
 	// allowed at once. To enforce this, before attempting a registration change, users must acquire
@@ -176,10 +209,29 @@ public class NDNNetworkManager implements Runnable {
 	protected long _currentHandler = 0;
 	protected long _lastHandler = -1;
 
-	// Atomic cancel
-	protected InterestRegistration _beingDelivered = null;
+	// Atomic cancel. Registrations currently being delivered or queued for delivery by the dispatcher
+	protected ArrayList<InterestRegistration> _beingDelivered = new ArrayList<InterestRegistration>();
 	protected Object _beingDeliveredLock = new Object();
 
+	// Optional dispatch stage to run handlers off of the reader thread
+	protected NDNDispatcher _dispatcher = null;
+
+	// Optional output stage to coalesce writes, one per channel
+	protected NDNWriteQueue[] _writeQueues = null;
+
+	// Optional cache of content received from ndnd
+	protected NDNContentCache _contentCache = null;
+
+	// Outstanding non-blocking gets, completed at shutdown
+	protected HashSet<ContentFuture> _asyncGets = new HashSet<ContentFuture>();
+	protected ContentFuture.Listener _asyncGetDone = new ContentFuture.Listener() {
+		public void done(ContentFuture future) {
+			synchronized (_asyncGets) {
+				_asyncGets.remove(future);
+			}
+		}
+	};
+
 	/**
 	 * Keep track of prefixes that are actually registered with ndnd (as opposed to Filters used
 	 * to dispatch interests). There may be several filters for each registered prefix.
@@ -251,26 +303,28 @@ public class NDNNetworkManager implements Runnable {
             long ourTime = System.currentTimeMillis();
             long minInterestRefreshTime = PERIOD + ourTime;
 
-			// Re-express interests that need to be re-expressed
+			// Re-express interests that need to be re-expressed. Only the ones that are due
+			// (allowing some slop for scheduling) are taken from the timing wheel.
 			try {
-				for (Entry<InterestRegistration> entry : _myInterests.values()) {
-					InterestRegistration reg = entry.value();
-					 // allow some slop for scheduling
-                    if (ourTime + 20 > reg.nextRefresh) {
-                            if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
-                                    Log.finer(Log.FAC_NETMANAGER, "Refresh interest: {0}", reg.interest);
-                            _lastHeartbeat = ourTime;
-                            reg.nextRefresh = ourTime + SystemConfiguration.INTEREST_REEXPRESSION_DEFAULT;
-;
-                            try {
-                                write(reg.interest);
-                        } catch (NotYetConnectedException nyce) {
-                                refreshError = true;
-                        }
-                    }
-					if (minInterestRefreshTime > reg.nextRefresh)
-						minInterestRefreshTime = reg.nextRefresh;
+				for (PendingInterest pi : _refreshWheel.expire(ourTime + 20)) {
+					synchronized (_pendingInterests) {
+						// Satisfied or unregistered since it was taken from the wheel
+						if (null == pi.refresh)
+							continue;
+						pi.refresh = _refreshWheel.schedule(pi, ourTime + pi.refreshInterval());
+					}
+					if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
+						Log.finer(Log.FAC_NETMANAGER, "Refresh interest: {0}", pi.interest);
+					_lastHeartbeat = ourTime;
+					try {
+						write(pi.interest);
+					} catch (NotYetConnectedException nyce) {
+						refreshError = true;
+					}
 				}
+				long nextRefresh = _refreshWheel.nextDeadline();
+				if (nextRefresh < minInterestRefreshTime)
+					minInterestRefreshTime = nextRefresh;
 
 			} catch (ContentEncodingException xmlex) {
                 Log.severe(Log.FAC_NETMANAGER, "PeriodicWriter interest refresh thread failure (Malformed datagram): {0}", xmlex.getMessage());
@@ -401,6 +455,15 @@ public class NDNNetworkManager implements Runnable {
 	private void setupTimers() throws IOException {
 		synchronized (_timersSetupLock) {
 			if (!_timersSetup) {
+				// Handlers must never be called from 2 threads at once. With more than one channel
+				// there is a reader thread per channel, so they always go through the dispatcher.
+				int dispatchThreads = SystemConfiguration.DISPATCH_THREADS;
+				if (dispatchThreads <= 0 && _channels.length > 1)
+					dispatchThreads = 1;
+				if (dispatchThreads > 0)
+					_dispatcher = new NDNDispatcher("NDNNetworkManager " + _managerId,
+							dispatchThreads, SystemConfiguration.DISPATCH_QUEUE_SIZE, _stats);
+
 				// Create main processing thread
 				_thread = new Thread(this, "NDNNetworkManager " + _managerId);
 				_thread.setPriority(Thread.MAX_PRIORITY);
@@ -408,6 +471,13 @@ public class NDNNetworkManager implements Runnable {
 
 				_timersSetup = true;
 				_channel.init();
+				_readers = new Thread[_channels.length - 1];
+				for (int i = 1; i < _channels.length; i++) {
+					_channels[i].init();
+					_readers[i - 1] = new Thread(new ChannelReader(_channels[i]), "NDNNetworkManager " + _managerId + " channel " + i);
+					_readers[i - 1].setPriority(Thread.MAX_PRIORITY);
+					_readers[i - 1].start();
+				}
 				if (_protocol == NetworkProtocol.UDP) {
 					_channel.heartbeat();
 					_lastHeartbeat = System.currentTimeMillis();
@@ -473,7 +543,7 @@ public class NDNNetworkManager implements Runnable {
 	 */
 	protected class InterestRegistration extends CallbackHandlerRegistration {
 		public final Interest interest;
-		protected long nextRefresh;		// next time to refresh the interest
+		protected PendingInterest pending = null;	// non null while registered
 		protected ContentObject content;
 
 		// All internal client interests must have an owner
@@ -484,16 +554,39 @@ public class NDNNetworkManager implements Runnable {
 			if (null == handler) {
 				sema = new Semaphore(0);
 			}
-			nextRefresh = System.currentTimeMillis() + SystemConfiguration.INTEREST_REEXPRESSION_DEFAULT;
 		}
 
 		/**
 		 * Deliver content to a registered handler
 		 */
 		public void deliver(ContentObject co) {
+			beginDelivery();
+			deliverInner(co);
+			endDelivery();
+		}
+
+		/**
+		 * Mark this registration as in the process of being delivered so that it can be
+		 * cancelled until delivery completes
+		 */
+		protected void beginDelivery() {
 			synchronized (_beingDeliveredLock) {
-				_beingDelivered = this;
+				_beingDelivered.add(this);
 			}
+		}
+
+		protected void endDelivery() {
+			synchronized (_beingDeliveredLock) {
+				for (int i = 0; i < _beingDelivered.size(); i++) {
+					if (_beingDelivered.get(i) == this) {
+						_beingDelivered.remove(i);
+						break;
+					}
+				}
+			}
+		}
+
+		protected void deliverInner(ContentObject co) {
 			try {
 				if (null != this.handler) {
 					if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
@@ -540,14 +633,37 @@ public class NDNNetworkManager implements Runnable {
 				Log.warning(Log.FAC_NETMANAGER, "failed to deliver data: {0}", ex);
 				Log.warningStackTrace(ex);
 			}
-
-			synchronized (_beingDeliveredLock) {
-				_beingDelivered = null;
-			}
 		}
 
 	} /* protected class InterestRegistration extends CallbackHandlerRegistration */
 
+	/**
+	 * An interest as expressed to ndnd. When several registrations are made for identical
+	 * interests they share a PendingInterest, so the interest is written and refreshed once
+	 * and the content which satisfies it is delivered to all of the registrations.
+	 */
+	protected class PendingInterest {
+		protected final Interest interest;	// copy of the registered interest, so can't be changed by users
+		protected int registrations = 0;
+		protected HashedTimingWheel.Timeout<PendingInterest> refresh = null;	// non null while pending
+
+		protected PendingInterest(Interest i) {
+			interest = i;
+		}
+
+		/**
+		 * The interest is re-expressed when its lifetime runs out, or after the
+		 * default reexpression period if it doesn't have a lifetime.
+		 * @return time in ms between expressions of the interest
+		 */
+		protected long refreshInterval() {
+			long lifetime = interest.interestLifetimeMillis();
+			if (lifetime < 0)
+				return SystemConfiguration.INTEREST_REEXPRESSION_DEFAULT;
+			return Math.max(lifetime, REFRESH_TICK);
+		}
+	}
+
 	/**
 	 * Record of a filter describing portion of namespace for which this
 	 * application can respond to interests. Used to deliver incoming interests
@@ -673,8 +789,26 @@ public class NDNNetworkManager implements Runnable {
 			setTap(unique_tapname);
 		}
 
-		_channel = new NDNNetworkChannel(_host, _port, _protocol, _tapStreamIn);
-		_channel.open();
+		int channels = Math.max(1, SystemConfiguration.AGENT_CHANNELS);
+		if (channels > 1 && _protocol != NetworkProtocol.TCP) {
+			Log.warning(Log.FAC_NETMANAGER, formatMessage("Multiple channels to ndnd are only supported over TCP - using one"));
+			channels = 1;
+		}
+		_channels = new NDNNetworkChannel[channels];
+		for (int i = 0; i < channels; i++) {
+			_channels[i] = new NDNNetworkChannel(_host, _port, _protocol, _tapStreamIn);
+			_channels[i].open();
+		}
+		_channel = _channels[0];
+		if (SystemConfiguration.WRITE_BATCH_SIZE > 0) {
+			_writeQueues = new NDNWriteQueue[channels];
+			for (int i = 0; i < channels; i++)
+				_writeQueues[i] = new NDNWriteQueue("NDNNetworkManager " + _managerId + " channel " + i, this, _channels[i],
+						SystemConfiguration.WRITE_BATCH_SIZE, SystemConfiguration.WRITE_BATCH_LATENCY, SystemConfiguration.WRITE_QUEUE_SIZE);
+		}
+		if (SystemConfiguration.CONTENT_CACHE_OBJECTS > 0)
+			_contentCache = new NDNContentCache(SystemConfiguration.CONTENT_CACHE_OBJECTS,
+					SystemConfiguration.CONTENT_CACHE_BYTES, _stats);
 	}
 
 	/**
@@ -686,8 +820,36 @@ public class NDNNetworkManager implements Runnable {
 		_run = false;
 		if (_periodicTimer != null)
 			_periodicTimer.shutdownNow();
+
+		// Timeouts for outstanding gets won't run now, so complete them here
+		ArrayList<ContentFuture> asyncGets;
+		synchronized (_asyncGets) {
+			asyncGets = new ArrayList<ContentFuture>(_asyncGets);
+		}
+		for (ContentFuture future : asyncGets)
+			future.expire();
+
+		if (null != _dispatcher)
+			_dispatcher.shutdown();
+		if (null != _writeQueues) {
+			for (NDNWriteQueue queue : _writeQueues)
+				queue.shutdown(SystemConfiguration.SHORT_TIMEOUT);
+		}
 		if (_thread != null)
 			_thread.interrupt();
+		if (null != _readers) {
+			for (Thread reader : _readers)
+				reader.interrupt();
+		}
+		if (null != _channels) {
+			for (int i = 1; i < _channels.length; i++) {
+				try {
+					_channels[i].close();
+				} catch (IOException io) {
+					// Ignore since we're shutting down
+				}
+			}
+		}
 		if (null != _channel) {
 			try {
 				setTap(null);
@@ -868,6 +1030,50 @@ public class NDNNetworkManager implements Runnable {
 		return reg.content;
 	}
 
+	/**
+	 * Get a single piece of content without blocking. The interest is expressed with a
+	 * ContentFuture as its handler and a task to time out the get is scheduled on the
+	 * manager's timer, so no thread waits for the content.
+	 *
+	 * @param interest the interest
+	 * @param timeout time in ms to wait for content or SystemConfiguration.NO_TIMEOUT
+	 * @return the future for the content, which completes with null content on timeout
+	 * @throws IOException
+	 */
+	public ContentFuture getAsync(Interest interest, long timeout) throws IOException {
+		_stats.increment(StatsEnum.GetsAsync);
+
+		if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINE) )
+			Log.fine(Log.FAC_NETMANAGER, formatMessage("getAsync: {0} with timeout: {1}"), interest, timeout);
+		final ContentFuture future = new ContentFuture(this, interest);
+		synchronized (_asyncGets) {
+			_asyncGets.add(future);
+		}
+		future.addListener(_asyncGetDone);
+		try {
+			expressInterest(future, interest, future);
+		} catch (IOException e) {
+			future.complete(null, true);
+			throw e;
+		}
+		if (timeout != SystemConfiguration.NO_TIMEOUT) {
+			try {
+				future.setTimeout(_periodicTimer.schedule(new Runnable() {
+					public void run() {
+						if (!future.isDone())
+							_stats.increment(StatsEnum.GetsAsyncTimedOut);
+						future.expire();
+					}
+				}, timeout, TimeUnit.MILLISECONDS));
+			} catch (RejectedExecutionException e) {
+				// Shut down since the interest was expressed - don't leave it registered
+				future.cancel(false);
+				throw new IOException(formatMessage("getAsync: network manager has been shut down"));
+			}
+		}
+		return future;
+	}
+
 	/**
 	 * We express interests to the ndnd and register them within the network manager
 	 *
@@ -918,15 +1124,73 @@ public class NDNNetworkManager implements Runnable {
 
 	private void expressInterest(InterestRegistration reg) throws IOException {
 		_stats.increment(StatsEnum.ExpressInterest);
+		if (null != _contentCache) {
+			ContentObject co = _contentCache.get(reg.interest, System.currentTimeMillis());
+			if (null != co) {
+				if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
+					Log.finer(Log.FAC_NETMANAGER, formatMessage("Interest {0} satisfied from cache"), reg.interest);
+				deliverCached(reg, co);
+				return;
+			}
+		}
 		try {
-			registerInterest(reg);
-			write(reg.interest);
+			if (registerInterest(reg))
+				write(reg.interest);
 		} catch (ContentEncodingException e) {
 			unregisterInterest(reg);
 			throw e;
 		}
 	}
 
+	/**
+	 * Deliver content found in the cache without expressing the interest. A blocked getter is
+	 * woken directly but handlers are called later from the timer thread (or a dispatch thread)
+	 * as they would be for content from ndnd. This avoids calling a handler within the call that
+	 * expressed its interest, and deep recursion if the handler expresses a new interest which
+	 * can also be satisfied from the cache.
+	 *
+	 * @param reg the registration which will not be registered
+	 * @param co the content
+	 * @throws IOException
+	 */
+	private void deliverCached(final InterestRegistration reg, final ContentObject co) throws IOException {
+		if (null == reg.handler) {
+			reg.deliver(co);
+			return;
+		}
+		setupTimers();
+		Runnable delivery = new Runnable() {
+			public void run() {
+				try {
+					if (!reg.cancelled) {
+						long startTime = System.nanoTime();
+						reg.deliverInner(co);
+						_stats.addSample(StatsEnum.ContentHandlerTime, System.nanoTime() - startTime);
+					}
+				} finally {
+					reg.endDelivery();
+				}
+			}
+		};
+		reg.beginDelivery();
+		try {
+			if (null != _dispatcher) {
+				if (!_dispatcher.dispatch(System.identityHashCode(reg.handler), delivery, SystemConfiguration.DISPATCH_TIMEOUT)) {
+					reg.endDelivery();
+					Log.warning(Log.FAC_NETMANAGER, formatMessage("Dispatch queue full, dropped cached data for {0}"), reg.interest.name());
+				}
+			} else
+				_periodicTimer.execute(delivery);
+		} catch (InterruptedException e) {
+			reg.endDelivery();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(formatMessage("Interrupted delivering cached data for " + reg.interest.name()));
+		} catch (RejectedExecutionException e) {
+			// We're shutting down
+			reg.endDelivery();
+		}
+	}
+
 	/**
 	 * Cancel this query
 	 *
@@ -949,8 +1213,10 @@ public class NDNNetworkManager implements Runnable {
 
 		// Make sure potential remnants of cancelled interest are also cancelled
 		synchronized (_beingDeliveredLock) {
-			if (null != _beingDelivered  && _beingDelivered.equals(reg))
-				_beingDelivered.cancelled = true;
+			for (InterestRegistration delivering : _beingDelivered) {
+				if (delivering.equals(reg))
+					delivering.cancelled = true;
+			}
 		}
 	}
 
@@ -1208,11 +1474,17 @@ public class NDNNetworkManager implements Runnable {
 
 	// DKS TODO unthrown exception
 	private void writeInner(GenericXMLEncodable packet) throws ContentEncodingException {
+		int index = channelIndex(packet);
+		if (null != _writeQueues && _writeQueues[index].enqueue(packet))
+			return;
+		NDNNetworkChannel channel = _channels[index];
 		try {
 			byte[] bytes = packet.encode();
 			ByteBuffer datagram = ByteBuffer.wrap(bytes);
-			synchronized (_channel) {
-				int result = _channel.write(datagram);
+			synchronized (channel) {
+				int result = channel.write(datagram);
+				if (result > 0)
+					_stats.addSample(StatsEnum.WriteBytesPerCall, result);
 				if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST) )
 					Log.finest(Log.FAC_NETMANAGER, formatMessage("Wrote datagram (" + datagram.position() + " bytes, result " + result + ")"));
 
@@ -1225,9 +1497,13 @@ public class NDNNetworkManager implements Runnable {
 								bytes.length);
 				}
 
-				if (null != _tapStreamOut) {
+				FileOutputStream tap = _tapStreamOut;
+				if (null != tap) {
+					// Channels are written in parallel so packets from each must be kept together
 					try {
-						_tapStreamOut.write(bytes);
+						synchronized (tap) {
+							tap.write(bytes);
+						}
 					} catch (IOException io) {
 						Log.warning(Log.FAC_NETMANAGER, formatMessage("Unable to write packet to tap stream for debugging"));
 					}
@@ -1242,18 +1518,106 @@ public class NDNNetworkManager implements Runnable {
 		}
 	}
 
+	/**
+	 * Choose the channel to write a packet to. Packets are spread across channels by name, so all
+	 * interests with the same name go to the same channel. Requests to ndnd itself must use the
+	 * channel whose face they refer to, which is always the first.
+	 *
+	 * @param packet
+	 * @return index of the channel in _channels
+	 */
+	protected int channelIndex(GenericXMLEncodable packet) {
+		if (_channels.length == 1)
+			return 0;
+		ContentName name = null;
+		if (packet instanceof Interest)
+			name = ((Interest)packet).name();
+		else if (packet instanceof ContentObject)
+			name = ((ContentObject)packet).name();
+		if (null == name || (name.count() > 0 && Arrays.equals(name.component(0), NDNX.getComponent())))
+			return 0;
+		return (name.hashCode() & Integer.MAX_VALUE) % _channels.length;
+	}
+
+	/**
+	 * Write a batch of packets queued by a write queue with a single write to its channel.
+	 *
+	 * @param channel the channel to write to
+	 * @param buffers encoded packets ready to be read
+	 * @param count number of buffers to write
+	 */
+	protected void writeBatch(NDNNetworkChannel channel, ByteBuffer[] buffers, int count) {
+		long bytes = 0;
+		for (int i = 0; i < count; i++)
+			bytes += buffers[i].remaining();
+		_stats.increment(StatsEnum.WriteBatches);
+		_stats.addSample(StatsEnum.WriteBatchSize, count);
+		try {
+			synchronized (channel) {
+				long result = channel.write(buffers, 0, count);
+				if (result > 0)
+					_stats.addSample(StatsEnum.WriteBytesPerCall, result);
+				if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST) )
+					Log.finest(Log.FAC_NETMANAGER, formatMessage("Wrote batch of {0} packets ({1} bytes, result {2})"), count, bytes, result);
+
+				if( result < bytes ) {
+					_stats.increment(StatsEnum.WriteUnderflows);
+					if( Log.isLoggable(Log.FAC_NETMANAGER, Level.INFO) )
+						Log.info(Log.FAC_NETMANAGER,
+								formatMessage("Wrote batch {0} bytes to channel, but packets were {1} bytes"),
+								result,
+								bytes);
+				}
+
+				FileOutputStream tap = _tapStreamOut;
+				if (null != tap) {
+					try {
+						for (int i = 0; i < count; i++)
+							buffers[i].rewind();
+						synchronized (tap) {
+							tap.getChannel().write(buffers, 0, count);
+						}
+					} catch (IOException io) {
+						Log.warning(Log.FAC_NETMANAGER, formatMessage("Unable to write packet to tap stream for debugging"));
+					}
+				}
+			}
+		} catch (IOException io) {
+			_stats.increment(StatsEnum.WriteErrors);
+			Log.warning(Log.FAC_NETMANAGER, formatMessage("Error sending packets: " + io.toString()));
+		}
+	}
+
 	/**
 	 * Internal registration of interest to callback for matching data relationship.
 	 *
+	 * @return true if no identical interest is pending so the interest needs to be written
 	 * @throws IOException
 	 */
-	private InterestRegistration registerInterest(InterestRegistration reg) throws IOException {
-		// Add to standing interests table
+	private boolean registerInterest(InterestRegistration reg) throws IOException {
 		setupTimers();
 		if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST) )
 			Log.finest(Log.FAC_NETMANAGER, formatMessage("registerInterest for {0}, and obj is " + _myInterests.hashCode()), reg.interest.name());
-		_myInterests.add(reg.interest, reg);
-		return reg;
+		boolean isNew = false;
+		synchronized (_pendingInterests) {
+			// The clone has no nonce, which would otherwise change its hash code
+			Interest key = reg.interest.clone();
+			PendingInterest pi = _pendingInterests.get(key);
+			if (null == pi) {
+				pi = new PendingInterest(key);
+				pi.refresh = _refreshWheel.schedule(pi, System.currentTimeMillis() + pi.refreshInterval());
+				_pendingInterests.put(key, pi);
+				isNew = true;
+			}
+			pi.registrations++;
+			reg.pending = pi;
+
+			// Add to standing interests table. This must be done with the lock held, see deliverContent.
+			_myInterests.add(reg.interest, reg);
+		}
+		if (!isNew)
+			_stats.increment(StatsEnum.ExpressInterestAggregated);
+		return isNew;
 	}
 
 	private InterestRegistration unregisterInterest(Object caller, Interest interest, Object handler) {
@@ -1267,11 +1631,34 @@ public class NDNNetworkManager implements Runnable {
 	private InterestRegistration unregisterInterest(InterestRegistration reg) {
 		InterestRegistration result = reg;
 		Entry<InterestRegistration> entry = _myInterests.remove(reg.interest, reg);
-		if (null != entry)
+		if (null != entry) {
 			result = entry.value();
+			synchronized (_pendingInterests) {
+				PendingInterest pi = result.pending;
+				if (null != pi) {
+					result.pending = null;
+					if (--pi.registrations == 0)
+						removePending(pi);
+				}
+			}
+		}
 		return result;
 	}
 
+	/**
+	 * Stop refreshing a pending interest, because it has been satisfied or nothing is
+	 * registered for it any more. Must be called with _pendingInterests locked.
+	 * @param pi
+	 */
+	private void removePending(PendingInterest pi) {
+		if (null != pi.refresh) {
+			_refreshWheel.cancel(pi.refresh);
+			pi.refresh = null;
+			if (_pendingInterests.get(pi.interest) == pi)
+				_pendingInterests.remove(pi.interest);
+		}
+	}
+
 	/**
 	 * Reader thread: this thread will handle reading datagrams and perform callbacks after reading
 	 * complete packets.
@@ -1315,25 +1702,7 @@ public class NDNNetworkManager implements Runnable {
 				_currentHandler++;
 				_inHandler = true;	// Do in this order
 
-				if (packet instanceof ContentObject) {
-					_stats.increment(StatsEnum.ReceiveObject);
-					ContentObject co = (ContentObject)packet;
-					if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
-						Log.finer(Log.FAC_NETMANAGER, formatMessage("Data from net for port: " + _port + " {0}"), co.name());
-
-					//	SystemConfiguration.logObject("Data from net:", co);
-
-					deliverContent(co);
-				} else if (packet instanceof Interest) {
-					_stats.increment(StatsEnum.ReceiveInterest);
-					Interest interest = (Interest)	packet;
-					if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST) )
-						Log.finest(Log.FAC_NETMANAGER, formatMessage("Interest from net for port: " + _port + " {0}"), interest);
-					InterestRegistration oInterest = new InterestRegistration(interest, null, null);
-					deliverInterest(oInterest, interest);
-				}  else { // for interests
-					_stats.increment(StatsEnum.ReceiveUnknown);
-				}
+				processPacket(packet);
 			} catch (Exception ex) {
 				_stats.increment(StatsEnum.ReceiveErrors);
 				Log.severe(Log.FAC_NETMANAGER, formatMessage("Processing thread failure (UNKNOWN): " + ex.getMessage() + " for port: " + _port));
@@ -1350,43 +1719,212 @@ public class NDNNetworkManager implements Runnable {
 		Log.info(Log.FAC_NETMANAGER, formatMessage("Shutdown complete for port: " + _port));
 	}
 
+	/**
+	 * Reader thread for each additional channel to ndnd. Packets are handled in the same way
+	 * as those read by the main reader thread. Since there is then more than one reader thread,
+	 * handlers are always called from the dispatcher. The channel reconnects itself if ndnd goes
+	 * down, but prefixes only need to be reregistered by the main reader thread.
+	 */
+	private class ChannelReader implements Runnable {
+		private final NDNNetworkChannel _readChannel;
+
+		private ChannelReader(NDNNetworkChannel channel) {
+			_readChannel = channel;
+		}
+
+		public void run() {
+			while (_run) {
+				try {
+					XMLEncodable packet = _readChannel.getPacket();
+					if (null != packet)
+						processPacket(packet);
+				} catch (Exception ex) {
+					_stats.increment(StatsEnum.ReceiveErrors);
+					Log.severe(Log.FAC_NETMANAGER, formatMessage("Channel reader failure (UNKNOWN): " + ex.getMessage() + " for port: " + _port));
+	                Log.severeStackTrace(Log.FAC_NETMANAGER, ex);
+				} catch (Error er) {
+					_stats.increment(StatsEnum.ReceiveErrors);
+					Log.severe(Log.FAC_NETMANAGER, formatMessage("Channel reader error: " + er.getMessage() + " - exiting"));
+	                Log.severeStackTrace(Log.FAC_NETMANAGER, er);
+	                System.exit(1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hand a packet read from ndnd to the interested handlers
+	 * @param packet
+	 */
+	private void processPacket(XMLEncodable packet) {
+		if (packet instanceof ContentObject) {
+			_stats.increment(StatsEnum.ReceiveObject);
+			ContentObject co = (ContentObject)packet;
+			if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
+				Log.finer(Log.FAC_NETMANAGER, formatMessage("Data from net for port: " + _port + " {0}"), co.name());
+
+			//	SystemConfiguration.logObject("Data from net:", co);
+
+			deliverContent(co);
+		} else if (packet instanceof Interest) {
+			_stats.increment(StatsEnum.ReceiveInterest);
+			Interest interest = (Interest)	packet;
+			if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST) )
+				Log.finest(Log.FAC_NETMANAGER, formatMessage("Interest from net for port: " + _port + " {0}"), interest);
+			InterestRegistration oInterest = new InterestRegistration(interest, null, null);
+			deliverInterest(oInterest, interest);
+		}  else { // for interests
+			_stats.increment(StatsEnum.ReceiveUnknown);
+		}
+	}
+
 	/**
 	 * Internal delivery of interests to pending filter handlers
+	 * If we have a dispatcher, the handlers are called from the dispatcher. Each handler is
+	 * called on the dispatch thread chosen by its identity, the same thread used for content
+	 * delivered to it, so a handler is never called for 2 interests at once however many
+	 * filters it is registered for.
+	 *
 	 * @param ireg
 	 */
-	protected void deliverInterest(InterestRegistration ireg, Interest interest) {
+	protected void deliverInterest(final InterestRegistration ireg, final Interest interest) {
 		_stats.increment(StatsEnum.DeliverInterest);
 
-		// Call any handlers with matching filters
-		for (Filter filter : _myFilters.getValues(ireg.interest.name())) {
-			if (filter.owner != ireg.owner) {
-				if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
-					Log.finer(Log.FAC_NETMANAGER, formatMessage("Schedule delivery for interest: {0}"), interest);
-				_stats.increment(StatsEnum.DeliverInterestMatchingFilters);
-				long startTime = System.nanoTime();
-				boolean succeeded = filter.deliver(interest);
-				_stats.addSample(StatsEnum.InterestHandlerTime, System.nanoTime() - startTime);
-				if (succeeded)
-					break;	// We only run interest handlers until one succeeds
+		List<Filter> filters = _myFilters.getValues(ireg.interest.name());
+		if (null != _dispatcher) {
+			dispatchInterest(ireg, interest, filters, 0);
+		} else {
+			// Call any handlers with matching filters until one succeeds
+			for (Filter filter : filters) {
+				if (deliverInterest(ireg, interest, filter))
+					break;
 			}
 		}
 	}
 
+	/**
+	 * Queue an interest for the first handler from filters[start] on which may take it. If that
+	 * handler doesn't handle it, the interest is passed on to the next one from its dispatch thread.
+	 */
+	protected void dispatchInterest(final InterestRegistration ireg, final Interest interest, final List<Filter> filters, int start) {
+		int i = start;
+		while (i < filters.size() && filters.get(i).owner == ireg.owner)
+			i++;
+		if (i >= filters.size())
+			return;
+		final Filter filter = filters.get(i);
+		final int next = i + 1;
+		_dispatcher.tryDispatch(System.identityHashCode(filter.handler), new Runnable() {
+			public void run() {
+				if (!deliverInterest(ireg, interest, filter))
+					dispatchInterest(ireg, interest, filters, next);
+			}
+		});
+	}
+
+	/**
+	 * @return true if the filter's handler handled the interest, so no more handlers should be called
+	 */
+	protected boolean deliverInterest(InterestRegistration ireg, Interest interest, Filter filter) {
+		if (filter.owner == ireg.owner)
+			return false;
+		if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
+			Log.finer(Log.FAC_NETMANAGER, formatMessage("Schedule delivery for interest: {0}"), interest);
+		_stats.increment(StatsEnum.DeliverInterestMatchingFilters);
+		long startTime = System.nanoTime();
+		boolean succeeded = filter.deliver(interest);
+		_stats.addSample(StatsEnum.InterestHandlerTime, System.nanoTime() - startTime);
+		return succeeded;
+	}
+
 	/**
 	 *  Deliver data to all blocked getters and registered interests
 	 * @param co
 	 */
-	protected void deliverContent(ContentObject co) {
+	protected void deliverContent(final ContentObject co) {
 		_stats.increment(StatsEnum.DeliverContent);
 
-		for (InterestRegistration ireg : _myInterests.getValues(co)) {
+		// Objects off the wire are only fully decoded when needed. Anything we keep or hand on
+		// must be decoded now so that a malformed object is dropped here rather than failing
+		// later in a handler.
+		if (null != _contentCache) {
+			if (!co.isDecodable()) {
+				dropMalformed(co);
+				return;
+			}
+			_contentCache.put(co, System.currentTimeMillis());
+		}
+
+		// ndnd consumes the interests this satisfies. Any interest expressed from now on must be
+		// written again even if it is identical to one of these. Finding the registrations and
+		// removing their pending interests is done under the same lock registerInterest uses
+		// to join a pending interest, so a registration either gets this content or makes a
+		// new pending interest - it can't join one which is about to be removed.
+		List<InterestRegistration> regs;
+		synchronized (_pendingInterests) {
+			try {
+				regs = _myInterests.getValues(co);
+			} catch (IllegalStateException ise) {
+				// Matching needed one of the elements not yet decoded, and it was bad
+				dropMalformed(co);
+				return;
+			}
+			if (regs.isEmpty())
+				return;
+			if (!co.isDecodable()) {
+				dropMalformed(co);
+				return;
+			}
+			for (InterestRegistration ireg : regs) {
+				if (null != ireg.pending)
+					removePending(ireg.pending);
+			}
+		}
+
+		for (final InterestRegistration ireg : regs) {
 			_stats.increment(StatsEnum.DeliverContentMatchingInterests);
-			long startTime = System.nanoTime();
-			ireg.deliver(co);
-			_stats.addSample(StatsEnum.ContentHandlerTime, System.nanoTime() - startTime);
+			if (null != _dispatcher && null != ireg.handler) {
+				// Unregister now so that further content can't be queued for the same registration.
+				// Handlers are dispatched by handler so that each handler sees its content in order.
+				// Blocked getters just need to be woken up so we do that directly.
+				unregisterInterest(ireg);
+				ireg.beginDelivery();
+				try {
+					boolean queued = _dispatcher.dispatch(System.identityHashCode(ireg.handler), new Runnable() {
+						public void run() {
+							try {
+								if (!ireg.cancelled) {
+									long startTime = System.nanoTime();
+									ireg.deliverInner(co);
+									_stats.addSample(StatsEnum.ContentHandlerTime, System.nanoTime() - startTime);
+								}
+							} finally {
+								ireg.endDelivery();
+							}
+						}
+					}, SystemConfiguration.DISPATCH_TIMEOUT);
+					if (!queued) {
+						ireg.endDelivery();
+						Log.warning(Log.FAC_NETMANAGER, formatMessage("Dispatch queue full, dropped data for {0}"), ireg.interest.name());
+					}
+				} catch (InterruptedException e) {
+					ireg.endDelivery();
+					Log.warning(Log.FAC_NETMANAGER, formatMessage("Interrupted dispatching data for {0}"), ireg.interest.name());
+				}
+			} else {
+				long startTime = System.nanoTime();
+				ireg.deliver(co);
+				_stats.addSample(StatsEnum.ContentHandlerTime, System.nanoTime() - startTime);
+			}
 		}
 	}
 
+	private void dropMalformed(ContentObject co) {
+		_stats.increment(StatsEnum.ReceiveMalformed);
+		if (Log.isLoggable(Log.FAC_NETMANAGER, Level.INFO))
+			Log.info(Log.FAC_NETMANAGER, formatMessage("Dropping malformed content object {0}"), co.name());
+	}
+
 	/**
 	 * Diagnostic routine to get a handler stack trace in time of suspected problem
 	 */
@@ -1481,12 +2019,18 @@ public class NDNNetworkManager implements Runnable {
 
 		Puts ("ContentObjects", "The number of put calls"),
 		Gets ("ContentObjects", "The number of get calls"),
+		GetsAsync ("ContentObjects", "The number of getAsync calls"),
+		GetsAsyncTimedOut ("ContentObjects", "The number of getAsync calls which timed out"),
 		WriteInterest ("calls", "The number of calls to write(Interest)"),
 		WriteObject ("calls", "The number of calls to write(ContentObject)"),
 		WriteErrors ("count", "Error count for writeInner()"),
 		WriteUnderflows ("count", "The count of times when the bytes written to the channel < buffer size"),
+		WriteBytesPerCall ("bytes", "The average number of bytes written per write to the channel"),
+		WriteBatches ("calls", "The number of batches written by the write queue"),
+		WriteBatchSize ("packets", "The average number of packets in a batch written by the write queue"),
 
 		ExpressInterest ("calls", "The number of calls to expressInterest"),
+		ExpressInterestAggregated ("interests", "The number of interests which shared an identical pending interest instead of being written"),
 		CancelInterest ("calls", "The number of calls to cancelInterest"),
 		DeliverInterest ("calls", "The number of calls to deliverInterest"),
 		DeliverContent ("calls", "The number of calls to cancelInterest"),
@@ -1501,9 +2045,21 @@ public class NDNNetworkManager implements Runnable {
 		ReceiveObject ("objects", "Receive count of ContentObjects from channel"),
 		ReceiveInterest ("interests", "Receive count of Interests from channel"),
 		ReceiveUnknown ("calls", "Receive count of unknown type from channel"),
+		ReceiveMalformed ("objects", "Receive count of ContentObjects dropped because they could not be decoded"),
 		ReceiveErrors ("errors", "Number of errors from the channel in run() loop"),
 
 		ContentObjectsIgnored ("ContentObjects", "The number of ContentObjects that are never handled"),
+
+		DispatchQueued ("calls", "The number of deliveries queued to dispatch threads"),
+		DispatchQueueDepth ("tasks", "The average dispatch queue depth seen when queueing a delivery"),
+		DispatchQueueTime ("nanos", "The average amount of time deliveries wait in dispatch queues"),
+		DispatchBlocked ("count", "The number of times a dispatch queue was full when queueing a delivery"),
+		DispatchDropped ("deliveries", "The number of deliveries dropped because a dispatch queue stayed full"),
+		DispatchErrors ("errors", "The number of unexpected failures in dispatch threads"),
+
+		ContentCacheHits ("interests", "The number of interests satisfied from the content cache"),
+		ContentCacheMisses ("interests", "The number of interests not satisfied from the content cache"),
+		ContentCacheEvictions ("ContentObjects", "The number of objects evicted from the content cache to make room"),
 		;
 
 		// ====================================
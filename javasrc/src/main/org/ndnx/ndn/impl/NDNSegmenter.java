@@ -29,6 +29,15 @@ import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import javax.crypto.BadPaddingException;
@@ -39,6 +48,7 @@ import org.ndnx.ndn.NDNHandle;
 import org.ndnx.ndn.config.ConfigurationException;
 import org.ndnx.ndn.config.SystemConfiguration;
 import org.ndnx.ndn.impl.security.crypto.NDNAggregatedSigner;
+import org.ndnx.ndn.impl.security.crypto.NDNAsyncSigner;
 import org.ndnx.ndn.impl.security.crypto.NDNMerkleTree;
 import org.ndnx.ndn.impl.security.crypto.NDNMerkleTreeSigner;
 import org.ndnx.ndn.impl.security.crypto.ContentKeys;
@@ -109,6 +119,18 @@ import org.ndnx.ndn.protocol.SignedInfo.ContentType;
  * ContentObjects returned by the signing operations. On the way, it may need
  * to pass through a block encrypter, which may perform local copies. Higher-level
  * constructs, such as streams, may buffer it above.
+ *
+ * Writing a batch of signed blocks to the flow controller can block until there is room
+ * for them. A pipelined segmenter (see SystemConfiguration.SEGMENTER_PIPELINE) writes each
+ * batch from another thread so that the next batch can be built and signed in the meantime.
+ * Batches are still written in order, and any output still pending is finished before a
+ * flush or a final segment returns.
+ *
+ * A segmenter given an NDNAsyncSigner goes further, handing each batch to the signer's
+ * threads, signed with the segmenter's bulk signer, and returning at once. An output thread
+ * of the segmenter's own writes the batches to the flow controller in order as they are
+ * signed, so the signer's shared threads never wait for room in the flow controller. A final
+ * segment doesn't wait for them, so callers which need everything written call waitForOutput.
  */
 public class NDNSegmenter {
 
@@ -145,6 +167,25 @@ public class NDNSegmenter {
 	 */
 	protected ContentObject _firstSegment = null;
 
+	/**
+	 * Whether blocks are written to the flow controller by another thread while the next
+	 * blocks are signed, and the write still pending if so.
+	 */
+	protected boolean _pipelined = SystemConfiguration.SEGMENTER_PIPELINE;
+	protected ArrayList<Future<?>> _pendingOutput = new ArrayList<Future<?>>();
+
+	/**
+	 * Signs blocks on other threads if not null
+	 */
+	protected NDNAsyncSigner _asyncSigner = null;
+
+	/**
+	 * Writes asynchronously signed blocks in order; its thread exits when idle
+	 */
+	protected ThreadPoolExecutor _asyncOutput = null;
+
+	protected static ExecutorService _outputPool = null;
+
 	/**
 	 * Create a segmenter with default (Merkle hash tree) bulk signing
 	 * behavior, making a new handle for it to use.
@@ -511,6 +552,8 @@ public class NDNSegmenter {
 		if (_blocks.size() >= HOLD_COUNT || null != finalSegmentIndex) {
 			outputCurrentBlocks(signingKey);
 		}
+		if (null != finalSegmentIndex)
+			finishOutput();
 
 		return nextSegmentIndex;
 	}
@@ -623,6 +666,10 @@ public class NDNSegmenter {
 		}
 		if (flushNow || null != finalSegmentIndex) {
 			outputCurrentBlocks(signingKey);
+			if (flushNow)
+				waitForOutput();
+			else
+				finishOutput();
 		}
 
 		return nextIndex;
@@ -654,13 +701,29 @@ public class NDNSegmenter {
 		if (_blocks.size() == 0)
 			return;
 
+		if (null != _asyncSigner) {
+			final ContentObject[] blocks = new ContentObject[_blocks.size()];
+			_blocks.toArray(blocks);
+			_blocks.clear();
+			checkOutput();
+			final Future<ContentObject []> signing = _asyncSigner.sign(blocks, signingKey, _bulkSigner, null);
+			_pendingOutput.add(asyncOutput().submit(new Callable<Object>() {
+				public Object call() throws IOException {
+					finished(signing);
+					putBlocks(blocks);
+					return null;
+				}
+			}));
+			return;
+		}
+
 		if (_blocks.size() == 1) {
 
 			ContentObject co = _blocks.get(0);
 			co.sign(signingKey);
 			if( Log.isLoggable(Level.FINER))
 				Log.finer("NDNSegmenter: putting " + co.name() + " (timestamp: " + co.signedInfo().getTimestamp() + ", length: " + co.contentLength() + ")");
-			_flowControl.put(co);
+			output(new ContentObject[]{co});
 
 		} else {
 
@@ -677,11 +740,146 @@ public class NDNSegmenter {
 				Log.info(Log.FAC_IO, "flush: putting merkle tree to the network, name starts with " + blocks[0].name() + "; "
 	                    + _blocks.size() + " blocks");
 			_bulkSigner.signBlocks(blocks, signingKey);
-			getFlowControl().put(blocks);
+			output(blocks);
 		}
 		_blocks.clear();
 	}
 
+	/**
+	 * Write signed blocks to the flow controller. If pipelined, wait for the previous blocks to
+	 * be written, then write these from another thread.
+	 * @param blocks the signed blocks
+	 * @throws IOException if the previous blocks or these (when not pipelined) could not be written
+	 */
+	protected void output(final ContentObject [] blocks) throws IOException {
+		if (!_pipelined) {
+			putBlocks(blocks);
+			return;
+		}
+		waitForOutput();
+		_pendingOutput.add(outputPool().submit(new Callable<Object>() {
+			public Object call() throws IOException {
+				putBlocks(blocks);
+				return null;
+			}
+		}));
+	}
+
+	private void putBlocks(ContentObject [] blocks) throws IOException {
+		if (blocks.length == 1)
+			_flowControl.put(blocks[0]);
+		else
+			_flowControl.put(blocks);
+	}
+
+	/**
+	 * Wait for blocks being signed or written to the flow controller by other threads, if any.
+	 * @throws IOException if they could not be signed or written
+	 */
+	public void waitForOutput() throws IOException {
+		while (!_pendingOutput.isEmpty())
+			finished(_pendingOutput.remove(0));
+	}
+
+	/**
+	 * Wait for pending output at the end of a put, unless blocks are signed asynchronously, in
+	 * which case the caller waits with waitForOutput if it needs to.
+	 * @throws IOException if blocks could not be written
+	 */
+	protected void finishOutput() throws IOException {
+		if (null == _asyncSigner)
+			waitForOutput();
+	}
+
+	/**
+	 * Forget output which has finished, throwing the error if any of it failed.
+	 * @throws IOException if blocks could not be signed or written
+	 */
+	protected void checkOutput() throws IOException {
+		for (int i = 0; i < _pendingOutput.size(); ) {
+			if (_pendingOutput.get(i).isDone())
+				finished(_pendingOutput.remove(i));
+			else
+				i++;
+		}
+	}
+
+	private void finished(Future<?> pending) throws IOException {
+		try {
+			pending.get();
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted waiting for segments to be written: " + e.getMessage());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw new IOException("Error signing or writing segments: " + e.getCause());
+		}
+	}
+
+	/**
+	 * @param signer the signer to sign blocks on its threads, using this segmenter's bulk
+	 * 	signer for batches, or null to sign them on the thread which writes them. Blocks
+	 * 	already given to a signer are still waited for by waitForOutput.
+	 */
+	public void setAsyncSigner(NDNAsyncSigner signer) {
+		_asyncSigner = signer;
+	}
+
+	/**
+	 * @return the signer blocks are signed by on its threads, or null if they are signed on
+	 * 	the thread which writes them
+	 */
+	public NDNAsyncSigner getAsyncSigner() {
+		return _asyncSigner;
+	}
+
+	/**
+	 * @param pipelined true to write blocks to the flow controller while the next blocks are signed
+	 * @throws IOException if blocks already being written could not be
+	 */
+	public void setPipelined(boolean pipelined) throws IOException {
+		if (!pipelined)
+			waitForOutput();
+		_pipelined = pipelined;
+	}
+
+	/**
+	 * @return true if blocks are written to the flow controller while the next blocks are signed
+	 */
+	public boolean isPipelined() {
+		return _pipelined;
+	}
+
+	protected synchronized ExecutorService asyncOutput() {
+		if (null == _asyncOutput) {
+			_asyncOutput = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "NDNSegmenter async output");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			_asyncOutput.allowCoreThreadTimeOut(true);
+		}
+		return _asyncOutput;
+	}
+
+	protected static synchronized ExecutorService outputPool() {
+		if (null == _outputPool) {
+			_outputPool = Executors.newCachedThreadPool(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "NDNSegmenter output");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return _outputPool;
+	}
+
 	/**
 	 * Puts a single block of content of arbitrary length using a segment naming convention. The only
 	 * current use of this is to allow a Segmenter.put of less than a blocksize.
@@ -750,6 +948,8 @@ public class NDNSegmenter {
 				signedInfo, content, offset, length, keys);
 		if (_blocks.size() >= HOLD_COUNT + 1 || null != finalSegmentIndex)
 			outputCurrentBlocks(signingKey);
+		if (null != finalSegmentIndex)
+			finishOutput();
 
 		return segmentNumber;
 	}
@@ -0,0 +1,258 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ndnx.ndn.impl.encoding.GenericXMLEncodable;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.io.content.ContentEncodingException;
+
+/**
+ * Output stage for the network manager. Packets are encoded by the writing thread into
+ * direct buffers taken from a pool, and queued. A single writer thread takes queued packets
+ * and hands them to the network manager in batches of up to batchSize packets, so that
+ * they can be written to ndnd with one gathering write. If fewer than batchSize packets
+ * are queued the writer waits at most latency for more to arrive before writing what it has.
+ *
+ * The number of pooled buffers bounds the number of queued packets - when all are in use
+ * writers wait for the writer thread to catch up.
+ *
+ * At shutdown everything queued is written before the writer thread exits. A packet which
+ * arrives too late for that is refused by enqueue so that the caller writes it directly.
+ */
+public class NDNWriteQueue implements Runnable {
+
+	// Queued to wake the writer thread at shutdown
+	private static final ByteBuffer SHUTDOWN = ByteBuffer.allocate(0);
+
+	protected final NDNNetworkManager _manager;
+	protected final NDNNetworkChannel _channel;
+	protected final int _batchSize;
+	protected final long _latency;
+	protected final int _poolSize;
+	protected final LinkedBlockingQueue<ByteBuffer> _queue = new LinkedBlockingQueue<ByteBuffer>();
+	protected final ArrayBlockingQueue<ByteBuffer> _pool;
+	protected final AtomicInteger _allocated = new AtomicInteger(0);
+	protected final Thread _thread;
+	protected volatile boolean _run = true;
+
+	/**
+	 * OutputStream onto a ByteBuffer. Overflowing the buffer throws BufferOverflowException.
+	 */
+	protected static class BufferOutputStream extends OutputStream {
+		protected final ByteBuffer _buffer;
+
+		protected BufferOutputStream(ByteBuffer buffer) {
+			_buffer = buffer;
+		}
+
+		@Override
+		public void write(int b) {
+			_buffer.put((byte)b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			_buffer.put(b, off, len);
+		}
+	}
+
+	/**
+	 * @param name prefix for the name of the writer thread
+	 * @param manager the network manager to write through
+	 * @param channel the channel the manager should write to
+	 * @param batchSize maximum number of packets written at once
+	 * @param latency maximum time in microseconds to wait for a batch to fill
+	 * @param poolSize maximum number of packets which may be queued
+	 */
+	public NDNWriteQueue(String name, NDNNetworkManager manager, NDNNetworkChannel channel, int batchSize, long latency, int poolSize) {
+		if (batchSize <= 0 || poolSize <= 0)
+			throw new IllegalArgumentException("Batch and pool sizes must be positive");
+		_manager = manager;
+		_channel = channel;
+		_batchSize = batchSize;
+		_latency = TimeUnit.MICROSECONDS.toNanos(latency);
+		_poolSize = poolSize;
+		_pool = new ArrayBlockingQueue<ByteBuffer>(poolSize);
+		_thread = new Thread(this, name + " writer");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	/**
+	 * Encode a packet and queue it for writing.
+	 *
+	 * @param packet the packet
+	 * @return false if the packet could not be queued and should be written directly
+	 * @throws ContentEncodingException
+	 */
+	public boolean enqueue(GenericXMLEncodable packet) throws ContentEncodingException {
+		if (!_run)
+			return false;
+		ByteBuffer buffer;
+		try {
+			buffer = getBuffer();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		try {
+			packet.encode(new BufferOutputStream(buffer));
+			buffer.flip();
+		} catch (BufferOverflowException boe) {
+			// Larger than a pooled buffer, which is rare - fall back to a one off heap buffer
+			release(buffer);
+			buffer = ByteBuffer.wrap(packet.encode());
+		}
+		_queue.add(buffer);
+		// If we raced with shutdown the writer may already have drained the queue and gone.
+		// Take the packet back unless the writer got to it first.
+		if (!_run && unqueue(buffer)) {
+			release(buffer);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of packets waiting to be written
+	 */
+	public int queueDepth() {
+		return _queue.size();
+	}
+
+	/**
+	 * Stop the writer thread once all queued packets have been written.
+	 *
+	 * @param timeout maximum time in milliseconds to wait for queued packets to be written
+	 */
+	public void shutdown(long timeout) {
+		_run = false;
+		_queue.add(SHUTDOWN);
+		try {
+			_thread.join(timeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (_thread.isAlive())
+			Log.warning(Log.FAC_NETMANAGER, "Write queue {0}: {1} packets still unwritten at shutdown", _thread.getName(), _queue.size());
+	}
+
+	public void run() {
+		ByteBuffer[] batch = new ByteBuffer[_batchSize];
+		boolean done = false;
+		while (true) {
+			int count = 0;
+			try {
+				// Once shut down, keep going without waiting until the queue is empty
+				ByteBuffer next = done ? _queue.poll() : _queue.take();
+				long deadline = System.nanoTime() + _latency;
+				while (null != next) {
+					if (SHUTDOWN == next) {
+						done = true;
+					} else {
+						batch[count++] = next;
+						if (count >= _batchSize)
+							break;
+					}
+					next = _queue.poll();
+					if (null == next && !done) {
+						long wait = deadline - System.nanoTime();
+						if (wait <= 0)
+							break;
+						next = _queue.poll(wait, TimeUnit.NANOSECONDS);
+					}
+				}
+			} catch (InterruptedException e) {
+				// Just write whatever we have
+			}
+			if (count == 0) {
+				if (done)
+					break;
+				continue;
+			}
+			try {
+				write(batch, count);
+			} catch (RuntimeException ex) {
+				Log.warning(Log.FAC_NETMANAGER, "Write queue {0}: failure writing batch: {1}", _thread.getName(), ex);
+				Log.warningStackTrace(ex);
+			}
+			for (int i = 0; i < count; i++) {
+				release(batch[i]);
+				batch[i] = null;
+			}
+		}
+	}
+
+	/**
+	 * Write a batch of packets. The buffers are released once this returns.
+	 *
+	 * @param batch encoded packets ready to be read
+	 * @param count number of packets in the batch
+	 */
+	protected void write(ByteBuffer[] batch, int count) {
+		_manager.writeBatch(_channel, batch, count);
+	}
+
+	/**
+	 * Remove a buffer from the queue. ByteBuffer.equals compares contents, so look
+	 * for this particular buffer rather than using remove().
+	 *
+	 * @return true if the buffer was still queued
+	 */
+	protected boolean unqueue(ByteBuffer buffer) {
+		Iterator<ByteBuffer> it = _queue.iterator();
+		while (it.hasNext()) {
+			if (it.next() == buffer) {
+				it.remove();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	protected ByteBuffer getBuffer() throws InterruptedException {
+		ByteBuffer buffer = _pool.poll();
+		if (null == buffer) {
+			if (_allocated.incrementAndGet() <= _poolSize)
+				buffer = ByteBuffer.allocateDirect(NDNNetworkManager.MAX_PAYLOAD);
+			else {
+				_allocated.decrementAndGet();
+				buffer = _pool.take();
+			}
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	protected void release(ByteBuffer buffer) {
+		if (buffer.isDirect())
+			_pool.offer(buffer);
+	}
+}
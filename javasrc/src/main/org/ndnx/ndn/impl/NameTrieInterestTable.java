@@ -0,0 +1,198 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+
+/**
+ * An InterestTable which indexes its names in a trie of name components with a
+ * hash table at each level. Finding the entries which may match a ContentObject or
+ * ContentName only walks the components of the target, so the cost of a lookup is
+ * proportional to the length of the target name rather than to the number of names
+ * in the table.
+ *
+ * The API, duplicate handling and LRU capacity semantics are those of InterestTable
+ * so this class may be used anywhere an InterestTable is used. The trie is protected
+ * by the same _contents lock as the rest of the table.
+ */
+public class NameTrieInterestTable<V> extends InterestTable<V> {
+
+	/**
+	 * Hashable wrapper for a name component
+	 */
+	protected static final class ComponentKey {
+		protected final byte[] _component;
+		protected final int _hash;
+
+		public ComponentKey(byte[] component) {
+			_component = component;
+			_hash = Arrays.hashCode(component);
+		}
+
+		@Override
+		public int hashCode() {
+			return _hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof ComponentKey))
+				return false;
+			ComponentKey other = (ComponentKey)obj;
+			return _hash == other._hash && Arrays.equals(_component, other._component);
+		}
+	}
+
+	/**
+	 * A node of the trie. _name is non-null if there are entries in the table
+	 * for the name ending at this node.
+	 */
+	protected static final class TrieNode {
+		protected final TrieNode _parent;
+		protected final ComponentKey _key;
+		protected HashMap<ComponentKey, TrieNode> _children = null;
+		protected ContentName _name = null;
+
+		public TrieNode(TrieNode parent, ComponentKey key) {
+			_parent = parent;
+			_key = key;
+		}
+
+		public TrieNode child(byte[] component) {
+			if (null == _children)
+				return null;
+			return _children.get(new ComponentKey(component));
+		}
+
+		public boolean hasChildren() {
+			return null != _children && _children.size() > 0;
+		}
+	}
+
+	protected TrieNode _root = new TrieNode(null, null);
+
+	@Override
+	protected void putName(ContentName name, List<Holder<V>> list) {
+		super.putName(name, list);
+		TrieNode node = _root;
+		for (int i = 0; i < name.count(); i++) {
+			byte[] component = name.component(i);
+			TrieNode child = node.child(component);
+			if (null == child) {
+				if (null == node._children)
+					node._children = new HashMap<ComponentKey, TrieNode>(4);
+				ComponentKey key = new ComponentKey(component);
+				child = new TrieNode(node, key);
+				node._children.put(key, child);
+			}
+			node = child;
+		}
+		node._name = name;
+	}
+
+	@Override
+	protected void removeName(ContentName name) {
+		super.removeName(name);
+		TrieNode node = lookupNode(name);
+		if (null == node)
+			return;
+		node._name = null;
+
+		// Prune nodes which no longer lead to any names
+		while (node != _root && null == node._name && !node.hasChildren()) {
+			TrieNode parent = node._parent;
+			parent._children.remove(node._key);
+			node = parent;
+		}
+	}
+
+	@Override
+	protected Collection<ContentName> candidateNames(ContentObject target) {
+		ContentName name = target.name();
+		List<ContentName> result = new ArrayList<ContentName>();
+		TrieNode node = collectPrefixes(name, result);
+
+		// An Interest may also name the content with its implicit digest as a last
+		// component. Only compute the digest if there is something that could match it.
+		if (null != node && node.hasChildren()) {
+			TrieNode digestNode = node.child(target.digest());
+			if (null != digestNode && null != digestNode._name)
+				result.add(digestNode._name);
+		}
+		Collections.reverse(result);
+		return result;
+	}
+
+	@Override
+	protected Collection<ContentName> prefixNames(ContentName target) {
+		List<ContentName> result = new ArrayList<ContentName>();
+		collectPrefixes(target, result);
+		Collections.reverse(result);
+		return result;
+	}
+
+	@Override
+	public void clear() {
+		synchronized (_contents) {
+			super.clear();
+			_root = new TrieNode(null, null);
+		}
+	}
+
+	/**
+	 * Walk the trie along target collecting every name found on the way, shortest first.
+	 *
+	 * @param target
+	 * @param result names found
+	 * @return the node for the complete target or null if the walk ended early
+	 */
+	protected TrieNode collectPrefixes(ContentName target, List<ContentName> result) {
+		TrieNode node = _root;
+		if (null != node._name)
+			result.add(node._name);
+		for (int i = 0; i < target.count(); i++) {
+			node = node.child(target.component(i));
+			if (null == node)
+				return null;
+			if (null != node._name)
+				result.add(node._name);
+		}
+		return node;
+	}
+
+	protected TrieNode lookupNode(ContentName name) {
+		TrieNode node = _root;
+		for (int i = 0; i < name.count() && null != node; i++) {
+			node = node.child(name.component(i));
+		}
+		return node;
+	}
+}
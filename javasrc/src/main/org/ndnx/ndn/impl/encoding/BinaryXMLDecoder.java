@@ -43,12 +43,14 @@ import org.ndnx.ndn.protocol.Interest;
  * It also exposes the segment buffer through getBytes() and the
  * segment DOM via getElement().
  *
+ * Packets read from the network are framed first by BinaryXMLFramer and then
+ * handed to beginDecoding(byte[], int, int) as a complete packet, which avoids
+ * reading from the network channel byte-by-byte. In that mode the offset of each
+ * element within the array is recorded and BLOB/UDATA values are only copied out
+ * when they are read, so callers such as ContentObject can skip elements they don't
+ * need yet (skipElement()) and keep the encoded bytes instead (source(), sourceOffset()).
+ *
  * TODO:
- * - Try buffering reads from the network channel rather than byte-by-byte.
- *   NDNNetworkChannel is rewindable, so if we read past the end of the
- *   segment, we can re-position to where we end.  A better organization
- *   would be to have a framer just doing the decode and once it gets
- *   a full segment, hand that off to a parser without rewinding.
  * - Another thing to do is to not actually decode the Type/Value pairs
  *   except for BLOB and UDATA, where you need to know what the value is.
  *   for all the DTAG and CLOSE, we should just use them in their encoded
@@ -129,6 +131,8 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 		_elements_type = new byte[_currentElements];
 		_elements_value = new int[_currentElements];
 		_elements_blob = new byte[_currentElements][];
+		_elements_offset = new int[_currentElements];
+		_source = null;
 
 		try {
 			setupForDecoding(istream);
@@ -159,6 +163,85 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 		}
 	}
 
+	/**
+	 * Reset the Decoder's state and start parsing a complete packet held in an array.
+	 * The type/value headers are parsed directly from the array, avoiding the per byte
+	 * reads of the InputStream version. BLOB and UDATA values are copied out of the
+	 * array as they are read, so the array must not be modified until decoding is
+	 * complete. No resync is attempted - the caller is expected to have found the packet
+	 * boundaries already (see BinaryXMLFramer).
+	 *
+	 * @param buffer the data
+	 * @param offset start of the packet within buffer
+	 * @param length length of the packet
+	 * @throws ContentDecodingException
+	 */
+	public final void beginDecoding(byte [] buffer, int offset, int length) throws ContentDecodingException {
+		if (null == _elements_type) {
+			_elements_type = new byte[_currentElements];
+			_elements_value = new int[_currentElements];
+			_elements_blob = new byte[_currentElements][];
+			_elements_offset = new int[_currentElements];
+		}
+		initialize();
+
+		int pos = offset;
+		int limit = offset + length;
+		_source = buffer;
+		_sourceEnd = limit;
+		int opentags = 0;
+		do {
+			int start = pos;
+			byte typ = -1;
+			long val = 0;
+			int next = -1;
+			boolean more = false;
+			while (pos < limit) {
+				next = buffer[pos++] & BinaryXMLCodec.BYTE_MASK;
+
+				// detect the CLOSE marker
+				if (!more && 0 == next) {
+					typ = BinaryXMLCodec.XML_CLOSE;
+					break;
+				}
+				more = (0 == (next & BinaryXMLCodec.XML_TT_NO_MORE));
+				if (more) {
+					val = val << BinaryXMLCodec.XML_REG_VAL_BITS;
+					val |= (next & BinaryXMLCodec.XML_REG_VAL_MASK);
+				} else {
+					// last byte
+					typ = (byte) (next & BinaryXMLCodec.XML_TT_MASK);
+					val = val << BinaryXMLCodec.XML_TT_VAL_BITS;
+					val |= ((next >>> BinaryXMLCodec.XML_TT_BITS) & BinaryXMLCodec.XML_TT_VAL_MASK);
+					break;
+				}
+			}
+			if (next < 0 || more)
+				throw new ContentDecodingException("Unexpected end of packet");
+
+			switch (typ) {
+			case BinaryXMLCodec.XML_DTAG:
+				opentags++;
+				break;
+			case BinaryXMLCodec.XML_CLOSE:
+				opentags--;
+				break;
+			case BinaryXMLCodec.XML_BLOB:
+			case BinaryXMLCodec.XML_UDATA:
+				if (val < 0 || val > NDNNetworkManager.MAX_PAYLOAD || pos + val > limit)
+					throw new ContentDecodingException("Invalid blob size: " + val);
+				// For blobs we record where the data starts, it is copied when read
+				start = pos;
+				pos += (int) val;
+				break;
+			default:
+				throw new ContentDecodingException("Type value invalid: " + typ);
+			}
+			setElement(_elementCount, typ, (int)val, null, start);
+			_elementCount++;
+		} while (opentags > 0);
+	}
+
 	/**
 	 * This method does the initial parsing into elements
 	 * @param istream
@@ -214,6 +297,63 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 //		Log.fine("Advance Parser to " + _parsingElement);
 	}
 
+	/**
+	 * @return true if the current packet is being decoded from an array by
+	 * 	beginDecoding(byte[], int, int), in which case source() and sourceOffset() are valid
+	 */
+	public final boolean hasSource() {
+		return null != _source;
+	}
+
+	/**
+	 * @return the array the current packet is being decoded from, or null if decoding from a stream
+	 */
+	public final byte [] source() {
+		return _source;
+	}
+
+	/**
+	 * Return the offset in source() of the current element. Once all elements have been
+	 * read this is the offset just past the end of the packet, so the offsets taken before
+	 * reading an element and after reading its end element bound its encoding.
+	 * Does not advance the parser.
+	 *
+	 * @return the offset
+	 * @throws ContentDecodingException if not decoding from an array
+	 */
+	public final int sourceOffset() throws ContentDecodingException {
+		if (null == _source)
+			throw new ContentDecodingException("Not decoding from an array");
+		if (_parsingElement >= _elementCount)
+			return _sourceEnd;
+		if (_elements_type[_parsingElement] == BinaryXMLCodec.XML_BLOB || _elements_type[_parsingElement] == BinaryXMLCodec.XML_UDATA)
+			throw new ContentDecodingException("Source offset of blob data requested");
+		return _elements_offset[_parsingElement];
+	}
+
+	/**
+	 * Skip over the current element, which must be startTag, without decoding it. Nested
+	 * elements and the matching end element are also skipped. Advances the parser.
+	 *
+	 * @param startTag the expected tag
+	 * @throws ContentDecodingException if the element doesn't match or isn't complete
+	 */
+	public final void skipElement(long startTag) throws ContentDecodingException {
+		readStartElement(startTag);
+		int depth = 1;
+		while (depth > 0) {
+			if (_parsingElement >= _elementCount)
+				throw new ContentDecodingException(
+						String.format("Past end of DOM! size %d position %d", _elementCount, _parsingElement));
+			byte type = _elements_type[_parsingElement];
+			if (type == BinaryXMLCodec.XML_DTAG)
+				depth++;
+			else if (type == BinaryXMLCodec.XML_CLOSE)
+				depth--;
+			advanceParser();
+		}
+	}
+
 	// ===================================================================
 	// END OF USER METHODS, START PRIVATE STUFF AND XMLDECODER INTERFACE
 	// ===================================================================
@@ -227,6 +367,11 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 	private byte [] _elements_type;
 	private int [] _elements_value;
 	private byte [][] _elements_blob;
+	// Only used when decoding from an array: the offset of each element's header,
+	// or of the data for BLOB and UDATA
+	private int [] _elements_offset;
+	private byte [] _source = null;
+	private int _sourceEnd = 0;
 
 	// BLOB and UDATA now go in their own buffers, so don't really need the full BLOCKSIZE
 
@@ -323,7 +468,7 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 //		System.out.println(String.format("Decode tag 0x%02x value 0x%02x pos %d", typ, val, pos));
 
 		int index = _elementCount;
-		setElement(index, typ, (int)val, buffer);
+		setElement(index, typ, (int)val, buffer, 0);
 		_elementCount++;
 		return index;
 	}
@@ -334,8 +479,9 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 	 * @param typ
 	 * @param val
 	 * @param buffer
+	 * @param offset
 	 */
-	private void setElement(int index, byte typ, int val, byte[] buffer) {
+	private void setElement(int index, byte typ, int val, byte[] buffer, int offset) {
 		try {
 			_elements_type[index]  = typ;
 		} catch (ArrayIndexOutOfBoundsException aiobe) {
@@ -351,12 +497,16 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 			byte[][] newBlobs = new byte[_currentElements][];
 			System.arraycopy(_elements_blob, 0, newBlobs, 0, prevElements);
 			_elements_blob = newBlobs;
+			int[] newOffsets = new int[_currentElements];
+			System.arraycopy(_elements_offset, 0, newOffsets, 0, prevElements);
+			_elements_offset = newOffsets;
 			_elements_type[index] = typ;
 			if (Log.isLoggable(Log.FAC_ENCODING, Level.INFO))
 				Log.info(Log.FAC_ENCODING, "Reset decode array sizes to {0}", _currentElements);
 		}
 		_elements_value[index] = val;
 		_elements_blob[index]  = buffer;
+		_elements_offset[index] = offset;
 	}
 
 	/**
@@ -397,7 +547,7 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 		// This seems a little bogus but it emulates what the original code did...
 		if (type == BinaryXMLCodec.XML_BLOB) {
 			for (int i = _elementCount; i > _parsingElement; i--) {
-				setElement(i, _elements_type[i - 1], _elements_value[i - 1], _elements_blob[i - 1]);
+				setElement(i, _elements_type[i - 1], _elements_value[i - 1], _elements_blob[i - 1], _elements_offset[i - 1]);
 			}
 			_elementCount++;
 			_elements_blob[_parsingElement] = new byte[0];
@@ -474,7 +624,11 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 //		Log.fine(Log.FAC_ENCODING, "readBinary type {0} start {1} length {2} buffer len {3}",
 //				type, elem.position, elem.value, _bytes.length);
 
-		final byte [] buffer = _elements_blob[index];
+		byte [] buffer = _elements_blob[index];
+		if (null == buffer && null != _source) {
+			buffer = new byte[_elements_value[index]];
+			System.arraycopy(_source, _elements_offset[index], buffer, 0, buffer.length);
+		}
 
 		return buffer;
 	}
@@ -70,6 +70,18 @@ public class BinaryXMLEncoder extends GenericXMLEncoder implements XMLEncoder {
 		}
 	}
 
+	/**
+	 * Write an already encoded element as is.
+	 * @param encoded the complete binary encoding of an element
+	 */
+	public void writeEncoded(byte [] encoded) throws ContentEncodingException {
+		try {
+			_ostream.write(encoded);
+		} catch (IOException e) {
+			throw new ContentEncodingException(e.getMessage(), e);
+		}
+	}
+
 	public void writeUString(String utf8Content) throws ContentEncodingException {
 		try {
 			BinaryXMLCodec.encodeUString(_ostream, utf8Content);
@@ -0,0 +1,88 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.encoding;
+
+import java.nio.ByteBuffer;
+
+import org.ndnx.ndn.impl.NDNNetworkManager;
+import org.ndnx.ndn.io.content.ContentDecodingException;
+
+/**
+ * Finds the boundaries of ndnb encoded elements without decoding them. Only the type/value
+ * headers are examined - the contents of BLOB and UDATA elements are skipped over. This
+ * allows a reader to find out whether it has a complete packet in its buffer before handing
+ * the packet to BinaryXMLDecoder.
+ */
+public final class BinaryXMLFramer {
+
+	private BinaryXMLFramer() {}
+
+	/**
+	 * Find the length of the complete element starting at start. The buffer's position
+	 * and limit are not changed.
+	 *
+	 * @param buffer the data
+	 * @param start offset of the first byte of the element
+	 * @param limit offset past the last byte of valid data
+	 * @return the length of the element or -1 if the element is not complete before limit
+	 * @throws ContentDecodingException if an invalid type or blob size is found
+	 */
+	public static int frameLength(ByteBuffer buffer, int start, int limit) throws ContentDecodingException {
+		int pos = start;
+		int depth = 0;
+		do {
+			if (pos >= limit)
+				return -1;
+			int next = buffer.get(pos++) & BinaryXMLCodec.BYTE_MASK;
+
+			// detect the CLOSE marker
+			if (0 == next) {
+				depth--;
+				continue;
+			}
+
+			long val = 0;
+			while (0 == (next & BinaryXMLCodec.XML_TT_NO_MORE)) {
+				val = (val << BinaryXMLCodec.XML_REG_VAL_BITS) | (next & BinaryXMLCodec.XML_REG_VAL_MASK);
+				if (pos >= limit)
+					return -1;
+				next = buffer.get(pos++) & BinaryXMLCodec.BYTE_MASK;
+			}
+			byte typ = (byte)(next & BinaryXMLCodec.XML_TT_MASK);
+			val = (val << BinaryXMLCodec.XML_TT_VAL_BITS) | ((next >>> BinaryXMLCodec.XML_TT_BITS) & BinaryXMLCodec.XML_TT_VAL_MASK);
+
+			switch (typ) {
+			case BinaryXMLCodec.XML_DTAG:
+				depth++;
+				break;
+			case BinaryXMLCodec.XML_BLOB:
+			case BinaryXMLCodec.XML_UDATA:
+				if (val < 0 || val > NDNNetworkManager.MAX_PAYLOAD)
+					throw new ContentDecodingException("Invalid blob size: " + val);
+				pos += (int)val;
+				break;
+			default:
+				throw new ContentDecodingException("Type value invalid: " + typ);
+			}
+		} while (depth > 0);
+		return pos > limit ? -1 : pos - start;
+	}
+}
@@ -75,13 +75,20 @@ public abstract class GenericXMLEncodable implements XMLEncodable {
 	}
 
 	public void decode(byte [] content, String codec) throws ContentDecodingException {
- 		ByteArrayInputStream bais = new ByteArrayInputStream(content);
- 		decode(bais, codec);
+		decode(content, XMLCodecFactory.getDecoder(codec));
  	}
 	
+	/**
+	 * A BinaryXMLDecoder decodes straight from the array, otherwise the array is
+	 * read as a stream.
+	 */
 	public void decode(byte [] content, XMLDecoder decoder) throws ContentDecodingException {
- 		ByteArrayInputStream bais = new ByteArrayInputStream(content);
- 		decoder.beginDecoding(bais);
+		if (decoder instanceof BinaryXMLDecoder) {
+			((BinaryXMLDecoder)decoder).beginDecoding(content, 0, content.length);
+		} else {
+			ByteArrayInputStream bais = new ByteArrayInputStream(content);
+			decoder.beginDecoding(bais);
+		}
 		decode(decoder);
 		decoder.endDecoding();
  	}
@@ -0,0 +1,92 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * ByteBufferInputStream extends InputStream to read from a ByteBuffer, such as
+ * a memory mapped backend repository file. Reading advances the position of the buffer,
+ * so each reader should use its own duplicate of a shared buffer.
+ *
+ * This class is intended for backend repository use and is not meant
+ * for general NDN stream use.
+ *
+ * @see InputStream
+ * @see ByteBuffer
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	protected ByteBuffer underlying;
+
+	/**
+	 * Constructor to set the buffer to read from.
+	 * @param buffer the buffer, positioned at the first byte to read
+	 */
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		underlying = buffer;
+	}
+
+	/**
+	 * @return int Next byte of the buffer, or -1 at the limit of the buffer
+	 */
+	@Override
+	public int read() {
+		if (!underlying.hasRemaining())
+			return -1;
+		return underlying.get() & 0xff;
+	}
+
+	/**
+	 * Method to read len bytes into byte[] b starting at a specific offset.
+	 *
+	 * @param b byte[] to read bytes into
+	 * @param off starting position for reading
+	 * @param len number of bytes to read into the byte array
+	 *
+	 * @return int number of bytes read into the byte array (-1 if no more data is available)
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0)
+			return 0;
+		if (!underlying.hasRemaining())
+			return -1;
+		len = Math.min(len, underlying.remaining());
+		underlying.get(b, off, len);
+		return len;
+	}
+
+	@Override
+	public long skip(long n) {
+		if (n <= 0)
+			return 0;
+		int skipped = (int)Math.min(n, underlying.remaining());
+		underlying.position(underlying.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return underlying.remaining();
+	}
+}
@@ -27,13 +27,16 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NavigableMap;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.logging.Level;
 
 import org.ndnx.ndn.impl.support.DataUtils;
 import org.ndnx.ndn.impl.support.Log;
 import org.ndnx.ndn.profiles.SegmentationProfile;
+import org.ndnx.ndn.profiles.VersioningProfile;
 import org.ndnx.ndn.profiles.nameenum.NameEnumerationResponse;
 import org.ndnx.ndn.protocol.NDNTime;
 import org.ndnx.ndn.protocol.Component;
@@ -55,6 +58,18 @@ public class ContentTree {
 		public ContentObject get(ContentRef ref);
 	}
 	
+	/**
+	 * Packs references to content into longs, so that a compact tree can hold them without
+	 * an object for each one
+	 */
+	public interface ContentRefPacker {
+		/**
+		 * @return the reference packed into a non-negative long, or -1 if it can't be packed
+		 */
+		public long pack(ContentRef ref);
+		public ContentRef unpack(long packed);
+	}
+	
 	/**
 	 * TreeNode is the data structure representing one
 	 * node of a tree which may have children and/or content.
@@ -63,39 +78,124 @@ public class ContentTree {
 	 * same component (i.e. having same content digest at end
 	 * but presumably different publisher etc. that is not 
 	 * visible in this tree)
+	 * 
+	 * Changes to a node are made while holding its lock, but lookups and searches read nodes
+	 * without locking. To make that safe the children are held in a concurrent map, a content list
+	 * is never changed once it has been set (it is copied and replaced instead), and on moving from
+	 * oneChild to children (or oneContent to content) the new field is set before the old one is
+	 * cleared, so a reader checking the old field first always finds one or the other.
+	 * 
+	 * In a compact tree, children with a single content object and no children of their own
+	 * do not have nodes of their own but are packed into the leaves of their parent. Almost all
+	 * the content in a repository ends with a digest component that never has children,
+	 * so this saves a node, a reference object and a map entry for nearly every object stored.
+	 * Lookups make a temporary node for a leaf, which must not be changed. A leaf which is to be
+	 * given more content or children is first replaced by a node; the node is added before
+	 * the leaf is removed, so a reader checking the leaves first always finds one or the other.
+	 * 
+	 * A node removed from the tree is marked dead while its lock is held. Inserts hold the lock
+	 * of a node while adding to it, so one which finds the node dead starts again from the root
+	 * rather than adding to a node which is no longer in the tree.
 	 */
 	public class TreeNode implements Comparable<TreeNode>{
 		byte[] component; // name of this node in the tree, null for root only
 		// oneChild is special case when there is only 
 		// a single child (to save obj overhead).
 		// either oneChild or children should be null
-		TreeNode oneChild;
-		SortedMap<TreeNode, TreeNode> children;
+		volatile TreeNode oneChild;
+		volatile ConcurrentSkipListMap<TreeNode, TreeNode> children;
 		// oneContent is special case when there is only 
 		// a single content object here (to save obj overhead).
 		// either oneContent or content should be null
-		ContentRef oneContent;
-		List<ContentRef> content;
+		volatile ContentRef oneContent;
+		volatile List<ContentRef> content;
+		// leaves of a compact tree, in canonical order, each packed as the length of its
+		// component (2 bytes), the component and its packed content reference (8 bytes)
+		volatile byte[] leaves;
 		long timestamp;
 		boolean interestFlag = false;
 		boolean neSent = false;		// NE response sent since last insert
+		boolean dead = false;		// removed from the tree
 		
 		public boolean compEquals(byte[] other) {
 			return DataUtils.compare(other, this.component) == 0;
 		}
 		public TreeNode getChild(byte[] component) {
-			if (null != oneChild) {
-				if (oneChild.compEquals(component)) {
-					return oneChild;
+			byte[] l = leaves;
+			if (null != l) {
+				int pos = findLeaf(l, component);
+				if (pos >= 0)
+					return leafNode(l, pos);
+			}
+			return getNodeChild(component);
+		}
+		
+		/**
+		 * Like getChild but ignoring leaves
+		 */
+		protected TreeNode getNodeChild(byte[] component) {
+			TreeNode one = oneChild;
+			if (null != one) {
+				if (one.compEquals(component)) {
+					return one;
+				}
+			} else {
+				ConcurrentSkipListMap<TreeNode, TreeNode> map = children;
+				if (null != map) {
+					TreeNode child = new TreeNode();
+					child.component = component;
+					return map.get(child);
 				}
-			} else if (null != children) {
-				TreeNode child = new TreeNode();
-				child.component = component;
-				return children.get(child);
 			}
 			return null;
 		}
 		
+		/**
+		 * @return the children of this node in canonical order, or null if there are none. The
+		 * 	map may be changed by other threads while it is in use but is safe to iterate.
+		 */
+		protected NavigableMap<TreeNode, TreeNode> getChildren() {
+			byte[] l = leaves;
+			NavigableMap<TreeNode, TreeNode> map = null;
+			TreeNode one = oneChild;
+			if (null != one) {
+				map = new TreeMap<TreeNode, TreeNode>(); // Will only hold one element
+				map.put(one, one);
+			} else {
+				ConcurrentSkipListMap<TreeNode, TreeNode> children = this.children;
+				if (null != children && !children.isEmpty())
+					map = children;
+			}
+			if (null == l)
+				return map;
+			TreeMap<TreeNode, TreeNode> result = new TreeMap<TreeNode, TreeNode>();
+			for (int pos = 0; pos < l.length; pos += LEAF_OVERHEAD + leafLength(l, pos)) {
+				TreeNode leaf = leafNode(l, pos);
+				result.put(leaf, leaf);
+			}
+			// A leaf being replaced by a node may be in both
+			if (null != map)
+				result.putAll(map);
+			return result;
+		}
+		
+		/**
+		 * @return the content at this node, or null if there is none. The list must not be changed.
+		 */
+		protected List<ContentRef> getContent() {
+			ContentRef one = oneContent;
+			if (null != one) {
+				ArrayList<ContentRef> result = new ArrayList<ContentRef>(1);
+				result.add(one);
+				return result;
+			}
+			return content;
+		}
+		
+		protected boolean hasContent() {
+			return null != oneContent || null != content;
+		}
+		
 		public String toString(){
 			String s = "";
 
@@ -104,14 +204,16 @@ public class ContentTree {
 			else{
 				s = Component.printURI(component);				
 			}
-			if(oneChild!=null){
+			TreeNode one = oneChild;
+			ConcurrentSkipListMap<TreeNode, TreeNode> map = children;
+			if(one!=null){
 				//there is only one child
 				s+= " oneChild: "+Component.printURI(component);
 			}
-			else if(children!=null){
+			else if(map!=null){
 				s+= " children: ";
 				int i = 0;
-				for(TreeNode c: children.keySet()){
+				for(TreeNode c: map.keySet()){
 					//append each child to string
 					s+=" "+Component.printURI(c.component);
 					//s+=new String(t.component)+" ";
@@ -178,7 +280,7 @@ public class ContentTree {
 	protected abstract class Search {
 		protected Interest _interest;
 		protected InterestPreScreener _ips;
-		protected SortedMap<TreeNode, TreeNode> _children = null;
+		protected NavigableMap<TreeNode, TreeNode> _children = null;
 		
 		protected Search(Interest interest, InterestPreScreener ips) {
 			_interest = interest;
@@ -203,21 +305,14 @@ public class ContentTree {
 			if (res < 0)
 				return null;
 			if (res > 0) {
-				if (null != node.oneContent || null != node.content) {
+				if (node.hasContent()) {
 					ContentObject result = getContent(_interest, node, nodeName, getter);
 					if (null != result)
 						return result;
 				}
 			}
 		
-			synchronized(node) {
-				if (null != node.oneChild) {
-					_children = new TreeMap<TreeNode, TreeNode>(); // Don't bother with comparator, will only hold one element
-					_children.put(node.oneChild, node.oneChild);
-				} else {
-					_children = node.children;
-				}
-			}
+			_children = node.getChildren();
 			if (null != _children) {
 				byte[] interestComp = _interest.name().component(depth);
 				Iterator<TreeNode>it = initIterator(leftSearch, interestComp);
@@ -292,7 +387,7 @@ public class ContentTree {
 		protected Iterator<TreeNode> initIterator(boolean leftSearch, byte[] interestComp) {
 			if (leftSearch)
 				return _children.keySet().iterator();
-			return new RightIterator(_children);
+			return _children.descendingKeySet().iterator();
 		}
 
 		@Override
@@ -302,35 +397,150 @@ public class ContentTree {
 		}
 	}
 	
+	protected TreeNode _root;
+	protected final ContentRefPacker _packer;
+	
+	public ContentTree() {
+		this(null);
+	}
+	
 	/**
-	 * Create an iterator that goes backwards through the candidates for right search
+	 * Create a tree which is compact if a packer is given
+	 * 
+	 * @param packer to pack references to content into the leaves of the tree, or null
 	 */
-	protected static class RightIterator implements Iterator<TreeNode> {
-		protected SortedMap<TreeNode, TreeNode> _map;
-		
-		protected RightIterator(SortedMap<TreeNode, TreeNode> map) {
-			_map = map;
+	public ContentTree(ContentRefPacker packer) {
+		_packer = packer;
+		_root = new TreeNode();
+		_root.component = null; // Only the root has a null value
+	}
+	
+	protected static final int LEAF_OVERHEAD = 10;
+	protected static final int MAX_LEAF_COMPONENT = 0xffff;
+	
+	/**
+	 * Find a leaf of a compact tree. Leaves are searched in order, which is fine since there
+	 * are few at any one node.
+	 * 
+	 * @param leaves the leaves of a node
+	 * @param component the component of the leaf to find
+	 * @return the position of the leaf in leaves or, if there is no such leaf,
+	 * 	-1 minus the position at which it should be added
+	 */
+	protected static int findLeaf(byte[] leaves, byte[] component) {
+		int pos = 0;
+		while (pos < leaves.length) {
+			int length = leafLength(leaves, pos);
+			int comp = compareLeaf(leaves, pos, length, component);
+			if (comp == 0)
+				return pos;
+			if (comp > 0)
+				break;
+			pos += LEAF_OVERHEAD + length;
 		}
-
-		public boolean hasNext() {
-			return _map.size() > 0;
+		return -1 - pos;
+	}
+	
+	protected static int leafLength(byte[] leaves, int pos) {
+		return ((leaves[pos] & 0xff) << 8) | (leaves[pos + 1] & 0xff);
+	}
+	
+	protected static long leafRef(byte[] leaves, int pos) {
+		int start = pos + 2 + leafLength(leaves, pos);
+		long ref = 0;
+		for (int i = 0; i < 8; i++)
+			ref = (ref << 8) | (leaves[start + i] & 0xff);
+		return ref;
+	}
+	
+	// Same ordering as DataUtils.compare
+	private static int compareLeaf(byte[] leaves, int pos, int length, byte[] component) {
+		if (length != component.length)
+			return length < component.length ? -1 : 1;
+		for (int i = 0; i < length; i++) {
+			int left = leaves[pos + 2 + i] & 0xff;
+			int right = component[i] & 0xff;
+			if (left != right)
+				return left < right ? -1 : 1;
 		}
-
-		public TreeNode next() {
-			TreeNode node = _map.lastKey();
-			_map = _map.subMap(_map.firstKey(), _map.lastKey());
-			return node;
+		return 0;
+	}
+	
+	/**
+	 * @return a copy of leaves with a leaf added at pos
+	 */
+	protected static byte[] addLeaf(byte[] leaves, int pos, byte[] component, long ref) {
+		int old = null == leaves ? 0 : leaves.length;
+		byte[] result = new byte[old + LEAF_OVERHEAD + component.length];
+		if (pos > 0)
+			System.arraycopy(leaves, 0, result, 0, pos);
+		result[pos] = (byte)(component.length >> 8);
+		result[pos + 1] = (byte)component.length;
+		System.arraycopy(component, 0, result, pos + 2, component.length);
+		int start = pos + 2 + component.length;
+		for (int i = 7; i >= 0; i--) {
+			result[start + i] = (byte)ref;
+			ref >>>= 8;
 		}
-
-		public void remove() {}
-		
+		if (old > pos)
+			System.arraycopy(leaves, pos, result, start + 8, old - pos);
+		return result;
 	}
 	
-	protected TreeNode _root;
+	/**
+	 * @return a copy of leaves without the leaf at pos, or null if there are no other leaves
+	 */
+	protected static byte[] removeLeaf(byte[] leaves, int pos) {
+		int length = LEAF_OVERHEAD + leafLength(leaves, pos);
+		if (length == leaves.length)
+			return null;
+		byte[] result = new byte[leaves.length - length];
+		System.arraycopy(leaves, 0, result, 0, pos);
+		System.arraycopy(leaves, pos + length, result, pos, leaves.length - pos - length);
+		return result;
+	}
 	
-	public ContentTree() {
-		_root = new TreeNode();
-		_root.component = null; // Only the root has a null value
+	/**
+	 * Make a node for a leaf of a compact tree. The node isn't part of the tree.
+	 */
+	protected TreeNode leafNode(byte[] leaves, int pos) {
+		int length = leafLength(leaves, pos);
+		TreeNode node = new TreeNode();
+		node.component = new byte[length];
+		System.arraycopy(leaves, pos + 2, node.component, 0, length);
+		node.oneContent = _packer.unpack(leafRef(leaves, pos));
+		return node;
+	}
+	
+	/**
+	 * Replace a leaf of a compact tree by a node. Must be called holding the lock on the parent.
+	 * 
+	 * @param parent the node holding the leaf
+	 * @param pos the position of the leaf
+	 * @param ref the content for the node, or null to keep the content of the leaf
+	 * @return the new node
+	 */
+	protected TreeNode replaceLeaf(TreeNode parent, int pos, ContentRef ref) {
+		byte[] l = parent.leaves;
+		TreeNode node = leafNode(l, pos);
+		if (null != ref)
+			node.oneContent = ref;
+		addChild(parent, node);
+		parent.leaves = removeLeaf(l, pos);
+		return node;
+	}
+	
+	/**
+	 * @return true if the references refer to the same content. References unpacked from a
+	 * 	compact tree are new objects each time, so they are compared by their packed values.
+	 */
+	protected boolean sameRef(ContentRef ref1, ContentRef ref2) {
+		if (ref1 == ref2)
+			return true;
+		if (null == _packer || null == ref1 || null == ref2)
+			return false;
+		long packed = _packer.pack(ref1);
+		return packed >= 0 && packed == _packer.pack(ref2);
 	}
 	
 	/**
@@ -354,118 +564,236 @@ public class ContentTree {
 		if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
 			Log.fine(Log.FAC_REPO, "inserting content: {0}", name);
 		}
+		if (!insertContent(name, content, ref, ts, getter, ner))
+			return false;
+		if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
+			Log.fine(Log.FAC_REPO, "Inserted: {0}", content.name());
+		}
+		return true;
+	}
+
+	/**
+	 * Insert entry for content whose full name is already known, such as content listed in
+	 * a saved index. Since the full name includes the digest, content with the same full name
+	 * as existing content is taken to be a duplicate without retrieving either.
+	 *
+	 * @param name the full name of the content including its digest
+	 * @param ref pointer to position of data in the file storage
+	 * @param ts last modification time of the data
+	 * @return - true if there was no content with this name
+	 */
+	public boolean insert(ContentName name, ContentRef ref, long ts) {
+		return insertContent(name, null, ref, ts, null, null);
+	}
+
+	/**
+	 * Insert an entry for content
+	 * 
+	 * @param name the full name of the content
+	 * @param content the content, or null to treat any content with the same full name as a duplicate
+	 * @param ref pointer to position of data in the file storage
+	 * @param ts last modification time of the data
+	 * @param getter to retrieve previous content to check for duplication
+	 * @param ner NameEnumerationResponse object to populate if the insert occurs at a parent
+	 *   with the interest flag set
+	 * @return - true if content is not a duplicate of existing content.
+	 */
+	private boolean insertContent(ContentName name, ContentObject content, ContentRef ref, long ts,
+			ContentGetter getter, NameEnumerationResponse ner) {
+		retry: while (true) {
+			TreeNode node;
+			if (null == _packer || name.count() == 0) {
+				node = insertNode(name, name.count(), ts, ner);
+			} else {
+				// In a compact tree new content goes in a leaf unless its name already has a node
+				TreeNode parent = insertNode(name, name.count() - 1, ts, ner);
+				byte[] component = name.lastComponent();
+				synchronized (parent) {
+					if (parent.dead)
+						continue retry;
+					byte[] l = parent.leaves;
+					int pos = null == l ? -1 : findLeaf(l, component);
+					if (pos >= 0) {
+						if (isDuplicate(content, _packer.unpack(leafRef(l, pos)), getter))
+							return false;
+						node = replaceLeaf(parent, pos, null);
+					} else {
+						node = parent.getNodeChild(component);
+						if (null == node) {
+							long packed = _packer.pack(ref);
+							if (packed >= 0 && component.length <= MAX_LEAF_COMPONENT) {
+								parent.leaves = addLeaf(l, -1 - pos, component, packed);
+								childAdded(parent, name, component, ts, ner);
+								return true;
+							}
+							node = new TreeNode();
+							node.component = component;
+							addChild(parent, node);
+							childAdded(parent, name, component, ts, ner);
+						}
+					}
+				}
+			}
+
+			// Content may be inserted from several threads, for example while indexing several files
+			// at once, so the duplicate check and the addition must be done together
+			synchronized (node) {
+				if (node.dead)
+					continue retry;
+				// Check for duplicate content
+				List<ContentRef> refs = node.getContent();
+				if (null != refs) {
+					for (ContentRef oldRef : refs) {
+						if (isDuplicate(content, oldRef, getter))
+							return false;
+					}
+				}
+
+				addContent(node, ref);
+			}
+			return true;
+		}
+	}
+	
+	private boolean isDuplicate(ContentObject content, ContentRef oldRef, ContentGetter getter) {
+		if (null == content)
+			return true;
+		ContentObject prev = getter.get(oldRef);
+		return null != prev && content.equals(prev);
+	}
+
+	/**
+	 * Find the node for a name, adding nodes to the tree as needed
+	 *
+	 * @param name the full name
+	 * @param count the number of components of the name to find the node for
+	 * @param ts last modification time of the data to be inserted
+	 * @param ner NameEnumerationResponse object to populate if the insert occurs at a parent
+	 *   with the interest flag set
+	 * @return the node for the last component of the name
+	 */
+	protected TreeNode insertNode(ContentName name, int count, long ts, NameEnumerationResponse ner) {
 		TreeNode node = _root; // starting point
 		assert(null != _root);
-		boolean added = false;
 		
-		for (byte[] component : name) {
+		for (int i = 0; i < count; i++) {
+			byte[] component = name.component(i);
 			synchronized(node) {
+				if (node.dead) {
+					// Removed since we found it, so start again
+					node = _root;
+					i = -1;
+					continue;
+				}
 				//Library.finest("getting node for component: "+new String(component));
-				TreeNode child = node.getChild(component);
+				TreeNode child = node.getNodeChild(component);
+				if (null == child && null != node.leaves) {
+					// Content is being added below a leaf, so it needs a node
+					int pos = findLeaf(node.leaves, component);
+					if (pos >= 0)
+						child = replaceLeaf(node, pos, null);
+				}
 				if (null == child) {
 					if (Log.isLoggable(Log.FAC_REPO, Level.FINEST)) {
 						Log.finest(Log.FAC_REPO, "child was null: adding here");
 					}
 					// add it
-					added = true;
 					child = new TreeNode();
 					child.component = component;
-					if (null == node.oneChild && null == node.children) {
-						// This is first and only child of current node
-						node.oneChild = child;
-					} else if (null == node.oneChild) {
-						// Multiple children already, just add this one to current node
-						node.children.put(child, child);
-					} else {
-						// Second child in current node, need to switch to list
-						node.children = new TreeMap<TreeNode, TreeNode>();
-						node.children.put(node.oneChild, node.oneChild);
-						node.children.put(child, child);
-						node.oneChild = null;
-					}
-					if (node.neSent && (node.timestamp == ts)) {
-						if (Log.isLoggable(Log.FAC_REPO, Level.WARNING)) {
-							Log.warning(Log.FAC_REPO, "WARNING - info inserted at {0} since last NE without timestamp update - could cause NE miss", 
-									name);
-						}
-					}
-					node.neSent = false;
-					node.timestamp = ts;
-					
-					if (node.interestFlag && (ner != null && ner.getPrefix()==null)){
-						//we have added something to this node and someone was interested
-						//we need to get the child names and the prefix to send back
-						if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
-							Log.info(Log.FAC_REPO, "we added at least one child, need to send a name enumeration response");
-						}
-						ContentName prefix = name.cut(component);
-	
-						prefix = new ContentName(prefix, COMMAND_MARKER_BASIC_ENUMERATION);
-						if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
-							Log.info(Log.FAC_REPO, "prefix for FastNEResponse: {0}", prefix);
-							Log.info(Log.FAC_REPO, "response name will be: {0}",
-									new ContentName(prefix, COMMAND_MARKER_BASIC_ENUMERATION, new NDNTime(node.timestamp)));
-						}
-	
-						ArrayList<ContentName> names = new ArrayList<ContentName>();
-						// the parent has children we need to return
-						if (node.oneChild != null) {
-							names.add(new ContentName(node.oneChild.component));
-						} else {
-							if (node.children != null) {
-								for (TreeNode ch : node.children.keySet())
-									names.add(new ContentName(ch.component));
-							}
-						}
-						ner.setPrefix(prefix);
-						ner.setNameList(names);
-						ner.setTimestamp(new NDNTime(node.timestamp));
-						if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
-							Log.info(Log.FAC_REPO, "resetting interestFlag to false");
-						}
-						node.interestFlag = false;
-					}
+					addChild(node, child);
+					childAdded(node, name, component, ts, ner);
 				}
 				
 				//Library.finest("child was not null: moving down the tree");
 				node = child;
 			}
 		}
+		return node;
+	}
+	
+	/**
+	 * Add a child node. Must be called holding the lock on the parent.
+	 */
+	protected void addChild(TreeNode node, TreeNode child) {
+		if (null == node.oneChild && null == node.children) {
+			// This is first and only child of current node
+			node.oneChild = child;
+		} else if (null == node.oneChild) {
+			// Multiple children already, just add this one to current node
+			node.children.put(child, child);
+		} else {
+			// Second child in current node, need to switch to list
+			ConcurrentSkipListMap<TreeNode, TreeNode> children = new ConcurrentSkipListMap<TreeNode, TreeNode>();
+			children.put(node.oneChild, node.oneChild);
+			children.put(child, child);
+			node.children = children;
+			node.oneChild = null;
+		}
+	}
+	
+	/**
+	 * Update a node to which a new child has been added, and prepare a name enumeration response
+	 * if one is waiting for it. Must be called holding the lock on the node.
+	 */
+	private void childAdded(TreeNode node, ContentName name, byte[] component, long ts, NameEnumerationResponse ner) {
+		if (node.neSent && (node.timestamp == ts)) {
+			if (Log.isLoggable(Log.FAC_REPO, Level.WARNING)) {
+				Log.warning(Log.FAC_REPO, "WARNING - info inserted at {0} since last NE without timestamp update - could cause NE miss", 
+						name);
+			}
+		}
+		node.neSent = false;
+		node.timestamp = ts;
 		
-		// Check for duplicate content
-		if (!added) {
-			if (null != node.oneContent) {
-				ContentObject prev = getter.get(node.oneContent);
-				if (null != prev && content.equals(prev))
-					return false;
-			} else if (null != node.content) {
-				for (ContentRef oldRef : node.content) {
-					ContentObject prev = getter.get(oldRef);
-					if (null != prev && content.equals(prev))
-						return false;
-				}
+		if (node.interestFlag && (ner != null && ner.getPrefix()==null)){
+			//we have added something to this node and someone was interested
+			//we need to get the child names and the prefix to send back
+			if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
+				Log.info(Log.FAC_REPO, "we added at least one child, need to send a name enumeration response");
+			}
+			ContentName prefix = name.cut(component);
+
+			prefix = new ContentName(prefix, COMMAND_MARKER_BASIC_ENUMERATION);
+			if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
+				Log.info(Log.FAC_REPO, "prefix for FastNEResponse: {0}", prefix);
+				Log.info(Log.FAC_REPO, "response name will be: {0}",
+						new ContentName(prefix, COMMAND_MARKER_BASIC_ENUMERATION, new NDNTime(node.timestamp)));
+			}
+
+			ArrayList<ContentName> names = new ArrayList<ContentName>();
+			// the parent has children we need to return
+			for (TreeNode ch : node.getChildren().keySet())
+				names.add(new ContentName(ch.component));
+			ner.setPrefix(prefix);
+			ner.setNameList(names);
+			ner.setTimestamp(new NDNTime(node.timestamp));
+			if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
+				Log.info(Log.FAC_REPO, "resetting interestFlag to false");
 			}
+			node.interestFlag = false;
 		}
+	}
 
-		// At conclusion of this loop, node must be holding the last node for this name
-		// so we insert the ref there
+	/**
+	 * Add a reference to content to the node for its name
+	 */
+	protected void addContent(TreeNode node, ContentRef ref) {
 		if (null == node.oneContent && null == node.content) {
 			// This is first and only content at this leaf
 			node.oneContent = ref;
 		} else if (null == node.oneContent) {
-			// Multiple content already at this node, add this one
-			node.content.add(ref);
+			// Multiple content already at this node, add this one to a copy of the list
+			ArrayList<ContentRef> content = new ArrayList<ContentRef>(node.content);
+			content.add(ref);
+			node.content = content;
 		} else {
 			// Second content at current node, need to switch to list
-			node.content = new ArrayList<ContentRef>();
-			node.content.add(node.oneContent);
-			node.content.add(ref);
+			ArrayList<ContentRef> content = new ArrayList<ContentRef>();
+			content.add(node.oneContent);
+			content.add(ref);
+			node.content = content;
 			node.oneContent = null;
 		}
-		if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
-			Log.fine(Log.FAC_REPO, "Inserted: {0}", content.name());
-		}
-		return true;
 	}
 
 	/**
@@ -484,17 +812,15 @@ public class ContentTree {
 		}
 		
 		for (byte[] component : name) {
-			synchronized(node) {
-				TreeNode child = node.getChild(component);
-				if (null == child) {
-					// Mismatch, no child for the given component so nothing under this name
-					return null;
-				}
-				node = child;
-				count--;
-				if (count < 1) {
-					break;
-				}
+			TreeNode child = node.getChild(component);
+			if (null == child) {
+				// Mismatch, no child for the given component so nothing under this name
+				return null;
+			}
+			node = child;
+			count--;
+			if (count < 1) {
+				break;
 			}
 		}
 		return node;
@@ -509,18 +835,202 @@ public class ContentTree {
 	protected final List<ContentRef> lookup(ContentName name) {
 		TreeNode node = lookupNode(name, name.count());
 		if (null != node) {
-			if (null != node.oneContent) {
-				ArrayList<ContentRef> result = new ArrayList<ContentRef>();
-				result.add(node.oneContent);
-				return result;
-			} else {
-				return node.content;
-			}
+			return node.getContent();
 		} else {
 			return null;	
 		}
 	}
 	
+	/**
+	 * List all the content in the tree
+	 * 
+	 * @param names the full names of the content are added here
+	 * @param refs the references to the content are added here, in the same order as the names
+	 */
+	public void getContentRefs(List<ContentName> names, List<ContentRef> refs) {
+		getContentRefs(_root, new ContentName(), names, refs);
+	}
+	
+	private void getContentRefs(TreeNode node, ContentName nodeName, List<ContentName> names, List<ContentRef> refs) {
+		List<ContentRef> content = node.getContent();
+		if (null != content) {
+			for (ContentRef ref : content) {
+				names.add(nodeName);
+				refs.add(ref);
+			}
+		}
+		NavigableMap<TreeNode, TreeNode> children = node.getChildren();
+		if (null != children) {
+			for (TreeNode child : children.keySet())
+				getContentRefs(child, new ContentName(nodeName, child.component), names, refs);
+		}
+	}
+	
+	/**
+	 * Replace a reference to content, for example when the content has been moved to another place
+	 * in the file storage.
+	 * 
+	 * @param name the full name of the content
+	 * @param oldRef the current reference
+	 * @param newRef the new reference
+	 * @return false if oldRef is no longer in the tree
+	 */
+	public boolean replace(ContentName name, ContentRef oldRef, ContentRef newRef) {
+		if (null != _packer && name.count() > 0) {
+			TreeNode parent = lookupNode(name, name.count() - 1);
+			if (null == parent)
+				return false;
+			synchronized (parent) {
+				byte[] l = parent.leaves;
+				int pos = null == l ? -1 : findLeaf(l, name.lastComponent());
+				if (pos >= 0) {
+					if (leafRef(l, pos) != _packer.pack(oldRef))
+						return false;
+					long packed = _packer.pack(newRef);
+					if (packed >= 0)
+						parent.leaves = addLeaf(removeLeaf(l, pos), pos, name.lastComponent(), packed);
+					else
+						replaceLeaf(parent, pos, newRef);
+					return true;
+				}
+			}
+		}
+		TreeNode node = lookupNode(name, name.count());
+		if (null == node)
+			return false;
+		synchronized (node) {
+			if (sameRef(node.oneContent, oldRef)) {
+				node.oneContent = newRef;
+				return true;
+			} else if (null != node.content) {
+				for (int i = 0; i < node.content.size(); i++) {
+					if (sameRef(node.content.get(i), oldRef)) {
+						ArrayList<ContentRef> content = new ArrayList<ContentRef>(node.content);
+						content.set(i, newRef);
+						node.content = content;
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Remove a name and all the content under it from the tree. Nodes left with no content
+	 * or children are removed from their parents, which are marked as updated so that name
+	 * enumeration will report the change.
+	 * 
+	 * @param name the name to remove
+	 * @param ts the time of the removal
+	 * @return false if the name was not in the tree
+	 */
+	public boolean remove(ContentName name, long ts) {
+		if (name.count() == 0)
+			return false;
+		ArrayList<TreeNode> path = new ArrayList<TreeNode>(name.count() + 1);
+		path.add(_root);
+		for (int i = 0; i < name.count(); i++) {
+			TreeNode parent = path.get(i);
+			TreeNode child = parent.getChild(name.component(i));
+			if (null == child)
+				return false;
+			path.add(child);
+		}
+		for (int i = name.count(); i > 0; i--) {
+			TreeNode parent = path.get(i - 1);
+			synchronized (parent) {
+				if (parent.dead)
+					break;		// Removed by someone else
+				// Find the node again now its parent is locked - a leaf may have been replaced by a node
+				TreeNode node = parent.getChild(name.component(i - 1));
+				if (null == node)
+					break;
+				// Only the removed node itself loses its children and content - its ancestors are
+				// removed only if that leaves them empty. The node stays locked until it is unlinked
+				// and marked dead so that nothing can be inserted into it in the meantime.
+				synchronized (node) {
+					if (i < name.count() && (null != node.getChildren() || node.hasContent()))
+						break;
+					// An emptied children map is left in place, so that readers never see neither
+					// oneChild nor children while there are children
+					if (null != parent.oneChild && parent.oneChild.compEquals(node.component)) {
+						parent.oneChild = null;
+					} else if (null == parent.children || null == parent.children.remove(node)) {
+						// The node may be a leaf of a compact tree
+						byte[] l = parent.leaves;
+						int pos = null == l ? -1 : findLeaf(l, node.component);
+						if (pos >= 0)
+							parent.leaves = removeLeaf(l, pos);
+					}
+					markDead(node);
+				}
+				parent.timestamp = ts;
+				parent.neSent = false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Mark a node which has been removed from the tree, and the nodes below it, as dead.
+	 * Must be called holding the lock on the node.
+	 */
+	private void markDead(TreeNode node) {
+		node.dead = true;
+		TreeNode one = node.oneChild;
+		if (null != one) {
+			synchronized (one) {
+				markDead(one);
+			}
+		}
+		ConcurrentSkipListMap<TreeNode, TreeNode> children = node.children;
+		if (null != children) {
+			for (TreeNode child : children.keySet()) {
+				synchronized (child) {
+					markDead(child);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Find versions which are older than the newest versions under a prefix. Anywhere under
+	 * the prefix that there are versions of a name, all but the newest <code>keep</code> of them
+	 * are returned.
+	 * 
+	 * @param prefix the prefix to search under
+	 * @param keep the number of versions of each name to keep
+	 * @return the names of the older versions
+	 */
+	public ArrayList<ContentName> getOlderVersions(ContentName prefix, int keep) {
+		ArrayList<ContentName> result = new ArrayList<ContentName>();
+		TreeNode node = lookupNode(prefix, prefix.count());
+		if (null != node)
+			getOlderVersions(node, prefix, keep, result);
+		return result;
+	}
+	
+	private void getOlderVersions(TreeNode node, ContentName nodeName, int keep, List<ContentName> result) {
+		NavigableMap<TreeNode, TreeNode> map = node.getChildren();
+		if (null == map)
+			return;
+		ArrayList<TreeNode> children = new ArrayList<TreeNode>(map.keySet());
+		// Children are in canonical order, which for versions is oldest first
+		int versions = 0;
+		for (TreeNode child : children) {
+			if (VersioningProfile.isVersionComponent(child.component))
+				versions++;
+		}
+		for (TreeNode child : children) {
+			ContentName childName = new ContentName(nodeName, child.component);
+			if (VersioningProfile.isVersionComponent(child.component) && versions-- > keep)
+				result.add(childName);
+			else
+				getOlderVersions(child, childName, keep, result);
+		}
+	}
+	
 	/**
 	 * Dump current names to an output file for debugging
 	 * 
@@ -552,12 +1062,15 @@ public class ContentTree {
 		}
 		int mylen = myname.length();
 		output.print(myname);
-		if (null != node.oneChild) {
+		NavigableMap<TreeNode, TreeNode> children = node.getChildren();
+		if (null == children) {
+			return;
+		} else if (children.size() == 1) {
 			output.print("---");
-			dumpRecurse(output, node.oneChild, String.format("%s%" + mylen + "s   ", indent, ""), maxNodeLen);
-		} else if (null != node.children) {
-			int count = 1; int last = node.children.size();
-			for (TreeNode child : node.children.values()) {
+			dumpRecurse(output, children.firstKey(), String.format("%s%" + mylen + "s   ", indent, ""), maxNodeLen);
+		} else {
+			int count = 1; int last = children.size();
+			for (TreeNode child : children.values()) {
 				if (1 == count) {
 					// First child
 					output.print("-+-");
@@ -598,23 +1111,39 @@ public class ContentTree {
 
 		boolean initialMatch = publisherFreeInterest.matches(digestFreeName, null); 
 
-		if (initialMatch) {
-			synchronized(node) {
-				if (null != node.oneContent) {
-					ContentObject cand = getter.get(node.oneContent);
-					if (interest.matches(cand)) {
-						return cand;
-					}
-				} else {
-					assert(null != node.content);
-					for (ContentRef ref : node.content) {
-						ContentObject cand = getter.get(ref);
-						if (interest.matches(cand)) {
-							return cand;
-						}
-					}
-				}
+		if (initialMatch)
+			return getMatch(interest, nodeName, node.getContent(), getter);
+		return null;
+	}
+
+	/**
+	 * Read the content for the references to a name until one matches. A reference which can't
+	 * be read may have been replaced while we were using it - compaction moves content to a new
+	 * data file and then deletes the old one - so if any reads fail the name is looked up again
+	 * and any new references are tried.
+	 *
+	 * @param interest - interest to match against
+	 * @param name	   - the full name the references were found for
+	 * @param refs	   - the references
+	 * @param getter   - getter to get actual data for final match
+	 * @return matching ContentObject if any, null otherwise
+	 */
+	private ContentObject getMatch(Interest interest, ContentName name, List<ContentRef> refs, ContentGetter getter) {
+		for (int attempt = 0; attempt < 2 && null != refs; attempt++) {
+			boolean failed = false;
+			for (ContentRef ref : refs) {
+				ContentObject cand = getter.get(ref);
+				if (null == cand)
+					failed = true;
+				else if (interest.matches(cand))
+					return cand;
 			}
+			if (!failed)
+				break;
+			List<ContentRef> current = lookup(name);
+			if (null == current || current.equals(refs))
+				break;
+			refs = current;
 		}
 		return null;
 	}
@@ -677,14 +1206,11 @@ public class ContentTree {
 			}
 
 			//the parent has children we need to return
-			synchronized (parent) {		// Make sure especially that nobody changes from oneChild to children behind our back
-				if (parent.oneChild!=null) {
-					names.add(new ContentName(parent.oneChild.component));
-				} else {
-					if (parent.children!=null) {
-						for (TreeNode ch:parent.children.keySet())
-							names.add(new ContentName(ch.component));
-					}
+			synchronized (parent) {		// Make sure nobody adds a child between listing the children and clearing the flag
+				NavigableMap<TreeNode, TreeNode> children = parent.getChildren();
+				if (children!=null) {
+					for (TreeNode ch:children.keySet())
+						names.add(new ContentName(ch.component));
 				}
 				
 				if (names.size()>0) {
@@ -714,17 +1240,7 @@ public class ContentTree {
 		int ncc = interest.name().count();
 		if (null != addl && addl.intValue() == 0) {
 			// Query is for exact match to full name with digest, no additional components
-			List<ContentRef> found = lookup(interest.name());
-			if (found!=null) {
-				for (ContentRef ref : found) {
-					ContentObject cand = getter.get(ref);
-					if (null != cand) {
-						if (interest.matches(cand)) {
-							return cand;
-						}
-					}
-				}
-			}
+			return getMatch(interest, interest.name(), lookup(interest.name()), getter);
 		} else {
 			// Traverse to find latest match
 			TreeNode prefixRoot = lookupNode(interest.name(), ncc);
@@ -742,7 +1258,6 @@ public class ContentTree {
 						getter, ncc, false);
 			}
 		}
-		return null;
 	}
 	
 	/**
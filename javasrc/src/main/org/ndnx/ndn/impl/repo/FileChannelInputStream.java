@@ -0,0 +1,86 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * FileChannelInputStream extends InputStream to read a backend repository file
+ * from a given position using positional reads. The stream keeps its own position
+ * and never moves the position of the channel, so any number of streams can read
+ * from the same channel at the same time.
+ *
+ * This class is intended for backend repository use and is not meant
+ * for general NDN stream use.
+ *
+ * @see InputStream
+ * @see FileChannel
+ */
+public class FileChannelInputStream extends InputStream {
+
+	protected FileChannel underlying;
+	protected long position;
+
+	/**
+	 * Constructor to set the channel and the position to start reading from.
+	 * @param channel Backend file channel
+	 * @param position offset in the file of the first byte to read
+	 */
+	public FileChannelInputStream(FileChannel channel, long position) {
+		underlying = channel;
+		this.position = position;
+	}
+
+	/**
+	 * @return int Next byte of the file (-1 if no more data is available)
+	 * @throws IOException
+	 */
+	@Override
+	public int read() throws IOException {
+		byte [] b = new byte[1];
+		int n = read(b, 0, 1);
+		return (n <= 0) ? -1 : (b[0] & 0xff);
+	}
+
+	/**
+	 * Method to read len bytes into byte[] b starting at a specific offset.
+	 *
+	 * @param b byte[] to read bytes into
+	 * @param off starting position for reading
+	 * @param len number of bytes to read into the byte array
+	 *
+	 * @return int number of bytes read into the byte array (-1 if no more data is available)
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		int n = underlying.read(ByteBuffer.wrap(b, off, len), position);
+		if (n > 0)
+			position += n;
+		return n;
+	}
+}
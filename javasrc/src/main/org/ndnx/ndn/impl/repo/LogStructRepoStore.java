@@ -21,19 +21,33 @@
 package org.ndnx.ndn.impl.repo;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.security.InvalidKeyException;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import org.ndnx.ndn.NDNHandle;
@@ -60,12 +74,13 @@ import org.ndnx.ndn.protocol.MalformedContentNameStringException;
  * Implements a log-structured RepositoryStore on a filesystem using sequential data files with an index for queries
  */
 
-public class LogStructRepoStore extends RepositoryStoreBase implements RepositoryStore, ContentTree.ContentGetter {
+public class LogStructRepoStore extends RepositoryStoreBase implements RepositoryStore, ContentTree.ContentGetter, ContentTree.ContentRefPacker {
 
 	public final static String CURRENT_VERSION = "1.4";
 		
 	public static class LogStructRepoStoreProfile implements NDNProfile {
 		public final static String META_DIR = ".meta";
+		public final static String INDEX_DIR = "index";
 		public final static String NORMAL_COMPONENT = "0";
 		public final static String SPLIT_COMPONENT = "1";
 		
@@ -88,29 +103,171 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 
 		private static String DIAG_NAMETREE = "nametree"; // Diagnostic/signal to dump name tree to debug file
 		private static String DIAG_NAMETREEWIDE = "nametreewide"; // Same as DIAG_NAMETREE but with wide names per node
+		private static String DIAG_COMPACT = "compact"; // Start compaction of the data files
 	}
 	
 	protected String _repositoryRoot = null;
 	protected String _repositoryMeta = null;
+	protected File _indexDir = null;
 	protected File _repositoryFile;
 	protected boolean _useStoredPolicy = true;
 
 	Map<Integer,RepoFile> _files;
-	RepoFile _activeWriteFile = null;
+	volatile RepoFile _activeWriteFile = null;
 	Integer _currentFileIndex = 0;
 	ContentTree _index;
+	RepoContentCache _contentCache = null;
+	RepoNegativeCache _negativeCache = null;
+	RepoNameFilter _nameFilter = null;
+	// Count of reads which failed, so a search which missed because of one isn't negatively cached
+	protected final AtomicLong _readFailures = new AtomicLong();
 	
 	protected HashMap<String, String> _bulkImportInProgress = new HashMap<String, String>();
 	
+	// Compaction progress
+	protected final Object _compactionLock = new Object();
+	protected boolean _compacting = false;
+	protected volatile int _compactionTotal = 0;
+	protected volatile int _compactionMoved = 0;
+	protected volatile int _compactionDropped = 0;
+	protected volatile long _compactionBytesReclaimed = 0;
+	
 	public static class RepoFile {
 		File file;
 		RandomAccessFile openFile;
 		long nextWritePos;
+		RepoFileIndex index;
+		// For reads - these are separate from openFile so readers never share a file pointer
+		RandomAccessFile readFile;
+		volatile FileChannel readChannel;
+		volatile MappedByteBuffer map;
+		// Set if mapping the file failed, after which it is read through readChannel instead
+		volatile boolean unmappable = false;
+		// Set once reads are closed, after which the file may be deleted - it must not be reopened
+		boolean closed = false;
+		
+		/**
+		 * Get the channel used for positional reads, opening it if necessary
+		 * @throws ClosedChannelException if reads have been closed
+		 */
+		FileChannel readChannel() throws IOException {
+			FileChannel channel = readChannel;
+			if (null == channel) {
+				synchronized (this) {
+					if (closed)
+						throw new ClosedChannelException();
+					if (null == readChannel) {
+						readFile = new RandomAccessFile(file, "r");
+						readChannel = readFile.getChannel();
+					}
+					channel = readChannel;
+				}
+			}
+			return channel;
+		}
+		
+		/**
+		 * Get a read only mapping of the whole file, mapping it if necessary. Since data
+		 * is only ever appended to the file, the mapping stays valid for every object that
+		 * starts before its limit.
+		 * 
+		 * @return the mapping or null if the file is too big to map or mapping it failed
+		 * @throws ClosedChannelException if reads have been closed
+		 */
+		MappedByteBuffer map() throws IOException {
+			MappedByteBuffer mapped = map;
+			if (null == mapped) {
+				if (unmappable)
+					return null;
+				FileChannel channel = readChannel();
+				synchronized (this) {
+					if (closed)
+						throw new ClosedChannelException();
+					if (null == map) {
+						long size = channel.size();
+						if (unmappable || size > Integer.MAX_VALUE)
+							return null;
+						try {
+							map = map(channel, size);
+						} catch (ClosedChannelException e) {
+							throw e;
+						} catch (IOException e) {
+							// Typically the address space is exhausted - don't try again
+							unmappable = true;
+							Log.warning(Log.FAC_REPO, "Can't map {0}, reading it without mapping: {1}", file.getName(), e.getMessage());
+							return null;
+						}
+					}
+					mapped = map;
+				}
+			}
+			return mapped;
+		}
+		
+		/**
+		 * Map the first size bytes of the file read only
+		 */
+		MappedByteBuffer map(FileChannel channel, long size) throws IOException {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		
+		/**
+		 * Release the resources used for reads. They can't be reopened after this.
+		 */
+		synchronized void closeRead() throws IOException {
+			closed = true;
+			map = null;
+			readChannel = null;
+			if (null != readFile) {
+				readFile.close();
+				readFile = null;
+			}
+		}
 	}
 	
 	protected static class FileRef extends ContentRef {
 		int id;
 		long offset;
+		
+		// References are compared by value so that content can be cached by its reference
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof FileRef))
+				return false;
+			FileRef other = (FileRef)obj;
+			return id == other.id && offset == other.offset;
+		}
+		
+		@Override
+		public int hashCode() {
+			return 31 * id + (int)(offset ^ (offset >>> 32));
+		}
+	}
+	
+	// A packed FileRef has the file id in its top bits and the offset in the rest
+	protected static final int PACKED_OFFSET_BITS = 40;
+	protected static final long PACKED_OFFSET_MASK = (1L << PACKED_OFFSET_BITS) - 1;
+	
+	/**
+	 * Pack a reference for a compact index
+	 * 
+	 * @param ref the reference
+	 * @return the packed reference, or -1 if the file id or offset is too large
+	 */
+	public long pack(ContentRef ref) {
+		FileRef fref = (FileRef)ref;
+		if (fref.id < 0 || fref.id >= (1 << (63 - PACKED_OFFSET_BITS)) || fref.offset < 0 || fref.offset > PACKED_OFFSET_MASK)
+			return -1;
+		return ((long)fref.id << PACKED_OFFSET_BITS) | fref.offset;
+	}
+	
+	public ContentRef unpack(long packed) {
+		FileRef ref = new FileRef();
+		ref.id = (int)(packed >>> PACKED_OFFSET_BITS);
+		ref.offset = packed & PACKED_OFFSET_MASK;
+		return ref;
 	}
 
 	/**
@@ -121,7 +278,33 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 	 */
 	public ContentObject getContent(Interest interest)
 			throws RepositoryException {
+		RepoNameFilter nameFilter = _nameFilter;
+		if (null != nameFilter && !nameFilter.match(interest.name())) {
+			if (null != _stats)
+				_stats.increment(RepositoryServer.StatsEnum.NameFilterRejects);
+			if( Log.isLoggable(Log.FAC_REPO, Level.FINE) )
+				Log.fine(Log.FAC_REPO, "Looking for: " + interest.name() + ": Nothing under the name");
+			return null;
+		}
+		RepoNegativeCache negativeCache = _negativeCache;
+		long generation = 0;
+		long failures = _readFailures.get();
+		if (null != negativeCache) {
+			if (negativeCache.contains(interest)) {
+				if (null != _stats)
+					_stats.increment(RepositoryServer.StatsEnum.NegativeCacheHits);
+				if( Log.isLoggable(Log.FAC_REPO, Level.FINE) )
+					Log.fine(Log.FAC_REPO, "Looking for: " + interest.name() + ": Known not to be here");
+				return null;
+			}
+			if (null != _stats)
+				_stats.increment(RepositoryServer.StatsEnum.NegativeCacheMisses);
+			generation = negativeCache.generation();
+		}
 		ContentObject co =  _index.get(interest, this);
+		// If a read failed the content may still be here
+		if (null == co && null != negativeCache && _readFailures.get() == failures)
+			negativeCache.put(interest, generation);
 		if( Log.isLoggable(Log.FAC_REPO, Level.FINE) )
 			Log.fine(Log.FAC_REPO, "Looking for: " + interest.name() + (co == null ? ": Didn't find it" : ": Found it"));
 		return co;
@@ -133,6 +316,9 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 	 * @return true if there is a ContentObject with exactly the given name, false otherwise
 	 */
 	public boolean hasContent(ContentName name) throws RepositoryException {
+		RepoNameFilter nameFilter = _nameFilter;
+		if (null != nameFilter && !nameFilter.match(name))
+			return false;
 		return _index.matchContent(name);
 	}
 
@@ -165,16 +351,21 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 
 	/**
 	 * Read the current repository file(s) for this repository and create an index for them.
-	 * WARNING: multiple files are not well tested
+	 * If there are several files they are read in parallel by up to SystemConfiguration.REPO_INDEX_THREADS
+	 * threads, each adding the objects from one file to the index as it reads them. Where the same
+	 * content is in several files the index refers to the copy in the earliest file, so the index
+	 * is the same however many threads build it. The name filter is rebuilt along with the index.
 	 * 
 	 * @return the number of files making up the repository
 	 */
 	protected Integer createIndex() {
 		int max = 0;
-		_index = new ContentTree();
+		_index = SystemConfiguration.REPO_INDEX_COMPACT ? new ContentTree(this) : new ContentTree();
+		_nameFilter = SystemConfiguration.REPO_NAME_FILTER_BITS > 0 ? new RepoNameFilter(SystemConfiguration.REPO_NAME_FILTER_BITS) : null;
 		assert(null != _repositoryFile);
 		assert(_repositoryFile.isDirectory());
 		String[] filenames = _repositoryFile.list();
+		TreeMap<Integer, String> sorted = new TreeMap<Integer, String>();
 		for (int i = 0; i < filenames.length; i++) {
 			if (filenames[i].startsWith(LogStructRepoStoreProfile.CONTENT_FILE_PREFIX)) {
 				String indexPart = filenames[i].substring(LogStructRepoStoreProfile.CONTENT_FILE_PREFIX.length());
@@ -183,9 +374,44 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 					if (index > max) {
 						max = index.intValue();
 					}
-					try {
-						createIndex(filenames[i], index, false);
-					} catch (RepositoryException e) {}	// This can't happen
+					sorted.put(index, filenames[i]);
+				}
+			}
+		}
+		final ArrayList<String> dataFiles = new ArrayList<String>(sorted.values());
+		final ArrayList<Integer> indices = new ArrayList<Integer>(sorted.keySet());
+		
+		int threads = Math.min(SystemConfiguration.REPO_INDEX_THREADS, dataFiles.size());
+		if (threads <= 1) {
+			for (int i = 0; i < dataFiles.size(); i++) {
+				try {
+					createIndex(dataFiles.get(i), indices.get(i), false);
+				} catch (RepositoryException e) {}	// This can't happen
+			}
+		} else {
+			if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
+				Log.info(Log.FAC_REPO, "Creating index for {0} files with {1} threads", dataFiles.size(), threads);
+			}
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			ArrayList<Future<?>> results = new ArrayList<Future<?>>(dataFiles.size());
+			for (int i = 0; i < dataFiles.size(); i++) {
+				final int file = i;
+				results.add(pool.submit(new Runnable() {
+					public void run() {
+						try {
+							createIndex(dataFiles.get(file), indices.get(file), false);
+						} catch (RepositoryException e) {}	// This can't happen
+					}
+				}));
+			}
+			pool.shutdown();
+			for (int i = 0; i < results.size(); i++) {
+				try {
+					results.get(i).get();
+				} catch (InterruptedException e) {
+					Log.warning(Log.FAC_REPO, "Interrupted while creating index for {0}", dataFiles.get(i));
+				} catch (ExecutionException e) {
+					Log.warning(Log.FAC_REPO, "Error creating index for {0}: {1}", dataFiles.get(i), e.getCause());
 				}
 			}
 		}
@@ -201,6 +427,10 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 	 * Because index creation can now be done while the repo is actively doing file searches, care must be
 	 * taken to synchronize events correctly.
 	 * 
+	 * Unless this is an import, we start from the index saved for the file (see RepoFileIndex) and only
+	 * decode the objects after the last one in the saved index. If the saved index is missing or doesn't
+	 * match the file, the whole file is decoded and the saved index rebuilt.
+	 * 
 	 * @param fileName
 	 * @param index
 	 * @param fromImport - this is an "import" file.
@@ -227,26 +457,32 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 				_files.put(index, rfile);
 			}
 			
-			// Its true that its "OK" for someone to be reading the nodes as we are creating them
-			// but now we have to be careful to keep our filepointer correct, since it could be modified
-			// by a reader. The seek to a new spot in get is synchronized under the "RepoFile", so we
-			// keep track of where our pointer was also synchronized under the RepoFile so we can restore
-			// it to where it was in the case someone was reading one of our previously created nodes
-			// while the index creation is in progress.
-			long nextOffset = 0;
+			rfile.index = new RepoFileIndex(new File(_indexDir, fileName));
+			long nextOffset = fromImport ? -1 : loadSavedIndex(rfile, index);
+			if (nextOffset < 0) {
+				nextOffset = 0;
+				rfile.index.reset();
+			}
+			
+			// Its true that its "OK" for someone to be reading the nodes as we are creating them.
+			// Readers in get use their own channel and position, so they don't move our file pointer,
+			// but we still keep track of where our pointer was under the RepoFile so that nothing
+			// else using openFile can disturb the index creation.
 			while (true) {
 				FileRef ref = new FileRef();
 				ContentObject tmp = new ContentObject();
 				synchronized (rfile) {
 					ref.id = index.intValue();
 					ref.offset = nextOffset;
-					rfile.openFile.seek(nextOffset);	// In case a get changed this in the meantime
+					rfile.openFile.seek(nextOffset);
 					if(ref.offset > 0)
 						ref.offset = ref.offset - is.available();
 					try {
 						if (rfile.openFile.getFilePointer()<rfile.openFile.length() || is.available()!=0) {
 							tmp.decode(is);
 							nextOffset = rfile.openFile.getFilePointer();
+							long end = nextOffset - is.available();
+							rfile.index.append(ref.offset, (int)(end - ref.offset), tmp.fullName());
 						}
 						else{
 							if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
@@ -269,8 +505,11 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 						break;
 					}
 				}
-				_index.insert(tmp, ref, rfile.file.lastModified(), this, null);
+				if (null != _nameFilter)
+					_nameFilter.add(tmp.fullName());
+				indexContent(tmp.fullName(), tmp, ref, rfile.file.lastModified());
 			}
+			rfile.index.close();
 		} catch (NumberFormatException e) {
 			// Not valid file
 			Log.warning(Log.FAC_REPO, "Invalid file name " +fileName);
@@ -281,6 +520,73 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		}
 	}
 	
+	/**
+	 * Add the objects listed in the saved index for a file to the ContentTree. The saved index is only
+	 * used if the objects at the first and last offsets it lists have the names it gives for them.
+	 * 
+	 * @param rfile the file
+	 * @param index the number of the file
+	 * @return the offset after the last object in the saved index, or -1 if it can't be used
+	 * @throws IOException
+	 */
+	private long loadSavedIndex(RepoFile rfile, Integer index) throws IOException {
+		List<RepoFileIndex.Record> records = rfile.index.load(rfile.file.length());
+		if (null == records)
+			return -1;
+		if (records.isEmpty())
+			return 0;
+		RepoFileIndex.Record last = records.get(records.size() - 1);
+		if (!checkSavedRecord(index, records.get(0)) || !checkSavedRecord(index, last)) {
+			Log.warning(Log.FAC_REPO, "Saved index for {0} doesn't match its data - rebuilding it", rfile.file.getName());
+			return -1;
+		}
+		long ts = rfile.file.lastModified();
+		for (RepoFileIndex.Record record : records) {
+			FileRef ref = new FileRef();
+			ref.id = index.intValue();
+			ref.offset = record.offset;
+			if (null != _nameFilter)
+				_nameFilter.add(record.name);
+			indexContent(record.name, null, ref, ts);
+		}
+		if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
+			Log.info(Log.FAC_REPO, "Loaded {0} objects from saved index for {1}", records.size(), rfile.file.getName());
+		}
+		return last.offset + last.length;
+	}
+	
+	/**
+	 * Add content read while creating the index. If the content is already indexed from a later
+	 * file, which can happen when files are indexed in parallel, refer to this copy instead.
+	 * 
+	 * @param name the full name of the content
+	 * @param content the content, or null if only its name has been read
+	 */
+	private void indexContent(ContentName name, ContentObject content, FileRef ref, long ts) {
+		boolean indexed = (null != content) ? _index.insert(content, ref, ts, this, null) : _index.insert(name, ref, ts);
+		while (!indexed) {
+			List<ContentRef> refs = _index.lookup(name);
+			FileRef later = null;
+			if (null != refs) {
+				for (ContentRef existing : refs) {
+					if (((FileRef)existing).id > ref.id) {
+						later = (FileRef)existing;
+						break;
+					}
+				}
+			}
+			indexed = null == later || _index.replace(name, later, ref);
+		}
+	}
+	
+	private boolean checkSavedRecord(Integer index, RepoFileIndex.Record record) {
+		FileRef ref = new FileRef();
+		ref.id = index.intValue();
+		ref.offset = record.offset;
+		ContentObject co = get(ref);
+		return null != co && co.fullName().equals(record.name);
+	}
+	
 	/**
 	 * Initialize the repository
 	 * 
@@ -326,6 +632,8 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		_repositoryMeta = _repositoryRoot + UserConfiguration.FILE_SEP + LogStructRepoStoreProfile.META_DIR;
 		File metaDirFile = new File(_repositoryMeta);
 		metaDirFile.mkdirs();
+		_indexDir = new File(metaDirFile, LogStructRepoStoreProfile.INDEX_DIR);
+		_indexDir.mkdirs();
 		if (Log.isLoggable(Log.FAC_REPO, Level.WARNING)){
 			Log.warning(Log.FAC_REPO, "Starting repository; repository root is: {0}", _repositoryFile.getAbsolutePath());
 		}
@@ -382,16 +690,15 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		// Internal initialization
 		_files = new HashMap<Integer, RepoFile>();
 		_currentFileIndex = createIndex();
+		if (SystemConfiguration.REPO_CACHE_BYTES > 0)
+			_contentCache = new RepoContentCache(SystemConfiguration.REPO_CACHE_BYTES);
+		if (SystemConfiguration.REPO_NEGATIVE_CACHE > 0)
+			_negativeCache = new RepoNegativeCache(SystemConfiguration.REPO_NEGATIVE_CACHE);
 		
 		try {
 			if (_currentFileIndex == 0) {
 				_currentFileIndex = 1; // the index of a file we will actually write
-				RepoFile rfile = new RepoFile();
-				rfile.file = new File(_repositoryFile, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX+"1");
-				rfile.openFile = new RandomAccessFile(rfile.file, "rw");
-				rfile.nextWritePos = 0;
-				_files.put(new Integer(_currentFileIndex), rfile);
-				_activeWriteFile = rfile;
+				_activeWriteFile = createWriteFile(_currentFileIndex);
 			} else {
 				RepoFile rfile = _files.get(new Integer(_currentFileIndex));
 				long cursize = rfile.file.length();
@@ -402,6 +709,8 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 			
 		} catch (FileNotFoundException e) {
 			Log.warning(Log.FAC_REPO, "Error opening content output file index " + _currentFileIndex);
+		} catch (IOException e) {
+			Log.warning(Log.FAC_REPO, "Error creating saved index for content output file index " + _currentFileIndex);
 		}
 			
 		// Verify stored policy info
@@ -475,39 +784,393 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 	 * @returns NameEnumerationResponse if this satisfies an outstanding NameEnumeration request
 	 */
 	public NameEnumerationResponse saveContent(ContentObject content) throws RepositoryException {
+		ArrayList<ContentObject> contents = new ArrayList<ContentObject>(1);
+		contents.add(content);
+		return saveContent(contents).get(0);
+	}
+	
+	/**
+	 * Save a batch of content in the repository store. The objects are encoded into a single
+	 * buffer which is appended to the data file with one write, and optionally forced to stable
+	 * storage, before any of them are added to the index.
+	 * 
+	 * @param contents the content to save
+	 * @throws RepositoryException if the content can not be written, or if the only object
+	 * 	in the batch can not be encoded
+	 * @returns the NameEnumerationResponse for each object, null for objects that could not be encoded
+	 */
+	public ArrayList<NameEnumerationResponse> saveContent(List<ContentObject> contents) throws RepositoryException {
+		ArrayList<NameEnumerationResponse> responses = new ArrayList<NameEnumerationResponse>(contents.size());
+		
+		// Encode outside of the lock
+		ByteArrayOutputStream batch = new ByteArrayOutputStream(contents.size() * 4096);
+		int [] lengths = encode(contents, batch);
+		if (contents.size() == 1 && lengths[0] < 0)
+			throw new RepositoryException("Failed to encode content: " + contents.get(0).name());
+		
+		FileRef [] refs;
+		try {
+			refs = append(contents, batch, lengths);
+		} catch (IOException e) {
+			throw new RepositoryException("Failed to write content: " + e.getMessage());
+		}
 		// Make sure content is within allowable nameSpace
-		if (null == _activeWriteFile) {
-			Log.warning(Log.FAC_REPO, "Tried to save: {0}, presumably after repo shutdown", content.name());
-			return null;
+		if (null == refs) {
+			for (ContentObject content : contents) {
+				Log.warning(Log.FAC_REPO, "Tried to save: {0}, presumably after repo shutdown", content.name());
+				responses.add(null);
+			}
+			return responses;
 		}
-		try {	
+		
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < contents.size(); i++) {
+			if (null == refs[i]) {
+				responses.add(null);
+				continue;
+			}
 			NameEnumerationResponse ner = new NameEnumerationResponse();
-			synchronized(_activeWriteFile) {
-				assert(null != _activeWriteFile.openFile);
-				FileRef ref = new FileRef();
-				ref.id = Integer.parseInt(_activeWriteFile.file.getName().substring(LogStructRepoStoreProfile.CONTENT_FILE_PREFIX.length()));
-				ref.offset = _activeWriteFile.nextWritePos;
-				_activeWriteFile.openFile.seek(_activeWriteFile.nextWritePos);
-				OutputStream os = new RandomAccessOutputStream(_activeWriteFile.openFile);
-				content.encode(os);
-				_activeWriteFile.nextWritePos = _activeWriteFile.openFile.getFilePointer();
-				_index.insert(content, ref, System.currentTimeMillis(), this, ner);
-				if (ner==null || ner.getPrefix()==null) {
-					if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
-						Log.fine(Log.FAC_REPO, "new content did not trigger an interest flag");
+			// Added to the filter first so content in the index always matches it
+			if (null != _nameFilter)
+				_nameFilter.add(contents.get(i).fullName());
+			if (_index.insert(contents.get(i), refs[i], now, this, ner) && null != _negativeCache)
+				_negativeCache.added(contents.get(i).fullName());
+			if (ner==null || ner.getPrefix()==null) {
+				if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
+					Log.fine(Log.FAC_REPO, "new content did not trigger an interest flag");
+				}
+			} else {
+				if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
+					Log.fine(Log.FAC_REPO, "new content was added where there was a name enumeration response interest flag");
+				}
+			}
+			responses.add(ner);
+		}
+		return responses;
+	}
+	
+	/**
+	 * Encode content into a buffer
+	 * 
+	 * @param contents the content to encode
+	 * @param batch the buffer
+	 * @return the encoded length of each object, or -1 for objects that could not be encoded
+	 */
+	private int [] encode(List<ContentObject> contents, ByteArrayOutputStream batch) {
+		int [] lengths = new int[contents.size()];
+		for (int i = 0; i < contents.size(); i++) {
+			ContentObject content = contents.get(i);
+			try {
+				byte [] encoded = content.encode();
+				batch.write(encoded, 0, encoded.length);
+				lengths[i] = encoded.length;
+			} catch (ContentEncodingException e) {
+				Log.warning(Log.FAC_REPO, "Failed to encode content {0}: {1}", content.name(), e.getMessage());
+				lengths[i] = -1;
+			}
+		}
+		return lengths;
+	}
+	
+	/**
+	 * Append encoded content to the active data file and its saved index. If this takes the
+	 * data file to SystemConfiguration.REPO_FILE_SIZE, a new data file is started.
+	 * 
+	 * @param contents the content
+	 * @param batch the encoded content
+	 * @param lengths the encoded length of each object, -1 for objects which are not in the batch
+	 * @return references to the content, with null for objects which are not in the batch,
+	 * 		or null if the repository has been shut down
+	 * @throws IOException
+	 */
+	private FileRef [] append(List<ContentObject> contents, ByteArrayOutputStream batch, int [] lengths) throws IOException {
+		while (true) {
+			RepoFile file = _activeWriteFile;
+			if (null == file)
+				return null;
+			FileRef [] refs;
+			synchronized (file) {
+				if (file != _activeWriteFile)
+					continue;	// We started a new data file while we were waiting
+				if (null == file.openFile)
+					return null;
+				int id = Integer.parseInt(file.file.getName().substring(LogStructRepoStoreProfile.CONTENT_FILE_PREFIX.length()));
+				long offset = file.nextWritePos;
+				file.openFile.seek(offset);
+				batch.writeTo(new RandomAccessOutputStream(file.openFile));
+				if (SystemConfiguration.REPO_WRITE_SYNC)
+					file.openFile.getFD().sync();
+				file.nextWritePos = file.openFile.getFilePointer();
+				
+				refs = new FileRef[contents.size()];
+				for (int i = 0; i < contents.size(); i++) {
+					if (lengths[i] < 0)
+						continue;
+					refs[i] = new FileRef();
+					refs[i].id = id;
+					refs[i].offset = offset;
+					offset += lengths[i];
+					try {
+						file.index.append(refs[i].offset, lengths[i], contents.get(i).fullName());
+					} catch (IOException e) {
+						// The saved index will stop here and the rest of the file will be decoded at startup
+						Log.warning(Log.FAC_REPO, "Failed to save index entry for {0}: {1}", contents.get(i).name(), e.getMessage());
+					}
+				}
+			}
+			// Must not hold the file's lock here - see rollActiveFile
+			if (SystemConfiguration.REPO_FILE_SIZE > 0 && file.nextWritePos >= SystemConfiguration.REPO_FILE_SIZE)
+				rollActiveFile(file);
+			return refs;
+		}
+	}
+	
+	/**
+	 * Create a new empty data file to write to
+	 * 
+	 * @param index the number of the file
+	 * @return the file
+	 * @throws IOException
+	 */
+	private RepoFile createWriteFile(Integer index) throws IOException {
+		RepoFile rfile = new RepoFile();
+		rfile.file = new File(_repositoryFile, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + index);
+		rfile.openFile = new RandomAccessFile(rfile.file, "rw");
+		rfile.nextWritePos = 0;
+		rfile.index = new RepoFileIndex(new File(_indexDir, rfile.file.getName()));
+		rfile.index.reset();
+		synchronized (_files) {
+			_files.put(index, rfile);
+		}
+		return rfile;
+	}
+	
+	/**
+	 * Start writing to a new data file. The current data file is closed for writing and
+	 * will not change again. Our lock is taken before the lock of the current data file,
+	 * so this must not be called with the data file's lock held.
+	 * 
+	 * @param expected if not null, only start a new file if this is still the current one
+	 * @throws IOException
+	 */
+	protected synchronized void rollActiveFile(RepoFile expected) throws IOException {
+		RepoFile old = _activeWriteFile;
+		if (null != expected && old != expected)
+			return;
+		if (null == old.openFile)
+			return;		// Shut down
+		RepoFile rfile = createWriteFile(_currentFileIndex + 1);
+		_currentFileIndex++;
+		synchronized (old) {
+			_activeWriteFile = rfile;
+			if (null != old.openFile) {
+				old.openFile.close();
+				old.openFile = null;
+			}
+			old.index.close();
+		}
+		if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
+			Log.info(Log.FAC_REPO, "Started new data file {0}", rfile.file.getName());
+		}
+	}
+
+	/**
+	 * Stop searches in progress from negatively caching interests, since they may have
+	 * looked up content which compaction has since moved
+	 */
+	private void indexChanged() {
+		RepoNegativeCache negativeCache = _negativeCache;
+		if (null != negativeCache)
+			negativeCache.changed();
+	}
+
+	/**
+	 * Compact the repository. All data files except the one currently being written are
+	 * replaced by writing the content they hold which is still in the index to the current
+	 * data file. This drops duplicate copies of content and content which has been removed
+	 * from the index. Content in the old files is moved a batch at a time, so the repository
+	 * keeps serving while it is compacted.
+	 * 
+	 * Before the content is moved, older versions are removed according to the retention policy,
+	 * and if requested content outside the repository's namespace is removed.
+	 * 
+	 * @param retention for each prefix, the number of versions of each name under the prefix to keep.
+	 * 		May be null.
+	 * @param pruneNamespace if true remove content which is not under the policy namespace
+	 * @return false if a compaction was already in progress
+	 * @throws RepositoryException
+	 */
+	public boolean compact(Map<ContentName, Integer> retention, boolean pruneNamespace) throws RepositoryException {
+		synchronized (_compactionLock) {
+			if (_compacting)
+				return false;
+			_compacting = true;
+			_compactionMoved = 0;
+			_compactionDropped = 0;
+			_compactionTotal = 0;
+			_compactionBytesReclaimed = 0;
+		}
+		try {
+			long now = System.currentTimeMillis();
+			if (null != retention) {
+				for (Map.Entry<ContentName, Integer> policy : retention.entrySet()) {
+					for (ContentName version : _index.getOlderVersions(policy.getKey(), policy.getValue())) {
+						if (_index.remove(version, now)) {
+							_compactionDropped++;
+							indexChanged();
+						}
+					}
+				}
+			}
+			
+			// Holding our lock also waits for any bulk import to finish being indexed
+			HashMap<Integer, RepoFile> oldFiles = new HashMap<Integer, RepoFile>();
+			long oldBytes = 0;
+			synchronized (this) {
+				rollActiveFile(null);
+				synchronized (_files) {
+					for (Map.Entry<Integer, RepoFile> entry : _files.entrySet()) {
+						if (entry.getValue() != _activeWriteFile) {
+							oldFiles.put(entry.getKey(), entry.getValue());
+							oldBytes += entry.getValue().file.length();
+						}
+					}
+				}
+			}
+			
+			ArrayList<ContentName> names = new ArrayList<ContentName>();
+			ArrayList<ContentRef> refs = new ArrayList<ContentRef>();
+			_index.getContentRefs(names, refs);
+			ArrayList<Integer> live = new ArrayList<Integer>();
+			for (int i = 0; i < refs.size(); i++) {
+				if (!oldFiles.containsKey(((FileRef)refs.get(i)).id))
+					continue;
+				if (pruneNamespace && !inNamespace(names.get(i))) {
+					if (_index.remove(names.get(i), now)) {
+						_compactionDropped++;
+						indexChanged();
+					}
+					continue;
+				}
+				live.add(i);
+			}
+			_compactionTotal = live.size();
+			
+			// Read in file order
+			final ArrayList<ContentRef> liveRefs = refs;
+			Collections.sort(live, new Comparator<Integer>() {
+				public int compare(Integer i1, Integer i2) {
+					FileRef r1 = (FileRef)liveRefs.get(i1);
+					FileRef r2 = (FileRef)liveRefs.get(i2);
+					if (r1.id != r2.id)
+						return r1.id < r2.id ? -1 : 1;
+					return r1.offset < r2.offset ? -1 : (r1.offset == r2.offset ? 0 : 1);
+				}
+			});
+			
+			int maxBatch = Math.max(1, SystemConfiguration.REPO_WRITE_BATCH);
+			long newBytes = 0;
+			for (int start = 0; start < live.size(); start += maxBatch) {
+				List<Integer> moving = live.subList(start, Math.min(start + maxBatch, live.size()));
+				ArrayList<ContentObject> contents = new ArrayList<ContentObject>(moving.size());
+				ArrayList<Integer> moved = new ArrayList<Integer>(moving.size());
+				for (Integer i : moving) {
+					ContentObject content = get(refs.get(i));
+					if (null == content) {
+						Log.warning(Log.FAC_REPO, "Compaction can't read {0} - removing it", names.get(i));
+						if (_index.remove(names.get(i), now)) {
+							_compactionDropped++;
+							indexChanged();
+						}
+						continue;
 					}
-				} else {
-					if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
-						Log.fine(Log.FAC_REPO, "new content was added where there was a name enumeration response interest flag");
+					contents.add(content);
+					moved.add(i);
+				}
+				ByteArrayOutputStream batch = new ByteArrayOutputStream(contents.size() * 4096);
+				int [] lengths = encode(contents, batch);
+				FileRef [] newRefs = append(contents, batch, lengths);
+				if (null == newRefs)
+					throw new RepositoryException("Repository shut down during compaction");
+				newBytes += batch.size();
+				for (int j = 0; j < moved.size(); j++) {
+					int i = moved.get(j);
+					if (null != newRefs[j] && _index.replace(names.get(i), refs.get(i), newRefs[j])) {
+						_compactionMoved++;
+						indexChanged();
 					}
 				}
-				return ner;
 			}
-		} catch (ContentEncodingException e) {
-			throw new RepositoryException("Failed to encode content: " + e.getMessage());
+			
+			for (Map.Entry<Integer, RepoFile> entry : oldFiles.entrySet()) {
+				RepoFile rfile = entry.getValue();
+				synchronized (_files) {
+					_files.remove(entry.getKey());
+				}
+				try {
+					rfile.closeRead();
+				} catch (IOException e) {}
+				if (null != rfile.index)
+					rfile.index.delete();
+				if (!rfile.file.delete())
+					Log.warning(Log.FAC_REPO, "Compaction couldn't delete {0}", rfile.file.getName());
+			}
+			_compactionBytesReclaimed = oldBytes - newBytes;
+			if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
+				Log.info(Log.FAC_REPO, "Compaction replaced {0} files: moved {1} objects, dropped {2}, reclaimed {3} bytes", 
+						oldFiles.size(), _compactionMoved, _compactionDropped, _compactionBytesReclaimed);
+			}
+			return true;
 		} catch (IOException e) {
-			throw new RepositoryException("Failed to write content: " + e.getMessage());
+			throw new RepositoryException("Compaction failed: " + e.getMessage());
+		} finally {
+			synchronized (_compactionLock) {
+				_compacting = false;
+			}
+		}
+	}
+	
+	private boolean inNamespace(ContentName name) {
+		ArrayList<ContentName> namespace = getNamespace();
+		if (null == namespace || namespace.isEmpty())
+			return true;
+		for (ContentName prefix : namespace) {
+			if (prefix.isPrefixOf(name))
+				return true;
 		}
+		return false;
+	}
+	
+	/**
+	 * Parse a retention policy in the form of SystemConfiguration.REPO_RETENTION
+	 * 
+	 * @param policy the policy
+	 * @return for each prefix, the number of versions to keep
+	 * @throws RepositoryException if the policy can't be parsed
+	 */
+	public static Map<ContentName, Integer> parseRetention(String policy) throws RepositoryException {
+		HashMap<ContentName, Integer> retention = new HashMap<ContentName, Integer>();
+		if (null == policy)
+			return retention;
+		for (String entry : policy.split(",")) {
+			entry = entry.trim();
+			if (entry.length() == 0)
+				continue;
+			int split = entry.lastIndexOf('=');
+			try {
+				if (split <= 0)
+					throw new NumberFormatException();
+				int keep = Integer.parseInt(entry.substring(split + 1).trim());
+				if (keep < 1)
+					throw new NumberFormatException();
+				retention.put(ContentName.fromURI(entry.substring(0, split).trim()), keep);
+			} catch (NumberFormatException e) {
+				throw new RepositoryException("Bad retention policy " + entry + " - must be prefix=count with count at least 1");
+			} catch (MalformedContentNameStringException e) {
+				throw new RepositoryException("Bad prefix in retention policy " + entry + ": " + e.getMessage());
+			}
+		}
+		return retention;
 	}
 
 	/**
@@ -515,30 +1178,62 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 	 * comparison operations.
 	 * 
 	 * @param ref the reference
-	 * @return ContentObject at the referenced slot in the storage files
+	 * @return ContentObject at the referenced slot in the storage files, or null if it can't be
+	 * 	read. That includes a reference to a file which has been replaced by compaction, in which
+	 * 	case the index has a new reference to the content.
 	 */
 	public ContentObject get(ContentRef ref) {
 		// This is a call back based on what we put in ContentTree, so it must be
 		// using our subtype of ContentRef
 		FileRef fref = (FileRef)ref;
+		RepoContentCache cache = _contentCache;
+		if (null != cache) {
+			ContentObject content = cache.get(fref);
+			if (null != _stats)
+				_stats.increment(null != content ? RepositoryServer.StatsEnum.ContentCacheHits : RepositoryServer.StatsEnum.ContentCacheMisses);
+			if (null != content)
+				return content;
+		}
+		RepoFile file = null;
 		try {
-			RepoFile file = null;
 			synchronized (_files) {
 				file = _files.get(fref.id);
 			}
-			if (null == file)
+			if (null == file) {
+				_readFailures.incrementAndGet();
 				return null;
-			synchronized (file) {
-				if (null == file.openFile) {
-					file.openFile = new RandomAccessFile(file.file, "r");
+			}
+			
+			// No locking is needed here - each read has its own view of the mapped file or
+			// its own position in the file, so reads from the same file can proceed in parallel.
+			// The file being written is not mapped since it would have to be remapped as it grows.
+			InputStream is = null;
+			if (SystemConfiguration.REPO_MMAP && file != _activeWriteFile) {
+				MappedByteBuffer map = file.map();
+				if (null != map && fref.offset < map.limit()) {
+					ByteBuffer view = map.duplicate();
+					view.position((int)fref.offset);
+					is = new ByteBufferInputStream(view);
 				}
-				file.openFile.seek(fref.offset);
-				ContentObject content = new ContentObject();
-				InputStream is = new BufferedInputStream(new RandomAccessInputStream(file.openFile), 8192);
-				content.decode(is);
-				return content;
 			}
+			if (null == is)
+				is = new BufferedInputStream(new FileChannelInputStream(file.readChannel(), fref.offset), 8192);
+			ContentObject content = new ContentObject();
+			content.decode(is);
+			if (null != cache) {
+				int evicted = cache.put(fref, content);
+				if (null != _stats && evicted > 0)
+					_stats.increment(RepositoryServer.StatsEnum.ContentCacheEvictions, evicted);
+			}
+			return content;
+		} catch (ClosedChannelException e) {
+			// Compaction retired the file while we were reading it
+			_readFailures.incrementAndGet();
+			if (Log.isLoggable(Log.FAC_REPO, Level.FINE))
+				Log.fine(Log.FAC_REPO, "Can't get content from closed file {0}", file.file.getName());
+			return null;
 		} catch (Exception e) {
+			_readFailures.incrementAndGet();
 			Log.warning(Log.FAC_REPO, "Can't get content: " + e);
 			return null;
 		}
@@ -622,6 +1317,27 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		} else if (0 == name.compareToIgnoreCase(LogStructRepoStoreProfile.DIAG_NAMETREEWIDE)) {
 			dumpNames(-1);
 			return true;
+		} else if (0 == name.compareToIgnoreCase(LogStructRepoStoreProfile.DIAG_COMPACT)) {
+			final Map<ContentName, Integer> retention;
+			try {
+				retention = parseRetention(SystemConfiguration.REPO_RETENTION);
+			} catch (RepositoryException e) {
+				Log.warning(Log.FAC_REPO, e.getMessage());
+				return false;
+			}
+			Thread compactor = new Thread("Repository compaction") {
+				@Override
+				public void run() {
+					try {
+						compact(retention, SystemConfiguration.REPO_COMPACT_NAMESPACE);
+					} catch (RepositoryException e) {
+						Log.warning(Log.FAC_REPO, e.getMessage());
+					}
+				}
+			};
+			compactor.setDaemon(true);
+			compactor.start();
+			return true;
 		}
 		return false;
 	}
@@ -644,6 +1360,7 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 				synchronized (_activeWriteFile) {
 					_activeWriteFile.openFile.close();
 					_activeWriteFile.openFile = null;
+					_activeWriteFile.index.close();
 				}
 			} catch (IOException e) {}
 		}
@@ -651,9 +1368,24 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 			Log.warning(Log.FAC_REPO, "Debug flag ({0}) is set: dumping nametree now (on shutdown)", DEBUGGING_FLAGS.REPO_EXITDUMP.toString());
 			dumpNames(-1);
 		}
+		if (null != _files) {
+			synchronized (_files) {
+				for (RepoFile rfile : _files.values()) {
+					try {
+						rfile.closeRead();
+					} catch (IOException e) {}
+				}
+			}
+		}
 	}
 
 	public Object getStatus(String type) {
+		if (type.equals(RepositoryStore.REPO_COMPACTION_STATUS_REQUEST)) {
+			synchronized (_compactionLock) {
+				return (_compacting ? "compacting" : "idle") + ": moved " + _compactionMoved + " of " + _compactionTotal
+						+ " objects, dropped " + _compactionDropped + ", reclaimed " + _compactionBytesReclaimed + " bytes";
+			}
+		}
 		return type.equals(RepositoryStore.REPO_SIMPLE_STATUS_REQUEST) 
 				? ((null == _activeWriteFile.openFile) ? null : "running") : null;
 	}
@@ -686,6 +1418,10 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 			repoFile.renameTo(file);
 			_bulkImportInProgress.remove(name);
 			throw re;
+		} finally {
+			// Any of the imported content may match interests which matched nothing before
+			if (null != _negativeCache)
+				_negativeCache.clear();
 		}
 		_bulkImportInProgress.remove(name);
 		return true;
@@ -0,0 +1,132 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.ndnx.ndn.protocol.ContentObject;
+
+/**
+ * A cache of content read from repository storage, so that popular content such as the
+ * first segment or header of a file can be returned without reading and decoding it again
+ * each time it is asked for. Content is cached by its ContentRef, so the references a store
+ * uses must implement equals and hashCode.
+ *
+ * The cache is bounded in bytes of content and the least recently used objects are evicted
+ * to stay within that bound.
+ */
+public class RepoContentCache {
+
+	protected static class Entry {
+		protected final ContentObject _content;
+		protected final long _size;
+
+		protected Entry(ContentObject content, long size) {
+			_content = content;
+			_size = size;
+		}
+	}
+
+	protected final long _maxBytes;
+	protected final LinkedHashMap<ContentRef, Entry> _byUse = new LinkedHashMap<ContentRef, Entry>(16, 0.75f, true);
+	protected long _bytes = 0;
+
+	/**
+	 * @param maxBytes maximum total size of the objects held
+	 */
+	public RepoContentCache(long maxBytes) {
+		if (maxBytes <= 0)
+			throw new IllegalArgumentException("Cache size must be positive");
+		_maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param ref the reference to the content in storage
+	 * @return the cached content or null if it isn't cached
+	 */
+	public synchronized ContentObject get(ContentRef ref) {
+		Entry entry = _byUse.get(ref);
+		return null == entry ? null : entry._content;
+	}
+
+	/**
+	 * Add content to the cache. Content larger than the whole cache is not added.
+	 *
+	 * @param ref the reference to the content in storage
+	 * @param content the content
+	 * @return the number of objects evicted to make room for it
+	 */
+	public int put(ContentRef ref, ContentObject content) {
+		long size = size(content);
+		if (size > _maxBytes)
+			return 0;
+		int evicted = 0;
+		synchronized (this) {
+			Entry old = _byUse.put(ref, new Entry(content, size));
+			if (null != old)
+				_bytes -= old._size;
+			_bytes += size;
+			Iterator<Entry> lru = _byUse.values().iterator();
+			while (_bytes > _maxBytes) {
+				Entry victim = lru.next();
+				lru.remove();
+				_bytes -= victim._size;
+				evicted++;
+			}
+		}
+		return evicted;
+	}
+
+	/**
+	 * @return the number of objects cached
+	 */
+	public synchronized int size() {
+		return _byUse.size();
+	}
+
+	/**
+	 * @return the total size of the objects cached
+	 */
+	public synchronized long bytes() {
+		return _bytes;
+	}
+
+	/**
+	 * Remove all content
+	 */
+	public synchronized void clear() {
+		_byUse.clear();
+		_bytes = 0;
+	}
+
+	/**
+	 * Approximate the memory used by an object by the size of its name and content, and
+	 * of the encoding it keeps if it was decoded. Objects read from the repository are
+	 * decoded lazily and keep their encoding alongside the content once it is used.
+	 */
+	private static long size(ContentObject content) {
+		long size = content.contentLength() + content.encodedLength();
+		for (int i = 0; i < content.name().count(); i++)
+			size += content.name().component(i).length;
+		return size;
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.ndnx.ndn.impl.NDNNetworkManager;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.protocol.ContentName;
+
+/**
+ * Saved index for one of the data files of a LogStructRepoStore. For each object in the data file
+ * the index holds its offset, its length and its full name, so that the repository's ContentTree can
+ * be rebuilt at startup without decoding the data file. Records are appended as objects are written.
+ *
+ * Each record carries a checksum. When the index is loaded, reading stops at the first record which
+ * is damaged, such as a partly written record left by a crash, or which doesn't follow on from the
+ * previous record within the data file. The index is then truncated after the last good record, and
+ * the caller should decode any objects in the data file after that point and append records for them.
+ * Since appending records is only an optimization, records may be buffered and lost in a crash.
+ */
+public class RepoFileIndex {
+
+	public static final int MAGIC = 0x4E444958;	// "NDIX"
+	public static final int VERSION = 1;
+	private static final int HEADER_LENGTH = 8;
+	private static final int MAX_COMPONENTS = 1024;
+
+	/**
+	 * The saved location and name of one object
+	 */
+	public static class Record {
+		public final long offset;
+		public final int length;
+		public final ContentName name;
+
+		protected Record(long offset, int length, ContentName name) {
+			this.offset = offset;
+			this.length = length;
+			this.name = name;
+		}
+	}
+
+	protected final File _file;
+	protected DataOutputStream _out = null;
+	protected final ByteArrayOutputStream _record = new ByteArrayOutputStream(256);
+	protected final CRC32 _crc = new CRC32();
+
+	/**
+	 * @param file the index file
+	 */
+	public RepoFileIndex(File file) {
+		_file = file;
+	}
+
+	/**
+	 * Read the saved records, and prepare to append records after the last good one.
+	 *
+	 * @param dataLength current length of the data file
+	 * @return the good records, or null if there is no usable index
+	 * @throws IOException
+	 */
+	public synchronized List<Record> load(long dataLength) throws IOException {
+		close();
+		if (!_file.exists())
+			return null;
+		ArrayList<Record> records = new ArrayList<Record>();
+		long goodLength = HEADER_LENGTH;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(_file), 65536));
+		try {
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					Log.warning(Log.FAC_REPO, "Index file {0} has a bad header - ignoring it", _file.getName());
+					return null;
+				}
+			} catch (EOFException e) {
+				return null;
+			}
+			long nextOffset = 0;
+			CRC32 crc = new CRC32();
+			while (true) {
+				crc.reset();
+				long offset = in.readLong();
+				int length = in.readInt();
+				int count = in.readInt();
+				updateCRC(crc, offset, length, count);
+				if (offset != nextOffset || length <= 0 || offset + length > dataLength || count < 0 || count > MAX_COMPONENTS)
+					break;
+				byte [][] components = new byte[count][];
+				int recordLength = 16;
+				for (int i = 0; i < count; i++) {
+					int len = in.readInt();
+					if (len < 0 || len > NDNNetworkManager.MAX_PAYLOAD)
+						throw new EOFException();
+					components[i] = new byte[len];
+					in.readFully(components[i]);
+					updateCRC(crc, len);
+					crc.update(components[i]);
+					recordLength += 4 + len;
+				}
+				if (in.readInt() != (int)crc.getValue())
+					break;
+				records.add(new Record(offset, length, new ContentName(components)));
+				goodLength += recordLength + 4;
+				nextOffset = offset + length;
+			}
+		} catch (EOFException e) {
+			// Normal end, or a partly written record
+		} finally {
+			in.close();
+		}
+		if (goodLength < _file.length()) {
+			Log.info(Log.FAC_REPO, "Index file {0}: truncating after {1} good records", _file.getName(), records.size());
+			RandomAccessFile raf = new RandomAccessFile(_file, "rw");
+			try {
+				raf.setLength(goodLength);
+			} finally {
+				raf.close();
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Discard any saved records and start a new empty index
+	 * @throws IOException
+	 */
+	public synchronized void reset() throws IOException {
+		close();
+		_file.getParentFile().mkdirs();
+		_out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(_file), 65536));
+		_out.writeInt(MAGIC);
+		_out.writeInt(VERSION);
+	}
+
+	/**
+	 * Add the record for an object. Records must be appended in the order of the objects
+	 * in the data file.
+	 *
+	 * @param offset offset of the object in the data file
+	 * @param length encoded length of the object
+	 * @param name full name of the object, including its digest
+	 * @throws IOException
+	 */
+	public synchronized void append(long offset, int length, ContentName name) throws IOException {
+		if (null == _out) {
+			if (!_file.exists()) {
+				reset();
+			} else {
+				_out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(_file, true), 65536));
+			}
+		}
+		_record.reset();
+		DataOutputStream record = new DataOutputStream(_record);
+		_crc.reset();
+		record.writeLong(offset);
+		record.writeInt(length);
+		record.writeInt(name.count());
+		updateCRC(_crc, offset, length, name.count());
+		for (int i = 0; i < name.count(); i++) {
+			byte [] component = name.component(i);
+			record.writeInt(component.length);
+			record.write(component);
+			updateCRC(_crc, component.length);
+			_crc.update(component);
+		}
+		record.writeInt((int)_crc.getValue());
+		_record.writeTo(_out);
+	}
+
+	/**
+	 * Write out any buffered records
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException {
+		if (null != _out)
+			_out.flush();
+	}
+
+	/**
+	 * Write out any buffered records and close the index file. Appending a record reopens it.
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		if (null != _out) {
+			try {
+				_out.close();
+			} finally {
+				_out = null;
+			}
+		}
+	}
+
+	/**
+	 * Discard the index
+	 */
+	public synchronized void delete() {
+		try {
+			close();
+		} catch (IOException e) {}
+		_file.delete();
+	}
+
+	private static void updateCRC(CRC32 crc, long offset, int length, int count) {
+		updateCRC(crc, (int)(offset >>> 32));
+		updateCRC(crc, (int)offset);
+		updateCRC(crc, length);
+		updateCRC(crc, count);
+	}
+
+	private static void updateCRC(CRC32 crc, int value) {
+		crc.update(value >>> 24);
+		crc.update(value >>> 16);
+		crc.update(value >>> 8);
+		crc.update(value);
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package org.ndnx.ndn.impl.repo;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.ndnx.ndn.protocol.ContentName;
+
+/**
+ * A Bloom filter over the prefixes of the names of the content in a repository, so that
+ * an interest for a name which no content is held under can be rejected without searching
+ * the index. Content can only match an interest if the interest's name is a prefix of the
+ * content's full name, so each prefix of a full name is added, and a name which the filter
+ * doesn't match has no content under it.
+ *
+ * Names are hashed with the feedback shift register used by org.ndnx.ndn.protocol.BloomFilter,
+ * extended from one component of a name to the next so that all the prefixes of a name are
+ * hashed in a single pass over it.
+ *
+ * Names can't be removed, so names whose content has been removed still match until the
+ * filter is rebuilt. Bits are set atomically so names can be added by several threads
+ * while others are testing the filter.
+ */
+public class RepoNameFilter {
+
+	public static final int HASHES = 7;
+	public static final int MIN_BITS = 64;
+	public static final int MAX_BITS = 1 << 30;
+
+	protected static final long SEED = 0x2f3a5c71;
+	protected static final int COMPONENT_END = 257;	// Can't be a byte value + 1
+
+	protected final AtomicLongArray _bits;
+	protected final int _mask;
+
+	/**
+	 * @param bits the number of bits in the filter, rounded up to a power of 2
+	 */
+	public RepoNameFilter(int bits) {
+		if (bits <= 0 || bits > MAX_BITS)
+			throw new IllegalArgumentException("Filter size must be positive and at most " + MAX_BITS);
+		int size = MIN_BITS;
+		while (size < bits)
+			size <<= 1;
+		_bits = new AtomicLongArray(size >> 6);
+		_mask = size - 1;
+	}
+
+	/**
+	 * Add each prefix of a name
+	 *
+	 * @param name the full name of the content, including its digest
+	 */
+	public void add(ContentName name) {
+		long s = SEED;
+		set(s);
+		for (int i = 0; i < name.count(); i++) {
+			s = hash(s, name.component(i));
+			set(s);
+		}
+	}
+
+	/**
+	 * Test whether content may be held under a name.
+	 * Note - a negative result means there is definitely no content under the name, but a
+	 * positive result only means there probably is.
+	 *
+	 * @param name the name
+	 * @return false if no content is held under the name
+	 */
+	public boolean match(ContentName name) {
+		long s = SEED;
+		for (int i = 0; i < name.count(); i++)
+			s = hash(s, name.component(i));
+		for (int i = 0; i < HASHES; i++) {
+			s = nextHash(s, 0);
+			long h = s & _mask;
+			if (0 == (_bits.get((int)(h >> 6)) & (1L << (h & 63))))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of bits in the filter
+	 */
+	public int bits() {
+		return _mask + 1;
+	}
+
+	private void set(long s) {
+		for (int i = 0; i < HASHES; i++) {
+			s = nextHash(s, 0);
+			long h = s & _mask;
+			int word = (int)(h >> 6);
+			long bit = 1L << (h & 63);
+			long old;
+			do {
+				old = _bits.get(word);
+				if (0 != (old & bit))
+					break;
+			} while (!_bits.compareAndSet(word, old, old | bit));
+		}
+	}
+
+	private static long hash(long s, byte [] component) {
+		for (int i = 0; i < component.length; i++)
+			s = nextHash(s, (component[i] & 0xff) + 1);
+		return nextHash(s, COMPONENT_END);
+	}
+
+	private static long nextHash(long s, int u) {
+		long k = 13; // use this many bits of feedback shift output
+		long b = s & ((1 << k) - 1);
+		// fsr primitive polynomial (modulo 2) x**31 + x**13 + 1
+		s = ((s >> k) ^ (b << (31 - k)) ^ (b << (13 - k))) + u;
+		return (s & 0x7FFFFFFF);
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.Interest;
+
+/**
+ * A cache of interests which matched no content in a repository, so that an interest for
+ * absent content which is repeated can be answered without searching again.
+ *
+ * Only content with an interest's name as a prefix can match the interest, so when content
+ * is added the interests for each prefix of its name are removed. An interest which was
+ * searched for while content was being added may have missed that content, so the caller
+ * gets a generation before searching and the interest is only added if no content has been
+ * added since.
+ *
+ * The cache is bounded in number of interests and the interests for the least recently
+ * used names are evicted to stay within that bound.
+ */
+public class RepoNegativeCache {
+
+	protected final int _maxInterests;
+	// Interests which matched nothing, by name in least recently used order. Interests
+	// are compared with equals since their hash codes depend on their nonces.
+	protected final LinkedHashMap<ContentName, ArrayList<Interest>> _byName =
+		new LinkedHashMap<ContentName, ArrayList<Interest>>(16, 0.75f, true);
+	protected int _size = 0;
+	protected long _generation = 0;
+
+	/**
+	 * @param maxInterests maximum number of interests to hold
+	 */
+	public RepoNegativeCache(int maxInterests) {
+		if (maxInterests <= 0)
+			throw new IllegalArgumentException("Cache size must be positive");
+		_maxInterests = maxInterests;
+	}
+
+	/**
+	 * @return true if the interest is known to match no content
+	 */
+	public synchronized boolean contains(Interest interest) {
+		ArrayList<Interest> interests = _byName.get(interest.name());
+		return null != interests && interests.contains(interest);
+	}
+
+	/**
+	 * @return the generation to pass to put for an interest about to be searched for
+	 */
+	public synchronized long generation() {
+		return _generation;
+	}
+
+	/**
+	 * Add an interest which matched no content
+	 *
+	 * @param interest the interest
+	 * @param generation the generation before the interest was searched for
+	 */
+	public synchronized void put(Interest interest, long generation) {
+		if (generation != _generation)
+			return;
+		ArrayList<Interest> interests = _byName.get(interest.name());
+		if (null == interests) {
+			interests = new ArrayList<Interest>(1);
+			_byName.put(interest.name(), interests);
+		} else if (interests.contains(interest)) {
+			return;
+		}
+		interests.add(interest);
+		_size++;
+		Iterator<ArrayList<Interest>> lru = _byName.values().iterator();
+		while (_size > _maxInterests) {
+			ArrayList<Interest> victims = lru.next();
+			lru.remove();
+			_size -= victims.size();
+		}
+	}
+
+	/**
+	 * Remove the interests which content has been added for
+	 *
+	 * @param name the full name of the content, including its digest
+	 */
+	public synchronized void added(ContentName name) {
+		_generation++;
+		if (_size == 0)
+			return;
+		for (int i = 0; i <= name.count(); i++) {
+			ArrayList<Interest> interests = _byName.remove(name.cut(i));
+			if (null != interests)
+				_size -= interests.size();
+		}
+	}
+
+	/**
+	 * Note that content was moved or removed, so a search in progress may have failed to
+	 * read content which is still here
+	 */
+	public synchronized void changed() {
+		_generation++;
+	}
+
+	/**
+	 * @return the number of interests cached
+	 */
+	public synchronized int size() {
+		return _size;
+	}
+
+	/**
+	 * Remove all interests
+	 */
+	public synchronized void clear() {
+		_byName.clear();
+		_size = 0;
+		_generation++;
+	}
+}
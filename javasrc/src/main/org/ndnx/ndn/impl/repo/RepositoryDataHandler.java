@@ -21,6 +21,7 @@
 package org.ndnx.ndn.impl.repo;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
@@ -28,6 +29,7 @@ import java.util.logging.Level;
 import org.ndnx.ndn.config.SystemConfiguration;
 import org.ndnx.ndn.impl.InterestTable;
 import org.ndnx.ndn.impl.InterestTable.Entry;
+import org.ndnx.ndn.impl.NameTrieInterestTable;
 import org.ndnx.ndn.impl.support.Log;
 import org.ndnx.ndn.profiles.nameenum.NameEnumerationResponse;
 import org.ndnx.ndn.protocol.ContentName;
@@ -45,7 +47,7 @@ public class RepositoryDataHandler implements Runnable {
 
 	private final RepositoryServer _server;
 	private final Queue<ContentObject> _queue = new ConcurrentLinkedQueue<ContentObject>();
-	private final InterestTable<ContentName> _pendingKeyChecks = new InterestTable<ContentName>();
+	private final InterestTable<ContentName> _pendingKeyChecks = new NameTrieInterestTable<ContentName>();
 	private boolean _shutdown = false;
 	private boolean _shutdownComplete = false;
 	protected int _currentQueueSize;
@@ -61,8 +63,10 @@ public class RepositoryDataHandler implements Runnable {
 			_throttled = true;
 			_server.setThrottle(true);
 		}
-		_queue.add(co);
-		_queue.notify();
+		synchronized (_queue) {
+			_queue.add(co);
+			_queue.notify();
+		}
 	}
 
 	public void addKeyCheck(ContentName target) {
@@ -74,15 +78,20 @@ public class RepositoryDataHandler implements Runnable {
 	 * The thread also checks for policy updates which may reset the repository's
 	 * namespace and sends "early" nameEnumerationResponses when requested by the
 	 * store.
+	 * 
+	 * Content is saved in batches of up to SystemConfiguration.REPO_WRITE_BATCH objects,
+	 * so that a store can write many objects at once. If REPO_WRITE_DELAY is set we wait
+	 * up to that long for more content to fill a batch.
 	 *
 	 * @see RepositoryStore
 	 */
 	public void run() {
+		int maxBatch = Math.max(1, SystemConfiguration.REPO_WRITE_BATCH);
+		ArrayList<ContentObject> batch = new ArrayList<ContentObject>(maxBatch);
 		while (!_shutdownComplete) {
-			ContentObject co = null;
-			do {
-				co = _queue.poll();
-				if (null == co) {
+			batch.clear();
+			synchronized (_queue) {
+				while (fillBatch(batch, maxBatch) == 0) {
 					if (_shutdown) {
 						synchronized (this) {
 							_shutdownComplete = true;
@@ -94,57 +103,91 @@ public class RepositoryDataHandler implements Runnable {
 						_queue.wait(SystemConfiguration.MEDIUM_TIMEOUT);
 					} catch (InterruptedException e) {}
 				}
-			} while (null == co);
-			_currentQueueSize--;
+				if (SystemConfiguration.REPO_WRITE_DELAY > 0) {
+					long deadline = System.currentTimeMillis() + SystemConfiguration.REPO_WRITE_DELAY;
+					long remaining;
+					while (batch.size() < maxBatch && !_shutdown && (remaining = deadline - System.currentTimeMillis()) > 0) {
+						try {
+							_queue.wait(remaining);
+						} catch (InterruptedException e) {}
+						fillBatch(batch, maxBatch);
+					}
+				}
+			}
+			_currentQueueSize -= batch.size();
 			if (_throttled && _currentQueueSize < THROTTLE_BOTTOM) {
 				_throttled = false;
 				_server.setThrottle(false);
 			}
+
+			ArrayList<NameEnumerationResponse> responses = null;
 			try {
 				if (Log.isLoggable(Log.FAC_REPO, Level.FINER)) {
-					Log.finer(Log.FAC_REPO, "Saving content in: " + co.toString());
+					for (ContentObject co : batch)
+						Log.finer(Log.FAC_REPO, "Saving content in: " + co.toString());
 				}
+				responses = _server.getRepository().saveContent(batch);
+			} catch (Exception e) {
+				e.printStackTrace();
+				Log.logStackTrace(Level.WARNING, e);
+				continue;
+			}
 
-				NameEnumerationResponse ner = _server.getRepository().saveContent(co);
-				if (!_shutdown) {
-					if (ner!=null && ner.hasNames()) {
-						_server.sendEnumerationResponse(ner);
+			for (int i = 0; i < batch.size(); i++) {
+				ContentObject co = batch.get(i);
+				try {
+					NameEnumerationResponse ner = responses.get(i);
+					if (!_shutdown) {
+						if (ner!=null && ner.hasNames()) {
+							_server.sendEnumerationResponse(ner);
+						}
 					}
-				}
 
-				// When a write or some syncs are first requested we don't know what key data
-				// was being used because this is in the ContentObject which of course we didn't
-				// have yet. Bbut we need this data to make sure the key is saved along with the file.
-				// Now we can find the key data and check if we have it already or need to get it
-				// too. Also the key locator that we dont have yet could have been a link. We
-				// didn't know that either. If it was we have to get the data it points to.
-				//
-				// Also we have to check for more locators associated with our new object
-				// and the objects pointed to by the links.
-				Entry<ContentName> entry = _pendingKeyChecks.removeMatch(co);
-				if (null != entry) {
-					ContentName nameToCheck = entry.value();
-					if (Log.isLoggable(Log.FAC_REPO, Level.FINER)) {
-						Log.finer(Log.FAC_REPO, "Processing key check entry: {0}", nameToCheck);
-					}
-					ContentName linkCheck = _server.getLinkedKeyTarget(co);
-					if (null != linkCheck) {
+					// When a write or some syncs are first requested we don't know what key data
+					// was being used because this is in the ContentObject which of course we didn't
+					// have yet. Bbut we need this data to make sure the key is saved along with the file.
+					// Now we can find the key data and check if we have it already or need to get it
+					// too. Also the key locator that we dont have yet could have been a link. We
+					// didn't know that either. If it was we have to get the data it points to.
+					//
+					// Also we have to check for more locators associated with our new object
+					// and the objects pointed to by the links.
+					Entry<ContentName> entry = _pendingKeyChecks.removeMatch(co);
+					if (null != entry) {
+						ContentName nameToCheck = entry.value();
 						if (Log.isLoggable(Log.FAC_REPO, Level.FINER)) {
-							Log.finer(Log.FAC_REPO, "Processing key check entry for link: {0}", linkCheck);
+							Log.finer(Log.FAC_REPO, "Processing key check entry: {0}", nameToCheck);
+						}
+						ContentName linkCheck = _server.getLinkedKeyTarget(co);
+						if (null != linkCheck) {
+							if (Log.isLoggable(Log.FAC_REPO, Level.FINER)) {
+								Log.finer(Log.FAC_REPO, "Processing key check entry for link: {0}", linkCheck);
+							}
+							Interest linkInterest = new Interest(linkCheck);
+							_server.doSync(linkInterest, linkInterest);
+							syncKeysForObject(co, linkCheck);
 						}
-						Interest linkInterest = new Interest(linkCheck);
-						_server.doSync(linkInterest, linkInterest);
-						syncKeysForObject(co, linkCheck);
+						syncKeysForObject(co, nameToCheck);
 					}
-					syncKeysForObject(co, nameToCheck);
+				} catch (Exception e) {
+					e.printStackTrace();
+					Log.logStackTrace(Level.WARNING, e);
 				}
-			} catch (Exception e) {
-				e.printStackTrace();
-				Log.logStackTrace(Level.WARNING, e);
 			}
 		}
 	}
 
+	/**
+	 * Move content from the queue to the batch until the batch is full or the queue is empty
+	 * @return the number of objects in the batch
+	 */
+	private int fillBatch(ArrayList<ContentObject> batch, int maxBatch) {
+		ContentObject co;
+		while (batch.size() < maxBatch && null != (co = _queue.poll()))
+			batch.add(co);
+		return batch.size();
+	}
+
 	private void syncKeysForObject(ContentObject co, ContentName name) throws RepositoryException, IOException {
 		ContentName target = _server.getKeyTargetFromObject(co, name);
 		if (null != target) {
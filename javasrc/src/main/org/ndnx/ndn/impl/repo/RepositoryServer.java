@@ -162,6 +162,7 @@ public class RepositoryServer implements NDNStatistics {
 	 */
 	public RepositoryServer(RepositoryStore repo) throws IOException {
 			_repo = repo;
+			_repo.setStats(_stats);
 			_handle = repo.getHandle();
 			_writer = new NDNWriter(_handle);
 			_iHandler = new RepositoryInterestHandler(this);
@@ -685,6 +686,13 @@ public class RepositoryServer implements NDNStatistics {
 		HandleContentExpressInterest ("interests", "Number of interests expressed in handleContent()"),
 		HandleContentCancelInterest ("interests", "Number of interests cancelled"),
 		HandleContentExpressInterestErrors ("errors", "Number of errors expressing interests in handleContent()"),
+
+		ContentCacheHits ("objects", "Number of objects read from the repository content cache"),
+		ContentCacheMisses ("objects", "Number of objects read from repository storage"),
+		ContentCacheEvictions ("objects", "Number of objects evicted from the repository content cache"),
+		NegativeCacheHits ("interests", "Number of interests known to match no content without searching"),
+		NegativeCacheMisses ("interests", "Number of interests searched for"),
+		NameFilterRejects ("interests", "Number of interests rejected by the repository name filter"),
 ;
 
 
@@ -22,9 +22,11 @@ package org.ndnx.ndn.impl.repo;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.ndnx.ndn.NDNHandle;
 import org.ndnx.ndn.KeyManager;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
 import org.ndnx.ndn.impl.repo.RepositoryInfo.RepositoryInfoObject;
 import org.ndnx.ndn.profiles.nameenum.NameEnumerationResponse;
 import org.ndnx.ndn.protocol.Component;
@@ -54,6 +56,7 @@ public interface RepositoryStore {
 	public static final String REPO_LOGGING = "repo";
 	
 	public static final String REPO_SIMPLE_STATUS_REQUEST = "simpleStatus";
+	public static final String REPO_COMPACTION_STATUS_REQUEST = "compactionStatus";
 		
 	/**
 	 * Initialize the repository
@@ -97,6 +100,16 @@ public interface RepositoryStore {
 	 */
 	public NameEnumerationResponse saveContent(ContentObject content) throws RepositoryException;
 	
+	/**
+	 * Save a batch of content in the repository. Stores may write the whole batch at once, which
+	 * is much cheaper than saving the objects one at a time. Objects which can't be saved are
+	 * logged and skipped.
+	 * @param contents the content to save, in order
+	 * @return the NameEnumerationResponse for each object, in the same order. The response is null for
+	 * 	objects that were not saved.
+	 */
+	public ArrayList<NameEnumerationResponse> saveContent(List<ContentObject> contents) throws RepositoryException;
+	
 	/**
 	 * Return the matching content if it exists
 	 * @param interest Interest to match
@@ -194,6 +207,12 @@ public interface RepositoryStore {
      */
     public Object getStatus(String type);
     
+    /**
+     * Set the statistics the store adds its own counts to, such as cache hits
+     * @param stats the statistics of the server using the store
+     */
+    public void setStats(NDNEnumStats<RepositoryServer.StatsEnum> stats);
+    
     /**
      * We can't read/write policy files until after we have started the server so this is a
      * hook to do it at the right time.
@@ -25,11 +25,13 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 
 import org.ndnx.ndn.NDNHandle;
 import org.ndnx.ndn.KeyManager;
 import org.ndnx.ndn.impl.NDNFlowControl.SaveType;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
 import org.ndnx.ndn.impl.repo.PolicyXML.PolicyObject;
 import org.ndnx.ndn.impl.repo.RepositoryInfo.RepositoryInfoObject;
 import org.ndnx.ndn.impl.support.Log;
@@ -51,6 +53,7 @@ public abstract class RepositoryStoreBase implements RepositoryStore {
 	protected RepositoryInfo _info = null;
 	protected NDNHandle _handle = null;
 	protected KeyManager _km = null;
+	protected NDNEnumStats<RepositoryServer.StatsEnum> _stats = null;
 	
 	/**
 	 * Handle diagnostic requests
@@ -71,6 +74,8 @@ public abstract class RepositoryStoreBase implements RepositoryStore {
 	public NDNHandle getHandle() { return _handle; }
 	
 	public KeyManager getKeyManager() { return _km; }
+	
+	public void setStats(NDNEnumStats<RepositoryServer.StatsEnum> stats) { _stats = stats; }
 
 	/**
 	 * Gets the currently valid namespace for this repository
@@ -206,6 +211,23 @@ public abstract class RepositoryStoreBase implements RepositoryStore {
 
 	public abstract NameEnumerationResponse saveContent(ContentObject content) throws RepositoryException;
 
+	/**
+	 * Default batch save which saves the objects one at a time
+	 */
+	public ArrayList<NameEnumerationResponse> saveContent(List<ContentObject> contents) throws RepositoryException {
+		ArrayList<NameEnumerationResponse> responses = new ArrayList<NameEnumerationResponse>(contents.size());
+		for (ContentObject content : contents) {
+			NameEnumerationResponse ner = null;
+			try {
+				ner = saveContent(content);
+			} catch (RepositoryException e) {
+				Log.warning(Log.FAC_REPO, "Failed to save {0}: {1}", content.name(), e.getMessage());
+			}
+			responses.add(ner);
+		}
+		return responses;
+	}
+
 	public void setPolicy(Policy policy) {
 		_policy = policy;
 	}
@@ -0,0 +1,163 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package org.ndnx.ndn.impl.security.crypto;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ndnx.ndn.ContentVerifier;
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.protocol.ContentObject;
+
+/**
+ * Verifies collections of content in parallel on a pool of worker threads, so that reading
+ * content at high bandwidth isn't limited by verifying signatures on one core. The result for
+ * each object is returned as a Future.
+ *
+ * Objects with the same signature, such as the segments signed with the root of one Merkle
+ * tree, are grouped. One object from each group is verified first, looking up its key and
+ * checking the signature; the rest of the group is then verified in parallel, by which time
+ * the key is known and the result of checking the signature is in the VerifiedSignatureCache,
+ * so each of them only needs its digest computed. Different groups are verified in parallel.
+ */
+public class ContentBatchVerifier {
+
+	protected static ContentBatchVerifier _defaultBatchVerifier = null;
+
+	protected final ContentVerifier _verifier;
+	protected final ExecutorService _pool;
+
+	/**
+	 * @return a batch verifier using the default verifier of the default key manager and
+	 * 	SystemConfiguration.VERIFY_THREADS threads
+	 */
+	public static synchronized ContentBatchVerifier getDefaultBatchVerifier() {
+		if (null == _defaultBatchVerifier) {
+			_defaultBatchVerifier = new ContentBatchVerifier(ContentObject.SimpleVerifier.getDefaultVerifier(),
+					SystemConfiguration.VERIFY_THREADS);
+		}
+		return _defaultBatchVerifier;
+	}
+
+	/**
+	 * @param verifier the verifier to check each object with. It must be safe to call from
+	 * 	several threads at once.
+	 * @param threads the number of worker threads
+	 */
+	public ContentBatchVerifier(ContentVerifier verifier, int threads) {
+		if (null == verifier)
+			throw new IllegalArgumentException("Verifier cannot be null");
+		if (threads <= 0)
+			throw new IllegalArgumentException("Number of threads must be positive");
+		_verifier = verifier;
+		_pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger _count = new AtomicInteger(0);
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ContentBatchVerifier-" + _count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Verify one object on a worker thread
+	 *
+	 * @param object the object
+	 * @return the result of verifying it
+	 * @throws RejectedExecutionException if the verifier has been shut down
+	 */
+	public Future<Boolean> verify(ContentObject object) {
+		return _pool.submit(task(object));
+	}
+
+	/**
+	 * Verify a collection of objects in parallel
+	 *
+	 * @param objects the objects
+	 * @return the result of verifying each object, in the order of the collection
+	 * @throws RejectedExecutionException if the verifier has been shut down
+	 */
+	public List<Future<Boolean>> verify(Collection<ContentObject> objects) {
+		ArrayList<Future<Boolean>> results = new ArrayList<Future<Boolean>>(objects.size());
+		LinkedHashMap<ByteBuffer, ArrayList<FutureTask<Boolean>>> groups =
+			new LinkedHashMap<ByteBuffer, ArrayList<FutureTask<Boolean>>>();
+		for (ContentObject object : objects) {
+			FutureTask<Boolean> task = new FutureTask<Boolean>(task(object));
+			results.add(task);
+			if (null == object || null == object.signature() || null == object.signature().signature()) {
+				_pool.execute(task);
+				continue;
+			}
+			ByteBuffer signature = ByteBuffer.wrap(object.signature().signature());
+			ArrayList<FutureTask<Boolean>> group = groups.get(signature);
+			if (null == group) {
+				group = new ArrayList<FutureTask<Boolean>>();
+				groups.put(signature, group);
+			}
+			group.add(task);
+		}
+		for (final ArrayList<FutureTask<Boolean>> group : groups.values()) {
+			_pool.execute(new Runnable() {
+				public void run() {
+					group.get(0).run();
+					for (int i = 1; i < group.size(); i++) {
+						try {
+							_pool.execute(group.get(i));
+						} catch (RejectedExecutionException e) {
+							// Shut down while we were verifying - finish what we started
+							group.get(i).run();
+						}
+					}
+				}
+			});
+		}
+		return results;
+	}
+
+	/**
+	 * Stop the worker threads once the objects already given to the verifier are verified
+	 */
+	public void shutdown() {
+		_pool.shutdown();
+	}
+
+	protected Callable<Boolean> task(final ContentObject object) {
+		return new Callable<Boolean>() {
+			public Boolean call() {
+				return _verifier.verify(object);
+			}
+		};
+	}
+}
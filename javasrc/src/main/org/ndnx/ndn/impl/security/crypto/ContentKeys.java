@@ -183,7 +183,8 @@ public abstract class ContentKeys implements Cloneable {
 	
 	private ContentKeys(String encryptionAlgorithm) throws NoSuchAlgorithmException, NoSuchPaddingException {
 		if (null != encryptionAlgorithm) {
-			Cipher.getInstance(encryptionAlgorithm, KeyManager.PROVIDER);
+			CryptoPool.returnCipher(CryptoPool.getCipher(encryptionAlgorithm, KeyManager.PROVIDER),
+					encryptionAlgorithm, KeyManager.PROVIDER);
 			_encryptionAlgorithm = encryptionAlgorithm;
 		} else {
 			_encryptionAlgorithm = DEFAULT_CIPHER_ALGORITHM;
@@ -270,9 +271,10 @@ public abstract class ContentKeys implements Cloneable {
 	 */
 	public Cipher getCipher() {
 		// We have tried a dummy call to Cipher.getInstance on construction of this ContentKeys - so
-		// further "NoSuch" exceptions should not happen here.
+		// further "NoSuch" exceptions should not happen here. The cipher is the caller's to keep,
+		// so it is taken from this thread's pool but not given back.
 		try {
-			return Cipher.getInstance(_encryptionAlgorithm, KeyManager.PROVIDER);
+			return CryptoPool.getCipher(_encryptionAlgorithm, KeyManager.PROVIDER);
 		} catch (NoSuchAlgorithmException e) {
 			String err = "Unexpected NoSuchAlgorithmException for an algorithm we have already used!";
 			Log.severe(err);
@@ -0,0 +1,196 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.security.crypto;
+
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+
+import org.ndnx.ndn.config.PlatformConfiguration;
+
+/**
+ * Per-thread pools of Signature, MessageDigest and Cipher instances, so that threads
+ * signing, verifying and digesting at the same time neither share instances nor look up a
+ * provider and, for signatures, initialize the key on every operation.
+ *
+ * An instance is taken from the pool with a get method and given back with the matching
+ * return method, on the same thread, once the operation has completed normally. An instance
+ * whose operation failed part way through should simply be dropped. Signatures are pooled
+ * by algorithm, key and whether they sign or verify, and are given out already initialized;
+ * sign() and verify() leave them initialized with the same key for the next use. Digests
+ * and ciphers are pooled by algorithm, and ciphers must be initialized by the caller.
+ *
+ * Each thread keeps at most MAX_IDLE instances, dropping the least recently used. Platforms
+ * which need SignatureLocks get a new instance every time, as they did before pooling, so
+ * that no instance outlives the lock it was used under.
+ */
+public class CryptoPool {
+
+	/**
+	 * Maximum number of instances each thread keeps for reuse
+	 */
+	public static final int MAX_IDLE = 16;
+
+	protected static final class PoolKey {
+		protected final char _type;
+		protected final String _algorithm;
+		protected final Object _key;
+
+		protected PoolKey(char type, String algorithm, Object key) {
+			_type = type;
+			_algorithm = algorithm;
+			_key = key;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof PoolKey))
+				return false;
+			PoolKey other = (PoolKey)obj;
+			return _type == other._type && _algorithm.equals(other._algorithm)
+				&& (null == _key ? null == other._key : _key.equals(other._key));
+		}
+
+		@Override
+		public int hashCode() {
+			return _type + 31 * _algorithm.hashCode() + (null == _key ? 0 : 961 * _key.hashCode());
+		}
+	}
+
+	private static final ThreadLocal<LinkedHashMap<PoolKey, Object>> _idle = new ThreadLocal<LinkedHashMap<PoolKey, Object>>() {
+		@Override
+		protected LinkedHashMap<PoolKey, Object> initialValue() {
+			return new LinkedHashMap<PoolKey, Object>(MAX_IDLE, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<PoolKey, Object> eldest) {
+					return size() > MAX_IDLE;
+				}
+			};
+		}
+	};
+
+	/**
+	 * Get a Signature initialized to sign or verify with a key
+	 * @param algorithm the signature algorithm
+	 * @param key the private key to sign with or the public key to verify with
+	 * @param sign true to sign, false to verify
+	 * @return the signature
+	 * @throws NoSuchAlgorithmException if the algorithm is unknown
+	 * @throws InvalidKeyException if the key can't be used
+	 */
+	public static Signature getSignature(String algorithm, Key key, boolean sign) throws NoSuchAlgorithmException, InvalidKeyException {
+		Signature sig = (Signature)take(new PoolKey(sign ? 'S' : 'V', algorithm, key));
+		if (null == sig) {
+			sig = Signature.getInstance(algorithm);
+			if (sign)
+				sig.initSign((PrivateKey)key);
+			else
+				sig.initVerify((PublicKey)key);
+		}
+		return sig;
+	}
+
+	/**
+	 * Give back a Signature whose last operation completed
+	 * @param sig the signature, from getSignature with the same arguments
+	 */
+	public static void returnSignature(Signature sig, String algorithm, Key key, boolean sign) {
+		give(new PoolKey(sign ? 'S' : 'V', algorithm, key), sig);
+	}
+
+	/**
+	 * Get a MessageDigest with no data digested
+	 * @param algorithm the digest algorithm
+	 * @return the digest
+	 * @throws NoSuchAlgorithmException if the algorithm is unknown
+	 */
+	public static MessageDigest getDigest(String algorithm) throws NoSuchAlgorithmException {
+		MessageDigest md = (MessageDigest)take(new PoolKey('D', algorithm, null));
+		return (null == md) ? MessageDigest.getInstance(algorithm) : md;
+	}
+
+	/**
+	 * Give back a MessageDigest whose last digest completed
+	 * @param md the digest, from getDigest with the same algorithm
+	 */
+	public static void returnDigest(MessageDigest md, String algorithm) {
+		give(new PoolKey('D', algorithm, null), md);
+	}
+
+	/**
+	 * Get a Cipher, which must be initialized before use
+	 * @param algorithm the cipher transformation
+	 * @param provider the provider to use, or null for any
+	 * @return the cipher
+	 * @throws NoSuchAlgorithmException if the algorithm is unknown
+	 * @throws NoSuchPaddingException if the padding is unknown
+	 */
+	public static Cipher getCipher(String algorithm, Provider provider) throws NoSuchAlgorithmException, NoSuchPaddingException {
+		Cipher cipher = (Cipher)take(cipherKey(algorithm, provider));
+		if (null != cipher)
+			return cipher;
+		return (null == provider) ? Cipher.getInstance(algorithm) : Cipher.getInstance(algorithm, provider);
+	}
+
+	/**
+	 * Give back a Cipher whose last operation completed
+	 * @param cipher the cipher, from getCipher with the same arguments
+	 */
+	public static void returnCipher(Cipher cipher, String algorithm, Provider provider) {
+		give(cipherKey(algorithm, provider), cipher);
+	}
+
+	// Providers are Hashtables, so compare them by name rather than by their contents
+	private static PoolKey cipherKey(String algorithm, Provider provider) {
+		return new PoolKey('C', algorithm, (null == provider) ? null : provider.getName());
+	}
+
+	/**
+	 * Drop all the instances this thread is keeping
+	 */
+	public static void clear() {
+		_idle.get().clear();
+	}
+
+	private static Object take(PoolKey key) {
+		if (PlatformConfiguration.needSignatureLock())
+			return null;
+		return _idle.get().remove(key);
+	}
+
+	private static void give(PoolKey key, Object instance) {
+		if (PlatformConfiguration.needSignatureLock())
+			return;
+		_idle.get().put(key, instance);
+	}
+}
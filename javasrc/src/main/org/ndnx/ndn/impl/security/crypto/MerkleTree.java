@@ -21,9 +21,18 @@
 package org.ndnx.ndn.impl.security.crypto;
 
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.ndnx.ndn.config.SystemConfiguration;
 import org.ndnx.ndn.impl.support.Log;
 
 
@@ -70,6 +79,12 @@ import org.ndnx.ndn.impl.support.Log;
  * 
  * Store node digests internally as DEROctetStrings for more efficient
  * encoding. 
+ * 
+ * Large trees are built in parallel by SystemConfiguration.MERKLE_THREADS threads.
+ * The leaf digests are computed by dividing the leaves between the threads, then
+ * the interior digests are computed a level at a time, again dividing each level
+ * between the threads. All the nodes in a level have their children in the level
+ * below, so the nodes of a level can be computed in any order.
  */
 public class MerkleTree {
 	
@@ -87,6 +102,20 @@ public class MerkleTree {
 	 */
 	protected static final String MERKLE_OID_PREFIX = "1.2.840.113550.11.1.2";
 	
+	/**
+	 * The least number of nodes worth giving to another thread to compute.
+	 */
+	public static final int PARALLEL_NODES = 32;
+	
+	protected static ExecutorService _digestPool = null;
+	
+	/**
+	 * Computes the digest of one node of a tree, for computeNodes.
+	 */
+	protected interface NodeComputation {
+		void compute(int index) throws NoSuchAlgorithmException;
+	}
+	
 	/**
 	 * Build a MerkleTree. This initializes the tree with content, builds the leaf
 	 * and intermediate digests, and derives the root digest.
@@ -497,14 +526,16 @@ public class MerkleTree {
 	 * @param lastBlockLength number of bytes of the last block to use; N/A if isDigest is true
 	 * @throws NoSuchAlgorithmException if digestAlgorithm is unknown
 	 */
-	protected void computeLeafValues(byte contentBlocks[][], boolean isDigest, int baseBlockIndex, int lastBlockLength) throws NoSuchAlgorithmException {
+	protected void computeLeafValues(final byte contentBlocks[][], final boolean isDigest, final int baseBlockIndex, final int lastBlockLength) throws NoSuchAlgorithmException {
 		// Hash the leaves
-		for (int i=0; i < numLeaves(); ++i) {
-			_tree[leafNodeIndex(i)-1] = 
-				new DEROctetString(
-						(isDigest ? contentBlocks[i+baseBlockIndex] : 
-									computeBlockDigest(i, contentBlocks, baseBlockIndex, lastBlockLength)));
-		}
+		computeNodes(0, numLeaves(), new NodeComputation() {
+			public void compute(int i) throws NoSuchAlgorithmException {
+				_tree[leafNodeIndex(i)-1] = 
+					new DEROctetString(
+							(isDigest ? contentBlocks[i+baseBlockIndex] : 
+										computeBlockDigest(i, contentBlocks, baseBlockIndex, lastBlockLength)));
+			}
+		});
 	}
 	
 	/**
@@ -518,14 +549,16 @@ public class MerkleTree {
 	 * @param blockWidth the length of leaf blocks to create
 	 * @throws NoSuchAlgorithmException if digestAlgorithm is unknown
 	 */
-	protected void computeLeafValues(byte [] content, int offset, int length, int blockWidth) throws NoSuchAlgorithmException {
+	protected void computeLeafValues(final byte [] content, final int offset, final int length, final int blockWidth) throws NoSuchAlgorithmException {
 		// Hash the leaves
-		for (int i=0; i < numLeaves(); ++i) {
-			_tree[leafNodeIndex(i)-1] = 
-				new DEROctetString(
-						(computeBlockDigest(i, content, offset + (blockWidth*i), 
-											((i < numLeaves()-1) ? blockWidth : (length - (blockWidth*i))))));
-		}
+		computeNodes(0, numLeaves(), new NodeComputation() {
+			public void compute(int i) throws NoSuchAlgorithmException {
+				_tree[leafNodeIndex(i)-1] = 
+					new DEROctetString(
+							(computeBlockDigest(i, content, offset + (blockWidth*i), 
+												((i < numLeaves()-1) ? blockWidth : (length - (blockWidth*i))))));
+			}
+		});
 	}
 
 	/**
@@ -534,12 +567,89 @@ public class MerkleTree {
 	 * @throws NoSuchAlgorithmException if digestAlgorithm is unknown
 	 */
 	protected void computeNodeValues() throws NoSuchAlgorithmException {
-		// Climb the tree
-		int firstNode = firstLeaf()-1;
-		for (int i=firstNode; i >= ROOT_NODE; --i) {
-			byte [] nodeDigest = NDNDigestHelper.digest(digestAlgorithm(), get(leftChild(i)), get(rightChild(i)));
-			_tree[i-1] = new DEROctetString(nodeDigest);
+		NodeComputation computation = new NodeComputation() {
+			public void compute(int i) throws NoSuchAlgorithmException {
+				byte [] nodeDigest = NDNDigestHelper.digest(digestAlgorithm(), get(leftChild(i)), get(rightChild(i)));
+				_tree[i-1] = new DEROctetString(nodeDigest);
+			}
+		};
+		// Climb the tree a level at a time. Level k holds nodes 2^k to 2^(k+1)-1, whose
+		// children are all in level k+1 or are leaves.
+		int lastNode = firstLeaf()-1;
+		for (int levelStart = Integer.highestOneBit(lastNode); levelStart >= ROOT_NODE; levelStart >>= 1) {
+			computeNodes(levelStart, Math.min(2*levelStart - 1, lastNode) + 1, computation);
+		}
+	}
+	
+	/**
+	 * Compute a range of nodes which don't depend on each other, dividing them between
+	 * SystemConfiguration.MERKLE_THREADS threads if there are enough of them. The calling
+	 * thread computes a share of the nodes itself.
+	 * @param start the first index to compute
+	 * @param end one past the last index to compute
+	 * @param computation computes the node at each index
+	 * @throws NoSuchAlgorithmException if digestAlgorithm is unknown
+	 */
+	protected void computeNodes(int start, int end, NodeComputation computation) throws NoSuchAlgorithmException {
+		int shares = Math.min(SystemConfiguration.MERKLE_THREADS, (end - start) / PARALLEL_NODES);
+		ExecutorService pool = (shares > 1) ? digestPool() : null;
+		if (null == pool) {
+			for (int i = start; i < end; ++i)
+				computation.compute(i);
+			return;
+		}
+		
+		int shareSize = (end - start + shares - 1) / shares;
+		ArrayList<Future<?>> results = new ArrayList<Future<?>>(shares - 1);
+		for (int shareStart = start + shareSize; shareStart < end; shareStart += shareSize) {
+			results.add(pool.submit(computeShare(shareStart, Math.min(shareStart + shareSize, end), computation)));
+		}
+		for (int i = start; i < start + shareSize; ++i)
+			computation.compute(i);
+		
+		for (Future<?> result : results) {
+			try {
+				result.get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException("Interrupted while computing MerkleTree digests", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof NoSuchAlgorithmException)
+					throw (NoSuchAlgorithmException)e.getCause();
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException)e.getCause();
+				throw new RuntimeException("Error computing MerkleTree digests", e.getCause());
+			}
+		}
+	}
+	
+	private static Callable<Object> computeShare(final int start, final int end, final NodeComputation computation) {
+		return new Callable<Object>() {
+			public Object call() throws NoSuchAlgorithmException {
+				for (int i = start; i < end; ++i)
+					computation.compute(i);
+				return null;
+			}
+		};
+	}
+	
+	/**
+	 * Get the threads shared by all trees to compute digests, creating them the first time
+	 * they are needed.
+	 * @return the threads
+	 */
+	protected static synchronized ExecutorService digestPool() {
+		if (null == _digestPool) {
+			_digestPool = Executors.newFixedThreadPool(SystemConfiguration.MERKLE_THREADS, new ThreadFactory() {
+				private final AtomicInteger _count = new AtomicInteger(0);
+				
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "MerkleTree-" + _count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
 		}
+		return _digestPool;
 	}
 	
 	/**
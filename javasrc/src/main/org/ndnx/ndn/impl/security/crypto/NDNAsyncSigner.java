@@ -0,0 +1,291 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ndnx.ndn.impl.security.crypto;
+
+import java.io.IOException;
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.protocol.ContentObject;
+
+/**
+ * Signs content on a pool of worker threads, so that a thread writing content, such as one
+ * answering interests, doesn't wait for the signature. Each batch of content is handed to a
+ * SignedContentHandler on the worker thread as soon as it is signed. The workers are shared
+ * by every writer, so handlers must not block, for instance waiting for room in a flow
+ * controller; a writer which needs to do that waits for the returned Future on its own thread.
+ *
+ * With a window, a worker which takes a batch waits up to that many milliseconds for more
+ * batches, and signs all those with the same key and aggregated signer together, by
+ * default under one Merkle tree. Under bursty load this replaces many public key signatures
+ * with one, at the cost of adding up to the window to the latency of the first batch.
+ */
+public class NDNAsyncSigner {
+
+	/**
+	 * Most objects signed together under one aggregated signature
+	 */
+	public static final int MAX_AGGREGATE = 128;
+
+	/**
+	 * Receives content as soon as it is signed
+	 */
+	public interface SignedContentHandler {
+		/**
+		 * Called on a worker thread with content once it has been signed. Must not block.
+		 * @param contentObjects the signed content
+		 * @throws IOException if the content could not be handled
+		 */
+		void signed(ContentObject [] contentObjects) throws IOException;
+	}
+
+	protected class Request implements Callable<ContentObject []> {
+		protected final ContentObject [] _contentObjects;
+		protected final Key _signingKey;
+		protected final NDNAggregatedSigner _aggregator;
+		protected final SignedContentHandler _handler;
+		protected final FutureTask<ContentObject []> _result = new FutureTask<ContentObject []>(this);
+		protected Exception _signingError = null;
+
+		protected Request(ContentObject [] contentObjects, Key signingKey, NDNAggregatedSigner aggregator,
+				SignedContentHandler handler) {
+			_contentObjects = contentObjects;
+			_signingKey = signingKey;
+			_aggregator = aggregator;
+			_handler = handler;
+		}
+
+		public ContentObject [] call() throws Exception {
+			if (null != _signingError)
+				throw _signingError;
+			if (null != _handler)
+				_handler.signed(_contentObjects);
+			return _contentObjects;
+		}
+	}
+
+	protected static NDNAsyncSigner _defaultSigner = null;
+
+	protected final NDNAggregatedSigner _aggregator;
+	protected final int _windowMillis;
+	protected final LinkedBlockingQueue<Request> _queue = new LinkedBlockingQueue<Request>();
+	protected final Request _shutdown = new Request(new ContentObject[0], null, null, null);
+	protected volatile boolean _shuttingDown = false;
+
+	/**
+	 * @return a signer using SystemConfiguration.SIGNING_THREADS threads, aggregating content
+	 * 	queued within SystemConfiguration.SIGNING_WINDOW milliseconds under a Merkle tree
+	 */
+	public static synchronized NDNAsyncSigner getDefaultSigner() {
+		if (null == _defaultSigner) {
+			_defaultSigner = new NDNAsyncSigner(SystemConfiguration.SIGNING_THREADS, SystemConfiguration.SIGNING_WINDOW,
+					new NDNMerkleTreeSigner());
+		}
+		return _defaultSigner;
+	}
+
+	/**
+	 * @param threads the number of worker threads
+	 * @param windowMillis how long a worker waits for more content to sign together with the
+	 * 	content it has taken, or 0 to sign each batch as it comes
+	 * @param aggregator the signer for batches of more than one object, unless another is
+	 * 	given to sign
+	 */
+	public NDNAsyncSigner(int threads, int windowMillis, NDNAggregatedSigner aggregator) {
+		if (threads <= 0)
+			throw new IllegalArgumentException("Number of threads must be positive");
+		if (windowMillis < 0)
+			throw new IllegalArgumentException("Signing window cannot be negative");
+		if (null == aggregator)
+			throw new IllegalArgumentException("Aggregated signer cannot be null");
+		_aggregator = aggregator;
+		_windowMillis = windowMillis;
+		for (int i = 0; i < threads; i++) {
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					work();
+				}
+			}, "NDNAsyncSigner-" + (i + 1));
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Sign a batch of content on a worker thread
+	 *
+	 * @param contentObjects the content, which must not be changed until it is signed
+	 * @param signingKey the key to sign it with
+	 * @param handler given the content once it is signed, or null
+	 * @return the content once it is signed and has been handled, or the exception signing
+	 * 	or handling it
+	 * @throws RejectedExecutionException if the signer has been shut down
+	 */
+	public Future<ContentObject []> sign(ContentObject [] contentObjects, Key signingKey, SignedContentHandler handler) {
+		return sign(contentObjects, signingKey, null, handler);
+	}
+
+	/**
+	 * Sign a batch of content on a worker thread, together with other batches only if they
+	 * use the same aggregated signer
+	 *
+	 * @param contentObjects the content, which must not be changed until it is signed
+	 * @param signingKey the key to sign it with
+	 * @param aggregator the signer to sign more than one object together with, or null for
+	 * 	this signer's default
+	 * @param handler given the content once it is signed, or null
+	 * @return the content once it is signed and has been handled, or the exception signing
+	 * 	or handling it
+	 * @throws RejectedExecutionException if the signer has been shut down
+	 */
+	public Future<ContentObject []> sign(ContentObject [] contentObjects, Key signingKey, NDNAggregatedSigner aggregator,
+			SignedContentHandler handler) {
+		if (null == contentObjects || contentObjects.length == 0)
+			throw new IllegalArgumentException("Nothing to sign");
+		Request request = new Request(contentObjects, signingKey, (null == aggregator) ? _aggregator : aggregator, handler);
+		// Checked and queued under the lock shutdown() takes, so that nothing is queued
+		// behind the shutdown marker where no worker would ever take it
+		synchronized (_queue) {
+			if (_shuttingDown)
+				throw new RejectedExecutionException("NDNAsyncSigner has been shut down");
+			_queue.add(request);
+		}
+		return request._result;
+	}
+
+	/**
+	 * Stop the worker threads once the content already given to the signer is signed
+	 */
+	public void shutdown() {
+		synchronized (_queue) {
+			if (_shuttingDown)
+				return;
+			_shuttingDown = true;
+			_queue.add(_shutdown);
+		}
+	}
+
+	protected void work() {
+		ArrayList<Request> batch = new ArrayList<Request>();
+		boolean running = true;
+		while (running) {
+			batch.clear();
+			try {
+				batch.add(_queue.take());
+				running = gather(batch);
+			} catch (InterruptedException e) {
+				// Sign whatever we already have
+			}
+			if (!batch.isEmpty() && batch.get(0) == _shutdown) {
+				_queue.add(_shutdown); // for the other workers
+				return;
+			}
+			sign(batch);
+		}
+	}
+
+	/**
+	 * Add to a batch the requests which arrive within the window
+	 * @return false if the signer was shut down while waiting
+	 */
+	protected boolean gather(ArrayList<Request> batch) throws InterruptedException {
+		if (_windowMillis == 0 || batch.get(0) == _shutdown)
+			return true;
+		int count = batch.get(0)._contentObjects.length;
+		long deadline = System.currentTimeMillis() + _windowMillis;
+		long wait;
+		while (count < MAX_AGGREGATE && (wait = deadline - System.currentTimeMillis()) > 0) {
+			Request next = _queue.poll(wait, TimeUnit.MILLISECONDS);
+			if (null == next)
+				break;
+			if (next == _shutdown) {
+				_queue.add(_shutdown);
+				return false;
+			}
+			batch.add(next);
+			count += next._contentObjects.length;
+		}
+		return true;
+	}
+
+	/**
+	 * Sign the requests in a batch with each key and aggregated signer together, then hand
+	 * each to its handler
+	 */
+	protected void sign(ArrayList<Request> batch) {
+		ArrayList<ArrayList<Request>> groups = new ArrayList<ArrayList<Request>>();
+		for (Request request : batch) {
+			ArrayList<Request> requests = null;
+			for (ArrayList<Request> group : groups) {
+				Request first = group.get(0);
+				if (first._aggregator == request._aggregator && (null == first._signingKey ? null == request._signingKey
+						: first._signingKey.equals(request._signingKey))) {
+					requests = group;
+					break;
+				}
+			}
+			if (null == requests) {
+				requests = new ArrayList<Request>();
+				groups.add(requests);
+			}
+			requests.add(request);
+		}
+		for (ArrayList<Request> requests : groups) {
+			ContentObject [] contentObjects;
+			if (requests.size() == 1) {
+				contentObjects = requests.get(0)._contentObjects;
+			} else {
+				ArrayList<ContentObject> all = new ArrayList<ContentObject>();
+				for (Request request : requests) {
+					for (ContentObject co : request._contentObjects)
+						all.add(co);
+				}
+				contentObjects = all.toArray(new ContentObject[all.size()]);
+			}
+			Key signingKey = requests.get(0)._signingKey;
+			NDNAggregatedSigner aggregator = requests.get(0)._aggregator;
+			try {
+				if (contentObjects.length == 1)
+					contentObjects[0].sign(signingKey);
+				else
+					aggregator.signBlocks(contentObjects, signingKey);
+				if (Log.isLoggable(Log.FAC_SIGNING, Level.FINER))
+					Log.finer(Log.FAC_SIGNING, "NDNAsyncSigner: signed {0} objects from {1} batches", contentObjects.length, requests.size());
+			} catch (Exception e) {
+				if (Log.isLoggable(Log.FAC_SIGNING, Level.WARNING))
+					Log.warning(Log.FAC_SIGNING, "NDNAsyncSigner: failed to sign {0} objects: {1}", contentObjects.length, e.getMessage());
+				for (Request request : requests)
+					request._signingError = e;
+			}
+			for (Request request : requests)
+				request._result.run();
+		}
+	}
+}
@@ -128,9 +128,13 @@ public class NDNDigestHelper extends DigestHelper {
 	 * @return digest of content using DEFAULT_DIGEST_ALGORITHM
 	 */
 	public static byte [] digest(byte [] content, int offset, int length) {
-		NDNDigestHelper dh = new NDNDigestHelper();
-		dh.update(content, offset, length);
-		return dh.digest();
+		try {
+			return pooledDigest(DEFAULT_DIGEST_ALGORITHM, content, offset, length);
+		} catch (NoSuchAlgorithmException ex) {
+			// possible configuration problem
+			Log.warning("Fatal Error: cannot find default algorithm " + DEFAULT_DIGEST_ALGORITHM);
+			throw new RuntimeException("Error: can't find default algorithm " + DEFAULT_DIGEST_ALGORITHM + "!  " + ex.toString());
+		}
 	}
 
 	/**
@@ -143,9 +147,7 @@ public class NDNDigestHelper extends DigestHelper {
 	 * @throws NoSuchAlgorithmException if the algorithm is unknown to any of our providers
 	 */
 	public static byte [] digest(String digestAlgorithm, byte [] content, int offset, int length) throws NoSuchAlgorithmException {
-		NDNDigestHelper dh = new NDNDigestHelper(digestAlgorithm);
-		dh.update(content, offset, length);
-		return dh.digest();
+		return pooledDigest((null == digestAlgorithm) ? DEFAULT_DIGEST_ALGORITHM : digestAlgorithm, content, offset, length);
 	}
 
 	/**
@@ -179,12 +181,13 @@ public class NDNDigestHelper extends DigestHelper {
 	 * @return digest of concatenated content using DEFAULT_DIGEST_ALGORITHM
 	 */
 	public static byte [] digest(byte contents[][]) {
-		NDNDigestHelper dh = new NDNDigestHelper();
-		for (int i=0; i < contents.length; ++i) {
-			if (null != contents[i])
-				dh.update(contents[i], 0, contents[i].length);
+		try {
+			return pooledDigest(DEFAULT_DIGEST_ALGORITHM, contents);
+		} catch (NoSuchAlgorithmException ex) {
+			// possible configuration problem
+			Log.warning("Fatal Error: cannot find default algorithm " + DEFAULT_DIGEST_ALGORITHM);
+			throw new RuntimeException("Error: can't find default algorithm " + DEFAULT_DIGEST_ALGORITHM + "!  " + ex.toString());
 		}
-		return dh.digest();
 	}	
 
 	/**
@@ -196,12 +199,7 @@ public class NDNDigestHelper extends DigestHelper {
 	 * @throws NoSuchAlgorithmException if the algorithm is unknown to any of our providers
 	 */
 	public static byte [] digest(String digestAlgorithm, byte contents[][]) throws NoSuchAlgorithmException {
-		NDNDigestHelper dh = new NDNDigestHelper(digestAlgorithm);
-		for (int i=0; i < contents.length; ++i) {
-			if (null != contents[i])
-				dh.update(contents[i], 0, contents[i].length);
-		}
-		return dh.digest();
+		return pooledDigest((null == digestAlgorithm) ? DEFAULT_DIGEST_ALGORITHM : digestAlgorithm, contents);
 	}
 
 
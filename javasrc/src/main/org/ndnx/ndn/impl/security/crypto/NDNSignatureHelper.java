@@ -212,7 +212,9 @@ public class NDNSignatureHelper extends SignatureHelper {
 	/**
 	 * Verifies the signature on the concatenation of a set of individual
 	 * data items, given the verification key and digest algorithm. 
-	 * Overrides SignatureHelper to get correct default digest.
+	 * Overrides SignatureHelper to get correct default digest, and to use
+	 * the result of checking the same signature before if it is in the
+	 * VerifiedSignatureCache.
 	 * @param data the data; which are expected to have been concatenated before 
 	 * 	signing. Any null arrays are skipped.
 	 * @param signature the signature.
@@ -229,9 +231,19 @@ public class NDNSignatureHelper extends SignatureHelper {
 			String digestAlgorithm,
 			Key verificationKey) throws SignatureException, 
 						NoSuchAlgorithmException, InvalidKeyException {
-		return SignatureHelper.verify(data, signature,
-				((null == digestAlgorithm) || (digestAlgorithm.length() == 0)) ?
-						NDNDigestHelper.DEFAULT_DIGEST_ALGORITHM : digestAlgorithm, verificationKey);
+		String algorithm = ((null == digestAlgorithm) || (digestAlgorithm.length() == 0)) ?
+				NDNDigestHelper.DEFAULT_DIGEST_ALGORITHM : digestAlgorithm;
+		VerifiedSignatureCache cache = VerifiedSignatureCache.getDefaultCache();
+		if ((null == cache) || (null == data) || (null == signature) || (null == verificationKey))
+			return SignatureHelper.verify(data, signature, algorithm, verificationKey);
+		
+		VerifiedSignatureCache.Check check = VerifiedSignatureCache.check(data, signature, algorithm, verificationKey);
+		Boolean result = cache.get(check);
+		if (null == result) {
+			result = SignatureHelper.verify(data, signature, algorithm, verificationKey);
+			cache.put(check, result);
+		}
+		return result;
 	}
 	
 	/**
@@ -32,6 +32,9 @@ import org.ndnx.ndn.config.PlatformConfiguration;
  * That is how the original code locked, with a note that it could be more
  * granular (like is done here).  The unwrap lock has always been separate
  * from the signing lock.
+ * 
+ * Other platforms take no locks, and reuse Signatures, MessageDigests and Ciphers
+ * from per-thread CryptoPools instead.
  */
 public class SignatureLocks {
 	// ==============================================
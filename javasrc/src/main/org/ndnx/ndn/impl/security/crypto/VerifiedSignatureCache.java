@@ -0,0 +1,231 @@
+/*
+ * Part of the NDNx Java Library.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package org.ndnx.ndn.impl.security.crypto;
+
+import java.security.Key;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.NDNStats;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
+import org.ndnx.ndn.impl.NDNStats.NDNStatistics;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats.IStatsEnum;
+import org.ndnx.ndn.impl.support.DataUtils;
+
+/**
+ * A process-wide cache of the results of checking signatures with public keys. Many objects
+ * can share one signature, for instance all the segments signed with the root of one Merkle
+ * tree, and each stream, network object or repository reading them would otherwise check that
+ * signature again with the key.
+ *
+ * A result is cached under the key it was checked with and a digest of the data which was signed,
+ * the signature and the digest algorithm, so it is only used for exactly the same check. Only
+ * completed checks are cached; a check which throws an exception is tried again next time.
+ *
+ * The cache is bounded in number of results and the least recently used results are evicted
+ * to stay within that bound.
+ */
+public class VerifiedSignatureCache implements NDNStatistics {
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		Hits ("signatures", "The number of signature checks answered from the cache"),
+		Misses ("signatures", "The number of signatures checked with their key"),
+		Evictions ("signatures", "The number of results evicted from the cache to make room");
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
+
+	/**
+	 * The check a result is cached under
+	 */
+	public static class Check {
+		protected final Key _key;
+		protected final byte [] _digest;
+		protected final int _hashCode;
+
+		protected Check(Key key, byte [] digest) {
+			_key = key;
+			_digest = digest;
+			_hashCode = key.hashCode() ^ Arrays.hashCode(digest);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Check))
+				return false;
+			Check other = (Check)obj;
+			return Arrays.equals(_digest, other._digest) && _key.equals(other._key);
+		}
+
+		@Override
+		public int hashCode() {
+			return _hashCode;
+		}
+	}
+
+	protected static VerifiedSignatureCache _defaultCache = null;
+	protected static boolean _defaultCacheCreated = false;
+
+	protected final int _maxResults;
+	protected final LinkedHashMap<Check, Boolean> _results = new LinkedHashMap<Check, Boolean>(16, 0.75f, true);
+	protected final NDNEnumStats<StatsEnum> _stats = new NDNEnumStats<StatsEnum>(StatsEnum.Hits);
+
+	/**
+	 * @return the cache shared by the whole process, or null if SystemConfiguration.VERIFY_CACHE_SIZE
+	 * 	is 0
+	 */
+	public static synchronized VerifiedSignatureCache getDefaultCache() {
+		if (!_defaultCacheCreated) {
+			if (SystemConfiguration.VERIFY_CACHE_SIZE > 0)
+				_defaultCache = new VerifiedSignatureCache(SystemConfiguration.VERIFY_CACHE_SIZE);
+			_defaultCacheCreated = true;
+		}
+		return _defaultCache;
+	}
+
+	/**
+	 * @param maxResults maximum number of results to hold
+	 */
+	public VerifiedSignatureCache(int maxResults) {
+		if (maxResults <= 0)
+			throw new IllegalArgumentException("Cache size must be positive");
+		_maxResults = maxResults;
+	}
+
+	/**
+	 * Describe a signature check
+	 *
+	 * @param data the data which was signed; null arrays are skipped as they are when signing
+	 * @param signature the signature
+	 * @param digestAlgorithm the digest algorithm used for the signature
+	 * @param verificationKey the key the signature is checked with
+	 * @return the check, to pass to get and put
+	 */
+	public static Check check(byte data[][], byte [] signature, String digestAlgorithm, Key verificationKey) {
+		NDNDigestHelper dh = new NDNDigestHelper();
+		for (int i = 0; i < data.length; ++i) {
+			if (null != data[i])
+				dh.update(data[i], 0, data[i].length);
+		}
+		// The data has no boundaries, so its digest is kept apart from the rest
+		byte [] dataDigest = dh.digest();
+		dh.update(dataDigest);
+		dh.update(signature);
+		dh.update(DataUtils.getBytesFromUTF8String(digestAlgorithm));
+		return new Check(verificationKey, dh.digest());
+	}
+
+	/**
+	 * @param check the signature check
+	 * @return the result of the check, or null if it isn't cached
+	 */
+	public Boolean get(Check check) {
+		Boolean result;
+		synchronized (this) {
+			result = _results.get(check);
+		}
+		_stats.increment(null != result ? StatsEnum.Hits : StatsEnum.Misses);
+		return result;
+	}
+
+	/**
+	 * Add the result of a signature check
+	 *
+	 * @param check the signature check
+	 * @param verified the result
+	 */
+	public void put(Check check, boolean verified) {
+		int evicted = 0;
+		synchronized (this) {
+			_results.put(check, verified);
+			Iterator<Check> lru = _results.keySet().iterator();
+			while (_results.size() > _maxResults) {
+				lru.next();
+				lru.remove();
+				evicted++;
+			}
+		}
+		if (evicted > 0)
+			_stats.increment(StatsEnum.Evictions, evicted);
+	}
+
+	/**
+	 * @return the number of results cached
+	 */
+	public synchronized int size() {
+		return _results.size();
+	}
+
+	/**
+	 * Remove all results
+	 */
+	public synchronized void clear() {
+		_results.clear();
+	}
+
+	public NDNStats getStats() {
+		return _stats;
+	}
+}
@@ -29,6 +29,7 @@ import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.DERObject;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.asn1.x509.DigestInfo;
+import org.ndnx.ndn.impl.security.crypto.CryptoPool;
 import org.ndnx.ndn.impl.support.Log;
 
 /**
@@ -37,6 +38,7 @@ import org.ndnx.ndn.impl.support.Log;
  * DEFAULT_DIGEST_ALGORITHM ("SHA-1" by default). 
  * Includes methods for computing Merkle hash trees (hash computation of the 
  * concatenation of two or more arrays of bytes.)
+ * The static methods use MessageDigests from the calling thread's CryptoPool.
  */
 public class DigestHelper {
 
@@ -132,9 +134,13 @@ public class DigestHelper {
 	 * @return the array of bytes for the resulting hash value.
 	 */
 	public static byte [] digest(byte [] content, int offset, int length) {
-		DigestHelper dh = new DigestHelper();
-		dh.update(content, offset, length);
-		return dh.digest();
+		try {
+			return pooledDigest(DEFAULT_DIGEST_ALGORITHM, content, offset, length);
+		} catch (NoSuchAlgorithmException ex) {
+			// possible configuration problem
+			Log.warning("Fatal Error: cannot find default algorithm " + DEFAULT_DIGEST_ALGORITHM);
+			throw new RuntimeException("Error: can't find default algorithm " + DEFAULT_DIGEST_ALGORITHM + "!  " + ex.toString());
+		}
 	}
 
 	/**
@@ -148,9 +154,7 @@ public class DigestHelper {
 	 * @throws NoSuchAlgorithmException
 	 */
 	public static byte [] digest(String digestAlgorithm, byte [] content, int offset, int length) throws NoSuchAlgorithmException {
-		DigestHelper dh = new DigestHelper(digestAlgorithm);
-		dh.update(content, offset, length);
-		return dh.digest();
+		return pooledDigest((null == digestAlgorithm) ? DEFAULT_DIGEST_ALGORITHM : digestAlgorithm, content, offset, length);
 	}
 
 	/**
@@ -187,11 +191,13 @@ public class DigestHelper {
 	 * @return the array of bytes for the resulting hash value.
 	 */
 	public static byte [] digest(byte[][] contents) {
-		DigestHelper dh = new DigestHelper();
-		for (int i=0; i < contents.length; ++i) {
-			dh.update(contents[i], 0, contents[i].length);
+		try {
+			return pooledDigest(DEFAULT_DIGEST_ALGORITHM, contents);
+		} catch (NoSuchAlgorithmException ex) {
+			// possible configuration problem
+			Log.warning("Fatal Error: cannot find default algorithm " + DEFAULT_DIGEST_ALGORITHM);
+			throw new RuntimeException("Error: can't find default algorithm " + DEFAULT_DIGEST_ALGORITHM + "!  " + ex.toString());
 		}
-		return dh.digest();
 	}	
 
 	/**
@@ -204,11 +210,43 @@ public class DigestHelper {
 	 * @throws NoSuchAlgorithmException
 	 */
 	public static byte [] digest(String digestAlgorithm, byte[][] contents) throws NoSuchAlgorithmException {
-		DigestHelper dh = new DigestHelper(digestAlgorithm);
+		return pooledDigest((null == digestAlgorithm) ? DEFAULT_DIGEST_ALGORITHM : digestAlgorithm, contents);
+	}
+
+	/**
+	 * Digests part of an array of bytes with a MessageDigest from the calling thread's CryptoPool.
+	 * @param digestAlgorithm the digest algorithm.
+	 * @param content the array of bytes.
+	 * @param offset the offset.
+	 * @param length the number of bytes to use, starting at offset.
+	 * @return the array of bytes for the resulting hash value.
+	 * @throws NoSuchAlgorithmException
+	 */
+	protected static byte [] pooledDigest(String digestAlgorithm, byte [] content, int offset, int length) throws NoSuchAlgorithmException {
+		MessageDigest md = CryptoPool.getDigest(digestAlgorithm);
+		md.update(content, offset, length);
+		byte [] digest = md.digest();
+		CryptoPool.returnDigest(md, digestAlgorithm);
+		return digest;
+	}
+
+	/**
+	 * Digests the concatenation of an array of byte arrays with a MessageDigest from the
+	 * calling thread's CryptoPool. Null arrays are skipped.
+	 * @param digestAlgorithm the digest algorithm.
+	 * @param contents the array of byte arrays.
+	 * @return the array of bytes for the resulting hash value.
+	 * @throws NoSuchAlgorithmException
+	 */
+	protected static byte [] pooledDigest(String digestAlgorithm, byte[][] contents) throws NoSuchAlgorithmException {
+		MessageDigest md = CryptoPool.getDigest(digestAlgorithm);
 		for (int i=0; i < contents.length; ++i) {
-			dh.update(contents[i], 0, contents[i].length);
+			if (null != contents[i])
+				md.update(contents[i], 0, contents[i].length);
 		}
-		return dh.digest();
+		byte [] digest = md.digest();
+		CryptoPool.returnDigest(md, digestAlgorithm);
+		return digest;
 	}
 
 	/**
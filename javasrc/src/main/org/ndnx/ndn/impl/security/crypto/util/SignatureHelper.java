@@ -27,7 +27,6 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
-import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.security.SignatureException;
@@ -45,6 +44,7 @@ import org.bouncycastle.asn1.DERUnknownTag;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.ndnx.ndn.KeyManager;
 import org.ndnx.ndn.config.PlatformConfiguration;
+import org.ndnx.ndn.impl.security.crypto.CryptoPool;
 import org.ndnx.ndn.impl.security.crypto.SignatureLocks;
 import org.ndnx.ndn.impl.security.crypto.gingerbreadfix.JDKDigestSignature;
 import org.ndnx.ndn.impl.support.Log;
@@ -90,15 +90,14 @@ public class SignatureHelper {
 		if (null == sigAlgName)
 			throw new InvalidKeyException("Key algorithm: " + signingKey.getAlgorithm() + "not supported");
 		
-		// DKS TODO if we switch to SHA256, this fails.
-		Signature sig = Signature.getInstance(sigAlgName);
-
 		// Protect against GC on platforms that don't do JNI for crypto properly
 		SignatureLocks.signingLock();
 		try {
-			sig.initSign((PrivateKey)signingKey);
+			Signature sig = CryptoPool.getSignature(sigAlgName, signingKey, true);
 			sig.update(toBeSigned);
-			return sig.sign();
+			byte [] signature = sig.sign();
+			CryptoPool.returnSignature(sig, sigAlgName, signingKey, true);
+			return signature;
 		} finally {
 			SignatureLocks.signingUnock();
 		}
@@ -144,16 +143,16 @@ public class SignatureHelper {
 		if (null == sigAlgName)
 			throw new InvalidKeyException("Key algorithm: " + signingKey.getAlgorithm() + "not supported");
 		
-		Signature sig = Signature.getInstance(sigAlgName);
-
 		// Protect against GC on platforms that don't do JNI for crypto properly
 		SignatureLocks.signingLock();
 		try {
-			sig.initSign((PrivateKey)signingKey);
+			Signature sig = CryptoPool.getSignature(sigAlgName, signingKey, true);
 			for (int i=0; i < toBeSigneds.length; ++i) {
 				sig.update(toBeSigneds[i]);
 			}
-			return sig.sign();
+			byte [] signature = sig.sign();
+			CryptoPool.returnSignature(sig, sigAlgName, signingKey, true);
+			return signature;
 		} finally {
 			SignatureLocks.signingUnock();
 		}
@@ -223,19 +222,20 @@ public class SignatureHelper {
 			
 			if (null == sigAlgName)
 				throw new InvalidKeyException("Key algorithm: " + verificationKey.getAlgorithm() + "not supported");
-			Signature sig = Signature.getInstance(sigAlgName);
 
 			// Protect against GC on platforms that don't do JNI for crypto properly
 			SignatureLocks.signingLock();
 			try {
-				sig.initVerify((PublicKey)verificationKey);
+				Signature sig = CryptoPool.getSignature(sigAlgName, verificationKey, false);
 				if (null != data) {
 					for (int i=0; i < data.length; ++i) {
 						if (data[i] != null)
 							sig.update(data[i]);
 					}
 				}
-				return sig.verify(signature);
+				boolean result = sig.verify(signature);
+				CryptoPool.returnSignature(sig, sigAlgName, verificationKey, false);
+				return result;
 			} finally {
 				SignatureLocks.signingUnock();
 			}
@@ -1173,6 +1173,10 @@ public abstract class NDNAbstractInputStream extends InputStream implements NDNC
 			processingSegment = SegmentationProfile.getSegmentNumber(is.content.name());
 		}
 
+		// verify the content object before taking the lock, so readers and other
+		// handlers aren't held up while the signature is checked
+		boolean verified = _handle.defaultVerifier().verify(is.content);
+
 		synchronized(inOrderSegments){
 
 			//was this a content object we were looking for?
@@ -1212,8 +1216,7 @@ public abstract class NDNAbstractInputStream extends InputStream implements NDNC
 			}
 
 			if (is != null) {
-				// verify the content object
-				if (_handle.defaultVerifier().verify(is.content)) {
+				if (verified) {
 					// this content verified
 					receivePipelineContent(is.content);
 				} else {
@@ -27,10 +27,12 @@ import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
 
 import org.ndnx.ndn.NDNHandle;
+import org.ndnx.ndn.config.SystemConfiguration;
 import org.ndnx.ndn.impl.NDNFlowControl;
 import org.ndnx.ndn.impl.NDNSegmenter;
 import org.ndnx.ndn.impl.NDNFlowControl.Shape;
 import org.ndnx.ndn.impl.security.crypto.ContentKeys;
+import org.ndnx.ndn.impl.security.crypto.NDNAsyncSigner;
 import org.ndnx.ndn.impl.support.Log;
 import org.ndnx.ndn.profiles.VersioningProfile;
 import org.ndnx.ndn.protocol.ContentName;
@@ -48,6 +50,13 @@ import org.ndnx.ndn.protocol.SignedInfo.ContentType;
  * more complex clients will usually prefer the higher-level
  * interfaces offered by NDNOutputStream and its subclasses, or 
  * NDNNetworkObject and its subclasses.
+ * 
+ * A writer with asynchronous signing (see setAsyncSigning and SystemConfiguration.SIGNING_ASYNC)
+ * returns from put as soon as the content is queued to be signed, and the content is sent
+ * when it has been signed and an interest for it arrives. Unlike a synchronous put, which
+ * waits for readers to take the content it wrote, such a put doesn't wait for readers at all;
+ * only close does, after waiting for all the content to be signed. Errors signing or writing
+ * content are thrown by a later put or by close.
  */
 public class NDNWriter {
 	
@@ -76,6 +85,7 @@ public class NDNWriter {
 	 */
 	public NDNWriter(ContentName namespace, NDNHandle handle) throws IOException {
 		_segmenter = new NDNSegmenter(getFlowController(namespace, handle));
+		setAsyncSigning(SystemConfiguration.SIGNING_ASYNC);
 	}
 	
 	/**
@@ -107,6 +117,7 @@ public class NDNWriter {
 	 */
 	protected NDNWriter(NDNFlowControl flowControl) {
 		_segmenter = new NDNSegmenter(flowControl);
+		setAsyncSigning(SystemConfiguration.SIGNING_ASYNC);
 	}
 	
 	/**
@@ -242,7 +253,8 @@ public class NDNWriter {
 	 * 	name matches the Interest, the first Data segment of the content will be written immediately.
 	 *   Otherwise both Interest and Data will be cached.
 	 * @throws SignatureException if there is a problem signing.
-	 * @throws IOException if there is a problem writing data.
+	 * @throws IOException if there is a problem writing data, or readers don't take it. With
+	 * 	asynchronous signing put doesn't wait for readers, and these are thrown by close.
 	 */
 	public ContentName put(ContentName name, byte[] content, 
 			SignedInfo.ContentType type,
@@ -257,8 +269,11 @@ public class NDNWriter {
 			_segmenter.getFlowControl().startWrite(name, Shape.STREAM); // Streams take care of this for the non-gone case.
 			_segmenter.put(name, content, 0, ((null == content) ? 0 : content.length),
 								  true, type, freshnessSeconds, locator, publisher, keys);
-			_segmenter.getFlowControl().beforeClose();
-			_segmenter.getFlowControl().afterClose();
+			// An asynchronous put leaves waiting for readers to close
+			if (null == _segmenter.getAsyncSigner()) {
+				_segmenter.getFlowControl().beforeClose();
+				_segmenter.getFlowControl().afterClose();
+			}
 			return name;
 		} catch (InvalidKeyException e) {
 			Log.info(Log.FAC_IO, "InvalidKeyException using key for publisher " + publisher + ".");
@@ -379,14 +394,26 @@ public class NDNWriter {
 	}
 	
 	/**
-	 * Close this writer, ensuring all buffers are clear.
-	 * @throws IOException If readers do not empty the buffer.
+	 * Close this writer, ensuring all buffers are clear. With asynchronous signing this first
+	 * waits for all the content put to be signed.
+	 * @throws IOException If readers do not empty the buffer, or content could not be signed.
 	 */
 	public void close() throws IOException {
+		_segmenter.waitForOutput();
 		_segmenter.getFlowControl().beforeClose();
 		_segmenter.getFlowControl().afterClose();
 	}
 	
+	/**
+	 * Sign content on the threads of the default NDNAsyncSigner, so that put returns
+	 * before the content is signed, or sign it in put. When signing asynchronously, put
+	 * doesn't wait for readers to take the content; call close to wait for them.
+	 * @param async true to sign content asynchronously
+	 */
+	public void setAsyncSigning(boolean async) {
+		_segmenter.setAsyncSigner(async ? NDNAsyncSigner.getDefaultSigner() : null);
+	}
+
 	/**
 	 * Set the default timeout for this writer.
 	 * Default is 10 seconds
@@ -43,6 +43,7 @@ import org.ndnx.ndn.impl.encoding.XMLDecoder;
 import org.ndnx.ndn.impl.encoding.XMLEncodable;
 import org.ndnx.ndn.impl.encoding.XMLEncoder;
 import org.ndnx.ndn.impl.security.crypto.NDNDigestHelper;
+import org.ndnx.ndn.impl.security.crypto.CryptoPool;
 import org.ndnx.ndn.impl.security.crypto.SignatureLocks;
 import org.ndnx.ndn.impl.security.crypto.jce.AESWrapWithPad;
 import org.ndnx.ndn.impl.support.DataUtils;
@@ -204,7 +205,7 @@ public class WrappedKey extends GenericXMLEncodable implements XMLEncodable {
 
 			Cipher wrapCipher = null;
 			try {
-				wrapCipher = Cipher.getInstance(wrappingAlgorithm);
+				wrapCipher = CryptoPool.getCipher(wrappingAlgorithm, null);
 				if (Log.isLoggable(Level.INFO)) {
 					Log.info("Wrap cipher {0}, provider {1}.", wrapCipher.getAlgorithm(), wrapCipher.getProvider());
 				}
@@ -247,6 +248,7 @@ public class WrappedKey extends GenericXMLEncodable implements XMLEncodable {
 				} else {
 					wrappedKey = wrapCipher.wrap(keyToBeWrapped);
 				}
+				CryptoPool.returnCipher(wrapCipher, wrappingAlgorithm, null);
 			} catch (IllegalBlockSizeException ex) {
 				Log.warning("IllegalBlockSizeException " + ex.getMessage() + " in wrap key -- unexpected, we should have compensated for this. Key to be wrapped algorithm? " + keyToBeWrapped.getAlgorithm() + ". Using nonce key? " + (null == nonceKey));
 				throw new InvalidKeyException("IllegalBlockSizeException " + ex.getMessage() + " in wrap key -- unexpected, we should have compensated for this. Key to be wrapped algorithm? " + keyToBeWrapped.getAlgorithm() + ". Using nonce key? " + (null == nonceKey));
@@ -373,12 +375,9 @@ public class WrappedKey extends GenericXMLEncodable implements XMLEncodable {
 			unwrappedKey = AESUnwrapWithPad(unwrapKey, wrappedKeyAlgorithm, encryptedKey(), 0, encryptedKey().length);
 		} else {
 			Cipher unwrapCipher = null;
+			String unwrapAlgorithm = (null != wrapAlgorithm()) ? wrapAlgorithm() : wrapAlgorithmForKey(unwrapKey.getAlgorithm());
 			try {
-				if (null != wrapAlgorithm()) {
-					unwrapCipher = Cipher.getInstance(wrapAlgorithm());
-				} else {
-					unwrapCipher = Cipher.getInstance(wrapAlgorithmForKey(unwrapKey.getAlgorithm()));
-				}
+				unwrapCipher = CryptoPool.getCipher(unwrapAlgorithm, null);
 			} catch (NoSuchAlgorithmException e) {
 				Log.warning("Unexpected NoSuchAlgorithmException attempting to instantiate wrapping algorithm.");
 				throw new InvalidKeyException("Unexpected NoSuchAlgorithmException attempting to instantiate wrapping algorithm.");
@@ -421,6 +420,7 @@ public class WrappedKey extends GenericXMLEncodable implements XMLEncodable {
 					SignatureLocks.unwrapUnock();
 				}
 			}
+			CryptoPool.returnCipher(unwrapCipher, unwrapAlgorithm, null);
 		}
 	    return unwrappedKey;
 	}
@@ -37,12 +37,15 @@ import org.ndnx.ndn.ContentVerifier;
 import org.ndnx.ndn.KeyManager;
 import org.ndnx.ndn.config.SystemConfiguration;
 import org.ndnx.ndn.impl.encoding.BinaryXMLCodec;
+import org.ndnx.ndn.impl.encoding.BinaryXMLDecoder;
+import org.ndnx.ndn.impl.encoding.BinaryXMLEncoder;
 import org.ndnx.ndn.impl.encoding.NDNProtocolDTags;
 import org.ndnx.ndn.impl.encoding.GenericXMLEncodable;
 import org.ndnx.ndn.impl.encoding.XMLCodecFactory;
 import org.ndnx.ndn.impl.encoding.XMLDecoder;
 import org.ndnx.ndn.impl.encoding.XMLEncodable;
 import org.ndnx.ndn.impl.encoding.XMLEncoder;
+import org.ndnx.ndn.impl.security.crypto.CryptoPool;
 import org.ndnx.ndn.impl.security.crypto.NDNDigestHelper;
 import org.ndnx.ndn.impl.security.crypto.NDNSignatureHelper;
 import org.ndnx.ndn.impl.support.DataUtils;
@@ -59,6 +62,12 @@ import org.ndnx.ndn.protocol.SignedInfo.ContentType;
  * 
  * prepareContent() is called to create the MerkelTree hash.  That encoding can be cached because
  * _name, _signedInfo, and _content are only assigned in a constructor or in decode.
+ *
+ * When decoded by a BinaryXMLDecoder from an array (which is how packets arrive from the
+ * network) only the name is decoded immediately. The encoded packet is kept, and the
+ * signature, signedInfo and content are decoded from it the first time any of them is
+ * needed. Until the signature is changed, encoding and digest calculation use the kept
+ * bytes rather than encoding the object again.
  */
 public class ContentObject extends GenericXMLEncodable implements XMLEncodable, Comparable<ContentObject>, ContentNameProvider {
 
@@ -74,6 +83,13 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 	 */
 	protected byte [] _digest = null;
 	protected Signature _signature; 
+
+	/**
+	 * The wire encoding this object was decoded from, or null. If _lazy is set
+	 * _signature, _signedInfo and _content have not yet been decoded from it.
+	 */
+	protected byte [] _encoded = null;
+	protected volatile boolean _lazy = false;
 	
 	/**
 	 * We don't specify a required publisher, and right now we don't enforce
@@ -316,7 +332,7 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 
 	public ContentObject clone() {
 		// Constructor will clone the _content, signedInfo and signature are immutable types.
-		return new ContentObject(_name, _signedInfo, _content, _signature);
+		return new ContentObject(_name, signedInfo(), content(), signature());
 	}
 
 	/**
@@ -341,7 +357,11 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 		return new ContentName(_name, digest());
 	}
 
-	public final SignedInfo signedInfo() { return _signedInfo;}
+	public final SignedInfo signedInfo() {
+		if (_lazy)
+			decodeRemaining();
+		return _signedInfo;
+	}
 
 	/**
 	 * Final here doesn't really make it immutable. There have been
@@ -349,21 +369,48 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 	 * and it would be expensive.
 	 * @return
 	 */
-	public final byte [] content() { return _content; }
+	public final byte [] content() {
+		if (_lazy)
+			decodeRemaining();
+		return _content;
+	}
 	
 	/**
 	 * Avoid problems where content().length might be expensive.
 	 * @return content length in bytes
 	 */
-	public final int contentLength() { return ((null == _content) ? 0 : _content.length); }
+	public final int contentLength() {
+		byte [] content = content();
+		return ((null == content) ? 0 : content.length);
+	}
+
+	/**
+	 * @return the length of the wire encoding kept from decoding this object, or 0
+	 * 	if none is kept
+	 */
+	public final int encodedLength() {
+		byte [] encoded = _encoded;
+		return ((null == encoded) ? 0 : encoded.length);
+	}
 
-	public final Signature signature() { return _signature; }
+	public final Signature signature() {
+		if (_lazy)
+			decodeRemaining();
+		return _signature;
+	}
 
 	/**
 	 * Used by NetworkObject to decode the object from a network stream.
 	 * @see org.ndnx.ndn.impl.encoding.XMLEncodable
 	 */
 	public void decode(XMLDecoder decoder) throws ContentDecodingException {
+		_digest = null;
+		if ((decoder instanceof BinaryXMLDecoder) && ((BinaryXMLDecoder)decoder).hasSource()) {
+			decodeName((BinaryXMLDecoder)decoder);
+			return;
+		}
+		_encoded = null;
+		_lazy = false;
 		decoder.readStartElement(getElementLabel());
 
 		_signature = new Signature();
@@ -380,11 +427,96 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 		decoder.readEndElement();
 	}
 
+	/**
+	 * Decode only the name, skipping the other elements, and keep a copy of the encoding
+	 * for decodeRemaining() to finish the job when needed.
+	 */
+	protected void decodeName(BinaryXMLDecoder decoder) throws ContentDecodingException {
+		int start = decoder.sourceOffset();
+		decoder.readStartElement(getElementLabel());
+		decoder.skipElement(NDNProtocolDTags.Signature);
+
+		ContentName name = new ContentName();
+		name.decode(decoder);
+
+		decoder.skipElement(NDNProtocolDTags.SignedInfo);
+		decoder.skipElement(NDNProtocolDTags.Content);
+		decoder.readEndElement();
+
+		int end = decoder.sourceOffset();
+		byte [] encoded = new byte[end - start];
+		System.arraycopy(decoder.source(), start, encoded, 0, encoded.length);
+
+		synchronized (this) {
+			_name = name;
+			_signature = null;
+			_signedInfo = null;
+			_content = null;
+			_encoded = encoded;
+			_lazy = true;
+		}
+	}
+
+	/**
+	 * Decode the elements skipped by decodeName() from the kept encoding. The structure
+	 * of the encoding was checked when the name was decoded, so a failure here means
+	 * the contents of an element are bad. As the accessors can't throw a checked exception,
+	 * that is reported as an IllegalStateException. Code taking objects off the wire can use
+	 * isDecodable() to find out about this before handing them on.
+	 */
+	protected synchronized void decodeRemaining() {
+		if (!_lazy)
+			return;
+		try {
+			BinaryXMLDecoder decoder = new BinaryXMLDecoder();
+			decoder.beginDecoding(_encoded, 0, _encoded.length);
+			decoder.readStartElement(getElementLabel());
+
+			Signature signature = new Signature();
+			signature.decode(decoder);
+
+			decoder.skipElement(NDNProtocolDTags.Name);
+
+			SignedInfo signedInfo = new SignedInfo();
+			signedInfo.decode(decoder);
+
+			_content = decoder.readBinaryElement(NDNProtocolDTags.Content);
+			_signedInfo = signedInfo;
+			_signature = signature;
+			_lazy = false;
+		} catch (ContentDecodingException e) {
+			Log.warning(Log.FAC_ENCODING, "Cannot decode content object {0}: {1}", _name, e.getMessage());
+			throw new IllegalStateException("Cannot decode content object " + _name + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Finish decoding an object which was decoded lazily, so that a malformed object can
+	 * be discarded before anything tries to use it.
+	 * @return false if the object is malformed, in which case its signature(), signedInfo()
+	 * 	and content() accessors will throw IllegalStateException
+	 */
+	public boolean isDecodable() {
+		if (!_lazy)
+			return true;
+		try {
+			decodeRemaining();
+			return true;
+		} catch (IllegalStateException e) {
+			return false;
+		}
+	}
+
 	/**
 	 * Used by NetworkObject to encode the object to a network stream.
 	 * @see org.ndnx.ndn.impl.encoding.XMLEncodable
 	 */
 	public void encode(XMLEncoder encoder) throws ContentEncodingException {
+		byte [] encoded = _encoded;
+		if ((null != encoded) && (encoder instanceof BinaryXMLEncoder)) {
+			((BinaryXMLEncoder)encoder).writeEncoded(encoded);
+			return;
+		}
 		if (!validate()) {
 			throw new ContentEncodingException("Cannot encode " + this.getClass().getName() + ": field values missing.");
 		}
@@ -394,7 +526,7 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 		name().encode(encoder);
 		signedInfo().encode(encoder);
 
-		encoder.writeElement(NDNProtocolDTags.Content, _content);
+		encoder.writeElement(NDNProtocolDTags.Content, content());
 
 		encoder.writeEndElement();   		
 	}
@@ -413,10 +545,12 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 	public int hashCode() {
 		final int PRIME = 31;
 		int result = 1;
+		SignedInfo signedInfo = signedInfo();
+		Signature signature = signature();
 		result = PRIME * result + ((_name == null) ? 0 : _name.hashCode());
-		result = PRIME * result + ((_signedInfo == null) ? 0 : _signedInfo.hashCode());
-		result = PRIME * result + ((_signature == null) ? 0 : _signature.hashCode());
-		result = PRIME * result + Arrays.hashCode(_content);
+		result = PRIME * result + ((signedInfo == null) ? 0 : signedInfo.hashCode());
+		result = PRIME * result + ((signature == null) ? 0 : signature.hashCode());
+		result = PRIME * result + Arrays.hashCode(content());
 		return result;
 	}
 
@@ -434,17 +568,19 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 				return false;
 		} else if (!_name.equals(other.name()))
 			return false;
-		if (_signedInfo == null) {
+		SignedInfo signedInfo = signedInfo();
+		if (signedInfo == null) {
 			if (other.signedInfo() != null)
 				return false;
-		} else if (!_signedInfo.equals(other.signedInfo()))
+		} else if (!signedInfo.equals(other.signedInfo()))
 			return false;
-		if (_signature == null) {
+		Signature signature = signature();
+		if (signature == null) {
 			if (other.signature() != null)
 				return false;
-		} else if (!_signature.equals(other.signature()))
+		} else if (!signature.equals(other.signature()))
 			return false;
-		if (!Arrays.equals(_content, other._content))
+		if (!Arrays.equals(content(), other.content()))
 			return false;
 		return true;
 	}
@@ -455,6 +591,10 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 	 * @param signature
 	 */
 	public void setSignature(Signature signature) {
+		// The kept encoding no longer matches once the signature changes
+		if (_lazy)
+			decodeRemaining();
+		_encoded = null;
 		if (null != _signature) {
 			// Only do this if FAC_SIGNING is on, as we use it in tests.
 			if (Log.isLoggable(Log.FAC_SIGNING, Level.FINE))
@@ -468,12 +608,13 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 	}
 
 	public void sign(Key signingKey) throws InvalidKeyException, SignatureException {
-		// Use _content to avoid case where content() might want to clone.
-		setSignature(sign(this.name(), this.signedInfo(), this._content, 0, this._content.length, signingKey));
+		byte [] content = content();
+		setSignature(sign(this.name(), this.signedInfo(), content, 0, content.length, signingKey));
 	}
 	
 	public void sign(String digestAlgorithm, Key signingKey) throws InvalidKeyException, SignatureException, NoSuchAlgorithmException {
-		setSignature(sign(this.name(), this.signedInfo(), this._content, 0, this._content.length, 
+		byte [] content = content();
+		setSignature(sign(this.name(), this.signedInfo(), content, 0, content.length, 
 						digestAlgorithm, signingKey));
 	}
 
@@ -774,11 +915,17 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 	 * Encode this object and calculate the digest.
 	 */
 	protected byte[] calcDigest() {
+		String algorithm = NDNDigestHelper.DEFAULT_DIGEST_ALGORITHM;
 		MessageDigest md;
 		try {
-			md = MessageDigest.getInstance(NDNDigestHelper.DEFAULT_DIGEST_ALGORITHM);
-			DigestOutputStream dos = new DigestOutputStream(new NullOutputStream(), md);
-			encode(dos);
+			md = CryptoPool.getDigest(algorithm);
+			byte [] encoded = _encoded;
+			if (null != encoded) {
+				md.update(encoded);
+			} else {
+				DigestOutputStream dos = new DigestOutputStream(new NullOutputStream(), md);
+				encode(dos);
+			}
 		} catch (NoSuchAlgorithmException e) {
 			// Should never happen since we are using a default algorithm.
 			throw new RuntimeException(e);
@@ -786,7 +933,9 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 			// Should never happen since we are writing out to make a digest only.
 			throw new RuntimeException(e);
 		}
-		return md.digest();
+		byte [] digest = md.digest();
+		CryptoPool.returnDigest(md, algorithm);
+		return digest;
 	}
 	
 	/**
@@ -836,12 +985,13 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 	 */
 	public String toString() {
 		StringBuffer s = new StringBuffer();
+		byte [] content = content();
 		s.append(String.format("CObj: name=%s, digest=%s, SI:%s len=%d, data=", _name,
-				DataUtils.printHexBytes(digest()), _signedInfo, _content.length));
-		int len = _content.length;
+				DataUtils.printHexBytes(digest()), signedInfo(), content.length));
+		int len = content.length;
 		if (len > 16)
 			len = 16;
-		s.append(Component.printURI(_content, 0, len));
+		s.append(Component.printURI(content, 0, len));
 		return s.toString();
 	}
 }
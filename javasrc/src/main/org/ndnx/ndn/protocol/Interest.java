@@ -75,7 +75,7 @@ public class Interest extends GenericXMLEncodable implements XMLEncodable, Compa
 	
 	protected Integer _answerOriginKind = null;
 	protected Integer _scope;
-	protected byte[] _interestLifetime = null;		// For now we don't have the ability to set an interest lifetime
+	protected byte[] _interestLifetime = null;		// In units of 1/4096 second
 	protected byte[] _nonce;
 
 	public long userTime;
@@ -135,6 +135,23 @@ public class Interest extends GenericXMLEncodable implements XMLEncodable, Compa
 	
 	public byte[] interestLifetime() { return _interestLifetime;}
 	public void interestLifetime(byte[] interestLifetime) { _interestLifetime = interestLifetime; }
+
+	/**
+	 * The lifetime is encoded in units of 1/4096 second.
+	 * @return the interest lifetime in milliseconds, or -1 if no lifetime is set
+	 */
+	public long interestLifetimeMillis() {
+		if (null == _interestLifetime || 0 == _interestLifetime.length)
+			return -1;
+		return (DataUtils.byteArrayToUnsignedLong(_interestLifetime) * 1000L) / 4096L;
+	}
+
+	/**
+	 * @param msec the interest lifetime in milliseconds
+	 */
+	public void interestLifetimeMillis(long msec) {
+		_interestLifetime = DataUtils.unsignedLongToByteArray((msec * 4096L) / 1000L);
+	}
 	
 	public Integer answerOriginKind() { 
 		if (null == _answerOriginKind) {
@@ -538,6 +555,9 @@ public class Interest extends GenericXMLEncodable implements XMLEncodable, Compa
 
 		if (null != scope()) 
 			encoder.writeElement(NDNProtocolDTags.Scope, scope());
+
+		if (null != interestLifetime())
+			encoder.writeElement(NDNProtocolDTags.InterestLifetime, interestLifetime());
 		
 		if (null != nonce())
 			encoder.writeElement(NDNProtocolDTags.Nonce, nonce());
@@ -0,0 +1,139 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.ndnx.ndn.impl.HashedTimingWheel.Timeout;
+import org.ndnx.ndn.impl.support.Log;
+import org.junit.Test;
+
+/**
+ * Test the timing wheel used to schedule interest refreshes
+ */
+public class HashedTimingWheelTest {
+
+	@Test
+	public void testExpire() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testExpire");
+
+		HashedTimingWheel<Integer> wheel = new HashedTimingWheel<Integer>(100, 8, 1000);
+		wheel.schedule(1, 1150);
+		wheel.schedule(2, 1420);
+		// More than a revolution ahead - shares a slot with 1
+		wheel.schedule(3, 1950);
+		assertEquals(3, wheel.size());
+
+		assertTrue(wheel.expire(1100).isEmpty());
+		List<Integer> due = wheel.expire(1199);
+		assertEquals(1, due.size());
+		assertEquals(1, due.get(0).intValue());
+		due = wheel.expire(1900);
+		assertEquals(1, due.size());
+		assertEquals(2, due.get(0).intValue());
+		assertEquals(1, wheel.size());
+		due = wheel.expire(1960);
+		assertEquals(1, due.size());
+		assertEquals(3, due.get(0).intValue());
+		assertEquals(0, wheel.size());
+
+		Log.info(Log.FAC_TEST, "Completed testExpire");
+	}
+
+	@Test
+	public void testPastDeadline() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testPastDeadline");
+
+		HashedTimingWheel<Integer> wheel = new HashedTimingWheel<Integer>(100, 8, 1000);
+		wheel.expire(1250);
+		wheel.schedule(1, 900);
+		wheel.schedule(2, 1260);
+		List<Integer> due = wheel.expire(1250);
+		assertEquals(1, due.size());
+		assertEquals(1, due.get(0).intValue());
+		due = wheel.expire(1270);
+		assertEquals(1, due.size());
+		assertEquals(2, due.get(0).intValue());
+
+		// A long gap sweeps the whole wheel once
+		wheel.schedule(3, 1500);
+		wheel.schedule(4, 1700);
+		assertEquals(2, wheel.expire(100000).size());
+
+		Log.info(Log.FAC_TEST, "Completed testPastDeadline");
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testCancel");
+
+		HashedTimingWheel<Integer> wheel = new HashedTimingWheel<Integer>(100, 8, 0);
+		Timeout<Integer> t1 = wheel.schedule(1, 250);
+		Timeout<Integer> t2 = wheel.schedule(2, 250);
+		Timeout<Integer> t3 = wheel.schedule(3, 250);
+		assertTrue(wheel.cancel(t2));
+		assertFalse(wheel.cancel(t2));
+		assertFalse(t2.isScheduled());
+		List<Integer> due = wheel.expire(300);
+		assertEquals(2, due.size());
+		assertTrue(due.contains(1));
+		assertTrue(due.contains(3));
+		assertFalse(t1.isScheduled());
+		assertFalse(wheel.cancel(t3));
+		assertEquals(0, wheel.size());
+
+		Log.info(Log.FAC_TEST, "Completed testCancel");
+	}
+
+	@Test
+	public void testNextDeadline() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testNextDeadline");
+
+		HashedTimingWheel<Integer> wheel = new HashedTimingWheel<Integer>(100, 8, 1000);
+		assertEquals(Long.MAX_VALUE, wheel.nextDeadline());
+
+		// Only items more than a revolution ahead
+		wheel.schedule(1, 2950);
+		Timeout<Integer> t2 = wheel.schedule(2, 2130);
+		assertEquals(2130, wheel.nextDeadline());
+
+		// An item due this revolution, in a later slot than the one the others share
+		wheel.schedule(3, 1680);
+		wheel.schedule(4, 1620);
+		assertEquals(1620, wheel.nextDeadline());
+		wheel.expire(1650);
+		assertEquals(1680, wheel.nextDeadline());
+		wheel.expire(1700);
+		assertEquals(2130, wheel.nextDeadline());
+		wheel.cancel(t2);
+		assertEquals(2950, wheel.nextDeadline());
+
+		// Overdue items are due now
+		wheel.schedule(5, 900);
+		assertEquals(900, wheel.nextDeadline());
+
+		Log.info(Log.FAC_TEST, "Completed testNextDeadline");
+	}
+}
@@ -114,6 +114,14 @@ public class InterestTableTest extends NDNTestBase {
 	@Before
 	public void setUp() throws Exception {
 	}
+
+	/**
+	 * Create the table under test. Subclasses override this to run the same
+	 * tests against other InterestTable implementations.
+	 */
+	protected <T> InterestTable<T> newTable() {
+		return new InterestTable<T>();
+	}
 	
 	@Test
 	public void testAdd() throws MalformedContentNameStringException {
@@ -127,7 +135,7 @@ public class InterestTableTest extends NDNTestBase {
 		ContentName namB = ContentName.fromNative("/a/b/c");
 		ContentName namC = ContentName.fromNative("/a/b/c/d");
 		
-		InterestTable<Object> interests = new InterestTable<Object>();
+		InterestTable<Object> interests = newTable();
 		interests.add(intA, null);
 		interests.add(intB, null);
 		interests.add(intC, null);
@@ -142,7 +150,7 @@ public class InterestTableTest extends NDNTestBase {
 		assertEquals(4, interests.size());
 		assertEquals(2, interests.sizeNames());
 		
-		InterestTable<Object> names = new InterestTable<Object>();
+		InterestTable<Object> names = newTable();
 		names.add(namA, null);
 		names.add(namB, null);
 		names.add(namC, null);
@@ -336,7 +344,7 @@ public class InterestTableTest extends NDNTestBase {
 	final ContentName onethree = new ContentName(new byte[]{0x01, 0x02, 0x03, 0x04}, new byte[]{0x03});
 
 	private InterestTable<Integer> initTable() throws MalformedContentNameStringException {
-		InterestTable<Integer> table = new InterestTable<Integer>();
+		InterestTable<Integer> table = newTable();
 		addEntry(table, a, new Integer(1));
 		addEntry(table, ab, new Integer(2));
 		addEntry(table, c, new Integer(3));
@@ -417,7 +425,7 @@ public class InterestTableTest extends NDNTestBase {
 	}
 	
 	public InterestTable<Integer> initPub() throws MalformedContentNameStringException {
-		InterestTable<Integer> table = new InterestTable<Integer>();
+		InterestTable<Integer> table = newTable();
 		
 		setID(0);
 		addEntry(table, a, new Integer(1));
@@ -592,7 +600,7 @@ public class InterestTableTest extends NDNTestBase {
 	private enum InterestType {Next, Last, MaxSuffixComponents, Exclude};
 	
 	private InterestTable<Integer> initInterest(InterestType type) throws MalformedContentNameStringException {
-		InterestTable<Integer> table = new InterestTable<Integer>();
+		InterestTable<Integer> table = newTable();
 		addEntry(table, a, type, new Integer(1));
 		addEntry(table, ab, type, new Integer(2));
 		addEntry(table, c, type, new Integer(3));
@@ -687,7 +695,7 @@ public class InterestTableTest extends NDNTestBase {
 	public void testLRU() throws MalformedContentNameStringException, InvalidKeyException, SignatureException, ConfigurationException {
 		Log.info(Log.FAC_TEST, "Starting testLRU");
 
-		InterestTable<Integer> table = new InterestTable<Integer>();
+		InterestTable<Integer> table = newTable();
 		table.setCapacity(6);
 		addEntry(table, a, new Integer(1));
 		addEntry(table, ab, new Integer(2));
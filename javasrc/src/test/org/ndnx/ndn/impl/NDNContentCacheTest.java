@@ -0,0 +1,146 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.ndnx.ndn.impl.NDNNetworkManager.StatsEnum;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Exclude;
+import org.ndnx.ndn.protocol.Interest;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+import org.ndnx.ndn.protocol.SignedInfo.ContentType;
+import org.junit.Test;
+
+/**
+ * Test the network manager's content cache
+ */
+public class NDNContentCacheTest {
+
+	static final PublisherPublicKeyDigest publisher = new PublisherPublicKeyDigest(new byte[32]);
+	static final Signature fakeSignature = new Signature(new byte[128]);
+
+	@Test
+	public void testMatch() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testMatch");
+
+		NDNEnumStats<StatsEnum> stats = new NDNEnumStats<StatsEnum>(StatsEnum.Puts);
+		NDNContentCache cache = new NDNContentCache(10, 10000, stats);
+		ContentName prefix = ContentName.fromNative("/test/cache");
+		assertNull(cache.get(new Interest(prefix), 0));
+
+		ContentObject v1 = content(new ContentName(prefix, "v1"), null);
+		ContentObject v2 = content(new ContentName(prefix, "v2"), null);
+		ContentObject v3 = content(new ContentName(prefix, "v3"), null);
+		cache.put(v2, 0);
+		cache.put(v3, 0);
+		cache.put(v1, 0);
+		cache.put(content(ContentName.fromNative("/test/other"), null), 0);
+		assertEquals(4, cache.size());
+
+		assertEquals(v1, cache.get(new Interest(prefix), 0));
+		Interest rightmost = new Interest(prefix);
+		rightmost.childSelector(Interest.CHILD_SELECTOR_RIGHT);
+		assertEquals(v3, cache.get(rightmost, 0));
+		rightmost.exclude(Exclude.factory(new byte[][]{"v3".getBytes()}));
+		assertEquals(v2, cache.get(rightmost, 0));
+		assertEquals(v2, cache.get(new Interest(v2.name()), 0));
+		assertNull(cache.get(new Interest(new ContentName(prefix, "v4")), 0));
+		assertEquals(v2, cache.get(new Interest(v2.fullName()), 0));
+
+		Interest notCached = new Interest(prefix);
+		notCached.answerOriginKind(Interest.ANSWER_GENERATED);
+		assertNull(cache.get(notCached, 0));
+
+		assertEquals(5, stats.getCounter(StatsEnum.ContentCacheHits.toString()));
+		assertEquals(2, stats.getCounter(StatsEnum.ContentCacheMisses.toString()));
+	}
+
+	@Test
+	public void testFreshness() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testFreshness");
+
+		NDNContentCache cache = new NDNContentCache(10, 10000, null);
+		ContentName name = ContentName.fromNative("/test/cache/fresh");
+		ContentObject co = content(name, 2);
+		cache.put(co, 1000);
+		cache.put(content(ContentName.fromNative("/test/cache/never"), 0), 1000);
+		assertEquals(1, cache.size());
+
+		assertEquals(co, cache.get(new Interest(name), 2999));
+		Interest stale = new Interest(name);
+		stale.answerOriginKind(Interest.DEFAULT_ANSWER_ORIGIN_KIND | Interest.ANSWER_STALE);
+		assertEquals(co, cache.get(stale, 3000));
+		assertNull(cache.get(new Interest(name), 3000));
+		// Stale content is dropped once it's seen
+		assertEquals(0, cache.size());
+		assertNull(cache.get(stale, 3000));
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testEviction");
+
+		NDNEnumStats<StatsEnum> stats = new NDNEnumStats<StatsEnum>(StatsEnum.Puts);
+		NDNContentCache cache = new NDNContentCache(2, 10000, stats);
+		ContentObject a = content(ContentName.fromNative("/test/a"), null);
+		ContentObject b = content(ContentName.fromNative("/test/b"), null);
+		ContentObject c = content(ContentName.fromNative("/test/c"), null);
+		cache.put(a, 0);
+		cache.put(b, 0);
+		assertEquals(a, cache.get(new Interest(a.name()), 0));
+		cache.put(c, 0);
+		assertEquals(2, cache.size());
+		assertEquals(a, cache.get(new Interest(a.name()), 0));
+		assertEquals(c, cache.get(new Interest(c.name()), 0));
+		assertNull(cache.get(new Interest(b.name()), 0));
+		assertEquals(1, stats.getCounter(StatsEnum.ContentCacheEvictions.toString()));
+
+		// Bounded by size as well - each of these is 1000 bytes of content plus the name
+		cache = new NDNContentCache(10, 2500, stats);
+		for (int i = 0; i < 5; i++)
+			cache.put(content(ContentName.fromNative("/test/big/" + i), null, new byte[1000]), 0);
+		assertEquals(2, cache.size());
+		assertEquals(4, stats.getCounter(StatsEnum.ContentCacheEvictions.toString()));
+		cache.put(content(ContentName.fromNative("/test/huge"), null, new byte[3000]), 0);
+		assertEquals(2, cache.size());
+		cache.put(a, 0);
+		assertEquals(a, cache.get(new Interest(a.name()), 0));
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.bytes());
+	}
+
+	private ContentObject content(ContentName name, Integer freshness) {
+		return content(name, freshness, name.toString().getBytes());
+	}
+
+	private ContentObject content(ContentName name, Integer freshness, byte [] data) {
+		SignedInfo si = new SignedInfo(publisher, ContentType.DATA, null, freshness, null);
+		return new ContentObject(name, si, data, fakeSignature);
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ndnx.ndn.impl.NDNNetworkManager.StatsEnum;
+import org.ndnx.ndn.impl.NDNStats.NDNEnumStats;
+import org.ndnx.ndn.impl.support.Log;
+import org.junit.Test;
+
+/**
+ * Test ordering, dropping and shutdown of the network manager's handler dispatcher
+ */
+public class NDNDispatcherTest {
+
+	static final int KEYS = 10;
+	static final int TASKS = 200;
+
+	/**
+	 * Occupies a dispatch thread until released
+	 */
+	static class Blocker implements Runnable {
+		final CountDownLatch _started = new CountDownLatch(1);
+		final CountDownLatch _release = new CountDownLatch(1);
+
+		public void run() {
+			_started.countDown();
+			try {
+				_release.await();
+			} catch (InterruptedException e) {}
+		}
+	}
+
+	static NDNEnumStats<StatsEnum> stats() {
+		return new NDNEnumStats<StatsEnum>(StatsEnum.Puts);
+	}
+
+	@Test
+	public void testOrdering() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testOrdering");
+
+		NDNDispatcher dispatcher = new NDNDispatcher("testOrdering", 4, TASKS * KEYS, stats());
+		final CountDownLatch done = new CountDownLatch(TASKS * KEYS);
+		final AtomicInteger overlaps = new AtomicInteger(0);
+		final List<List<Integer>> seen = new ArrayList<List<Integer>>();
+		final AtomicInteger[] inside = new AtomicInteger[KEYS];
+		for (int k = 0; k < KEYS; k++) {
+			seen.add(new ArrayList<Integer>());
+			inside[k] = new AtomicInteger(0);
+		}
+		for (int i = 0; i < TASKS; i++) {
+			for (int k = 0; k < KEYS; k++) {
+				final int key = k;
+				final int seq = i;
+				assertTrue(dispatcher.dispatch(key, new Runnable() {
+					public void run() {
+						if (inside[key].incrementAndGet() != 1)
+							overlaps.incrementAndGet();
+						seen.get(key).add(seq);
+						Thread.yield();
+						inside[key].decrementAndGet();
+						done.countDown();
+					}
+				}, 1000));
+			}
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		dispatcher.shutdown();
+
+		assertEquals(0, overlaps.get());
+		for (int k = 0; k < KEYS; k++) {
+			List<Integer> order = seen.get(k);
+			assertEquals(TASKS, order.size());
+			for (int i = 0; i < TASKS; i++)
+				assertEquals(i, order.get(i).intValue());
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testOrdering");
+	}
+
+	@Test
+	public void testDropping() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testDropping");
+
+		NDNEnumStats<StatsEnum> stats = stats();
+		final NDNDispatcher dispatcher = new NDNDispatcher("testDropping", 1, 2, stats);
+		final Blocker blocker = new Blocker();
+		final AtomicInteger ran = new AtomicInteger(0);
+		Runnable counter = new Runnable() {
+			public void run() {
+				ran.incrementAndGet();
+			}
+		};
+		assertTrue(dispatcher.dispatch(0, blocker, 1000));
+		assertTrue(blocker._started.await(5, TimeUnit.SECONDS));
+		assertTrue(dispatcher.tryDispatch(0, counter));
+		assertTrue(dispatcher.dispatch(0, counter, 1000));
+
+		// The queue is full and nothing is taking from it
+		assertFalse(dispatcher.tryDispatch(0, counter));
+		long start = System.currentTimeMillis();
+		assertFalse(dispatcher.dispatch(0, counter, 200));
+		assertTrue(System.currentTimeMillis() - start >= 150);
+		assertEquals(2, stats.getCounter(StatsEnum.DispatchDropped.name()));
+
+		// Space made while waiting is used
+		new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {}
+				blocker._release.countDown();
+			}
+		}.start();
+		assertTrue(dispatcher.dispatch(0, counter, 5000));
+		long deadline = System.currentTimeMillis() + 5000;
+		while (ran.get() < 3 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertEquals(3, ran.get());
+		assertEquals(2, stats.getCounter(StatsEnum.DispatchDropped.name()));
+		dispatcher.shutdown();
+
+		Log.info(Log.FAC_TEST, "Completed testDropping");
+	}
+
+	@Test
+	public void testShutdown() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testShutdown");
+
+		NDNDispatcher dispatcher = new NDNDispatcher("testShutdown", 1, 10, stats());
+		Blocker blocker = new Blocker();
+		final AtomicInteger ran = new AtomicInteger(0);
+		Runnable counter = new Runnable() {
+			public void run() {
+				ran.incrementAndGet();
+			}
+		};
+		assertTrue(dispatcher.dispatch(0, blocker, 1000));
+		assertTrue(blocker._started.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 3; i++)
+			assertTrue(dispatcher.tryDispatch(0, counter));
+
+		dispatcher.shutdown();
+		assertEquals(0, dispatcher.queueDepth());
+		assertFalse(dispatcher.tryDispatch(0, counter));
+		assertFalse(dispatcher.dispatch(0, counter, 1000));
+
+		blocker._release.countDown();
+		Thread thread = dispatcher._stripes[0]._thread;
+		thread.join(5000);
+		assertFalse(thread.isAlive());
+		assertEquals(0, ran.get());
+
+		Log.info(Log.FAC_TEST, "Completed testShutdown");
+	}
+}
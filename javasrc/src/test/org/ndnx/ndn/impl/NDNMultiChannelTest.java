@@ -0,0 +1,181 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ndnx.ndn.NDNContentHandler;
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.NDNNetworkManager.NetworkProtocol;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Interest;
+import org.ndnx.ndn.protocol.KeyLocator;
+import org.ndnx.ndn.protocol.NDNTime;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+import org.junit.Test;
+
+/**
+ * Check that a network manager with several channels to ndnd keeps the contract that a
+ * handler is only ever called from one thread at a time. A local socket stands in for ndnd
+ * and answers interests on both channels at once.
+ */
+public class NDNMultiChannelTest {
+
+	static final int OBJECTS = 200;
+
+	/**
+	 * Counts calls which overlap with another call
+	 */
+	static class OverlapHandler implements NDNContentHandler {
+		final AtomicInteger _inside = new AtomicInteger(0);
+		final AtomicInteger _overlaps = new AtomicInteger(0);
+		final CountDownLatch _done = new CountDownLatch(OBJECTS);
+
+		public Interest handleContent(ContentObject data, Interest interest) {
+			if (_inside.incrementAndGet() != 1)
+				_overlaps.incrementAndGet();
+			try {
+				Thread.sleep(1);
+			} catch (InterruptedException e) {}
+			_inside.decrementAndGet();
+			_done.countDown();
+			return null;
+		}
+	}
+
+	/**
+	 * Reads and discards whatever the network manager writes to one channel
+	 */
+	static class Drain extends Thread {
+		final SocketChannel _peer;
+
+		Drain(SocketChannel peer) {
+			_peer = peer;
+			setDaemon(true);
+		}
+
+		public void run() {
+			ByteBuffer buffer = ByteBuffer.allocate(8192);
+			try {
+				while (_peer.read(buffer) >= 0)
+					buffer.clear();
+			} catch (Exception e) {}
+		}
+	}
+
+	@Test
+	public void testSingleHandlerThread() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testSingleHandlerThread");
+
+		int channels = SystemConfiguration.AGENT_CHANNELS;
+		int dispatchThreads = SystemConfiguration.DISPATCH_THREADS;
+		NetworkProtocol protocol = SystemConfiguration.AGENT_PROTOCOL;
+		String port = System.getProperty(NDNNetworkManager.PROP_AGENT_PORT);
+		String host = System.getProperty(NDNNetworkManager.PROP_AGENT_HOST);
+		ServerSocketChannel server = ServerSocketChannel.open();
+		NDNNetworkManager manager = null;
+		try {
+			server.socket().bind(new InetSocketAddress("localhost", 0));
+			System.setProperty(NDNNetworkManager.PROP_AGENT_PORT, Integer.toString(server.socket().getLocalPort()));
+			System.setProperty(NDNNetworkManager.PROP_AGENT_HOST, "localhost");
+			SystemConfiguration.AGENT_CHANNELS = 2;
+			SystemConfiguration.DISPATCH_THREADS = 0;
+			SystemConfiguration.AGENT_PROTOCOL = NetworkProtocol.TCP;
+
+			manager = new NDNNetworkManager(null);
+			final SocketChannel[] peers = new SocketChannel[] { server.accept(), server.accept() };
+			for (SocketChannel peer : peers)
+				new Drain(peer).start();
+
+			OverlapHandler handler = new OverlapHandler();
+			ContentName prefix = ContentName.fromNative("/test/multiChannel");
+			SignedInfo signedInfo = new SignedInfo(new PublisherPublicKeyDigest(new byte[32]), NDNTime.now(),
+					SignedInfo.ContentType.DATA, new KeyLocator(new ContentName(prefix, "key")));
+			byte [] signatureBits = new byte[64];
+			Arrays.fill(signatureBits, (byte)1);
+			final List<List<byte[]>> answers = new ArrayList<List<byte[]>>();
+			answers.add(new ArrayList<byte[]>());
+			answers.add(new ArrayList<byte[]>());
+			for (int i = 0; i < OBJECTS; i++) {
+				ContentName name = new ContentName(prefix, Integer.toString(i));
+				manager.expressInterest(this, new Interest(name), handler);
+				ContentObject co = new ContentObject(name, signedInfo, new byte[]{(byte)i}, new Signature(signatureBits));
+				answers.get(i % 2).add(co.encode());
+			}
+
+			// Answer on both channels at once, so both reader threads are delivering together
+			Thread[] senders = new Thread[2];
+			for (int i = 0; i < 2; i++) {
+				final int channel = i;
+				senders[i] = new Thread() {
+					public void run() {
+						try {
+							for (byte [] packet : answers.get(channel))
+								peers[channel].write(ByteBuffer.wrap(packet));
+						} catch (Exception e) {
+							Log.warning(Log.FAC_TEST, "Failed to send content: {0}", e);
+						}
+					}
+				};
+				senders[i].start();
+			}
+			for (Thread sender : senders)
+				sender.join();
+
+			assertTrue(handler._done.await(30, TimeUnit.SECONDS));
+			assertEquals(0, handler._overlaps.get());
+		} finally {
+			if (null != manager)
+				manager.shutdown();
+			server.close();
+			SystemConfiguration.AGENT_CHANNELS = channels;
+			SystemConfiguration.DISPATCH_THREADS = dispatchThreads;
+			SystemConfiguration.AGENT_PROTOCOL = protocol;
+			restore(NDNNetworkManager.PROP_AGENT_PORT, port);
+			restore(NDNNetworkManager.PROP_AGENT_HOST, host);
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testSingleHandlerThread");
+	}
+
+	static void restore(String property, String value) {
+		if (null == value)
+			System.clearProperty(property);
+		else
+			System.setProperty(property, value);
+	}
+}
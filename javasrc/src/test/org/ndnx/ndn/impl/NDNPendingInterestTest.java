@@ -0,0 +1,118 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Arrays;
+
+import org.ndnx.ndn.NDNContentHandler;
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.NDNNetworkManager.NetworkProtocol;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Interest;
+import org.junit.Test;
+
+/**
+ * Check that identical interests expressed through a network manager share one pending
+ * interest, even when they carry different nonces. A local socket stands in for ndnd.
+ */
+public class NDNPendingInterestTest {
+
+	static class NonceInterest extends Interest {
+		NonceInterest(ContentName name) {
+			super(name);
+			_nonce = Interest.generateNonce();
+		}
+	}
+
+	static class NullHandler implements NDNContentHandler {
+		public Interest handleContent(ContentObject data, Interest interest) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return an interest with a nonce, as it would be decoded from the wire
+	 */
+	static Interest withNonce(ContentName name) throws Exception {
+		Interest interest = new Interest();
+		interest.decode(new NonceInterest(name).encode());
+		return interest;
+	}
+
+	@Test
+	public void testAggregateWithNonces() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testAggregateWithNonces");
+
+		NetworkProtocol protocol = SystemConfiguration.AGENT_PROTOCOL;
+		String port = System.getProperty(NDNNetworkManager.PROP_AGENT_PORT);
+		String host = System.getProperty(NDNNetworkManager.PROP_AGENT_HOST);
+		ServerSocketChannel server = ServerSocketChannel.open();
+		NDNNetworkManager manager = null;
+		try {
+			server.socket().bind(new InetSocketAddress("localhost", 0));
+			System.setProperty(NDNNetworkManager.PROP_AGENT_PORT, Integer.toString(server.socket().getLocalPort()));
+			System.setProperty(NDNNetworkManager.PROP_AGENT_HOST, "localhost");
+			SystemConfiguration.AGENT_PROTOCOL = NetworkProtocol.TCP;
+
+			manager = new NDNNetworkManager(null);
+			new NDNMultiChannelTest.Drain(server.accept()).start();
+
+			ContentName name = ContentName.fromNative("/test/pendingInterest");
+			Interest first = withNonce(name);
+			Interest second = withNonce(name);
+			assertNotNull(first.nonce());
+			assertFalse(Arrays.equals(first.nonce(), second.nonce()));
+			assertEquals(first, second);
+
+			NDNStats stats = manager.getStats();
+			long aggregated = stats.getCounter("ExpressInterestAggregated");
+			NullHandler firstHandler = new NullHandler();
+			NullHandler secondHandler = new NullHandler();
+			manager.expressInterest(this, first, firstHandler);
+			manager.expressInterest(this, second, secondHandler);
+			assertEquals(aggregated + 1, stats.getCounter("ExpressInterestAggregated"));
+			assertEquals(1, manager._refreshWheel.size());
+
+			// The shared interest is refreshed until the last registration for it goes
+			manager.cancelInterest(this, first, firstHandler);
+			assertEquals(1, manager._refreshWheel.size());
+			manager.cancelInterest(this, second, secondHandler);
+			assertEquals(0, manager._refreshWheel.size());
+		} finally {
+			if (null != manager)
+				manager.shutdown();
+			server.close();
+			SystemConfiguration.AGENT_PROTOCOL = protocol;
+			NDNMultiChannelTest.restore(NDNNetworkManager.PROP_AGENT_PORT, port);
+			NDNMultiChannelTest.restore(NDNNetworkManager.PROP_AGENT_HOST, host);
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testAggregateWithNonces");
+	}
+}
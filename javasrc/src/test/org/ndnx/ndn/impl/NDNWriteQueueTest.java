@@ -0,0 +1,199 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.ndnx.ndn.impl.NDNNetworkManager.NetworkProtocol;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.Interest;
+import org.junit.Test;
+
+/**
+ * Test batching and shutdown of the network manager's write queue
+ */
+public class NDNWriteQueueTest {
+
+	/**
+	 * Records each batch instead of handing it to a network manager. The first write
+	 * waits for the test so that packets can pile up behind it.
+	 */
+	static class RecordingQueue extends NDNWriteQueue {
+		final CountDownLatch _release = new CountDownLatch(1);
+		final List<Integer> _batches = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<byte[]> _written = Collections.synchronizedList(new ArrayList<byte[]>());
+
+		RecordingQueue(int batchSize, long latency, int poolSize) {
+			super("NDNWriteQueueTest", null, null, batchSize, latency, poolSize);
+		}
+
+		@Override
+		protected void write(ByteBuffer[] batch, int count) {
+			try {
+				_release.await();
+			} catch (InterruptedException e) {}
+			_batches.add(count);
+			for (int i = 0; i < count; i++) {
+				byte[] bytes = new byte[batch[i].remaining()];
+				batch[i].duplicate().get(bytes);
+				_written.add(bytes);
+			}
+		}
+	}
+
+	static Interest packet(int i, int size) throws Exception {
+		byte[] filler = new byte[size];
+		return new Interest(new ContentName(ContentName.fromNative("/test/writeQueue/" + i), filler));
+	}
+
+	@Test
+	public void testBatching() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testBatching");
+
+		RecordingQueue queue = new RecordingQueue(8, 1000, 32);
+		List<byte[]> expected = new ArrayList<byte[]>();
+		for (int i = 0; i < 21; i++) {
+			Interest interest = packet(i, 10);
+			expected.add(interest.encode());
+			assertTrue(queue.enqueue(interest));
+		}
+		queue._release.countDown();
+		queue.shutdown(5000);
+
+		assertEquals(expected.size(), queue._written.size());
+		for (int i = 0; i < expected.size(); i++)
+			assertArrayEquals(expected.get(i), queue._written.get(i));
+		// Everything after the first write was queued up behind it, so should go in full batches
+		boolean sawFull = false;
+		for (int count : queue._batches) {
+			assertTrue(count <= 8);
+			if (count == 8)
+				sawFull = true;
+		}
+		assertTrue(sawFull);
+		assertTrue(queue._batches.size() < expected.size());
+
+		Log.info(Log.FAC_TEST, "Completed testBatching");
+	}
+
+	@Test
+	public void testShutdown() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testShutdown");
+
+		final RecordingQueue queue = new RecordingQueue(4, 1000, 64);
+		for (int i = 0; i < 30; i++)
+			assertTrue(queue.enqueue(packet(i, 10)));
+		Thread stopper = new Thread() {
+			public void run() {
+				queue.shutdown(10000);
+			}
+		};
+		stopper.start();
+		while (queue._run)
+			Thread.sleep(10);
+		// The writer is still stuck on the first batch, so this must be handed back
+		assertFalse(queue.enqueue(packet(30, 10)));
+		queue._release.countDown();
+		stopper.join(10000);
+
+		assertFalse(queue._thread.isAlive());
+		assertEquals(30, queue._written.size());
+		assertEquals(0, queue.queueDepth());
+
+		Log.info(Log.FAC_TEST, "Completed testShutdown");
+	}
+
+	@Test
+	public void testPartialWrites() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testPartialWrites");
+
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.socket().bind(new InetSocketAddress("localhost", 0));
+		NDNNetworkChannel channel = new NDNNetworkChannel("localhost", server.socket().getLocalPort(), NetworkProtocol.TCP, null);
+		channel.open();
+		final SocketChannel peer = server.accept();
+
+		// Much more than the socket buffers hold, so writes will be partial until the peer reads
+		final int count = 2000;
+		final int size = 4000;
+		final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		for (int i = 0; i < count; i++)
+			expected.write(packet(i, size).encode());
+		// Start reading only once the writer has filled the socket buffers
+		final ByteArrayOutputStream received = new ByteArrayOutputStream();
+		Thread reader = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(500);
+					ByteBuffer in = ByteBuffer.allocate(8192);
+					while (received.size() < expected.size()) {
+						in.clear();
+						int n = peer.read(in);
+						if (n < 0)
+							break;
+						received.write(in.array(), 0, n);
+					}
+				} catch (Exception e) {
+					Log.warning(Log.FAC_TEST, "Read failed: {0}", e);
+				}
+			}
+		};
+		reader.start();
+		NDNWriteQueue queue = new NDNWriteQueue("NDNWriteQueueTest", null, channel, 16, 1000, 64) {
+			@Override
+			protected void write(ByteBuffer[] batch, int n) {
+				try {
+					long bytes = 0;
+					for (int i = 0; i < n; i++)
+						bytes += batch[i].remaining();
+					assertEquals(bytes, _channel.write(batch, 0, n));
+				} catch (Exception e) {
+					Log.warning(Log.FAC_TEST, "Write failed: {0}", e);
+				}
+			}
+		};
+		for (int i = 0; i < count; i++)
+			assertTrue(queue.enqueue(packet(i, size)));
+		queue.shutdown(30000);
+		reader.join(30000);
+		peer.close();
+		channel.close();
+		server.close();
+
+		assertArrayEquals(expected.toByteArray(), received.toByteArray());
+
+		Log.info(Log.FAC_TEST, "Completed testPartialWrites");
+	}
+}
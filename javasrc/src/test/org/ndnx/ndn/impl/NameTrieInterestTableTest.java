@@ -0,0 +1,90 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Interest;
+import org.ndnx.ndn.protocol.NDNTime;
+import org.ndnx.ndn.protocol.SignedInfo;
+import org.junit.Test;
+
+/**
+ * Runs the InterestTable tests against NameTrieInterestTable, plus some tests
+ * of the trie specific handling.
+ */
+public class NameTrieInterestTableTest extends InterestTableTest {
+
+	@Override
+	protected <T> InterestTable<T> newTable() {
+		return new NameTrieInterestTable<T>();
+	}
+
+	@Test
+	public void testDigestMatch() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testDigestMatch");
+
+		ContentName name = ContentName.fromNative("/trie/digest/test");
+		SignedInfo si = new SignedInfo(keyids[0], NDNTime.now(), SignedInfo.ContentType.DATA, null);
+		ContentObject co = new ContentObject(name, si, "content".getBytes(), fakeSignature);
+
+		InterestTable<Integer> table = newTable();
+		table.add(new Interest(co.fullName()), 1);
+		table.add(new Interest(ContentName.fromNative("/trie")), 2);
+		table.add(new Interest(ContentName.fromNative("/trie/other")), 3);
+
+		List<Integer> values = table.getValues(co);
+		assertEquals(2, values.size());
+		assertEquals(1, values.get(0).intValue());
+		assertEquals(2, values.get(1).intValue());
+		assertEquals(1, table.removeValue(co).intValue());
+		assertEquals(2, table.removeValue(co).intValue());
+		assertNull(table.removeValue(co));
+		assertEquals(1, table.sizeNames());
+
+		Log.info(Log.FAC_TEST, "Completed testDigestMatch");
+	}
+
+	@Test
+	public void testPrune() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testPrune");
+
+		NameTrieInterestTable<Integer> table = new NameTrieInterestTable<Integer>();
+		ContentName abc = ContentName.fromNative("/a/b/c");
+		ContentName a = ContentName.fromNative("/a");
+		table.add(abc, 1);
+		table.add(a, 2);
+		table.remove(abc, 1);
+		assertNull(table.lookupNode(ContentName.fromNative("/a/b")));
+		assertEquals(2, table.getValue(abc).intValue());
+		table.remove(a, 2);
+		assertNull(table.lookupNode(a));
+		assertNull(table.getMatch(abc));
+
+		Log.info(Log.FAC_TEST, "Completed testPrune");
+	}
+}
@@ -22,11 +22,13 @@ package org.ndnx.ndn.impl;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.TreeSet;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import org.ndnx.ndn.NDNContentHandler;
+import org.ndnx.ndn.NDNHandle;
 import org.ndnx.ndn.NDNInterestHandler;
 import org.ndnx.ndn.config.SystemConfiguration;
 import org.ndnx.ndn.impl.NDNNetworkManager.NetworkProtocol;
@@ -198,6 +200,88 @@ public class NetworkTest extends NDNTestBase {
 		Log.info(Log.FAC_TEST, "Completed testNetworkManager");
 	}
 
+	@Test
+	public void testGetAsync() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testGetAsync");
+
+		NDNWriter writer = new NDNWriter(testPrefix, putHandle);
+		ContentName name1 = new ContentName(testPrefix, "async1");
+		ContentName name2 = new ContentName(testPrefix, "async2");
+		writer.put(name1, "async1");
+		writer.put(name2, "async2");
+
+		ArrayList<Interest> interests = new ArrayList<Interest>();
+		interests.add(new Interest(name1));
+		interests.add(new Interest(name2));
+		List<ContentFuture> futures = getHandle.getAll(interests, WAIT_MILLIS);
+		final Semaphore done = new Semaphore(0);
+		futures.get(1).addListener(new ContentFuture.Listener() {
+			public void done(ContentFuture future) {
+				done.release();
+			}
+		});
+		Assert.assertEquals(name1, futures.get(0).get(WAIT_MILLIS, TimeUnit.MILLISECONDS).name());
+		Assert.assertEquals(name2, futures.get(1).get(WAIT_MILLIS, TimeUnit.MILLISECONDS).name());
+		Assert.assertTrue(done.tryAcquire(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+
+		ContentFuture missing = getHandle.getAsync(new Interest(new ContentName(testPrefix, "nothere")), CANCEL_TEST_TIMEOUT);
+		Assert.assertNull(missing.get(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+		Assert.assertTrue(missing.isTimedOut());
+		writer.close();
+
+		Log.info(Log.FAC_TEST, "Completed testGetAsync");
+	}
+
+	@Test
+	public void testInterestAggregation() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testInterestAggregation");
+
+		ContentName name = new ContentName(testPrefix, "aggregate");
+		NDNStats stats = getHandle.getNetworkManager().getStats();
+		long aggregated = stats.getCounter("ExpressInterestAggregated");
+		ContentFuture first = getHandle.getAsync(new Interest(name), WAIT_MILLIS);
+		ContentFuture second = getHandle.getAsync(new Interest(name), WAIT_MILLIS);
+		Assert.assertEquals(aggregated + 1, stats.getCounter("ExpressInterestAggregated"));
+
+		NDNWriter writer = new NDNWriter(testPrefix, putHandle);
+		writer.put(name, "aggregate");
+		Assert.assertEquals(name, first.get(WAIT_MILLIS, TimeUnit.MILLISECONDS).name());
+		Assert.assertEquals(name, second.get(WAIT_MILLIS, TimeUnit.MILLISECONDS).name());
+		writer.close();
+
+		Log.info(Log.FAC_TEST, "Completed testInterestAggregation");
+	}
+
+	@Test
+	public void testMultipleChannels() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testMultipleChannels");
+
+		int channels = SystemConfiguration.AGENT_CHANNELS;
+		SystemConfiguration.AGENT_CHANNELS = 3;
+		NDNHandle multiHandle = null;
+		try {
+			multiHandle = NDNHandle.open();
+			// Enough names that all the channels should be used for both the gets and the puts
+			NDNWriter writer = new NDNWriter(testPrefix, multiHandle);
+			ArrayList<Interest> interests = new ArrayList<Interest>();
+			for (int i = 0; i < 10; i++) {
+				ContentName name = new ContentName(testPrefix, "channel" + i);
+				writer.put(name, "channel" + i);
+				interests.add(new Interest(name));
+			}
+			List<ContentFuture> futures = multiHandle.getAll(interests, WAIT_MILLIS);
+			for (int i = 0; i < futures.size(); i++)
+				Assert.assertEquals(interests.get(i).name(), futures.get(i).get(WAIT_MILLIS, TimeUnit.MILLISECONDS).name());
+			writer.close();
+		} finally {
+			SystemConfiguration.AGENT_CHANNELS = channels;
+			if (null != multiHandle)
+				multiHandle.close();
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testMultipleChannels");
+	}
+
 	@Test
 	public void testNetworkManagerFixedPrefix() throws Exception {
 		Log.info(Log.FAC_TEST, "Starting testNetworkManagerFixedPrefix");
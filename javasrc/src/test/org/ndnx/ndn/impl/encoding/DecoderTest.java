@@ -20,6 +20,7 @@
 package org.ndnx.ndn.impl.encoding;
 
 import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 import junit.framework.Assert;
@@ -62,6 +63,41 @@ public class DecoderTest {
 		Assert.assertEquals(((ContentObject)packet).name(), contentName);
 	}
 
+	@Test
+	public void testFramedDecoding() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testFramedDecoding");
+		ContentName interestName = ContentName.fromNative(interestTest);
+		byte[] interestBytes = new Interest(interestName).encode();
+		ContentName contentName = ContentName.fromNative(contentTest);
+		byte[] contentBytes = ContentObject.buildContentObject(contentName, "test decoder".getBytes()).encode();
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(interestBytes.length + contentBytes.length);
+		buffer.put(interestBytes);
+		buffer.put(contentBytes);
+		buffer.flip();
+
+		// Neither packet is complete until all of its bytes are present
+		Assert.assertEquals(-1, BinaryXMLFramer.frameLength(buffer, 0, interestBytes.length - 1));
+		Assert.assertEquals(-1, BinaryXMLFramer.frameLength(buffer, interestBytes.length, buffer.limit() - 1));
+
+		int length = BinaryXMLFramer.frameLength(buffer, 0, buffer.limit());
+		Assert.assertEquals(interestBytes.length, length);
+		_decoder.beginDecoding(interestBytes, 0, length);
+		XMLEncodable packet = _decoder.getPacket();
+		Assert.assertTrue("Packet has incorrect type", packet instanceof Interest);
+		Assert.assertEquals(((Interest)packet).name(), interestName);
+
+		length = BinaryXMLFramer.frameLength(buffer, interestBytes.length, buffer.limit());
+		Assert.assertEquals(contentBytes.length, length);
+		byte [] frame = new byte[buffer.limit()];
+		buffer.get(frame);
+		_decoder.beginDecoding(frame, interestBytes.length, length);
+		packet = _decoder.getPacket();
+		Assert.assertTrue("Packet has incorrect type", packet instanceof ContentObject);
+		Assert.assertEquals(((ContentObject)packet).name(), contentName);
+		Log.info(Log.FAC_TEST, "Completed testFramedDecoding");
+	}
+
 	@Test
 	public void testResync() throws Exception {
 		Log.info(Log.FAC_TEST, "Starting testResync");
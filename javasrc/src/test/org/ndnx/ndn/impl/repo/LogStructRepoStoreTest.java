@@ -0,0 +1,212 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.impl.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.ndnx.ndn.config.SystemConfiguration;
+import org.ndnx.ndn.impl.repo.LogStructRepoStore.FileRef;
+import org.ndnx.ndn.impl.repo.LogStructRepoStore.RepoFile;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+import org.ndnx.ndn.protocol.SignedInfo.ContentType;
+import org.junit.Test;
+
+/**
+ * Test reading content from the data files of the log structured repository
+ */
+public class LogStructRepoStoreTest {
+
+	static ContentObject content(String name) throws Exception {
+		return new ContentObject(ContentName.fromNative(name),
+				new SignedInfo(new PublisherPublicKeyDigest(new byte[32]), ContentType.DATA, null),
+				name.getBytes(), new Signature(new byte[128]));
+	}
+
+	/**
+	 * Write objects to a data file
+	 * @return the offset of each object in the file
+	 */
+	static long [] write(File file, ArrayList<ContentObject> objects) throws Exception {
+		long [] offsets = new long[objects.size()];
+		FileOutputStream fos = new FileOutputStream(file);
+		long offset = 0;
+		for (int i = 0; i < objects.size(); i++) {
+			byte [] encoded = objects.get(i).encode();
+			fos.write(encoded);
+			offsets[i] = offset;
+			offset += encoded.length;
+		}
+		fos.close();
+		return offsets;
+	}
+
+	static class UnmappableFile extends RepoFile {
+		int maps = 0;
+
+		@Override
+		MappedByteBuffer map(FileChannel channel, long size) throws IOException {
+			maps++;
+			throw new IOException("Map failed");
+		}
+	}
+
+	@Test
+	public void testMapFailure() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testMapFailure");
+
+		boolean mmap = SystemConfiguration.REPO_MMAP;
+		File dataFile = File.createTempFile("repoFile", null);
+		try {
+			SystemConfiguration.REPO_MMAP = true;
+			ArrayList<ContentObject> objects = new ArrayList<ContentObject>();
+			for (int i = 0; i < 3; i++)
+				objects.add(content("/test/map/" + i));
+			long [] offsets = write(dataFile, objects);
+
+			UnmappableFile file = new UnmappableFile();
+			file.file = dataFile;
+			LogStructRepoStore store = new LogStructRepoStore();
+			store._files = new HashMap<Integer, RepoFile>();
+			store._files.put(1, file);
+
+			// Content is still read, through the channel, and mapping isn't tried again
+			for (int i = 0; i < objects.size(); i++) {
+				FileRef ref = new FileRef();
+				ref.id = 1;
+				ref.offset = offsets[i];
+				assertEquals(objects.get(i), store.get(ref));
+			}
+			assertEquals(1, file.maps);
+			assertTrue(file.unmappable);
+			assertNull(file.map());
+			assertEquals(0, store._readFailures.get());
+			file.closeRead();
+		} finally {
+			SystemConfiguration.REPO_MMAP = mmap;
+			dataFile.delete();
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testMapFailure");
+	}
+
+	/**
+	 * Index the data files in a directory as the repository does when it starts
+	 */
+	static LogStructRepoStore index(File dir, File indexDir, int threads) {
+		int indexThreads = SystemConfiguration.REPO_INDEX_THREADS;
+		try {
+			SystemConfiguration.REPO_INDEX_THREADS = threads;
+			LogStructRepoStore store = new LogStructRepoStore();
+			store._repositoryFile = dir;
+			store._indexDir = indexDir;
+			store._files = new HashMap<Integer, RepoFile>();
+			store.createIndex();
+			return store;
+		} finally {
+			SystemConfiguration.REPO_INDEX_THREADS = indexThreads;
+		}
+	}
+
+	static void close(LogStructRepoStore store) throws IOException {
+		for (RepoFile file : store._files.values())
+			file.closeRead();
+	}
+
+	static void delete(File dir) {
+		File [] files = dir.listFiles();
+		if (null != files) {
+			for (File file : files) {
+				if (file.isDirectory())
+					delete(file);
+				else
+					file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void testParallelIndex() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testParallelIndex");
+
+		File dir = File.createTempFile("repoIndex", null);
+		dir.delete();
+		dir.mkdir();
+		try {
+			// Every file holds copies of the same shared content as well as its own
+			ArrayList<ContentObject> shared = new ArrayList<ContentObject>();
+			for (int i = 0; i < 100; i++)
+				shared.add(content("/test/index/shared/" + i));
+			for (int f = 1; f <= 4; f++) {
+				ArrayList<ContentObject> objects = new ArrayList<ContentObject>();
+				for (int i = 0; i < shared.size(); i++) {
+					objects.add(shared.get((i * 7 + f * 13) % shared.size()));
+					objects.add(content("/test/index/file" + f + "/" + i));
+				}
+				write(new File(dir, LogStructRepoStore.LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + f), objects);
+			}
+
+			ArrayList<ContentName> expectedNames = new ArrayList<ContentName>();
+			ArrayList<ContentRef> expectedRefs = new ArrayList<ContentRef>();
+			File indexDir = new File(dir, "single");
+			LogStructRepoStore store = index(dir, indexDir, 1);
+			store._index.getContentRefs(expectedNames, expectedRefs);
+			close(store);
+			assertEquals(100 + 4 * 100, expectedNames.size());
+			for (int i = 0; i < expectedNames.size(); i++) {
+				if (expectedNames.get(i).toString().startsWith("/test/index/shared"))
+					assertEquals(1, ((FileRef)expectedRefs.get(i)).id);
+			}
+
+			// Rebuilt from the data files and from the saved indexes written as they are read
+			for (int run = 0; run < 10; run++) {
+				indexDir = new File(dir, "parallel" + (run / 2));
+				store = index(dir, indexDir, 4);
+				ArrayList<ContentName> names = new ArrayList<ContentName>();
+				ArrayList<ContentRef> refs = new ArrayList<ContentRef>();
+				store._index.getContentRefs(names, refs);
+				close(store);
+				assertEquals(4, indexDir.list().length);
+				assertEquals(expectedNames, names);
+				assertEquals(expectedRefs, refs);
+			}
+		} finally {
+			delete(dir);
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testParallelIndex");
+	}
+}
@@ -20,6 +20,7 @@
 
 package org.ndnx.ndn.protocol;
 
+import java.io.ByteArrayOutputStream;
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
@@ -38,6 +39,8 @@ import org.ndnx.ndn.protocol.KeyLocator;
 import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
 import org.ndnx.ndn.protocol.Signature;
 import org.ndnx.ndn.protocol.SignedInfo;
+import org.ndnx.ndn.impl.encoding.BinaryXMLEncoder;
+import org.ndnx.ndn.impl.encoding.NDNProtocolDTags;
 import org.ndnx.ndn.impl.encoding.XMLEncodableTester;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -196,4 +199,76 @@ public class ContentObjectTest {
 		
 		Log.info(Log.FAC_TEST, "Completed testDigest");
 	}
+
+	@Test
+	public void testLazyDecode() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testLazyDecode");
+
+		ContentObject co = new ContentObject(name, auth, document3, pair.getPrivate());
+		byte [] encoded = co.encode();
+		byte [] digest = co.digest();
+
+		ContentObject lazy = new ContentObject();
+		lazy.decode(encoded);
+		Assert.assertTrue(lazy._lazy);
+		Assert.assertEquals(name, lazy.name());
+		Assert.assertArrayEquals(digest, lazy.digest());
+		Assert.assertArrayEquals(encoded, lazy.encode());
+		Assert.assertTrue(lazy._lazy);
+
+		Assert.assertArrayEquals(document3, lazy.content());
+		Assert.assertFalse(lazy._lazy);
+		Assert.assertEquals(auth, lazy.signedInfo());
+		Assert.assertEquals(co.signature(), lazy.signature());
+		Assert.assertEquals(co, lazy);
+		Assert.assertTrue(lazy.verify(pair.getPublic()));
+
+		// Re-signing must drop the kept encoding
+		lazy.sign(pair.getPrivate());
+		Assert.assertNull(lazy._encoded);
+		ContentObject decoded = new ContentObject();
+		decoded.decode(lazy.encode());
+		Assert.assertEquals(lazy.signature(), decoded.signature());
+		Assert.assertTrue(decoded.verify(pair.getPublic()));
+
+		Log.info(Log.FAC_TEST, "Completed testLazyDecode");
+	}
+
+	@Test
+	public void testCorruptSignedInfo() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testCorruptSignedInfo");
+
+		ContentObject co = new ContentObject(name, auth, document3, pair.getPrivate());
+		Assert.assertTrue(co.isDecodable());
+
+		// Well formed enough to be skipped, but with a content type no decoder will accept
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		BinaryXMLEncoder encoder = new BinaryXMLEncoder();
+		encoder.beginEncoding(baos);
+		encoder.writeStartElement(NDNProtocolDTags.ContentObject);
+		co.signature().encode(encoder);
+		co.name().encode(encoder);
+		encoder.writeStartElement(NDNProtocolDTags.SignedInfo);
+		auth.getPublisherKeyID().encode(encoder);
+		encoder.writeElement(NDNProtocolDTags.Type, new byte[]{0x01, 0x02, 0x03});
+		encoder.writeEndElement();
+		encoder.writeElement(NDNProtocolDTags.Content, document3);
+		encoder.writeEndElement();
+		encoder.endEncoding();
+
+		ContentObject corrupt = new ContentObject();
+		corrupt.decode(baos.toByteArray());
+		Assert.assertEquals(name, corrupt.name());
+		Assert.assertFalse(corrupt.isDecodable());
+		try {
+			corrupt.signedInfo();
+			Assert.fail("Corrupt signedInfo was decoded");
+		} catch (IllegalStateException ise) {}
+		try {
+			corrupt.content();
+			Assert.fail("Content of corrupt object was returned");
+		} catch (IllegalStateException ise) {}
+
+		Log.info(Log.FAC_TEST, "Completed testCorruptSignedInfo");
+	}
 }
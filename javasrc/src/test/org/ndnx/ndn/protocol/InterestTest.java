@@ -244,4 +244,21 @@ public class InterestTest extends NDNTestBase {
 		
 		Log.info(Log.FAC_TEST, "Completed testMatchWithExcludedDigest");
 	}
+
+	@Test
+	public void testInterestLifetime() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testInterestLifetime");
+
+		Interest interest = new Interest(ContentName.fromNative("/lifetime/test"));
+		Assert.assertEquals(-1, interest.interestLifetimeMillis());
+		interest.interestLifetimeMillis(4000);
+		Assert.assertEquals(4000, interest.interestLifetimeMillis());
+		Assert.assertArrayEquals(new byte[]{0x40, 0x00}, interest.interestLifetime());
+
+		Interest decoded = new Interest();
+		decoded.decode(interest.encode());
+		Assert.assertEquals(4000, decoded.interestLifetimeMillis());
+
+		Log.info(Log.FAC_TEST, "Completed testInterestLifetime");
+	}
 }
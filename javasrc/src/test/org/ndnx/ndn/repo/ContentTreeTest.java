@@ -0,0 +1,327 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ndnx.ndn.impl.repo.ContentRef;
+import org.ndnx.ndn.impl.repo.ContentTree;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Interest;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+import org.ndnx.ndn.protocol.SignedInfo.ContentType;
+import org.junit.Test;
+
+/**
+ * Test searching the content tree while other threads are changing it
+ */
+public class ContentTreeTest {
+
+	static final int WRITERS = 4;
+	static final int READERS = 4;
+	static final int OBJECTS = 500;
+
+	// Objects are referred to by their position here
+	static final ContentObject [] objects = new ContentObject[WRITERS * OBJECTS + 10];
+
+	static class TestRef extends ContentRef {
+		int id;
+
+		TestRef(int id) {
+			this.id = id;
+		}
+	}
+
+	static final ContentTree.ContentGetter getter = new ContentTree.ContentGetter() {
+		public ContentObject get(ContentRef ref) {
+			return objects[((TestRef)ref).id];
+		}
+	};
+
+	static final ContentTree.ContentRefPacker packer = new ContentTree.ContentRefPacker() {
+		public long pack(ContentRef ref) {
+			return ((TestRef)ref).id;
+		}
+
+		public ContentRef unpack(long packed) {
+			return new TestRef((int)packed);
+		}
+	};
+
+	static ContentName prefix(int writer) {
+		return new ContentName("test", "tree", "" + writer);
+	}
+
+	static ContentObject object(int writer, int i) {
+		return new ContentObject(new ContentName(prefix(writer), "" + i),
+				new SignedInfo(new PublisherPublicKeyDigest(new byte[32]), ContentType.DATA, null),
+				("object " + i).getBytes(), new Signature(new byte[128]));
+	}
+
+	static Interest exact(ContentObject co) {
+		Interest interest = new Interest(co.fullName());
+		interest.maxSuffixComponents(0);
+		return interest;
+	}
+
+	static boolean insert(ContentTree tree, int id, ContentObject co) {
+		objects[id] = co;
+		return tree.insert(co, new TestRef(id), System.currentTimeMillis(), getter, null);
+	}
+
+	@Test
+	public void testConcurrentSearch() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testConcurrentSearch");
+
+		concurrentSearch(new ContentTree());
+	}
+
+	@Test
+	public void testCompactTree() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testCompactTree");
+
+		ContentTree tree = new ContentTree(packer);
+		concurrentSearch(tree);
+
+		// Content is found after being moved
+		ContentObject co = objects[OBJECTS];
+		ArrayList<ContentName> names = new ArrayList<ContentName>();
+		ArrayList<ContentRef> refs = new ArrayList<ContentRef>();
+		tree.getContentRefs(names, refs);
+		int i = names.indexOf(co.fullName());
+		int moved = objects.length - 1;
+		objects[moved] = co;
+		assertFalse(tree.replace(co.fullName(), new TestRef(moved), new TestRef(moved)));
+		assertTrue(tree.replace(co.fullName(), refs.get(i), new TestRef(moved)));
+		assertEquals(co, tree.get(new Interest(co.name()), getter));
+		assertFalse(insert(tree, moved, co));
+
+		// Content under the name of other content, and other content with the same name
+		ContentObject below = new ContentObject(new ContentName(co.fullName(), "below"), co.signedInfo(),
+				co.content(), co.signature());
+		assertTrue(insert(tree, moved - 1, below));
+		ContentObject other = new ContentObject(co.name(), co.signedInfo(), "other".getBytes(), co.signature());
+		assertTrue(insert(tree, moved - 2, other));
+		assertEquals(below, tree.get(new Interest(below.name()), getter));
+		assertEquals(co, tree.get(exact(co), getter));
+		assertEquals(other, tree.get(exact(other), getter));
+		assertTrue(tree.remove(below.name(), System.currentTimeMillis()));
+		assertEquals(co, tree.get(exact(co), getter));
+		assertTrue(tree.remove(other.fullName(), System.currentTimeMillis()));
+		assertNull(tree.get(exact(other), getter));
+		assertEquals(co, tree.get(new Interest(co.name()), getter));
+	}
+
+	@Test
+	public void testReplacedWhileReading() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testReplacedWhileReading");
+
+		ContentObject co = object(WRITERS, 1);
+		Interest exact = exact(co);
+		for (Interest interest : new Interest[] { new Interest(co.name()), exact }) {
+			assertEquals(co, replacedWhileReading(new ContentTree(), co, interest));
+			assertEquals(co, replacedWhileReading(new ContentTree(packer), co, interest));
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testReplacedWhileReading");
+	}
+
+	@Test
+	public void testInsertWhileRemoving() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testInsertWhileRemoving");
+
+		insertWhileRemoving(new ContentTree());
+		insertWhileRemoving(new ContentTree(packer));
+
+		Log.info(Log.FAC_TEST, "Completed testInsertWhileRemoving");
+	}
+
+	/**
+	 * One thread adds and removes an object under a name, which leaves the name's node empty so
+	 * that it is removed too, while another inserts a second object under the same name.
+	 * The second object must never be lost.
+	 */
+	void insertWhileRemoving(final ContentTree tree) throws Exception {
+		final int rounds = 10000;
+		final ContentObject [] kept = new ContentObject[rounds];
+		final ContentObject [] removed = new ContentObject[rounds];
+		for (int i = 0; i < rounds; i++) {
+			ContentName parent = new ContentName("test", "remove", "" + i);
+			kept[i] = new ContentObject(new ContentName(parent, "kept"),
+					new SignedInfo(new PublisherPublicKeyDigest(new byte[32]), ContentType.DATA, null),
+					("kept " + i).getBytes(), new Signature(new byte[128]));
+			removed[i] = new ContentObject(new ContentName(parent, "removed"),
+					new SignedInfo(new PublisherPublicKeyDigest(new byte[32]), ContentType.DATA, null),
+					("removed " + i).getBytes(), new Signature(new byte[128]));
+		}
+		final ContentTree.ContentGetter localGetter = new ContentTree.ContentGetter() {
+			public ContentObject get(ContentRef ref) {
+				int id = ((TestRef)ref).id;
+				return id < rounds ? kept[id] : removed[id - rounds];
+			}
+		};
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		final AtomicInteger errors = new AtomicInteger(0);
+		Thread remover = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < rounds; i++) {
+						tree.insert(removed[i], new TestRef(rounds + i), System.currentTimeMillis(), localGetter, null);
+						barrier.await();
+						tree.remove(removed[i].name(), System.currentTimeMillis());
+					}
+				} catch (Exception e) {
+					errors.incrementAndGet();
+				}
+			}
+		};
+		Thread inserter = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < rounds; i++) {
+						barrier.await();
+						tree.insert(kept[i], new TestRef(i), System.currentTimeMillis(), localGetter, null);
+					}
+				} catch (Exception e) {
+					errors.incrementAndGet();
+				}
+			}
+		};
+		remover.start();
+		inserter.start();
+		remover.join();
+		inserter.join();
+		assertEquals(0, errors.get());
+
+		int lost = 0;
+		for (int i = 0; i < rounds; i++) {
+			if (!kept[i].equals(tree.get(new Interest(kept[i].name()), localGetter)))
+				lost++;
+			assertNull(tree.get(new Interest(removed[i].name()), localGetter));
+		}
+		assertEquals(0, lost);
+	}
+
+	/**
+	 * Search for content which compaction moves, deleting its old copy, just as the search
+	 * tries to read it
+	 */
+	ContentObject replacedWhileReading(final ContentTree tree, final ContentObject co, Interest interest) {
+		final int oldId = objects.length - 4;
+		final int newId = objects.length - 5;
+		assertTrue(insert(tree, oldId, co));
+		objects[newId] = co;
+		ContentTree.ContentGetter racing = new ContentTree.ContentGetter() {
+			public ContentObject get(ContentRef ref) {
+				if (((TestRef)ref).id == oldId) {
+					assertTrue(tree.replace(co.fullName(), ref, new TestRef(newId)));
+					return null;
+				}
+				return getter.get(ref);
+			}
+		};
+		return tree.get(interest, racing);
+	}
+
+	void concurrentSearch(final ContentTree tree) throws Exception {
+		final AtomicInteger [] inserted = new AtomicInteger[WRITERS];
+		final AtomicInteger errors = new AtomicInteger(0);
+		final AtomicInteger writersDone = new AtomicInteger(0);
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for (int w = 0; w < WRITERS; w++) {
+			inserted[w] = new AtomicInteger(0);
+			final int writer = w;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < OBJECTS; i++) {
+						if (!insert(tree, writer * OBJECTS + i, object(writer, i)))
+							errors.incrementAndGet();
+						inserted[writer].set(i + 1);
+					}
+					writersDone.incrementAndGet();
+				}
+			});
+		}
+		for (int r = 0; r < READERS; r++) {
+			final int reader = r;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					int n = 0;
+					while (writersDone.get() < WRITERS) {
+						int writer = (reader + n) % WRITERS;
+						n = (n + 1) % OBJECTS;
+						int count = inserted[writer].get();
+						if (count == 0)
+							continue;
+						// Everything already inserted must be found
+						ContentObject expected = object(writer, (n * 7) % count);
+						ContentObject found = tree.get(new Interest(expected.name()), getter);
+						if (null == found || !found.name().equals(expected.name()))
+							errors.incrementAndGet();
+
+						// The rightmost child can only get newer
+						Interest right = new Interest(prefix(writer));
+						right.childSelector(Interest.CHILD_SELECTOR_RIGHT);
+						found = tree.get(right, getter);
+						if (null == found || found.name().count() != expected.name().count()
+								|| Integer.parseInt(new String(found.name().lastComponent())) < count - 1)
+							errors.incrementAndGet();
+					}
+				}
+			});
+		}
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(0, errors.get());
+
+		ArrayList<ContentName> names = new ArrayList<ContentName>();
+		ArrayList<ContentRef> refs = new ArrayList<ContentRef>();
+		tree.getContentRefs(names, refs);
+		assertEquals(WRITERS * OBJECTS, refs.size());
+
+		// Removing a name leaves the rest searchable
+		tree.remove(prefix(0), System.currentTimeMillis());
+		assertNull(tree.get(new Interest(prefix(0)), getter));
+		ContentObject expected = object(1, OBJECTS - 1);
+		assertEquals(expected.name(), tree.get(new Interest(expected.name()), getter).name());
+		names.clear();
+		refs.clear();
+		tree.getContentRefs(names, refs);
+		assertEquals((WRITERS - 1) * OBJECTS, refs.size());
+	}
+}
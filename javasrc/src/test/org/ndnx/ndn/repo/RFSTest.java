@@ -25,7 +25,9 @@ import static org.ndnx.ndn.profiles.CommandMarker.COMMAND_MARKER_BASIC_ENUMERATI
 import java.io.File;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
+import java.util.ArrayList;
 
+import org.ndnx.ndn.config.SystemConfiguration;
 import org.ndnx.ndn.config.UserConfiguration;
 import org.ndnx.ndn.impl.repo.LogStructRepoStore;
 import org.ndnx.ndn.impl.repo.RepositoryException;
@@ -73,6 +75,9 @@ public class RFSTest extends RepoTestBase {
 	private ContentName segmentedName1;
 	private ContentName segmentedName223;
 	private ContentName versionedNameNormal;
+	private ContentName batchName;
+	
+	private static final long BATCH_SEGMENTS = 20;
 	
 	@BeforeClass
 	public static void setUpBeforeClass() throws Exception {
@@ -128,6 +133,72 @@ public class RFSTest extends RepoTestBase {
 		Log.info(Log.FAC_TEST, "Completed testBulkImport");
 	}
 	
+	@Test
+	public void testCompaction() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testCompaction");
+
+		initRepoLog();
+		LogStructRepoStore store = (LogStructRepoStore)repolog;
+		ContentName name = ContentName.fromNative("/repoTest/compaction/data");
+		ContentObject content = ContentObject.buildContentObject(name, "compact me".getBytes());
+		repolog.saveContent(content);
+		repolog.saveContent(content);
+		ContentName versioned = ContentName.fromNative("/repoTest/compaction/versioned");
+		ContentName [] versions = new ContentName[4];
+		for (int i = 0; i < versions.length; i++) {
+			versions[i] = VersioningProfile.addVersion(versioned, i + 1);
+			repolog.saveContent(ContentObject.buildContentObject(versions[i], ("version" + i).getBytes()));
+		}
+		Assert.assertTrue(store.compact(LogStructRepoStore.parseRetention(versioned + "=2"), false));
+		String status = (String)repolog.getStatus(RepositoryStore.REPO_COMPACTION_STATUS_REQUEST);
+		Assert.assertTrue(status.startsWith("idle"));
+		checkCompaction(repolog, name, versions);
+		repolog.shutDown();
+		
+		// The compacted files must index correctly
+		initRepoLog();
+		checkCompaction(repolog, name, versions);
+		repolog.shutDown();
+		
+		Log.info(Log.FAC_TEST, "Completed testCompaction");
+	}
+	
+	@Test
+	public void testFileRollover() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testFileRollover");
+
+		long fileSize = SystemConfiguration.REPO_FILE_SIZE;
+		SystemConfiguration.REPO_FILE_SIZE = 1000;
+		try {
+			initRepoLog();
+			int files = new File(_fileTestDir).list().length;
+			ContentName prefix = ContentName.fromNative("/repoTest/rollover");
+			for (int i = 0; i < 20; i++)
+				repolog.saveContent(ContentObject.buildContentObject(new ContentName(prefix, "data" + i), ("rollover" + i).getBytes()));
+			Assert.assertTrue(new File(_fileTestDir).list().length > files);
+			for (int i = 0; i < 20; i++)
+				checkData(repolog, new ContentName(prefix, "data" + i), "rollover" + i);
+			repolog.shutDown();
+			
+			initRepoLog();
+			for (int i = 0; i < 20; i++)
+				checkData(repolog, new ContentName(prefix, "data" + i), "rollover" + i);
+			repolog.shutDown();
+		} finally {
+			SystemConfiguration.REPO_FILE_SIZE = fileSize;
+		}
+		
+		Log.info(Log.FAC_TEST, "Completed testFileRollover");
+	}
+	
+	private void checkCompaction(RepositoryStore repo, ContentName name, ContentName [] versions) throws RepositoryException {
+		checkData(repo, name, "compact me");
+		Assert.assertNull(repo.getContent(new Interest(versions[0])));
+		Assert.assertNull(repo.getContent(new Interest(versions[1])));
+		checkData(repo, versions[2], "version2");
+		checkData(repo, versions[3], "version3");
+	}
+	
 	/**
 	 * Tests policy file parsing
 	 */
@@ -329,6 +400,16 @@ public class RFSTest extends RepoTestBase {
 		middleInterest.maxSuffixComponents(4);
 		middleInterest.minSuffixComponents(3);
 		checkData(repo, middleInterest, "middle");
+		
+		System.out.println("Repotest - testing batch save");
+		batchName = VersioningProfile.addVersion(ContentName.fromNative("/repoTest/batch"));
+		ArrayList<ContentObject> batch = new ArrayList<ContentObject>();
+		for (Long i=SegmentationProfile.baseSegment(); i<BATCH_SEGMENTS; i++)
+			batch.add(ContentObject.buildContentObject(SegmentationProfile.segmentName(batchName, i), ("batch" + i).getBytes()));
+		ArrayList<NameEnumerationResponse> batchResponses = repo.saveContent(batch);
+		Assert.assertEquals(batch.size(), batchResponses.size());
+		for (Long i=SegmentationProfile.baseSegment(); i<BATCH_SEGMENTS; i++)
+			checkData(repo, SegmentationProfile.segmentName(batchName, i), "batch" + i);
 
 		//adding in fast name enumeration response tests
 		System.out.println("Repotest - testing fast name enumeration response");
@@ -412,6 +493,8 @@ public class RFSTest extends RepoTestBase {
 			String segmentContent = "segment"+ new Long(i).toString();
 			checkData(repo, segmented, segmentContent);
 		}
+		for (Long i=SegmentationProfile.baseSegment(); i<BATCH_SEGMENTS; i++)
+			checkData(repo, SegmentationProfile.segmentName(batchName, i), "batch" + i);
 	}
 	
 	private void checkData(RepositoryStore repo, ContentName name, String data) throws RepositoryException {
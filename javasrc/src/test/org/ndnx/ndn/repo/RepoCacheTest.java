@@ -0,0 +1,196 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.ndnx.ndn.impl.repo.ContentRef;
+import org.ndnx.ndn.impl.repo.RepoContentCache;
+import org.ndnx.ndn.impl.repo.RepoNameFilter;
+import org.ndnx.ndn.impl.repo.RepoNegativeCache;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Interest;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+import org.ndnx.ndn.protocol.SignedInfo.ContentType;
+import org.junit.Test;
+
+/**
+ * Test the repository's caches of content and of interests which matched nothing, and its
+ * filter of the names it holds content under
+ */
+public class RepoCacheTest {
+
+	static class TestRef extends ContentRef {
+		int id;
+
+		TestRef(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof TestRef && ((TestRef)obj).id == id;
+		}
+
+		@Override
+		public int hashCode() {
+			return id;
+		}
+	}
+
+	static ContentObject content(String name, int length) throws Exception {
+		return new ContentObject(ContentName.fromNative(name),
+				new SignedInfo(new PublisherPublicKeyDigest(new byte[32]), ContentType.DATA, null),
+				new byte[length], new Signature(new byte[128]));
+	}
+
+	@Test
+	public void testContentCache() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testContentCache");
+
+		// Room for 3 of these objects
+		RepoContentCache cache = new RepoContentCache(1000);
+		ContentObject [] objects = new ContentObject[4];
+		for (int i = 0; i < objects.length; i++) {
+			objects[i] = content("/test/cache/" + i, 300);
+			assertEquals(i < 3 ? 0 : 1, cache.put(new TestRef(i), objects[i]));
+			if (i == 2)
+				assertEquals(objects[0], cache.get(new TestRef(0)));
+		}
+		// Using object 0 saved it, so object 1 was the least recently used
+		assertEquals(3, cache.size());
+		assertNull(cache.get(new TestRef(1)));
+		assertEquals(objects[0], cache.get(new TestRef(0)));
+		assertEquals(objects[3], cache.get(new TestRef(3)));
+
+		// Replacing an object doesn't count it twice
+		cache.put(new TestRef(3), objects[3]);
+		assertEquals(3, cache.size());
+		assertTrue(cache.bytes() <= 1000);
+
+		// Objects too big for the cache aren't added, objects which need room evict others
+		assertEquals(0, cache.put(new TestRef(4), content("/test/cache/big", 2000)));
+		assertNull(cache.get(new TestRef(4)));
+		assertEquals(2, cache.put(new TestRef(5), content("/test/cache/5", 600)));
+		assertEquals(2, cache.size());
+		assertEquals(objects[3], cache.get(new TestRef(3)));
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.bytes());
+
+		// Content read from storage keeps its encoding, which counts too
+		byte [] encoded = content("/test/cache/decoded", 300).encode();
+		ContentObject decoded = new ContentObject();
+		decoded.decode(encoded);
+		cache.put(new TestRef(6), decoded);
+		assertTrue(cache.bytes() > 300 + encoded.length);
+		assertEquals(1, cache.put(new TestRef(7), content("/test/cache/7", 300)));
+		assertNull(cache.get(new TestRef(6)));
+	}
+
+	@Test
+	public void testNegativeCache() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testNegativeCache");
+
+		RepoNegativeCache cache = new RepoNegativeCache(3);
+		Interest missing = new Interest(ContentName.fromNative("/test/negative/a"));
+		Interest rightmost = new Interest(ContentName.fromNative("/test/negative/a"));
+		rightmost.childSelector(Interest.CHILD_SELECTOR_RIGHT);
+		Interest other = new Interest(ContentName.fromNative("/test/other"));
+		assertFalse(cache.contains(missing));
+
+		cache.put(missing, cache.generation());
+		cache.put(rightmost, cache.generation());
+		cache.put(other, cache.generation());
+		assertTrue(cache.contains(new Interest(ContentName.fromNative("/test/negative/a"))));
+		assertTrue(cache.contains(rightmost));
+		assertEquals(3, cache.size());
+
+		// Content under the name removes the interests for it, but not others
+		cache.added(ContentName.fromNative("/test/negative/a/b/digest"));
+		assertFalse(cache.contains(missing));
+		assertFalse(cache.contains(rightmost));
+		assertTrue(cache.contains(other));
+		cache.put(missing, cache.generation());
+		cache.added(ContentName.fromNative("/test/negative/b/digest"));
+		assertTrue(cache.contains(missing));
+
+		// An interest searched for while content was added isn't remembered
+		long generation = cache.generation();
+		cache.added(ContentName.fromNative("/test/unrelated/digest"));
+		cache.put(rightmost, generation);
+		assertFalse(cache.contains(rightmost));
+
+		// Nor is one searched for while content was moved
+		generation = cache.generation();
+		cache.changed();
+		cache.put(rightmost, generation);
+		assertFalse(cache.contains(rightmost));
+		assertTrue(cache.contains(missing));
+
+		// The interests for the least recently used name are evicted
+		cache.put(rightmost, cache.generation());
+		assertTrue(cache.contains(other));
+		cache.put(new Interest(ContentName.fromNative("/test/third")), cache.generation());
+		assertTrue(cache.contains(other));
+		assertFalse(cache.contains(missing));
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testNameFilter() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testNameFilter");
+
+		// About 10 bits for each prefix added
+		RepoNameFilter filter = new RepoNameFilter(20000);
+		assertEquals(32768, filter.bits());
+		assertFalse(filter.match(ContentName.fromNative("/test/filter")));
+		ContentObject [] objects = new ContentObject[1000];
+		for (int i = 0; i < objects.length; i++) {
+			objects[i] = content("/test/filter/" + i, 10);
+			filter.add(objects[i].fullName());
+		}
+
+		// Every prefix of every name matches
+		for (ContentObject co : objects) {
+			for (int j = 0; j <= co.fullName().count(); j++)
+				assertTrue(filter.match(co.fullName().cut(j)));
+		}
+
+		// Few absent names do
+		int matched = 0;
+		for (int i = 1000; i < 2000; i++) {
+			if (filter.match(ContentName.fromNative("/test/filter/" + i)))
+				matched++;
+			if (filter.match(ContentName.fromNative("/test/other/" + i)))
+				matched++;
+		}
+		assertTrue("Matched " + matched + " absent names", matched < 100);
+	}
+}
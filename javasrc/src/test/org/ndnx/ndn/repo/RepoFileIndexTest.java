@@ -0,0 +1,116 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.ndnx.ndn.impl.repo.RepoFileIndex;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.protocol.ContentName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the saved index files of the log structured repository
+ */
+public class RepoFileIndexTest {
+
+	File _file;
+
+	@Before
+	public void setUp() throws Exception {
+		_file = File.createTempFile("repoFileIndex", null);
+		_file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		_file.delete();
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testRoundTrip");
+
+		RepoFileIndex index = new RepoFileIndex(_file);
+		assertNull(index.load(1000));
+		index.reset();
+		index.append(0, 100, ContentName.fromNative("/test/index/a"));
+		index.append(100, 50, ContentName.fromNative("/test/index/b"));
+		index.close();
+
+		index = new RepoFileIndex(_file);
+		List<RepoFileIndex.Record> records = index.load(150);
+		assertEquals(2, records.size());
+		assertEquals(100, records.get(1).offset);
+		assertEquals(50, records.get(1).length);
+		assertEquals(ContentName.fromNative("/test/index/b"), records.get(1).name);
+
+		// Appending after a load continues the same index
+		index.append(150, 10, ContentName.fromNative("/test/index/c"));
+		index.close();
+		assertEquals(3, new RepoFileIndex(_file).load(160).size());
+
+		// Records for data which isn't in the data file are dropped
+		index = new RepoFileIndex(_file);
+		assertEquals(2, index.load(155).size());
+		index.close();
+		assertEquals(2, new RepoFileIndex(_file).load(160).size());
+	}
+
+	@Test
+	public void testDamage() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testDamage");
+
+		RepoFileIndex index = new RepoFileIndex(_file);
+		index.reset();
+		index.append(0, 100, ContentName.fromNative("/test/index/a"));
+		index.append(100, 100, ContentName.fromNative("/test/index/b"));
+		index.append(200, 100, ContentName.fromNative("/test/index/c"));
+		index.close();
+		long length = _file.length();
+
+		// A partly written last record
+		RandomAccessFile raf = new RandomAccessFile(_file, "rw");
+		raf.setLength(length - 3);
+		raf.close();
+		assertEquals(2, new RepoFileIndex(_file).load(300).size());
+
+		// A damaged record, and everything after it, is dropped
+		raf = new RandomAccessFile(_file, "rw");
+		raf.seek(raf.length() - 6);
+		raf.write('x');
+		raf.close();
+		assertEquals(1, new RepoFileIndex(_file).load(300).size());
+
+		// A bad header means there is no usable index
+		raf = new RandomAccessFile(_file, "rw");
+		raf.writeInt(0);
+		raf.close();
+		assertNull(new RepoFileIndex(_file).load(300));
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.repo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ndnx.ndn.impl.repo.ByteBufferInputStream;
+import org.ndnx.ndn.impl.repo.FileChannelInputStream;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+import org.ndnx.ndn.protocol.SignedInfo.ContentType;
+import org.junit.Test;
+
+/**
+ * Test the streams the log structured repository uses to read objects from its data files
+ */
+public class RepoFileReadTest {
+
+	static final int OBJECTS = 200;
+	static final int THREADS = 4;
+
+	@Test
+	public void testParallelReads() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testParallelReads");
+
+		final ArrayList<ContentObject> objects = new ArrayList<ContentObject>();
+		final long [] offsets = new long[OBJECTS];
+		File file = File.createTempFile("repoFile", null);
+		try {
+			FileOutputStream fos = new FileOutputStream(file);
+			long offset = 0;
+			for (int i = 0; i < OBJECTS; i++) {
+				ContentObject co = new ContentObject(ContentName.fromNative("/test/read/" + i),
+						new SignedInfo(new PublisherPublicKeyDigest(new byte[32]), ContentType.DATA, null),
+						("object " + i).getBytes(), new Signature(new byte[128]));
+				byte [] encoded = co.encode();
+				fos.write(encoded);
+				objects.add(co);
+				offsets[i] = offset;
+				offset += encoded.length;
+			}
+			fos.close();
+
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			final FileChannel channel = raf.getChannel();
+			final MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			final AtomicInteger errors = new AtomicInteger(0);
+			ArrayList<Thread> readers = new ArrayList<Thread>();
+			for (int t = 0; t < THREADS; t++) {
+				final int start = t;
+				Thread reader = new Thread() {
+					@Override
+					public void run() {
+						try {
+							for (int n = 0; n < OBJECTS; n++) {
+								int i = (start * 37 + n * 11) % OBJECTS;
+								ContentObject viaChannel = new ContentObject();
+								viaChannel.decode(new BufferedInputStream(new FileChannelInputStream(channel, offsets[i]), 8192));
+								ByteBuffer view = map.duplicate();
+								view.position((int)offsets[i]);
+								ContentObject viaMap = new ContentObject();
+								viaMap.decode(new ByteBufferInputStream(view));
+								if (!objects.get(i).equals(viaChannel) || !objects.get(i).equals(viaMap))
+									errors.incrementAndGet();
+							}
+						} catch (Exception e) {
+							Log.warning(Log.FAC_TEST, "Read failed: " + e);
+							errors.incrementAndGet();
+						}
+					}
+				};
+				readers.add(reader);
+				reader.start();
+			}
+			for (Thread reader : readers)
+				reader.join();
+			raf.close();
+			assertEquals(0, errors.get());
+		} finally {
+			file.delete();
+		}
+	}
+}
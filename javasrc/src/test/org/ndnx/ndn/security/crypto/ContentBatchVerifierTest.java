@@ -0,0 +1,129 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+
+package org.ndnx.ndn.security.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.ndnx.ndn.ContentVerifier;
+import org.ndnx.ndn.impl.NDNStats;
+import org.ndnx.ndn.impl.security.crypto.ContentBatchVerifier;
+import org.ndnx.ndn.impl.security.crypto.NDNMerkleTree;
+import org.ndnx.ndn.impl.security.crypto.VerifiedSignatureCache;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.KeyLocator;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test verifying batches of content in parallel
+ */
+public class ContentBatchVerifierTest {
+
+	static final int SEGMENTS = 20;
+
+	static KeyPair pair = null;
+
+	static final ContentVerifier verifier = new ContentVerifier() {
+		public boolean verify(ContentObject object) {
+			try {
+				return object.verify(pair.getPublic());
+			} catch (Exception e) {
+				return false;
+			}
+		}
+	};
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		Security.addProvider(new BouncyCastleProvider());
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(512); // go for fast
+		pair = kpg.generateKeyPair();
+	}
+
+	static ContentObject [] signedSegments(String name) throws Exception {
+		SignedInfo si = new SignedInfo(new PublisherPublicKeyDigest(pair.getPublic()), new KeyLocator(pair.getPublic()));
+		ContentObject [] segments = new ContentObject[SEGMENTS];
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new ContentObject(new ContentName("test", "batch", name, "" + i), si,
+					("segment " + i + " of " + name).getBytes(), (Signature)null);
+		}
+		NDNMerkleTree tree = new NDNMerkleTree(segments, pair.getPrivate());
+		tree.setSignatures();
+		return segments;
+	}
+
+	@Test
+	public void testBatchVerify() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testBatchVerify");
+
+		ContentObject [] first = signedSegments("first");
+		ContentObject [] second = signedSegments("second");
+		ArrayList<ContentObject> objects = new ArrayList<ContentObject>();
+		for (int i = 0; i < SEGMENTS; i++) {
+			objects.add(first[i]);
+			objects.add(second[i]);
+		}
+		// Content which doesn't match the signature it was given
+		ContentObject forged = new ContentObject(first[0].name(), first[0].signedInfo(), "forged".getBytes(),
+				first[0].signature());
+		objects.add(SEGMENTS, forged);
+
+		VerifiedSignatureCache cache = VerifiedSignatureCache.getDefaultCache();
+		cache.clear();
+		NDNStats stats = cache.getStats();
+		long hits = stats.getCounter("Hits");
+
+		ContentBatchVerifier batchVerifier = new ContentBatchVerifier(verifier, 4);
+		List<Future<Boolean>> results = batchVerifier.verify(objects);
+		assertEquals(objects.size(), results.size());
+		for (int i = 0; i < results.size(); i++)
+			assertEquals("Result " + i, objects.get(i) != forged, results.get(i).get());
+
+		// Once the first segment of each tree was verified the rest used its result
+		assertEquals(hits + 2 * (SEGMENTS - 1), stats.getCounter("Hits"));
+
+		assertTrue(batchVerifier.verify(second[0]).get());
+		assertFalse(batchVerifier.verify(forged).get());
+		batchVerifier.shutdown();
+		try {
+			batchVerifier.verify(first[0]);
+			assertTrue("Verify after shutdown should be rejected", false);
+		} catch (RejectedExecutionException e) {}
+	}
+}
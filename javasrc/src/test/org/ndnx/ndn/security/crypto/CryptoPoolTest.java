@@ -0,0 +1,168 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.security.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Security;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.ndnx.ndn.config.PlatformConfiguration;
+import org.ndnx.ndn.impl.security.crypto.CryptoPool;
+import org.ndnx.ndn.impl.security.crypto.NDNDigestHelper;
+import org.ndnx.ndn.impl.security.crypto.util.SignatureHelper;
+import org.ndnx.ndn.impl.support.Log;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test the per-thread pools of signatures, digests and ciphers
+ */
+public class CryptoPoolTest {
+
+	static final int THREADS = 4;
+	static final int OPERATIONS = 50;
+
+	static KeyPair pair = null;
+	static KeyPair otherPair = null;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		Security.addProvider(new BouncyCastleProvider());
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(512); // go for fast
+		pair = kpg.generateKeyPair();
+		otherPair = kpg.generateKeyPair();
+	}
+
+	@Test
+	public void testPool() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testPool");
+		if (PlatformConfiguration.needSignatureLock())
+			return; // nothing is pooled
+
+		// Instances given back are reused by the same thread for the same algorithm and key
+		String algorithm = "SHA256withRSA";
+		final Signature sig = CryptoPool.getSignature(algorithm, pair.getPrivate(), true);
+		CryptoPool.returnSignature(sig, algorithm, pair.getPrivate(), true);
+		assertSame(sig, CryptoPool.getSignature(algorithm, pair.getPrivate(), true));
+		CryptoPool.returnSignature(sig, algorithm, pair.getPrivate(), true);
+		Signature other = CryptoPool.getSignature(algorithm, otherPair.getPrivate(), true);
+		assertNotSame(sig, other);
+		assertNotSame(sig, CryptoPool.getSignature(algorithm, pair.getPublic(), false));
+
+		// But not by other threads
+		final Signature [] taken = new Signature[1];
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					taken[0] = CryptoPool.getSignature("SHA256withRSA", pair.getPrivate(), true);
+				} catch (Exception e) {
+					Log.warningStackTrace(e);
+				}
+			}
+		};
+		thread.start();
+		thread.join();
+		assertNotSame(sig, taken[0]);
+		assertSame(sig, CryptoPool.getSignature(algorithm, pair.getPrivate(), true));
+
+		// Instances in use aren't given out twice
+		MessageDigest md = CryptoPool.getDigest("SHA-256");
+		MessageDigest nested = CryptoPool.getDigest("SHA-256");
+		assertNotSame(md, nested);
+		CryptoPool.returnDigest(nested, "SHA-256");
+		CryptoPool.returnDigest(md, "SHA-256");
+		assertSame(md, CryptoPool.getDigest("SHA-256"));
+
+		// Each thread only keeps a few
+		for (int i = 0; i < CryptoPool.MAX_IDLE; i++)
+			CryptoPool.returnDigest(MessageDigest.getInstance("SHA-1"), "SHA-1-" + i);
+		CryptoPool.returnSignature(sig, algorithm, pair.getPrivate(), true);
+		for (int i = 0; i < CryptoPool.MAX_IDLE; i++)
+			CryptoPool.returnDigest(MessageDigest.getInstance("SHA-1"), "SHA-1-" + i);
+		assertNotSame(sig, CryptoPool.getSignature(algorithm, pair.getPrivate(), true));
+		CryptoPool.clear();
+	}
+
+	@Test
+	public void testConcurrentSigning() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testConcurrentSigning");
+
+		final AtomicInteger errors = new AtomicInteger(0);
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS; t++) {
+			final int id = t;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < OPERATIONS; i++) {
+							byte [] data = ("thread " + id + " data " + i).getBytes();
+							KeyPair keys = (i % 2 == 0) ? pair : otherPair;
+							byte [] signature = SignatureHelper.sign(null, data, keys.getPrivate());
+							if (!SignatureHelper.verify(data, signature, null, keys.getPublic()))
+								errors.incrementAndGet();
+
+							// A failed verification leaves the verifier usable
+							byte [] bad = signature.clone();
+							bad[bad.length - 1]++;
+							if (SignatureHelper.verify(data, bad, null, keys.getPublic()))
+								errors.incrementAndGet();
+
+							MessageDigest md = MessageDigest.getInstance("SHA-256");
+							md.update(data);
+							if (!MessageDigest.isEqual(md.digest(), NDNDigestHelper.digest(new byte[][]{data, null})))
+								errors.incrementAndGet();
+						}
+					} catch (Exception e) {
+						Log.warningStackTrace(e);
+						errors.incrementAndGet();
+					}
+				}
+			});
+		}
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(0, errors.get());
+
+		// Digests match however the data is split up
+		byte [] data = "some data".getBytes();
+		assertArrayEquals(NDNDigestHelper.digest(data), NDNDigestHelper.digest(new byte[][]{"some ".getBytes(), "data".getBytes()}));
+		assertArrayEquals(NDNDigestHelper.digest(data), NDNDigestHelper.digest(data, 0, data.length));
+		assertFalse(MessageDigest.isEqual(NDNDigestHelper.digest(data), NDNDigestHelper.digest("SHA-1", data)));
+		assertTrue(MessageDigest.isEqual(NDNDigestHelper.digest(data), NDNDigestHelper.digest((String)null, data)));
+	}
+}
@@ -25,6 +25,7 @@ import java.util.Arrays;
 import java.util.Random;
 
 import org.bouncycastle.asn1.x509.DigestInfo;
+import org.ndnx.ndn.config.SystemConfiguration;
 import org.ndnx.ndn.impl.security.crypto.NDNDigestHelper;
 import org.ndnx.ndn.impl.security.crypto.MerklePath;
 import org.ndnx.ndn.impl.security.crypto.MerkleTree;
@@ -83,6 +84,35 @@ public class MerkleTreeTest {
 		Log.info(Log.FAC_TEST, "Completed testMerkleTree");
 	}
 	
+	@Test
+	public void testParallelTree() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testParallelTree");
+
+		int threads = SystemConfiguration.MERKLE_THREADS;
+		try {
+			int [] nodecounts = new int[]{2,63,64,65,1000,1025,4096,9999};
+			for (int i=0; i < nodecounts.length; ++i) {
+				byte [][] content = makeContent(nodecounts[i], 512, false);
+				int last = content[nodecounts[i]-1].length;
+				
+				// The same tree whether built by one thread or several
+				SystemConfiguration.MERKLE_THREADS = 1;
+				MerkleTree sequential = new MerkleTree(content, false, nodecounts[i], 0, last);
+				SystemConfiguration.MERKLE_THREADS = 4;
+				MerkleTree parallel = new MerkleTree(content, false, nodecounts[i], 0, last);
+				Assert.assertArrayEquals(sequential.root(), parallel.root());
+				for (int j=0; j < nodecounts[i]; j += 7)
+					Assert.assertEquals(sequential.path(j), parallel.path(j));
+				
+				testTree(content, nodecounts[i], false);
+			}
+		} finally {
+			SystemConfiguration.MERKLE_THREADS = threads;
+		}
+		
+		Log.info(Log.FAC_TEST, "Completed testParallelTree");
+	}
+	
 	public static void testTree(int numLeaves, int nodeLength, boolean digest) throws Exception {
 		try {
 			byte [][] data = makeContent(numLeaves, nodeLength, digest);
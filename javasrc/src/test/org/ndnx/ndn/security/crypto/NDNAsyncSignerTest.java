@@ -0,0 +1,380 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ndnx.ndn.security.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.Security;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.ndnx.ndn.KeyManager;
+import org.ndnx.ndn.NDNHandle;
+import org.ndnx.ndn.NDNLibraryTestHarness;
+import org.ndnx.ndn.config.ConfigurationException;
+import org.ndnx.ndn.config.UserConfiguration;
+import org.ndnx.ndn.impl.NDNFlowControl;
+import org.ndnx.ndn.impl.NDNSegmenter;
+import org.ndnx.ndn.impl.security.crypto.NDNAsyncSigner;
+import org.ndnx.ndn.impl.security.crypto.NDNMerkleTreeSigner;
+import org.ndnx.ndn.impl.security.keys.BasicKeyManager;
+import org.ndnx.ndn.impl.support.Log;
+import org.ndnx.ndn.io.NDNWriter;
+import org.ndnx.ndn.protocol.ContentName;
+import org.ndnx.ndn.protocol.ContentObject;
+import org.ndnx.ndn.protocol.Interest;
+import org.ndnx.ndn.protocol.PublisherPublicKeyDigest;
+import org.ndnx.ndn.protocol.Signature;
+import org.ndnx.ndn.protocol.SignedInfo;
+import org.ndnx.ndn.protocol.SignedInfo.ContentType;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test signing content on worker threads
+ */
+public class NDNAsyncSignerTest {
+
+	static final int BATCHES = 20;
+
+	static KeyPair pair = null;
+
+	static class CountingSigner extends NDNMerkleTreeSigner {
+		AtomicInteger count = new AtomicInteger(0);
+
+		@Override
+		public void signBlocks(ContentObject [] contentObjects, Key signingKey)
+				throws InvalidKeyException, SignatureException, NoSuchAlgorithmException, IOException {
+			count.incrementAndGet();
+			super.signBlocks(contentObjects, signingKey);
+		}
+	}
+
+	static KeyManager keyManager = null;
+
+	// A handle which writes to a queue rather than the network, signing with our own key manager
+	static class SigningHarness extends NDNLibraryTestHarness {
+		SigningHarness() throws ConfigurationException, IOException {
+			super();
+		}
+
+		@Override
+		public KeyManager keyManager() {
+			return keyManager;
+		}
+	}
+
+	static class TestWriter extends NDNWriter {
+		TestWriter(ContentName namespace, NDNHandle handle) throws IOException {
+			super(namespace, handle);
+		}
+
+		NDNFlowControl flowControl() {
+			return getFlowControl();
+		}
+	}
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		Security.addProvider(new BouncyCastleProvider());
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(512); // go for fast
+		pair = kpg.generateKeyPair();
+
+		// Load the user's keys without publishing them, which needs the network
+		boolean publish = UserConfiguration.publishKeys();
+		UserConfiguration.setPublishKeys(false);
+		try {
+			keyManager = new BasicKeyManager();
+			keyManager.initialize();
+		} finally {
+			UserConfiguration.setPublishKeys(publish);
+		}
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+		if (null != keyManager)
+			keyManager.close();
+	}
+
+	static ContentObject [] unsigned(String name, int count) throws Exception {
+		ContentObject [] objects = new ContentObject[count];
+		for (int i = 0; i < count; i++) {
+			objects[i] = new ContentObject(new ContentName(ContentName.fromNative(name), "" + i),
+					new SignedInfo(new PublisherPublicKeyDigest(pair.getPublic()), ContentType.DATA, null),
+					("content " + i).getBytes(), (Signature)null);
+		}
+		return objects;
+	}
+
+	@Test
+	public void testSigning() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testSigning");
+
+		NDNAsyncSigner signer = new NDNAsyncSigner(2, 0, new NDNMerkleTreeSigner());
+		final AtomicInteger handled = new AtomicInteger(0);
+		NDNAsyncSigner.SignedContentHandler handler = new NDNAsyncSigner.SignedContentHandler() {
+			public void signed(ContentObject [] contentObjects) throws IOException {
+				for (ContentObject co : contentObjects) {
+					if (null == co.signature())
+						throw new IOException("Handled before signing");
+				}
+				handled.addAndGet(contentObjects.length);
+			}
+		};
+
+		// Single objects get their own signatures, batches are signed together
+		ArrayList<Future<ContentObject []>> results = new ArrayList<Future<ContentObject []>>();
+		for (int i = 0; i < BATCHES; i++)
+			results.add(signer.sign(unsigned("/test/async/" + i, (i % 2 == 0) ? 1 : 3), pair.getPrivate(), handler));
+		for (int i = 0; i < BATCHES; i++) {
+			ContentObject [] objects = results.get(i).get();
+			for (ContentObject co : objects)
+				assertTrue(co.verify(pair.getPublic()));
+			if (objects.length == 1)
+				assertNull(objects[0].signature().witness());
+			else
+				assertArrayEquals(objects[0].signature().signature(), objects[2].signature().signature());
+		}
+		assertEquals(BATCHES * 2, handled.get());
+
+		// Errors handling content are returned
+		Future<ContentObject []> failed = signer.sign(unsigned("/test/async/failed", 1), pair.getPrivate(),
+				new NDNAsyncSigner.SignedContentHandler() {
+					public void signed(ContentObject [] contentObjects) throws IOException {
+						throw new IOException("expected");
+					}
+				});
+		try {
+			failed.get();
+			fail("Handler exception not returned");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+
+		signer.shutdown();
+		try {
+			signer.sign(unsigned("/test/async/late", 1), pair.getPrivate(), null);
+			fail("Signed content after shutdown");
+		} catch (RejectedExecutionException e) {
+			// ok
+		}
+	}
+
+	@Test
+	public void testAggregation() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testAggregation");
+
+		// One thread waiting long enough to collect every batch queued
+		NDNAsyncSigner signer = new NDNAsyncSigner(1, 500, new NDNMerkleTreeSigner());
+		ArrayList<Future<ContentObject []>> results = new ArrayList<Future<ContentObject []>>();
+		for (int i = 0; i < BATCHES; i++)
+			results.add(signer.sign(unsigned("/test/aggregate/" + i, 1), pair.getPrivate(), null));
+		byte [] rootSignature = null;
+		int shared = 0;
+		for (Future<ContentObject []> result : results) {
+			ContentObject co = result.get()[0];
+			assertTrue(co.verify(pair.getPublic()));
+			assertNotNull(co.signature().witness());
+			if (null == rootSignature)
+				rootSignature = co.signature().signature();
+			else if (Arrays.equals(rootSignature, co.signature().signature()))
+				shared++;
+		}
+		assertEquals(BATCHES - 1, shared);
+
+		// Once there is nothing left to wait for, a lone object is signed alone
+		ContentObject [] alone = signer.sign(unsigned("/test/aggregate/alone", 1), pair.getPrivate(), null).get();
+		assertNull(alone[0].signature().witness());
+		assertTrue(alone[0].verify(pair.getPublic()));
+
+		// Batches are only signed together with others using the same aggregated signer
+		CountingSigner first = new CountingSigner();
+		CountingSigner second = new CountingSigner();
+		results.clear();
+		for (int i = 0; i < 4; i++)
+			results.add(signer.sign(unsigned("/test/aggregate/separate/" + i, 1), pair.getPrivate(), (i % 2 == 0) ? first : second, null));
+		for (Future<ContentObject []> result : results)
+			assertTrue(result.get()[0].verify(pair.getPublic()));
+		assertEquals(1, first.count.get());
+		assertEquals(1, second.count.get());
+		assertArrayEquals(results.get(0).get()[0].signature().signature(), results.get(2).get()[0].signature().signature());
+		assertFalse(Arrays.equals(results.get(0).get()[0].signature().signature(), results.get(1).get()[0].signature().signature()));
+		signer.shutdown();
+	}
+
+	@Test
+	public void testShutdownRace() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testShutdownRace");
+
+		// Content given to the signer as it shuts down is either refused or signed, never
+		// left waiting. Batches are "signed" by doing nothing, so many can be queued.
+		NDNMerkleTreeSigner nothing = new NDNMerkleTreeSigner() {
+			@Override
+			public void signBlocks(ContentObject [] contentObjects, Key signingKey) {
+			}
+		};
+		final ContentObject [] batch = unsigned("/test/async/shutdown", 2);
+		for (int round = 0; round < 100; round++) {
+			final NDNAsyncSigner signer = new NDNAsyncSigner(2, 0, nothing);
+			final ArrayList<Future<ContentObject []>> results = new ArrayList<Future<ContentObject []>>();
+			final CountDownLatch start = new CountDownLatch(1);
+			Thread [] threads = new Thread[4];
+			for (int i = 0; i < threads.length; i++) {
+				threads[i] = new Thread(new Runnable() {
+					public void run() {
+						try {
+							start.await();
+						} catch (InterruptedException e) {
+							return;
+						}
+						while (true) {
+							Future<ContentObject []> result;
+							try {
+								result = signer.sign(batch, pair.getPrivate(), null);
+							} catch (RejectedExecutionException e) {
+								return;
+							}
+							synchronized (results) {
+								results.add(result);
+							}
+						}
+					}
+				});
+				threads[i].start();
+			}
+			start.countDown();
+			Thread.sleep(2);
+			signer.shutdown();
+			for (Thread thread : threads)
+				thread.join();
+			for (Future<ContentObject []> result : results) {
+				try {
+					result.get(1000, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					fail("Content queued after shutdown was never signed");
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSegmenterOutput() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testSegmenterOutput");
+
+		// A flow controller with no room for anything until released
+		final CountDownLatch release = new CountDownLatch(1);
+		SigningHarness handle = new SigningHarness();
+		ContentName name = ContentName.fromNative("/test/async/segmenter");
+		NDNFlowControl flowControl = new NDNFlowControl(name, handle) {
+			@Override
+			public void put(ContentObject [] cos) throws IOException {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IOException("Interrupted");
+				}
+				super.put(cos);
+			}
+		};
+		CountingSigner bulkSigner = new CountingSigner();
+		NDNSegmenter segmenter = new NDNSegmenter(flowControl, bulkSigner);
+		NDNAsyncSigner signer = new NDNAsyncSigner(1, 0, new NDNMerkleTreeSigner());
+		segmenter.setAsyncSigner(signer);
+		try {
+			byte [][] blocks = new byte[4][100];
+			segmenter.fragmentedPut(name, 0, blocks, blocks.length, 0, 100, null, null, null, Long.valueOf(blocks.length - 1),
+					null, null, null, false);
+
+			// The segmenter's blocks were signed with its own bulk signer, and waiting to
+			// write them doesn't hold up the signer's only thread
+			ContentObject [] other = signer.sign(unsigned("/test/async/other", 1), pair.getPrivate(), null).get(5, TimeUnit.SECONDS);
+			assertTrue(other[0].verify(pair.getPublic()));
+			assertEquals(1, bulkSigner.count.get());
+
+			release.countDown();
+			segmenter.waitForOutput();
+		} finally {
+			release.countDown();
+			signer.shutdown();
+		}
+	}
+
+	@Test
+	public void testWriterClose() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testWriterClose");
+
+		SigningHarness handle = new SigningHarness();
+		ContentName name = ContentName.fromNative("/test/async/writer");
+
+		// An asynchronous put doesn't wait for readers, close does
+		TestWriter writer = new TestWriter(name, handle);
+		writer.setAsyncSigning(true);
+		writer.setTimeout(500);
+		writer.put(new ContentName(name, "unread"), "unread".getBytes());
+		try {
+			writer.close();
+			fail("Closed with content no reader took");
+		} catch (IOException e) {
+			// ok
+		}
+
+		// Content for an interest already waiting is sent once it is signed, and then
+		// there is nothing left for close to wait for
+		writer = new TestWriter(name, handle);
+		writer.setAsyncSigning(true);
+		writer.setTimeout(500);
+		ContentName readName = new ContentName(name, "read");
+		writer.flowControl().handleInterest(new Interest(readName));
+		writer.put(readName, "read".getBytes());
+		writer.close();
+		ContentObject sent = null;
+		for (ContentObject co : handle.getOutputQueue()) {
+			if (readName.isPrefixOf(co.name()))
+				sent = co;
+		}
+		assertNotNull(sent);
+		assertArrayEquals("read".getBytes(), sent.content());
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * A NDNx library test.
+ *
+ * Portions Copyright (C) 2013 Regents of the University of California.
+ *
+ * Based on the CCNx C Library by PARC.
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+
+package org.ndnx.ndn.security.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.ndnx.ndn.impl.NDNStats;
+import org.ndnx.ndn.impl.security.crypto.NDNSignatureHelper;
+import org.ndnx.ndn.impl.security.crypto.VerifiedSignatureCache;
+import org.ndnx.ndn.impl.security.crypto.VerifiedSignatureCache.Check;
+import org.ndnx.ndn.impl.support.Log;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test the process-wide cache of signature verification results
+ */
+public class VerifiedSignatureCacheTest {
+
+	static KeyPair pair = null;
+	static KeyPair otherPair = null;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		Security.addProvider(new BouncyCastleProvider());
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(512); // go for fast
+		pair = kpg.generateKeyPair();
+		otherPair = kpg.generateKeyPair();
+	}
+
+	@Test
+	public void testCache() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testCache");
+
+		VerifiedSignatureCache cache = new VerifiedSignatureCache(2);
+		byte [][] data = new byte[][]{"some ".getBytes(), null, "data".getBytes()};
+		byte [] signature = new byte[64];
+		Check check = VerifiedSignatureCache.check(data, signature, "SHA-256", pair.getPublic());
+		assertNull(cache.get(check));
+		cache.put(check, true);
+
+		// The same check, however the data is split up, finds the result
+		assertEquals(Boolean.TRUE, cache.get(VerifiedSignatureCache.check(new byte[][]{"some data".getBytes()},
+				signature, "SHA-256", pair.getPublic())));
+
+		// Other signatures, algorithms and keys don't
+		byte [] otherSignature = new byte[64];
+		otherSignature[0] = 1;
+		assertNull(cache.get(VerifiedSignatureCache.check(data, otherSignature, "SHA-256", pair.getPublic())));
+		assertNull(cache.get(VerifiedSignatureCache.check(data, signature, "SHA-1", pair.getPublic())));
+		assertNull(cache.get(VerifiedSignatureCache.check(data, signature, "SHA-256", otherPair.getPublic())));
+
+		// The least recently used result is evicted
+		Check other = VerifiedSignatureCache.check(data, otherSignature, "SHA-256", pair.getPublic());
+		cache.put(other, false);
+		assertEquals(Boolean.TRUE, cache.get(check));
+		cache.put(VerifiedSignatureCache.check(data, signature, "SHA-1", pair.getPublic()), false);
+		assertEquals(2, cache.size());
+		assertEquals(Boolean.TRUE, cache.get(check));
+		assertNull(cache.get(other));
+
+		NDNStats stats = cache.getStats();
+		assertEquals(3, stats.getCounter("Hits"));
+		assertEquals(5, stats.getCounter("Misses"));
+		assertEquals(1, stats.getCounter("Evictions"));
+	}
+
+	@Test
+	public void testVerify() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testVerify");
+
+		VerifiedSignatureCache cache = VerifiedSignatureCache.getDefaultCache();
+		cache.clear();
+		NDNStats stats = cache.getStats();
+		long hits = stats.getCounter("Hits");
+
+		byte [] data = "data signed once and checked several times".getBytes();
+		byte [] signature = NDNSignatureHelper.sign(null, data, pair.getPrivate());
+		for (int i = 0; i < 3; i++)
+			assertTrue(NDNSignatureHelper.verify(data, signature, null, pair.getPublic()));
+		assertEquals(hits + 2, stats.getCounter("Hits"));
+
+		// Failures are cached too, and don't affect other checks
+		byte [] badSignature = signature.clone();
+		badSignature[0]++;
+		for (int i = 0; i < 2; i++)
+			assertFalse(NDNSignatureHelper.verify(data, badSignature, null, pair.getPublic()));
+		assertFalse(NDNSignatureHelper.verify(data, signature, null, otherPair.getPublic()));
+		assertTrue(NDNSignatureHelper.verify(data, signature, null, pair.getPublic()));
+		assertEquals(hits + 4, stats.getCounter("Hits"));
+	}
+}